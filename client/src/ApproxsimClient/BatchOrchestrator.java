@@ -0,0 +1,672 @@
+/*
+ * @(#)BatchOrchestrator.java
+ */
+
+package ApproxsimClient;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Vector;
+
+import ApproxsimClient.communication.ApproxsimSocket;
+import ApproxsimClient.communication.ResetMessage;
+import ApproxsimClient.communication.ServerConnection;
+import ApproxsimClient.communication.ServerException;
+import ApproxsimClient.dispatcher.ApproxsimDispatcher;
+import ApproxsimClient.object.ApproxsimInteger;
+import ApproxsimClient.object.ApproxsimObject;
+import ApproxsimClient.object.ApproxsimObjectFactory;
+import ApproxsimClient.object.primitive.Duration;
+
+/**
+ * Runs the jobs of a manifest concurrently in one JVM, with one HeadlessBatchRunner session per server. The servers are leased from the
+ * dispatcher, or taken from a fixed list. A job whose server fails, i.e. loses the connection or stalls, is run again on another server, at
+ * most maxAttempts times in all. A job the server answers with an error fails at once, and the server is reset and kept for the next job. The
+ * process variables of each job are written to name.pvc in the output directory and a line per job with its throughput and step latencies
+ * is written to summary.csv.
+ * <p>
+ * The manifest holds one job per line, "name scenario duration [seed]", where a relative scenario is relative to the manifest and the
+ * optional seed replaces the randomSeed of the simulation. Empty lines and lines starting with '#' are ignored.
+ *
+ * @version 1
+ */
+public class BatchOrchestrator {
+    /**
+     * The default number of times a job is run before it is given up.
+     */
+    public static final int DEFAULT_ATTEMPTS = 3;
+
+    /**
+     * The default time in milliseconds without progress after which a server is considered to have failed.
+     */
+    public static final long DEFAULT_STALL_TIMEOUT = 300000;
+
+    /**
+     * A job of a manifest and the outcome of running it.
+     */
+    public static class Job {
+        /**
+         * The name of the job, which names its output.
+         */
+        String name;
+
+        /**
+         * The scenario file.
+         */
+        String scenario;
+
+        /**
+         * The simulated time.
+         */
+        Duration duration;
+
+        /**
+         * The random seed or -1 to keep the one of the scenario.
+         */
+        long seed;
+
+        /**
+         * The number of times the job has been started.
+         */
+        int attempts = 0;
+
+        /**
+         * The server of the last attempt.
+         */
+        String server = null;
+
+        /**
+         * The number of steps handled by the last attempt.
+         */
+        int steps = 0;
+
+        /**
+         * The wall clock time of the last attempt in milliseconds.
+         */
+        long elapsed = 0;
+
+        /**
+         * The sorted step latencies of the last attempt, see HeadlessBatchRunner.getStepLatencies.
+         */
+        long[] latencies = new long[0];
+
+        /**
+         * True if the job has completed.
+         */
+        boolean done = false;
+
+        /**
+         * Why the job was given up, or null.
+         */
+        String error = null;
+
+        /**
+         * Creates a job.
+         *
+         * @param name the name of the job.
+         * @param scenario the scenario file.
+         * @param duration the simulated time.
+         * @param seed the random seed or -1 to keep the one of the scenario.
+         */
+        public Job(String name, String scenario, Duration duration, long seed) {
+            this.name = name;
+            this.scenario = scenario;
+            this.duration = duration;
+            this.seed = seed;
+        }
+
+        /**
+         * Returns the name of the job.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns true if the job has completed.
+         */
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * Returns why the job was given up, or null.
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * Returns a step latency percentile of the last attempt in milliseconds.
+         *
+         * @param p the percentile, between 0 and 100.
+         */
+        long getLatency(int p) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            return latencies[Math.min(latencies.length - 1,
+                                      latencies.length * p / 100)];
+        }
+    }
+
+    /**
+     * The jobs in manifest order.
+     */
+    Vector<Job> jobs = new Vector<Job>();
+
+    /**
+     * The jobs waiting to be run.
+     */
+    LinkedList<Job> pending = new LinkedList<Job>();
+
+    /**
+     * The number of jobs being run.
+     */
+    int running = 0;
+
+    /**
+     * The dispatcher to lease servers from, or null to use the servers.
+     */
+    ApproxsimDispatcher dispatcher;
+
+    /**
+     * The servers, as host[:port], not in use by a worker when there is no dispatcher. A server that fails is not returned.
+     */
+    Vector<String> servers = new Vector<String>();
+
+    /**
+     * The directory written to.
+     */
+    File outputDir;
+
+    /**
+     * The number of jobs run at once.
+     */
+    int concurrency;
+
+    /**
+     * The number of times a job is run before it is given up.
+     */
+    int maxAttempts = DEFAULT_ATTEMPTS;
+
+    /**
+     * The number of messages in flight per session.
+     */
+    int window = HeadlessBatchRunner.DEFAULT_WINDOW;
+
+    /**
+     * The time in milliseconds without progress after which a server is considered to have failed.
+     */
+    long stallTimeout = DEFAULT_STALL_TIMEOUT;
+
+    /**
+     * The wall clock time of the last run in milliseconds.
+     */
+    long elapsed = 0;
+
+    /**
+     * Creates an orchestrator leasing its servers from a dispatcher.
+     *
+     * @param dispatcher the dispatcher.
+     * @param concurrency the number of servers to lease.
+     * @param outputDir the directory to write to.
+     */
+    public BatchOrchestrator(ApproxsimDispatcher dispatcher, int concurrency,
+            File outputDir) {
+        this.dispatcher = dispatcher;
+        this.concurrency = concurrency;
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * Creates an orchestrator using a fixed list of servers, one job per server at a time. A server listed twice runs two jobs at a time.
+     *
+     * @param servers the servers as host[:port].
+     * @param outputDir the directory to write to.
+     */
+    public BatchOrchestrator(String[] servers, File outputDir) {
+        this.dispatcher = null;
+        this.servers.addAll(Arrays.asList(servers));
+        this.concurrency = servers.length;
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * Sets the number of times a job is run before it is given up.
+     *
+     * @param maxAttempts the number of attempts, at least 1.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    /**
+     * Sets the number of messages in flight per session, see ServerConnection.setWindow.
+     *
+     * @param window the window size, at least 1.
+     */
+    public void setWindow(int window) {
+        this.window = window;
+    }
+
+    /**
+     * Sets the time without progress after which a server is considered to have failed, see HeadlessBatchRunner.setStallTimeout.
+     *
+     * @param stallTimeout the time in milliseconds, or 0 to wait forever.
+     */
+    public void setStallTimeout(long stallTimeout) {
+        this.stallTimeout = stallTimeout;
+    }
+
+    /**
+     * Adds a job.
+     *
+     * @param job the job.
+     */
+    public void addJob(Job job) {
+        jobs.add(job);
+    }
+
+    /**
+     * Returns the jobs in the order they were added.
+     */
+    public Vector<Job> getJobs() {
+        return jobs;
+    }
+
+    /**
+     * Adds the jobs of a manifest.
+     *
+     * @param manifest the manifest file.
+     * @throws IOException if the manifest can't be read or a line can't be parsed.
+     */
+    public void readManifest(File manifest) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(manifest));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                if (parts.length < 3 || parts.length > 4) {
+                    throw new IOException(manifest + ":" + lineNumber
+                            + ": expected name scenario duration [seed]");
+                }
+                File scenario = new File(parts[1]);
+                if (!scenario.isAbsolute()) {
+                    scenario = new File(manifest.getAbsoluteFile()
+                            .getParentFile(), parts[1]);
+                }
+                try {
+                    addJob(new Job(parts[0], scenario.getPath(),
+                            Duration.parseDuration(parts[2]),
+                            parts.length > 3 ? Long.parseLong(parts[3]) : -1));
+                } catch (ParseException e) {
+                    throw new IOException(manifest + ":" + lineNumber
+                            + ": unable to parse \"" + parts[2]
+                            + "\" as a duration");
+                } catch (NumberFormatException e) {
+                    throw new IOException(manifest + ":" + lineNumber
+                            + ": unable to parse \"" + parts[3]
+                            + "\" as a seed");
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Runs all the jobs and writes summary.csv. Returns when every job has either completed or been given up.
+     *
+     * @return the number of jobs that completed.
+     */
+    public int run() throws IOException {
+        long start = System.currentTimeMillis();
+        outputDir.mkdirs();
+        synchronized (this) {
+            pending.addAll(jobs);
+        }
+
+        // Lease the first servers in one round trip.
+        Vector sockets = new Vector();
+        if (dispatcher != null) {
+            sockets = dispatcher.allocateServers(concurrency, 10);
+        }
+        Thread[] workers = new Thread[Math.min(concurrency, jobs.size())];
+        for (int i = 0; i < workers.length; i++) {
+            final ApproxsimSocket socket = (i < sockets.size() ? (ApproxsimSocket) sockets
+                    .get(i) : null);
+            workers[i] = new Thread(getClass().getName() + "Worker" + i) {
+                public void run() {
+                    work(socket);
+                }
+            };
+            workers[i].start();
+        }
+        for (int i = workers.length; i < sockets.size(); i++) {
+            ((ApproxsimSocket) sockets.get(i)).close();
+        }
+        for (int i = 0; i < workers.length; i++) {
+            try {
+                workers[i].join();
+            } catch (InterruptedException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+
+        int completed = 0;
+        for (int i = 0; i < jobs.size(); i++) {
+            Job job = jobs.get(i);
+            if (job.done) {
+                completed++;
+            } else if (job.error == null) {
+                job.error = "No server available";
+            }
+        }
+        elapsed = System.currentTimeMillis() - start;
+        writeSummary(new File(outputDir, "summary.csv"));
+        return completed;
+    }
+
+    /**
+     * Runs jobs until there are none left or no server can be had.
+     *
+     * @param socket the active socket to the first server or null to allocate one.
+     */
+    void work(ApproxsimSocket socket) {
+        ServerConnection sc = null;
+        boolean used = false;
+        Job job;
+        while ((job = nextJob()) != null) {
+            boolean retry = false;
+            try {
+                HeadlessBatchRunner runner = new HeadlessBatchRunner(
+                        load(job));
+                runner.setWindow(window);
+                runner.setStallTimeout(stallTimeout);
+                if (sc == null) {
+                    sc = (socket != null ? runner.connect(socket)
+                            : connect(runner));
+                    socket = null;
+                    used = false;
+                    if (sc == null) {
+                        // Leave the job to the other workers.
+                        finishJob(job, true);
+                        return;
+                    }
+                }
+                job.attempts++;
+                job.server = sc.getAddress();
+                boolean resetting = used;
+                try {
+                    if (used) {
+                        sc.blockingSend(new ResetMessage());
+                    }
+                    resetting = false;
+                    used = true;
+                    run(runner, sc, job);
+                } catch (ServerException e) {
+                    Debug.err.println("Job " + job.name + " failed on "
+                            + job.server + ": " + e.getMessage());
+                    if (resetting || runner.isStalled() || !sc.isAlive()) {
+                        // The server failed or could not be reset, try another
+                        // one.
+                        abandon(sc);
+                        sc = null;
+                        retry = job.attempts < maxAttempts;
+                    }
+                    if (!retry) {
+                        // An error reply fails the job, the server is reset
+                        // before the next one.
+                        job.error = e.getMessage();
+                    }
+                }
+            } catch (IOException e) {
+                // Running the job again would not help.
+                job.error = e.getMessage();
+            }
+            finishJob(job, retry);
+        }
+        if (sc != null) {
+            HeadlessBatchRunner.disconnect(sc);
+            release(sc);
+        } else if (socket != null) {
+            socket.close();
+        }
+    }
+
+    /**
+     * Loads the simulation of a job and sets its seed.
+     *
+     * @param job the job.
+     */
+    ApproxsimObject load(Job job) throws IOException {
+        ApproxsimObject sim = HeadlessBatchRunner.loadSimulation(job.scenario);
+        if (job.seed >= 0) {
+            ApproxsimObject seed = sim.getChild("randomSeed");
+            if (seed == null) {
+                seed = ApproxsimObjectFactory.defaultCreate(sim.getType()
+                        .getSubElement("randomSeed"));
+                sim.add(seed);
+            }
+            ((ApproxsimInteger) seed).setValue(job.seed);
+        }
+        return sim;
+    }
+
+    /**
+     * Runs a job on a connection and records the outcome.
+     *
+     * @param runner the runner of the job.
+     * @param sc the connection.
+     * @param job the job.
+     */
+    void run(HeadlessBatchRunner runner, ServerConnection sc, Job job)
+            throws ServerException, IOException {
+        ColumnarPVWriter writer = new ColumnarPVWriter(new FileOutputStream(
+                new File(outputDir, job.name + ".pvc")));
+        try {
+            job.steps = runner.run(sc, writer,
+                                   runner.getStepCount(job.duration));
+            job.done = true;
+        } finally {
+            job.elapsed = runner.getElapsed();
+            job.latencies = runner.getStepLatencies();
+            Arrays.sort(job.latencies);
+            writer.close();
+        }
+    }
+
+    /**
+     * Connects to a new server, or returns null if none can be had.
+     *
+     * @param runner the runner that will use the connection.
+     */
+    ServerConnection connect(HeadlessBatchRunner runner) {
+        if (dispatcher != null) {
+            ApproxsimSocket socket = dispatcher.allocateServer(10);
+            return (socket == null ? null : runner.connect(socket));
+        }
+        String server;
+        synchronized (this) {
+            if (servers.isEmpty()) {
+                return null;
+            }
+            server = servers.remove(0);
+        }
+        return runner.connect(server);
+    }
+
+    /**
+     * Returns the server of a connection from the list after its worker is done with it.
+     *
+     * @param sc the connection.
+     */
+    synchronized void release(ServerConnection sc) {
+        if (dispatcher == null) {
+            servers.add(sc.getAddress());
+        }
+    }
+
+    /**
+     * Drops the connection to a server that has failed, without waiting for it to answer. A server from the list is not used again and one
+     * from the dispatcher is left to it.
+     *
+     * @param sc the connection.
+     */
+    void abandon(ServerConnection sc) {
+        sc.getSubscriptionHandler().kill();
+        sc.getXMLHandler().kill();
+        sc.kill();
+        sc.socket().close();
+    }
+
+    /**
+     * Returns the next job to run, waiting while jobs that may have to be run again are running. Returns null when there are no more jobs.
+     */
+    synchronized Job nextJob() {
+        while (pending.isEmpty() && running > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                return null;
+            }
+        }
+        if (pending.isEmpty()) {
+            return null;
+        }
+        running++;
+        return pending.removeFirst();
+    }
+
+    /**
+     * Marks a job as no longer running.
+     *
+     * @param job the job.
+     * @param retry true if the job should be run again.
+     */
+    synchronized void finishJob(Job job, boolean retry) {
+        running--;
+        if (retry) {
+            pending.addLast(job);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Writes a line per job with its outcome, throughput and step latencies.
+     *
+     * @param file the file to write to.
+     */
+    void writeSummary(File file) throws IOException {
+        String d = ";";
+        Writer out = new OutputStreamWriter(new FileOutputStream(file));
+        try {
+            out.write("job;scenario;seed;status;attempts;server;steps;wall ms;"
+                    + "steps/s;p50 ms;p95 ms;max ms\n");
+            for (int i = 0; i < jobs.size(); i++) {
+                Job job = jobs.get(i);
+                StringBuffer b = new StringBuffer();
+                b.append(job.name).append(d).append(job.scenario).append(d)
+                        .append(job.seed < 0 ? "" : Long.toString(job.seed))
+                        .append(d)
+                        .append(job.done ? "ok" : "failed: " + job.error)
+                        .append(d).append(job.attempts).append(d)
+                        .append(job.server == null ? "" : job.server)
+                        .append(d).append(job.steps).append(d)
+                        .append(job.elapsed).append(d)
+                        .append(job.steps * 1000L / Math.max(1, job.elapsed))
+                        .append(d).append(job.getLatency(50)).append(d)
+                        .append(job.getLatency(95)).append(d)
+                        .append(job.getLatency(100)).append('\n');
+                out.write(b.toString());
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns a one line summary of the last run.
+     */
+    public String getStatistics() {
+        int completed = 0;
+        int attempts = 0;
+        long steps = 0;
+        for (int i = 0; i < jobs.size(); i++) {
+            Job job = jobs.get(i);
+            completed += (job.done ? 1 : 0);
+            attempts += job.attempts;
+            steps += (job.done ? job.steps : 0);
+        }
+        return "jobs: " + jobs.size() + ", completed: " + completed
+                + ", attempts: " + attempts + ", steps: " + steps
+                + ", wall: " + elapsed + " ms, steps/s: "
+                + (steps * 1000L / Math.max(1, elapsed));
+    }
+
+    /**
+     * Runs the jobs of a manifest.
+     *
+     * @param args manifest outdir servers [attempts], where servers is "dispatcher=n" to lease n servers, by default 4, from the dispatcher
+     *            given by the DISPATCHER property, or a comma separated list of host[:port].
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 3 || args.length > 4) {
+            System.err.println("Usage: " + BatchOrchestrator.class.getName()
+                    + " manifest outdir dispatcher[=n]|host[:port],... [attempts]");
+            System.exit(1);
+        }
+        int status = 0;
+        try {
+            BatchOrchestrator orchestrator;
+            File outputDir = new File(args[1]);
+            if (args[2].matches("dispatcher(=.*)?")) {
+                ApproxsimDispatcher dispatcher = ApproxsimDispatcher
+                        .getDefaultDispatcher();
+                if (dispatcher == null) {
+                    throw new IOException("The DISPATCHER property is not set");
+                }
+                String[] parts = args[2].split("=");
+                orchestrator = new BatchOrchestrator(dispatcher,
+                        parts.length > 1 ? Integer.parseInt(parts[1]) : 4,
+                        outputDir);
+            } else {
+                orchestrator = new BatchOrchestrator(args[2].split(","),
+                        outputDir);
+            }
+            if (args.length > 3) {
+                orchestrator.setMaxAttempts(Integer.parseInt(args[3]));
+            }
+            orchestrator.readManifest(new File(args[0]));
+            int completed = orchestrator.run();
+            System.err.println(orchestrator.getStatistics());
+            if (completed < orchestrator.getJobs().size()) {
+                status = 2;
+            }
+        } catch (NumberFormatException e) {
+            System.err.println(e.getMessage());
+            status = 1;
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            status = 1;
+        }
+        // The connection threads are not daemons.
+        System.exit(status);
+    }
+}
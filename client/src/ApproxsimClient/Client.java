@@ -143,7 +143,7 @@ public class Client implements ApproxsimEventListener {
     /**
      * Handles subscription to and export of pv to file for a certain region.
      */
-    StreamPVExporter mPVExporter = null;
+    PVExporter mPVExporter = null;
     /**
      * Handles xml messages.
      */
@@ -184,6 +184,10 @@ public class Client implements ApproxsimEventListener {
      * The the stream to which batchmode outputs the data.
      */
     private OutputStreamWriter batchModeOutputWriter = null;
+    /**
+     * The writer to which batchmode outputs the data when the outfile is a columnar pv file (*.pvc), otherwise null.
+     */
+    private ColumnarPVWriter batchModePVWriter = null;
     /**
      * The duration of batchmode.
      */
@@ -308,8 +312,24 @@ public class Client implements ApproxsimEventListener {
                 String[] parts = parameters[0].split("[=,]");
                 if (parts.length == 5) {
                     try {
-                        batchModeOutputWriter = new OutputStreamWriter(
-                                new FileOutputStream(parts[3]));
+                        if (parts[4].endsWith(".pvc")) {
+                            final ColumnarPVWriter writer = new ColumnarPVWriter(
+                                    new FileOutputStream(parts[4]));
+                            // Batch runs end with System.exit.
+                            Runtime.getRuntime().addShutdownHook(new Thread() {
+                                public void run() {
+                                    try {
+                                        writer.close();
+                                    } catch (IOException e) {
+                                        System.err.println(e.getMessage());
+                                    }
+                                }
+                            });
+                            batchModePVWriter = writer;
+                        } else {
+                            batchModeOutputWriter = new OutputStreamWriter(
+                                    new FileOutputStream(parts[4]));
+                        }
                         batchModeDuration = Duration.parseDuration(parts[2]);
                     } catch (ParseException e) {
                         System.err.println("Unable to parse \"" + parts[2]
@@ -805,9 +825,8 @@ public class Client implements ApproxsimEventListener {
             }
             getController().connectToServer();
             if (runBatch) {
-                mPVExporter = new StreamPVExporter(batchModeOutputWriter,
-                        getSubscriptionHandler(), (Shape) simulation
-                                .getChild("scenario").getChild("map"));
+                mPVExporter = createPVExporter((Shape) simulation
+                        .getChild("scenario").getChild("map"));
                 getController().getControllerPanel().doStart();
             }
         } else {
@@ -887,13 +906,33 @@ public class Client implements ApproxsimEventListener {
             Shape map = (Shape) ((ApproxsimObject) (this.getRootObject()
                     .children().nextElement())).getChild("scenario")
                     .getChild("map");
-            mPVExporter = new StreamPVExporter(batchModeOutputWriter,
-                    getSubscriptionHandler(), map);
+            mPVExporter = createPVExporter(map);
         }
         // set initial pv and faction
         Visualizer.setInitialView();
     }
 
+    /**
+     * Creates a PVExporter for the map writing to the batch mode output, which is columnar if a columnar pv file was given on the command
+     * line and text otherwise.
+     * 
+     * @param map the map to export the pv's of.
+     * @return the exporter or null if it couldn't be created.
+     */
+    private PVExporter createPVExporter(Shape map) {
+        if (batchModePVWriter == null) {
+            return new StreamPVExporter(batchModeOutputWriter,
+                    getSubscriptionHandler(), map);
+        }
+        try {
+            return new ColumnarPVExporter(batchModePVWriter,
+                    getSubscriptionHandler(), new Shape[] { map });
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Registers a subscription to a region.
      * 
@@ -1614,6 +1653,7 @@ public class Client implements ApproxsimEventListener {
                                                   "No map to export PV's for");
         } else {
             batchModeOutputWriter = writer;
+            batchModePVWriter = null;
             mPVExporter = new StreamPVExporter(batchModeOutputWriter,
                     getSubscriptionHandler(),
                     (Shape) ((ApproxsimObject) getRootObject().children()
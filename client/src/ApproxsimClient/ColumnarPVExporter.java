@@ -0,0 +1,120 @@
+/*
+ * @(#)ColumnarPVExporter.java
+ */
+
+package ApproxsimClient;
+
+import java.io.IOException;
+
+import ApproxsimClient.communication.MultiRegionData;
+import ApproxsimClient.communication.ServerException;
+import ApproxsimClient.communication.Subscription;
+import ApproxsimClient.communication.SubscriptionHandler;
+import ApproxsimClient.communication.Unsubscription;
+import ApproxsimClient.object.ApproxsimEvent;
+import ApproxsimClient.object.ApproxsimEventListener;
+import ApproxsimClient.object.Shape;
+
+/**
+ * Subscribes to the aggregates of all process variables in a number of regions with a single subscription and appends them to a
+ * ColumnarPVWriter. Unlike StreamPVExporter, the values are never boxed or formatted as text.
+ *
+ * @version 1
+ */
+public class ColumnarPVExporter implements PVExporter, ApproxsimEventListener {
+    /**
+     * The writer to which the data is written.
+     */
+    ColumnarPVWriter writer;
+
+    /**
+     * The data of the subscribed regions.
+     */
+    MultiRegionData regionData;
+
+    Subscription mSubscription;
+    SubscriptionHandler mSH;
+
+    /**
+     * Creates a new ColumnarPVExporter for the specified shapes.
+     *
+     * @param writer the writer to append to.
+     * @param handler the subscription handler to subscribe with.
+     * @param regions the shapes to get the aggregates for.
+     */
+    public ColumnarPVExporter(ColumnarPVWriter writer,
+            SubscriptionHandler handler, Shape[] regions) throws IOException {
+        init(writer, handler, regions);
+        mSH.regSubscription(mSubscription);
+    }
+
+    /**
+     * Creates a new ColumnarPVExporter for the specified shapes and waits until the server has confirmed the subscription, so that the
+     * following steps are exported.
+     *
+     * @param writer the writer to append to.
+     * @param handler the subscription handler to subscribe with.
+     * @param regions the shapes to get the aggregates for.
+     * @param blocking true if the constructor should wait for the confirmation.
+     * @throws ServerException if the subscription couldn't be registered.
+     */
+    public ColumnarPVExporter(ColumnarPVWriter writer,
+            SubscriptionHandler handler, Shape[] regions, boolean blocking)
+            throws IOException, ServerException {
+        init(writer, handler, regions);
+        if (blocking) {
+            mSH.blockingRegSubscription(mSubscription);
+        } else {
+            mSH.regSubscription(mSubscription);
+        }
+    }
+
+    /**
+     * Sets up the subscription without registering it.
+     *
+     * @param writer the writer to append to.
+     * @param handler the subscription handler to subscribe with.
+     * @param regions the shapes to get the aggregates for.
+     */
+    private void init(ColumnarPVWriter writer, SubscriptionHandler handler,
+            Shape[] regions) throws IOException {
+        this.writer = writer;
+        this.mSH = handler;
+        String[] names = new String[regions.length];
+        for (int i = 0; i < regions.length; i++) {
+            names[i] = regions[i].getReference().toTaclanV2();
+        }
+        writer.setRegions(names);
+        regionData = new MultiRegionData(regions);
+        regionData.addListener(this);
+        mSubscription = regionData.createSubscription();
+    }
+
+    /**
+     * Unsubscribes to the subscription held by this object and flushes the writer.
+     */
+    public void kill() {
+        regionData.removeListener(this);
+        mSH.regSubscription(new Unsubscription(mSubscription));
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Method called when new data is availiable
+     *
+     * @param event the event.
+     */
+    public void eventOccured(ApproxsimEvent event) {
+        if (event.getSource() == regionData) {
+            try {
+                writer.write(regionData.getSnapshot());
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+    }
+}
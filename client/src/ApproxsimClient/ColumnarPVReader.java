@@ -0,0 +1,283 @@
+/*
+ * @(#)ColumnarPVReader.java
+ */
+
+package ApproxsimClient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+import ApproxsimClient.object.primitive.Timestamp;
+
+/**
+ * Reads files written by ColumnarPVWriter one chunk at a time. Run main to convert a file to the text format of StreamPVExporter.
+ *
+ * @version 1
+ */
+public class ColumnarPVReader {
+    /**
+     * The stream read from.
+     */
+    DataInputStream in;
+
+    /**
+     * The names of the regions of the current schema.
+     */
+    String[] regions = new String[0];
+
+    /**
+     * The process variables of the current schema.
+     */
+    String[] pvs = new String[0];
+
+    /**
+     * The factions of the current schema.
+     */
+    String[] factions = new String[0];
+
+    /**
+     * The process variable of each column of the current schema.
+     */
+    int[] columnPV = new int[0];
+
+    /**
+     * The faction of each column of the current schema.
+     */
+    int[] columnFaction = new int[0];
+
+    /**
+     * The simulation time of each row of the current chunk, in milliseconds.
+     */
+    long[] times = new long[0];
+
+    /**
+     * The values of the current chunk, column by column, row by row and region by region.
+     */
+    double[] values = new double[0];
+
+    /**
+     * Creates a reader and reads the start of the file.
+     *
+     * @param in the stream to read from.
+     * @throws IOException if the stream can't be read or isn't a columnar pv file.
+     */
+    public ColumnarPVReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in, 65536));
+        if (this.in.readInt() != ColumnarPVWriter.MAGIC) {
+            throw new IOException("Not a columnar pv file");
+        }
+    }
+
+    /**
+     * Reads the next chunk, and the schemas preceding it.
+     *
+     * @return false if the end of the file has been reached.
+     */
+    public boolean nextChunk() throws IOException {
+        while (true) {
+            int tag = in.read();
+            if (tag == -1) {
+                times = new long[0];
+                return false;
+            } else if (tag == ColumnarPVWriter.SCHEMA) {
+                readSchema();
+            } else if (tag == ColumnarPVWriter.CHUNK) {
+                readChunk();
+                return true;
+            } else {
+                throw new IOException("Unknown block " + tag);
+            }
+        }
+    }
+
+    /**
+     * Reads a schema block.
+     */
+    void readSchema() throws IOException {
+        regions = readStrings();
+        pvs = readStrings();
+        factions = readStrings();
+        int columns = in.readInt();
+        columnPV = new int[columns];
+        columnFaction = new int[columns];
+        for (int i = 0; i < columns; i++) {
+            columnPV[i] = in.readInt();
+            columnFaction[i] = in.readInt();
+        }
+    }
+
+    /**
+     * Reads a count followed by that many strings.
+     */
+    String[] readStrings() throws IOException {
+        String[] ret = new String[in.readInt()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = in.readUTF();
+        }
+        return ret;
+    }
+
+    /**
+     * Reads a chunk block.
+     */
+    void readChunk() throws IOException {
+        int rows = in.readInt();
+        times = new long[rows];
+        for (int r = 0; r < rows; r++) {
+            times[r] = in.readLong();
+        }
+        byte[] raw = new byte[columnPV.length * rows * regions.length * 8];
+        try {
+            in.readFully(raw);
+        } catch (EOFException e) {
+            throw new IOException("Truncated chunk");
+        }
+        values = new double[raw.length / 8];
+        ByteBuffer.wrap(raw).asDoubleBuffer().get(values);
+    }
+
+    /**
+     * Returns the names of the regions.
+     */
+    public String[] getRegions() {
+        return regions;
+    }
+
+    /**
+     * Returns the names of the process variables.
+     */
+    public String[] getProcessVariables() {
+        return pvs;
+    }
+
+    /**
+     * Returns the names of the factions.
+     */
+    public String[] getFactions() {
+        return factions;
+    }
+
+    /**
+     * Returns the number of columns.
+     */
+    public int getColumnCount() {
+        return columnPV.length;
+    }
+
+    /**
+     * Returns the name of the process variable of a column.
+     *
+     * @param column the column.
+     */
+    public String getColumnPV(int column) {
+        return pvs[columnPV[column]];
+    }
+
+    /**
+     * Returns the name of the faction of a column.
+     *
+     * @param column the column.
+     */
+    public String getColumnFaction(int column) {
+        return factions[columnFaction[column]];
+    }
+
+    /**
+     * Returns the number of rows of the current chunk.
+     */
+    public int getRowCount() {
+        return times.length;
+    }
+
+    /**
+     * Returns the simulation time of a row of the current chunk in milliseconds.
+     *
+     * @param row the row.
+     */
+    public long getTime(int row) {
+        return times[row];
+    }
+
+    /**
+     * Returns a value of the current chunk.
+     *
+     * @param column the column.
+     * @param row the row.
+     * @param region the region.
+     */
+    public double getValue(int column, int row, int region) {
+        return values[(column * times.length + row) * regions.length
+                + region];
+    }
+
+    /**
+     * Closes the stream.
+     */
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Converts a columnar pv file to the text format of StreamPVExporter, with one line per row, region, process variable and faction.
+     *
+     * @param in the columnar pv file.
+     * @param out where to write the lines.
+     */
+    public static void toCSV(InputStream in, Writer out) throws IOException {
+        String delimiter = ";";
+        ColumnarPVReader reader = new ColumnarPVReader(in);
+        StringBuffer b = new StringBuffer();
+        while (reader.nextChunk()) {
+            for (int row = 0; row < reader.getRowCount(); row++) {
+                String time = new Timestamp(reader.getTime(row)).toString();
+                for (int region = 0; region < reader.getRegions().length; region++) {
+                    for (int c = 0; c < reader.getColumnCount(); c++) {
+                        b.setLength(0);
+                        b.append(time).append(delimiter)
+                                .append(reader.getRegions()[region])
+                                .append(delimiter)
+                                .append(reader.getColumnPV(c))
+                                .append(delimiter)
+                                .append(reader.getColumnFaction(c))
+                                .append(delimiter)
+                                .append(reader.getValue(c, row, region))
+                                .append('\n');
+                        out.write(b.toString());
+                    }
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Converts a columnar pv file to text.
+     *
+     * @param args infile [outfile], where the text is written to standard out if there is no outfile.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: " + ColumnarPVReader.class.getName()
+                    + " infile [outfile]");
+            System.exit(1);
+        }
+        InputStream in = new FileInputStream(args[0]);
+        Writer out = new BufferedWriter(new OutputStreamWriter(
+                args.length > 1 ? new FileOutputStream(args[1]) : System.out));
+        try {
+            toCSV(in, out);
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * @(#)ColumnarPVWriter.java
+ */
+
+package ApproxsimClient;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.List;
+import java.util.Vector;
+
+import ApproxsimClient.communication.RegionPVSnapshot;
+
+/**
+ * Writes the process variables of many regions to a binary, append-only, columnar file. The file starts with the 32 bit integer MAGIC and
+ * is followed by blocks:
+ * <p>
+ * A schema block, 'S', holds the number and names of the regions, of the process variables and of the factions, followed by the number of
+ * columns and for each column the index of its process variable and faction. A schema block is written before the first chunk and
+ * whenever the regions or the process variables change.
+ * <p>
+ * A chunk block, 'C', holds the number of rows, the simulation time of each row in milliseconds and then the values column by column,
+ * within a column row by row and within a row region by region. A chunk is written every chunkRows rows and when flushed.
+ * <p>
+ * Integers and doubles are in network byte order and strings are written with DataOutput.writeUTF. Rows are kept as the snapshots they
+ * arrive in until their chunk is written, so nothing is copied before it is written. See ColumnarPVReader for reading the files.
+ *
+ * @version 1
+ */
+public class ColumnarPVWriter {
+    /**
+     * The first four octets of a file, "PVC1".
+     */
+    public static final int MAGIC = 0x50564331;
+
+    /**
+     * The tag of a schema block.
+     */
+    static final byte SCHEMA = 'S';
+
+    /**
+     * The tag of a chunk block.
+     */
+    static final byte CHUNK = 'C';
+
+    /**
+     * The default number of rows per chunk.
+     */
+    public static final int DEFAULT_CHUNK_ROWS = 64;
+
+    /**
+     * The stream written to.
+     */
+    DataOutputStream out;
+
+    /**
+     * The number of rows per chunk.
+     */
+    int chunkRows;
+
+    /**
+     * The names of the regions or null if not set.
+     */
+    String[] regions = null;
+
+    /**
+     * The process variables of the current schema or null if no schema has been written.
+     */
+    List<String> pvs = null;
+
+    /**
+     * The factions of the current schema.
+     */
+    List<String> factions = null;
+
+    /**
+     * The process variable of each column of the current schema.
+     */
+    int[] columnPV;
+
+    /**
+     * The faction of each column of the current schema.
+     */
+    int[] columnFaction;
+
+    /**
+     * The rows of the current chunk.
+     */
+    Vector<RegionPVSnapshot> pending = new Vector<RegionPVSnapshot>();
+
+    /**
+     * Buffer for the values of one row of a column.
+     */
+    ByteBuffer row = ByteBuffer.allocate(0);
+
+    /**
+     * True if the writer has been closed.
+     */
+    boolean closed = false;
+
+    /**
+     * Creates a writer that writes chunks of DEFAULT_CHUNK_ROWS rows.
+     *
+     * @param out the stream to write to.
+     */
+    public ColumnarPVWriter(OutputStream out) throws IOException {
+        this(out, DEFAULT_CHUNK_ROWS);
+    }
+
+    /**
+     * Creates a writer.
+     *
+     * @param out the stream to write to.
+     * @param chunkRows the number of rows per chunk.
+     */
+    public ColumnarPVWriter(OutputStream out, int chunkRows)
+            throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 65536));
+        this.chunkRows = Math.max(1, chunkRows);
+        this.out.writeInt(MAGIC);
+    }
+
+    /**
+     * Sets the names of the regions of the following rows. A new schema is written before the next row.
+     *
+     * @param regions the names of the regions, in the order of the snapshots.
+     */
+    public synchronized void setRegions(String[] regions) throws IOException {
+        flushChunk();
+        this.regions = (String[]) regions.clone();
+        this.pvs = null;
+    }
+
+    /**
+     * Appends a row.
+     *
+     * @param snapshot the values of the row.
+     */
+    public synchronized void write(RegionPVSnapshot snapshot)
+            throws IOException {
+        if (closed) {
+            throw new IOException("Writer is closed");
+        }
+        if (regions == null || snapshot.getRegionCount() != regions.length) {
+            throw new IllegalArgumentException("Expected "
+                    + (regions == null ? 0 : regions.length)
+                    + " regions but got " + snapshot.getRegionCount());
+        }
+        // The lists are shared between the snapshots of a MultiRegionData
+        // until the process variables change.
+        if (snapshot.getProcessVariables() != pvs
+                || snapshot.getFactions() != factions) {
+            flushChunk();
+            writeSchema(snapshot);
+        }
+        pending.add(snapshot);
+        if (pending.size() >= chunkRows) {
+            flushChunk();
+        }
+    }
+
+    /**
+     * Writes a schema block for the regions and the process variables of a snapshot.
+     *
+     * @param snapshot the snapshot.
+     */
+    void writeSchema(RegionPVSnapshot snapshot) throws IOException {
+        pvs = snapshot.getProcessVariables();
+        factions = snapshot.getFactions();
+        int columns = 0;
+        for (int p = 0; p < pvs.size(); p++) {
+            for (int f = 0; f < factions.size(); f++) {
+                if (snapshot.hasValue(p, f)) {
+                    columns++;
+                }
+            }
+        }
+        columnPV = new int[columns];
+        columnFaction = new int[columns];
+        int c = 0;
+        for (int p = 0; p < pvs.size(); p++) {
+            for (int f = 0; f < factions.size(); f++) {
+                if (snapshot.hasValue(p, f)) {
+                    columnPV[c] = p;
+                    columnFaction[c] = f;
+                    c++;
+                }
+            }
+        }
+
+        out.writeByte(SCHEMA);
+        out.writeInt(regions.length);
+        for (int i = 0; i < regions.length; i++) {
+            out.writeUTF(regions[i]);
+        }
+        out.writeInt(pvs.size());
+        for (int i = 0; i < pvs.size(); i++) {
+            out.writeUTF(pvs.get(i));
+        }
+        out.writeInt(factions.size());
+        for (int i = 0; i < factions.size(); i++) {
+            out.writeUTF(factions.get(i));
+        }
+        out.writeInt(columns);
+        for (int i = 0; i < columns; i++) {
+            out.writeInt(columnPV[i]);
+            out.writeInt(columnFaction[i]);
+        }
+    }
+
+    /**
+     * Writes the pending rows as a chunk.
+     */
+    void flushChunk() throws IOException {
+        int rows = pending.size();
+        if (rows == 0) {
+            return;
+        }
+        out.writeByte(CHUNK);
+        out.writeInt(rows);
+        for (int r = 0; r < rows; r++) {
+            out.writeLong(pending.get(r).getTimestamp().getMilliSecs());
+        }
+        int bytes = regions.length * 8;
+        if (row.capacity() < bytes) {
+            row = ByteBuffer.allocate(bytes);
+        }
+        for (int c = 0; c < columnPV.length; c++) {
+            for (int r = 0; r < rows; r++) {
+                DoubleBuffer values = pending.get(r).getColumn(columnPV[c],
+                                                               columnFaction[c]);
+                row.clear();
+                row.asDoubleBuffer().put(values);
+                out.write(row.array(), 0, bytes);
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * Writes the pending rows and flushes the stream.
+     */
+    public synchronized void flush() throws IOException {
+        if (!closed) {
+            flushChunk();
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes the pending rows and closes the stream.
+     */
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            flush();
+            closed = true;
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,473 @@
+/*
+ * @(#)HeadlessBatchRunner.java
+ */
+
+package ApproxsimClient;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Enumeration;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.xml.sax.SAXException;
+
+import ApproxsimClient.communication.ApproxsimMessageEvent;
+import ApproxsimClient.communication.ApproxsimSocket;
+import ApproxsimClient.communication.DefaultApproxsimMessageListener;
+import ApproxsimClient.communication.DisconnectMessage;
+import ApproxsimClient.communication.InitializationMessage;
+import ApproxsimClient.communication.ServerConnection;
+import ApproxsimClient.communication.ServerException;
+import ApproxsimClient.communication.StepMessage;
+import ApproxsimClient.communication.SubscriptionCounter;
+import ApproxsimClient.communication.SubscriptionHandler;
+import ApproxsimClient.communication.XMLHandler;
+import ApproxsimClient.dispatcher.ApproxsimDispatcher;
+import ApproxsimClient.object.ApproxsimDuration;
+import ApproxsimClient.object.ApproxsimObject;
+import ApproxsimClient.object.ApproxsimObjectFactory;
+import ApproxsimClient.object.Shape;
+import ApproxsimClient.object.primitive.Duration;
+import ApproxsimClient.object.type.TypeFactory;
+
+/**
+ * Runs a simulation in batch mode without a user interface. The scenario is loaded, the server initialized, the steps for the requested
+ * duration are pipelined to the server and the process variables of the map are written to a ColumnarPVWriter. Unlike the -batch mode of
+ * Client, no frame, timeline, visualizer or AWT toolkit is created and no JOGL library is loaded, so it runs without a display and starts
+ * in a fraction of the time.
+ *
+ * @version 1
+ */
+public class HeadlessBatchRunner {
+    /**
+     * The default port of the server.
+     */
+    public static final int DEFAULT_PORT = 28444;
+
+    /**
+     * The default number of messages in flight.
+     */
+    public static final int DEFAULT_WINDOW = 8;
+
+    /**
+     * The simulation to run.
+     */
+    ApproxsimObject simulation;
+
+    /**
+     * The regions whose process variables are exported.
+     */
+    Shape[] regions;
+
+    /**
+     * The number of messages that may be in flight at once.
+     */
+    int window = DEFAULT_WINDOW;
+
+    /**
+     * The encoding to request, or null to let the server decide.
+     */
+    String encoding = null;
+
+    /**
+     * The number of steps that have been handled by the last run.
+     */
+    int stepsHandled = 0;
+
+    /**
+     * Set if a step of the last run failed.
+     */
+    boolean stepFailed = false;
+
+    /**
+     * The wall clock time of the last run in milliseconds.
+     */
+    long elapsed = 0;
+
+    /**
+     * The time in milliseconds from when each step of the last run was queued until it had been handled.
+     */
+    long[] latencies = new long[0];
+
+    /**
+     * The time in milliseconds without progress after which a run is abandoned, or 0 to wait forever.
+     */
+    long stallTimeout = 0;
+
+    /**
+     * The time of the last progress of the current run.
+     */
+    volatile long lastProgress = 0;
+
+    /**
+     * Set if the current run was abandoned because it made no progress.
+     */
+    volatile boolean stalled = false;
+
+    /**
+     * Creates a runner for a simulation that exports the process variables of its map.
+     *
+     * @param simulation the simulation, which must have a parent, see loadSimulation.
+     */
+    public HeadlessBatchRunner(ApproxsimObject simulation) {
+        // The progress bar would load Swing and start a timer per message.
+        SubscriptionCounter.setEnabled(false);
+        this.simulation = simulation;
+        this.regions = new Shape[] { (Shape) simulation.getChild("scenario")
+                .getChild("map") };
+    }
+
+    /**
+     * Loads the first simulation of a scenario file and adds it to a new root list, as the client does. Synchronized since XMLImporter
+     * shares one parser.
+     *
+     * @param filename the name of the scenario file.
+     * @return the simulation.
+     * @throws IOException if the file can't be read or doesn't contain a simulation.
+     */
+    public static synchronized ApproxsimObject loadSimulation(
+            String filename) throws IOException {
+        ApproxsimObject root;
+        try {
+            root = XMLImporter.saxParseFromFile(filename);
+        } catch (ExceptionCollection e) {
+            StringBuffer b = new StringBuffer("Unable to parse " + filename);
+            for (Enumeration<SAXException> en = e.getExceptions().elements(); en
+                    .hasMoreElements();) {
+                b.append('\n').append(en.nextElement().getMessage());
+            }
+            throw new IOException(b.toString());
+        }
+        ApproxsimObject list = root == null ? null : root
+                .getChild("identifiables");
+        ApproxsimObject sim = (list == null || list.getChildCount() == 0) ? null
+                : (ApproxsimObject) list.children().nextElement();
+        if (sim == null || !sim.getType().canSubstitute("Simulation")) {
+            throw new IOException("No simulation found in " + filename);
+        }
+        sim.remove();
+        ApproxsimObjectFactory.createList(TypeFactory.getType("Root")
+                .getSubElement("identifiables")).add(sim);
+        return sim;
+    }
+
+    /**
+     * Sets the regions whose process variables are exported. The default is the map of the scenario.
+     *
+     * @param regions the regions.
+     */
+    public void setRegions(Shape[] regions) {
+        this.regions = (Shape[]) regions.clone();
+    }
+
+    /**
+     * Sets the number of messages that may be in flight at once, see ServerConnection.setWindow.
+     *
+     * @param window the window size, at least 1.
+     */
+    public void setWindow(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window < 1");
+        }
+        this.window = window;
+    }
+
+    /**
+     * Sets the encoding to request, see ServerConnection.setRequestedEncoding.
+     *
+     * @param encoding the encoding or null to let the server decide.
+     */
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * Sets the time without progress after which a run is abandoned by closing the connection, so that a hung server fails the run like a
+     * lost one.
+     *
+     * @param stallTimeout the time in milliseconds, or 0 to wait forever.
+     */
+    public void setStallTimeout(long stallTimeout) {
+        this.stallTimeout = stallTimeout;
+    }
+
+    /**
+     * Returns the number of steps needed to simulate a duration with the time step of the simulation.
+     *
+     * @param duration the simulated time.
+     */
+    public int getStepCount(Duration duration) {
+        long dt = ((ApproxsimDuration) simulation.getChild("timeStepper")
+                .getChild("dt")).getValue().getMilliSecs();
+        return (int) ((duration.getMilliSecs() + dt - 1) / dt);
+    }
+
+    /**
+     * Returns true if the last run was abandoned because it made no progress, see setStallTimeout.
+     */
+    public boolean isStalled() {
+        return stalled;
+    }
+
+    /**
+     * Returns the wall clock time of the last run in milliseconds.
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Returns the time in milliseconds from when each handled step of the last run was queued until it had been handled. With more than one
+     * step in flight this includes the time spent waiting for the steps before it.
+     */
+    public long[] getStepLatencies() {
+        long[] ret = new long[stepsHandled];
+        System.arraycopy(latencies, 0, ret, 0, ret.length);
+        return ret;
+    }
+
+    /**
+     * Connects to a server given as host[:port].
+     *
+     * @param server the server.
+     * @return the started connection.
+     */
+    public ServerConnection connect(String server) {
+        String host = server;
+        int port = DEFAULT_PORT;
+        int colon = server.lastIndexOf(':');
+        if (colon > 0) {
+            host = server.substring(0, colon);
+            port = Integer.parseInt(server.substring(colon + 1));
+        }
+        XMLHandler xh = new XMLHandler();
+        SubscriptionHandler sh = new SubscriptionHandler();
+        ServerConnection sc = new ServerConnection(null, xh, host, port);
+        sc.setRequestedEncoding(encoding);
+        sc.setWindow(window);
+        sh.connect(sc);
+        xh.start();
+        sh.start();
+        sc.start();
+        return sc;
+    }
+
+    /**
+     * Connects to a server allocated from a dispatcher.
+     *
+     * @param socket the active socket to the server.
+     * @return the started connection.
+     */
+    public ServerConnection connect(ApproxsimSocket socket) {
+        ServerConnection sc = new ServerConnection(socket);
+        sc.setWindow(window);
+        sc.start();
+        sc.getXMLHandler().start();
+        new SubscriptionHandler(sc).start();
+        return sc;
+    }
+
+    /**
+     * Initializes the server, subscribes to the regions and runs the requested number of steps. At most a few windows of steps are queued at
+     * once so that the connection is kept busy without queueing the whole run. Returns when all the steps have been handled.
+     *
+     * @param sc the connection, see connect.
+     * @param writer the writer to export to. It is flushed but not closed.
+     * @param steps the number of steps.
+     * @return the number of steps that were handled.
+     * @throws ServerException if the server couldn't be initialized, a step failed or the run stalled, see setStallTimeout.
+     */
+    public int run(final ServerConnection sc, ColumnarPVWriter writer,
+            int steps) throws ServerException, IOException {
+        long start = System.currentTimeMillis();
+        lastProgress = start;
+        stalled = false;
+        Timer watchdog = null;
+        if (stallTimeout > 0) {
+            watchdog = new Timer(true);
+            watchdog.schedule(new TimerTask() {
+                public void run() {
+                    if (System.currentTimeMillis() - lastProgress > stallTimeout) {
+                        stalled = true;
+                        cancel();
+                        // Fails everything waiting for the server.
+                        sc.socket().close();
+                    }
+                }
+            }, stallTimeout / 4 + 1, stallTimeout / 4 + 1);
+        }
+        ColumnarPVExporter exporter = null;
+        try {
+            sc.blockingSend(new InitializationMessage(simulation));
+            lastProgress = System.currentTimeMillis();
+            exporter = new ColumnarPVExporter(writer,
+                    sc.getSubscriptionHandler(), regions, true);
+            runSteps(sc, steps);
+        } catch (ServerException e) {
+            throw stalled ? new ServerException("No progress for "
+                    + stallTimeout + " ms") : e;
+        } finally {
+            if (watchdog != null) {
+                watchdog.cancel();
+            }
+            // Also after a failed run, since the connection may be kept
+            // for the next job.
+            if (exporter != null) {
+                exporter.kill();
+            }
+            elapsed = System.currentTimeMillis() - start;
+        }
+        writer.flush();
+        return stepsHandled;
+    }
+
+    /**
+     * Queues the steps, a few windows at a time, and waits until they have been handled.
+     *
+     * @param sc the connection.
+     * @param steps the number of steps.
+     * @throws ServerException if a step failed.
+     */
+    void runSteps(ServerConnection sc, int steps) throws ServerException {
+        final Object lock = new Object();
+        final long[] queued = new long[steps];
+        latencies = new long[steps];
+        DefaultApproxsimMessageListener listener = new DefaultApproxsimMessageListener() {
+            public void messageHandled(ApproxsimMessageEvent e, Object reply) {
+                synchronized (lock) {
+                    // The responses arrive in the order the steps were sent.
+                    lastProgress = System.currentTimeMillis();
+                    latencies[stepsHandled] = lastProgress
+                            - queued[stepsHandled];
+                    stepsHandled++;
+                    lock.notifyAll();
+                }
+            }
+
+            public void errorOccurred(ApproxsimMessageEvent e) {
+                synchronized (lock) {
+                    stepFailed = true;
+                    lock.notifyAll();
+                }
+            }
+        };
+        int maxQueued = 4 * sc.getWindow();
+        synchronized (lock) {
+            stepsHandled = 0;
+            stepFailed = false;
+            try {
+                for (int sent = 0; sent < steps && !stepFailed; sent++) {
+                    while (sent - stepsHandled >= maxQueued && !stepFailed) {
+                        lock.wait();
+                    }
+                    StepMessage msg = new StepMessage(1, false);
+                    msg.addEventListener(listener);
+                    queued[sent] = System.currentTimeMillis();
+                    sc.send(msg);
+                }
+                // Wait for the last step, or for the ones in flight when a
+                // step failed.
+                while (stepsHandled < steps && !stepFailed) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                throw new ServerException(e.getMessage());
+            }
+        }
+        if (stepFailed) {
+            throw new ServerException("Step " + (stepsHandled + 1)
+                    + " failed");
+        }
+    }
+
+    /**
+     * Disconnects from the server and stops the handlers of the connection.
+     *
+     * @param sc the connection.
+     */
+    public static void disconnect(ServerConnection sc) {
+        XMLHandler xh = sc.getXMLHandler();
+        SubscriptionHandler sh = sc.getSubscriptionHandler();
+        try {
+            sc.blockingSend(new DisconnectMessage());
+        } catch (ServerException e) {
+            System.err.println(e.getMessage());
+        }
+        sh.kill();
+        xh.kill();
+        sc.kill();
+    }
+
+    /**
+     * Runs a scenario headless.
+     *
+     * @param args scenario server duration outfile [window [encoding]], where server is host[:port] or "dispatcher" to allocate one from the
+     *            dispatcher given by the DISPATCHER property and outfile is a columnar pv file.
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 4 || args.length > 6) {
+            System.err.println("Usage: " + HeadlessBatchRunner.class.getName()
+                    + " scenario server duration outfile [window [encoding]]");
+            System.exit(1);
+        }
+        int status = 0;
+        try {
+            Duration duration = Duration.parseDuration(args[2]);
+            HeadlessBatchRunner runner = new HeadlessBatchRunner(
+                    loadSimulation(args[0]));
+            if (args.length > 4) {
+                runner.setWindow(Integer.parseInt(args[4]));
+            }
+            if (args.length > 5) {
+                runner.setEncoding(args[5]);
+            }
+
+            ServerConnection sc;
+            if (args[1].equals("dispatcher")) {
+                ApproxsimDispatcher dispatcher = ApproxsimDispatcher
+                        .getDefaultDispatcher();
+                ApproxsimSocket socket = dispatcher == null ? null
+                        : dispatcher.allocateServer(10);
+                if (socket == null) {
+                    throw new ServerException(
+                            "Unable to allocate server from dispatcher");
+                }
+                sc = runner.connect(socket);
+            } else {
+                sc = runner.connect(args[1]);
+            }
+
+            ColumnarPVWriter writer = new ColumnarPVWriter(
+                    new FileOutputStream(args[3]));
+            try {
+                int steps = runner.run(sc, writer,
+                                       runner.getStepCount(duration));
+                System.err.println("Ran " + steps + " steps in "
+                        + runner.getElapsed() + " ms ("
+                        + (steps * 1000L / Math.max(1, runner.getElapsed()))
+                        + " steps/s)");
+            } finally {
+                writer.close();
+                disconnect(sc);
+            }
+        } catch (ParseException e) {
+            System.err.println("Unable to parse \"" + args[2]
+                    + "\" as a duration");
+            status = 1;
+        } catch (NumberFormatException e) {
+            System.err.println(e.getMessage());
+            status = 1;
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            status = 1;
+        } catch (ServerException e) {
+            System.err.println(e.getMessage());
+            status = 2;
+        }
+        // The connection threads are not daemons.
+        System.exit(status);
+    }
+}
@@ -0,0 +1,516 @@
+package ApproxsimClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.xerces.impl.dv.util.Base64;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+import ApproxsimClient.communication.*;
+import ApproxsimClient.object.primitive.Timestamp;
+
+/**
+ * A stand-in for the approxsim server that runs in the same process as the client. It knows just enough of the protocol to connect,
+ * subscribe to layers, step and disconnect, and it produces synthetic layer values where a tenth of the cells change each step. It supports
+ * both the xml and the binary encoding (see BinaryCodec) and delta layer subscriptions over xml so that they can be compared without a real
+ * server. Run main for a benchmark of the encodings. It is a test fixture, the approxsim server itself always answers with xml.
+ *
+ * @version 1
+ */
+public class LoopbackServer implements Runnable {
+    /** The length of one timestep in milliseconds. */
+    private static final long sTimestep = 3600 * 1000;
+
+    /** The socket accepting connections. */
+    private ServerSocket mServerSocket;
+
+    /** The number of values in each layer. */
+    private int mCells;
+
+    /**
+     * Creates a server listening on the specified port.
+     *
+     * @param port The port to listen on or 0 for any free port.
+     * @param cells The number of values in each layer.
+     */
+    public LoopbackServer(int port, int cells) throws IOException {
+        mServerSocket = new ServerSocket(port);
+        mCells = cells;
+    }
+
+    /**
+     * Returns the port this server is listening on.
+     */
+    public int getPort() {
+        return mServerSocket.getLocalPort();
+    }
+
+    /** Creates a thread that accepts connections. */
+    public void start() {
+        Thread t = new Thread(this, getClass().getName());
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Stops accepting connections. */
+    public void close() {
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {}
+    }
+
+    /**
+     * Accepts connections and starts a session for each of them.
+     */
+    public void run() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                Socket s = mServerSocket.accept();
+                s.setTcpNoDelay(true);
+                Thread t = new Thread(new Session(new ApproxsimSocket(s)),
+                        getClass().getName() + "Session");
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                if (!mServerSocket.isClosed()) {
+                    System.err.println(e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * One client connection.
+     */
+    private class Session implements Runnable {
+        /** The socket to the client. */
+        private ApproxsimSocket mSocket;
+
+        /** Maps the id of each layer subscription to the values of the layer. */
+        private Map<Integer, double[]> mLayers = new TreeMap<Integer, double[]>();
+
+        /** Maps the id of each multi region subscription to its number of regions. */
+        private Map<Integer, Integer> mRegions = new TreeMap<Integer, Integer>();
+
+        /** Maps the id of each delta layer subscription to the values of the last frame sent. */
+        private Map<Integer, double[]> mPrevious = new HashMap<Integer, double[]>();
+
+        /** Maps the id of each delta layer subscription to the number of the last frame sent. */
+        private Map<Integer, Long> mFrames = new HashMap<Integer, Long>();
+
+        /** True if the binary encoding has been agreed on. */
+        private boolean mBinary = false;
+
+        /** The current simulation time. */
+        private long mTime = 0;
+
+        /** Parser for incomming xml. */
+        private DocumentBuilder mBuilder;
+
+        /**
+         * Creates a session for the provided socket.
+         *
+         * @param socket The socket to the client.
+         */
+        Session(ApproxsimSocket socket) {
+            mSocket = socket;
+        }
+
+        /**
+         * Receives messages and responds to them until the client disconnects.
+         */
+        public void run() {
+            try {
+                DocumentBuilderFactory factory = DocumentBuilderFactory
+                        .newInstance();
+                factory.setNamespaceAware(true);
+                mBuilder = factory.newDocumentBuilder();
+                boolean done = false;
+                while (!done) {
+                    byte[] data = mSocket.recvMessageBytes();
+                    if (BinaryCodec.isBinary(data)) {
+                        if (BinaryCodec.getType(data) == BinaryCodec.STEP) {
+                            step(BinaryCodec.readInt(data, 5));
+                        } else {
+                            mSocket.sendMessage(statusXML("Unknown"));
+                        }
+                    } else {
+                        done = handleXML(data);
+                    }
+                }
+            } catch (IOException e) {
+                // Client went away.
+            } catch (SAXException e) {
+                System.err.println(e.getMessage());
+            } catch (ParserConfigurationException e) {
+                System.err.println(e.getMessage());
+            }
+            mSocket.close();
+        }
+
+        /**
+         * Handles an xml message.
+         *
+         * @param data The contents of the message.
+         * @return true if the client has disconnected.
+         */
+        private boolean handleXML(byte[] data) throws IOException,
+                SAXException {
+            Element root = mBuilder.parse(new ByteArrayInputStream(data))
+                    .getDocumentElement();
+            String type = XMLHandler.removeNamespace(root
+                    .getAttributeNS(ApproxsimConstants.xmlnsNamespace, "type"));
+            if (type.equals("ConnectMessage")) {
+                Element enc = XMLHandler.getFirstChildByTag(root, "encoding");
+                mBinary = enc != null
+                        && BinaryCodec.BINARY.equals(XMLHandler.getString(enc)
+                                .trim());
+                StringBuffer b = open("ConnectResponseMessage");
+                b.append("<active>true</active>");
+                if (mBinary) {
+                    b.append("<encoding>").append(BinaryCodec.BINARY)
+                            .append("</encoding>");
+                }
+                mSocket.sendMessage(close(b));
+            } else if (type.equals("SubscriptionMessage")) {
+                for (Node n = root.getFirstChild(); n != null; n = n
+                        .getNextSibling()) {
+                    if (n instanceof Element) {
+                        Element sub = (Element) n;
+                        Integer id = new Integer(sub.getAttribute("id"));
+                        String subType = XMLHandler.removeNamespace(sub
+                                .getAttributeNS(ApproxsimConstants.xmlnsNamespace,
+                                                "type"));
+                        mPrevious.remove(id);
+                        mFrames.remove(id);
+                        if (subType.equals("LayerSubscription")) {
+                            // Registering again replaces the subscription but
+                            // not the layer.
+                            if (!mLayers.containsKey(id)) {
+                                mLayers.put(id, new double[mCells]);
+                            }
+                            if (XMLHandler.getFirstChildByTag(sub, "delta") != null
+                                    && XMLHandler.getBoolean(sub, "delta")) {
+                                mFrames.put(id, new Long(0));
+                            }
+                        } else if (subType.equals("MultiRegionSubscription")) {
+                            int regions = 0;
+                            for (Node r = sub.getFirstChild(); r != null; r = r
+                                    .getNextSibling()) {
+                                if (r instanceof Element
+                                        && r.getLocalName().equals("region")) {
+                                    regions++;
+                                }
+                            }
+                            mRegions.put(id, new Integer(regions));
+                        } else if (subType.equals("Unsubscription")) {
+                            mLayers.remove(id);
+                            mRegions.remove(id);
+                        }
+                    }
+                }
+                sendLayers();
+            } else if (type.equals("StepMessage")) {
+                step(XMLHandler.getInt(root, "numberOfTimesteps"));
+            } else if (type.equals("DisconnectMessage")) {
+                mSocket.sendMessage(statusXML(type));
+                return true;
+            } else {
+                mSocket.sendMessage(statusXML(type));
+            }
+            return false;
+        }
+
+        /**
+         * Advances the simulation and sends the subscribed layers.
+         *
+         * @param steps The number of timesteps.
+         */
+        private void step(int steps) throws IOException {
+            for (int s = 0; s < steps; s++) {
+                mTime += sTimestep;
+                long step = mTime / sTimestep;
+                for (Iterator<double[]> it = mLayers.values().iterator(); it
+                        .hasNext();) {
+                    double[] values = it.next();
+                    for (int i = (int) (step % 10); i < values.length; i += 10) {
+                        values[i] = Math.sin(step + i * 0.001) * 100;
+                    }
+                }
+            }
+            sendLayers();
+        }
+
+        /**
+         * Sends an UpdateClientMessage containing all subscribed layers in the agreed encoding.
+         */
+        private void sendLayers() throws IOException {
+            if (mBinary) {
+                int[] ids = new int[mLayers.size()];
+                double[][] layers = new double[mLayers.size()][];
+                int i = 0;
+                for (Iterator<Map.Entry<Integer, double[]>> it = mLayers
+                        .entrySet().iterator(); it.hasNext(); i++) {
+                    Map.Entry<Integer, double[]> e = it.next();
+                    ids[i] = e.getKey().intValue();
+                    layers[i] = e.getValue();
+                }
+                String xml = null;
+                if (!mRegions.isEmpty()) {
+                    StringBuffer b = open("UpdateClientMessage");
+                    b.append("<simulationTime><value>")
+                            .append(new Timestamp(mTime).toDateTimeString())
+                            .append("</value></simulationTime>");
+                    xml = close(appendRegions(b));
+                }
+                mSocket.sendMessage(BinaryCodec
+                        .encodeData(BinaryCodec.UPDATE_CLIENT, mTime, ids,
+                                    layers, xml));
+                return;
+            }
+
+            StringBuffer b = open("UpdateClientMessage");
+            b.append("<simulationTime><value>")
+                    .append(new Timestamp(mTime).toDateTimeString())
+                    .append("</value></simulationTime>");
+            appendRegions(b);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(mCells * 8);
+            for (Iterator<Map.Entry<Integer, double[]>> it = mLayers.entrySet()
+                    .iterator(); it.hasNext();) {
+                Map.Entry<Integer, double[]> e = it.next();
+                Integer id = e.getKey();
+                double[] values = e.getValue();
+                Long frame = mFrames.get(id);
+                if (frame != null && appendDelta(b, id, values, bos)) {
+                    continue;
+                }
+                bos.reset();
+                DataOutputStream out = new DataOutputStream(bos);
+                for (int i = 0; i < values.length; i++) {
+                    out.writeDouble(values[i]);
+                }
+                out.flush();
+                b.append("<subscribedData xsi:type=\"sp:SubscribedLayerData\" id=\"")
+                        .append(id).append("\"><layerData>")
+                        .append(Base64.encode(bos.toByteArray()))
+                        .append("</layerData>");
+                if (frame != null) {
+                    frame = new Long(frame.longValue() + 1);
+                    mFrames.put(id, frame);
+                    mPrevious.put(id, values.clone());
+                    b.append("<frame>").append(frame).append("</frame>");
+                }
+                b.append("</subscribedData>");
+            }
+            mSocket.sendMessage(close(b));
+        }
+
+        /**
+         * Appends the data of the multi region subscriptions. There are two synthetic process variables, one of which has a value for the
+         * faction Blue in addition to all factions, and the values depend on the column, the region and the time.
+         *
+         * @param b The message to append to.
+         * @return b.
+         */
+        private StringBuffer appendRegions(StringBuffer b) throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            for (Iterator<Map.Entry<Integer, Integer>> it = mRegions
+                    .entrySet().iterator(); it.hasNext();) {
+                Map.Entry<Integer, Integer> e = it.next();
+                int regions = e.getValue().intValue();
+                b.append("<subscribedData xsi:type=\"sp:SubscribedMultiRegionData\" id=\"")
+                        .append(e.getKey()).append("\">");
+                b.append("<key><name>Loopback</name></key>");
+                b.append("<key><name>Loopback</name><faction><name>Blue</name></faction></key>");
+                b.append("<key><name>LoopbackTotal</name></key>");
+                bos.reset();
+                DataOutputStream out = new DataOutputStream(bos);
+                for (int c = 0; c < 3; c++) {
+                    for (int r = 0; r < regions; r++) {
+                        out.writeDouble(regionValue(c, r));
+                    }
+                }
+                out.flush();
+                b.append("<values>").append(Base64.encode(bos.toByteArray()))
+                        .append("</values></subscribedData>");
+            }
+            return b;
+        }
+
+        /**
+         * Returns the synthetic value of a column of multi region data for a region at the current time.
+         *
+         * @param column The column.
+         * @param region The region.
+         */
+        private double regionValue(int column, int region) {
+            return column * 1000000 + region * 1000 + mTime / sTimestep;
+        }
+
+        /**
+         * Appends the values of a delta subscription that changed since its last frame, like the server does. Nothing is appended if no
+         * value has changed.
+         *
+         * @param b The message to append to.
+         * @param id The id of the subscription.
+         * @param values The current values of the layer.
+         * @param bos A buffer to encode in.
+         * @return false if there is no previous frame or the changes are larger than a full frame, and nothing was appended.
+         */
+        private boolean appendDelta(StringBuffer b, Integer id,
+                double[] values, ByteArrayOutputStream bos) throws IOException {
+            double[] previous = mPrevious.get(id);
+            if (previous == null) {
+                return false;
+            }
+            int changed = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (Double.doubleToRawLongBits(values[i]) != Double
+                        .doubleToRawLongBits(previous[i])) {
+                    changed++;
+                }
+            }
+            if (changed * 12 >= values.length * 8) {
+                return false;
+            }
+            if (changed == 0) {
+                return true;
+            }
+            bos.reset();
+            DataOutputStream out = new DataOutputStream(bos);
+            for (int i = 0; i < values.length; i++) {
+                if (Double.doubleToRawLongBits(values[i]) != Double
+                        .doubleToRawLongBits(previous[i])) {
+                    out.writeInt(i);
+                }
+            }
+            out.flush();
+            String index = Base64.encode(bos.toByteArray());
+            bos.reset();
+            out = new DataOutputStream(bos);
+            for (int i = 0; i < values.length; i++) {
+                if (Double.doubleToRawLongBits(values[i]) != Double
+                        .doubleToRawLongBits(previous[i])) {
+                    out.writeDouble(values[i]);
+                    previous[i] = values[i];
+                }
+            }
+            out.flush();
+            long frame = mFrames.get(id).longValue();
+            mFrames.put(id, new Long(frame + 1));
+            b.append("<subscribedData xsi:type=\"sp:SubscribedLayerDelta\" id=\"")
+                    .append(id).append("\"><base>").append(frame)
+                    .append("</base><frame>").append(frame + 1)
+                    .append("</frame><index>").append(index)
+                    .append("</index><layerData>")
+                    .append(Base64.encode(bos.toByteArray()))
+                    .append("</layerData></subscribedData>");
+            return true;
+        }
+
+        /**
+         * Creates a StatusMessage without errors.
+         *
+         * @param type The type of the message the status refers to.
+         */
+        private String statusXML(String type) {
+            StringBuffer b = open("StatusMessage");
+            b.append("<type>").append(type).append("</type>");
+            return close(b);
+        }
+
+        /**
+         * Starts a message of the specified type.
+         *
+         * @param type The message type.
+         */
+        private StringBuffer open(String type) {
+            StringBuffer b = new StringBuffer();
+            b.append("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>");
+            b.append("<sp:approxsimMessage xmlns:sp=\"")
+                    .append(ApproxsimConstants.approxsimNamespace);
+            b.append("\" xmlns:xsi=\"")
+                    .append(ApproxsimConstants.xmlnsNamespace).append("\" ");
+            b.append("xsi:type=\"sp:").append(type).append("\">");
+            return b;
+        }
+
+        /**
+         * Ends a message started by open.
+         *
+         * @param b The message.
+         */
+        private String close(StringBuffer b) {
+            return b.append("</sp:approxsimMessage>").toString();
+        }
+    }
+
+    /**
+     * Runs the same number of steps over the xml and the binary encoding and prints the time per step for each.
+     *
+     * @param args [cells [layers [steps [window]]]], where window is the number of messages in flight (see ServerConnection.setWindow).
+     */
+    public static void main(String[] args) throws Exception {
+        int cells = (args.length > 0 ? Integer.parseInt(args[0]) : 10000);
+        int layers = (args.length > 1 ? Integer.parseInt(args[1]) : 20);
+        int steps = (args.length > 2 ? Integer.parseInt(args[2]) : 100);
+        int window = (args.length > 3 ? Integer.parseInt(args[3]) : 1);
+
+        LoopbackServer server = new LoopbackServer(0, cells);
+        server.start();
+        String[] encodings = { BinaryCodec.XML, BinaryCodec.BINARY,
+                BinaryCodec.XML };
+        boolean[] deltas = { false, false, true };
+        for (int e = 0; e < encodings.length; e++) {
+            XMLHandler xh = new XMLHandler();
+            SubscriptionHandler sh = new SubscriptionHandler();
+            ServerConnection sc = new ServerConnection(null, xh, "localhost",
+                    server.getPort());
+            sc.setRequestedEncoding(encodings[e]);
+            sc.setWindow(window);
+            sh.connect(sc);
+            xh.start();
+            sh.start();
+            sc.start();
+
+            ProcessVariableDescription pvd = new ProcessVariableDescription(
+                    "Loopback", "Loopback", false, -100, 100);
+            for (int i = 0; i < layers; i++) {
+                sh.blockingRegSubscription(new LayerSubscription(new LayerData(
+                        pvd, null, new double[cells]), deltas[e]));
+            }
+
+            // Warm up before measuring.
+            for (int i = 0; i < steps / 10; i++) {
+                sc.blockingSend(new StepMessage(1, false));
+            }
+            long start = System.nanoTime();
+            for (int i = 1; i < steps; i++) {
+                // Only pipelined if the window allows it.
+                sc.send(new StepMessage(1, false));
+            }
+            sc.blockingSend(new StepMessage(1, false));
+            long elapsed = System.nanoTime() - start;
+            System.out.println((sc.isBinary() ? BinaryCodec.BINARY
+                    : BinaryCodec.XML) + (deltas[e] ? " delta" : "") + ": " + cells + " cells x " + layers + " layers, window " + window + ", "
+                    + (elapsed / 1000000.0 / steps) + " ms/step");
+
+            sc.disconnect();
+            sh.kill();
+            xh.kill();
+        }
+        server.close();
+        System.exit(0);
+    }
+}
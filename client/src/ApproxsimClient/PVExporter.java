@@ -0,0 +1,17 @@
+/*
+ * @(#)PVExporter.java
+ */
+
+package ApproxsimClient;
+
+/**
+ * Common interface of the objects that subscribe to process variables and export them while the simulation runs.
+ *
+ * @version 1
+ */
+public interface PVExporter {
+    /**
+     * Unsubscribes and stops exporting. The destination of the export is not closed.
+     */
+    public void kill();
+}
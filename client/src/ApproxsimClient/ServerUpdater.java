@@ -4,7 +4,7 @@ import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.Vector;
 import ApproxsimClient.communication.ServerConnection;
-import ApproxsimClient.communication.TSQueue;
+import ApproxsimClient.communication.CoalescingQueue;
 import ApproxsimClient.communication.UpdateMessage;
 import ApproxsimClient.communication.Update;
 import ApproxsimClient.object.type.Declaration;
@@ -164,15 +164,19 @@ public class ServerUpdater implements ApproxsimEventListener {
  */
 class UpdateHandler implements Runnable {
     /**
-     * The time to wait after receiving a update before sending an updatemessage.
+     * The maximum time to wait after receiving a update before sending an updatemessage.
      */
     private static final long sDelayms = 100;
 
+    /** Maximum number of updates per message. */
+    private static final int sMaxNumUpdatesPerMsg = 400;
+
     /** Set to true if we should quit. */
     private boolean mQuit = false;
 
-    /** The queue in which incomming updates are stored. */
-    private TSQueue mQueue = new TSQueue();
+    /** The queue in which incomming updates are stored until they are sent in a batch. */
+    private CoalescingQueue mQueue = new CoalescingQueue(sMaxNumUpdatesPerMsg,
+            sDelayms);
 
     /** The ServerConnection to use. */
     private ServerConnection mSC = null;
@@ -220,21 +224,17 @@ class UpdateHandler implements Runnable {
      */
     public void run() {
         while (true) {
-            UpdateMessage msg = new UpdateMessage();
-            Update u = (Update) mQueue.blockingDequeue();
+            Vector batch = mQueue.takeBatch();
             if (mQuit) {
                 break;
             }
-            msg.addUpdate(u);
-            long firstDequeueTime = System.currentTimeMillis();
-            do {
-                u = (Update) mQueue.dequeue();
-                if (mQuit) {
-                    break;
-                } else if (u != null) {
-                    msg.addUpdate(u);
-                }
-            } while (System.currentTimeMillis() - firstDequeueTime < sDelayms);
+            if (batch.isEmpty()) {
+                continue;
+            }
+            UpdateMessage msg = new UpdateMessage();
+            for (int i = 0; i < batch.size(); i++) {
+                msg.addUpdate((Update) batch.get(i));
+            }
             // Send
             if (mSC != null) {
                 // Disconnect if an update failed in order to avoid
@@ -254,5 +254,13 @@ class UpdateHandler implements Runnable {
                 } catch (InterruptedException e) {}
             }
         }
+        Debug.err.println("UpdateHandler: " + getBatchStatistics());
+    }
+
+    /**
+     * Returns a one line summary of the size and latency of the update messages sent so far, see CoalescingQueue.getStatistics.
+     */
+    public String getBatchStatistics() {
+        return mQueue.getStatistics();
     }
 }
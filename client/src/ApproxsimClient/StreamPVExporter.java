@@ -27,7 +27,7 @@ import ApproxsimClient.communication.SubscriptionHandler;
  * @author Daniel Ahlin
  */
 
-public class StreamPVExporter implements ApproxsimEventListener {
+public class StreamPVExporter implements PVExporter, ApproxsimEventListener {
     /**
      * The field delimiter.
      */
@@ -201,6 +201,17 @@ class SOPlaceHolder {
      */
     private Hashtable<String, ApproxsimObject> objects = new Hashtable<String, ApproxsimObject>();
 
+    /**
+     * The identifiers of the lines of a polygon, whose points are read straight into packed coordinates instead of being created as
+     * objects. Null if this is not a placeholder for a polygon.
+     */
+    private Vector<String> curveIdentifiers = null;
+
+    /**
+     * The start and end points of the lines of a polygon packed as {lon1, lat1, lon2, lat2} per line.
+     */
+    private double[] coordinates = null;
+
     /**
      * Creates a placeholder for an object of the specified type.
      * 
@@ -213,6 +224,13 @@ class SOPlaceHolder {
         this.type = type;
         this.parent = parent;
 
+        if (type.getName().equals("Polygon")) {
+            // The schema only allows lines as curves, pack them.
+            curveIdentifiers = new Vector<String>();
+            coordinates = new double[64];
+            return;
+        }
+
         // Create ApproxsimLists for all lists in our Type.
         for (Enumeration en = type.getSubElements().elements(); en
                 .hasMoreElements();) {
@@ -253,6 +271,44 @@ class SOPlaceHolder {
         return type;
     }
 
+    /**
+     * Returns true if this is a placeholder for a polygon whose lines are packed.
+     */
+    public boolean packsCurves() {
+        return curveIdentifiers != null;
+    }
+
+    /**
+     * Adds a line to pack.
+     * 
+     * @param identifier The value of the identifier attribute of the line.
+     */
+    public void addCurve(String identifier) {
+        int n = curveIdentifiers.size();
+        if (4 * n + 4 > coordinates.length) {
+            double[] tmp = new double[2 * coordinates.length];
+            System.arraycopy(coordinates, 0, tmp, 0, 4 * n);
+            coordinates = tmp;
+        }
+        curveIdentifiers.add(identifier);
+    }
+
+    /**
+     * Sets a coordinate of the line last added.
+     * 
+     * @param point 0 for the start point, 1 for the end point.
+     * @param tag lat or lon.
+     * @param value the value of the coordinate.
+     */
+    public void setCurveCoordinate(int point, String tag, double value) {
+        int i = 4 * (curveIdentifiers.size() - 1) + 2 * point;
+        if (tag.equals("lat")) {
+            coordinates[i + 1] = value;
+        } else if (tag.equals("lon")) {
+            coordinates[i] = value;
+        }
+    }
+
     /**
      * Adds a created ApproxsimObject to this placeholder. Notice that in order to be able to put list elements in the correct lists the
      * identifier of the provided ApproxsimObject must be the tag of the dom element it was created from and newIdentifier must contain the
@@ -296,6 +352,13 @@ class SOPlaceHolder {
         } else {
             dec = getParent().getType().getSubElement(tag).clone(getType());
         }
+        if (packsCurves()) {
+            double[] c = new double[4 * curveIdentifiers.size()];
+            System.arraycopy(coordinates, 0, c, 0, c.length);
+            return ApproxsimObjectFactory.createPolygon(dec.getName(),
+                    curveIdentifiers.toArray(new String[curveIdentifiers
+                            .size()]), c);
+        }
         ApproxsimObject so = ApproxsimObjectFactory.vectorCreate(dec)
                 .getApproxsimObject(parts);
         if (so == null) {
@@ -358,6 +421,16 @@ class SAXDocumentHandler extends DefaultHandler implements EntityResolver2 {
      */
     private int refDepth = 0;
 
+    /**
+     * True while parsing a line of a polygon, whose points are packed by the placeholder of the polygon.
+     */
+    private boolean packingCurve = false;
+
+    /**
+     * The point of the packed line currently beeing parsed, 0 for p1 and 1 for p2.
+     */
+    private int packedPoint = 0;
+
     /**
      * The placeholder for the ApproxsimComplex currently beeing constructed.
      */
@@ -557,7 +630,17 @@ class SAXDocumentHandler extends DefaultHandler implements EntityResolver2 {
                 }
             }
 
-            if (type.canSubstitute("Reference",
+            if (packingCurve) {
+                // A point of a packed line.
+                packedPoint = localName.equals("p2") ? 1 : 0;
+            } else if (type.getName().equals("Line")
+                    && currentPlaceHolder != null
+                    && currentPlaceHolder.packsCurves()) {
+                // Lines of polygons are packed by the placeholder
+                // instead of being created.
+                packingCurve = true;
+                currentPlaceHolder.addCurve(currentIdentifier);
+            } else if (type.canSubstitute("Reference",
                                    ApproxsimConstants.approxsimNamespace)) {
                 // Just increase depth. ApproxsimReferences are
                 // created in endElement in order to avoid a
@@ -617,7 +700,10 @@ class SAXDocumentHandler extends DefaultHandler implements EntityResolver2 {
         if (readChars == true) {
             // Here the element we're closing is a anySimpleType descendant.
             Type type = typeStack.peek();
-            if (type.getName().equals("Point")) {
+            if (type.getName().equals("Point") && packingCurve) {
+                currentPlaceHolder.setCurveCoordinate(packedPoint, localName,
+                        Double.parseDouble(new String(chars, 0, currentLength)));
+            } else if (type.getName().equals("Point")) {
                 // Have to give Point special treatment.
                 if (localName.equals("lat")) {
                     ((Point) currentObject)
@@ -649,7 +735,13 @@ class SAXDocumentHandler extends DefaultHandler implements EntityResolver2 {
             currentLength = 0;
         } else {
             Type type = typeStack.pop();
-            if (type.canSubstitute("Reference",
+            if (packingCurve) {
+                // Closing a point or a line of a packed polygon.
+                if (type.getName().equals("Line")) {
+                    packingCurve = false;
+                    currentIdentifier = currentPlaceHolder.getIdentifier();
+                }
+            } else if (type.canSubstitute("Reference",
                                    ApproxsimConstants.approxsimNamespace)) {
                 refDepth--;
                 if (refDepth == 0) {
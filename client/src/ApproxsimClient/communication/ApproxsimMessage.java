@@ -1,5 +1,6 @@
 package ApproxsimClient.communication;
 
+import java.io.UnsupportedEncodingException;
 import java.lang.StringBuffer;
 import javax.swing.event.EventListenerList;
 import ApproxsimClient.ApproxsimConstants;
@@ -11,6 +12,24 @@ import ApproxsimClient.ApproxsimConstants;
  * @author Per Alexius
  */
 public abstract class ApproxsimMessage extends XMLHelper {
+    /** The priority of messages that go before all others, e.g. DisconnectMessage. Lower numbers are sent first. */
+    public static final int TOP_PRIORITY = 0;
+
+    /** The priority of InitializationMessages. */
+    public static final int INIT_PRIORITY = 1;
+
+    /** The priority of SubscriptionMessages. */
+    public static final int SUBSCRIPTION_PRIORITY = 2;
+
+    /** The priority of StepMessages. */
+    public static final int STEP_PRIORITY = 3;
+
+    /** The priority of all other messages. */
+    public static final int DEFAULT_PRIORITY = 4;
+
+    /** The number of priorities, i.e. the number of lanes of the send queue. */
+    public static final int PRIORITIES = 5;
+
     /**
      * The listeners of this object.
      */
@@ -43,6 +62,16 @@ public abstract class ApproxsimMessage extends XMLHelper {
                                            listener);
     }
 
+    /**
+     * Returns the priority with which this message is sent, one of the priority constants of this class. Subclasses override this to return
+     * the priority of their class.
+     * 
+     * @return DEFAULT_PRIORITY.
+     */
+    public int getPriority() {
+        return DEFAULT_PRIORITY;
+    }
+
     /**
      * Returns the tag
      * 
@@ -59,6 +88,19 @@ public abstract class ApproxsimMessage extends XMLHelper {
      * @return The StringBuffer b with an XML representation of this object appended to it.
      */
     public StringBuffer toXML(StringBuffer b) {
+        openXML(b);
+        bodyXML(b);
+        closeXML(b);
+        return b;
+    }
+
+    /**
+     * Creates the XML declaration and start tag of this message.
+     * 
+     * @param b The StringBuffer to write to.
+     * @return The StringBuffer b with the start of the XML representation of this object appended to it.
+     */
+    protected StringBuffer openXML(StringBuffer b) {
 //          b.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
         b.append("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>");
         b.append("<sp:approxsimMessage xmlns:sp=\"")
@@ -66,11 +108,40 @@ public abstract class ApproxsimMessage extends XMLHelper {
         b.append("\" xmlns:xsi=\"").append(ApproxsimConstants.xmlnsNamespace)
                 .append("\" ");
         b.append("xsi:type=\"sp:").append(getTypeAsString()).append("\">");
-        bodyXML(b);
+        return b;
+    }
+
+    /**
+     * Creates the end tag of this message.
+     * 
+     * @param b The StringBuffer to write to.
+     * @return The StringBuffer b with the end of the XML representation of this object appended to it.
+     */
+    protected StringBuffer closeXML(StringBuffer b) {
         b.append("</sp:approxsimMessage>");
         return b;
     }
 
+    /**
+     * Creates the ISO-8859-1 encoded XML representation of this message as parts to be sent back to back. Messages with large contents
+     * that rarely change may override this to reuse parts encoded earlier instead of rebuilding them.
+     * 
+     * @return The parts of the encoded XML representation of this message.
+     */
+    public byte[][] toXMLParts() throws UnsupportedEncodingException {
+        return new byte[][] { toXML().getBytes("ISO-8859-1") };
+    }
+
+    /**
+     * Creates the binary representation of this message as described in BinaryCodec. Only the high rate messages have a binary
+     * representation, all other messages are always sent as xml.
+     * 
+     * @return The binary representation of this message or null if it has none.
+     */
+    public byte[] toBinary() {
+        return null;
+    }
+
     /**
      * Fires an event telling that this message has been sent.
      */
@@ -16,8 +16,8 @@ import java.net.*;
  * @author Per Alexius
  */
 public class ApproxsimSocket {
-    /** The id of the session. */
-    private long mId;
+    /** The id of the session. Volatile since the sending and receiving thread of a pipelined ServerConnection may differ. */
+    private volatile long mId;
     /** The socket. */
     private Socket mSocket;
     /** Stream for writing to the socket. */
@@ -30,6 +30,20 @@ public class ApproxsimSocket {
         mId = -1;
     }
 
+    /**
+     * Wraps an already connected socket, e.g. one returned by ServerSocket.accept().
+     * 
+     * @param socket The connected socket.
+     */
+    public ApproxsimSocket(Socket socket) throws IOException {
+        mId = -1;
+        mSocket = socket;
+        mOut = new DataOutputStream(new BufferedOutputStream(
+                mSocket.getOutputStream()));
+        mIn = new DataInputStream(new BufferedInputStream(
+                mSocket.getInputStream()));
+    }
+
     /**
      * Returns the port of this socket (if connected), else 0.
      */
@@ -114,12 +128,37 @@ public class ApproxsimSocket {
      * @param msg The message to be sent (xml).
      */
     public void sendMessage(String msg) throws IOException {
-        byte[] flk = msg.getBytes("ISO-8859-1");
+        sendMessage(msg.getBytes("ISO-8859-1"));
+    }
+
+    /**
+     * Sends a approxsim message that is already encoded, either as xml or in the binary form described in BinaryCodec.
+     * 
+     * @param msg The contents of the message to be sent.
+     */
+    public void sendMessage(byte[] msg) throws IOException {
+        mOut.writeLong(msg.length);
+        mOut.writeLong(mId);
+        mOut.write(msg, 0, msg.length);
+        mOut.flush();
+    }
 
-        msg.length();
-        mOut.writeLong(flk.length);
+    /**
+     * Sends a approxsim message that is already encoded, given as parts to be sent back to back. The parts are written to the socket as
+     * they are, large parts without being copied.
+     * 
+     * @param parts The parts of the contents of the message to be sent.
+     */
+    public void sendMessage(byte[][] parts) throws IOException {
+        long length = 0;
+        for (int i = 0; i < parts.length; i++) {
+            length += parts[i].length;
+        }
+        mOut.writeLong(length);
         mOut.writeLong(mId);
-        mOut.write(flk, 0, flk.length);
+        for (int i = 0; i < parts.length; i++) {
+            mOut.write(parts[i], 0, parts[i].length);
+        }
         mOut.flush();
     }
 
@@ -129,10 +168,19 @@ public class ApproxsimSocket {
      * @return The message received (xml).
      */
     public String recvMessage() throws IOException {
+        return new String(recvMessageBytes(), "ISO-8859-1");
+    }
+
+    /**
+     * Receives a approxsim message without decoding it. Blocks until a message is received.
+     * 
+     * @return The contents of the message received, either xml or a binary message.
+     */
+    public byte[] recvMessageBytes() throws IOException {
         long length = mIn.readLong();
         mId = mIn.readLong();
         byte[] tmp = new byte[new Long(length).intValue()];
         mIn.readFully(tmp);
-        return new String(tmp, "ISO-8859-1");
+        return tmp;
     }
 }
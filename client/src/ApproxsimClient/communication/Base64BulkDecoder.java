@@ -0,0 +1,136 @@
+package ApproxsimClient.communication;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes complete Base64 encoded payloads, such as the cell positions, active cells and region cells of a GridData or the values of a
+ * LayerData, in one pass from the characters straight into a ByteBuffer. The primitives are then copied out in bulk through a view buffer
+ * instead of one virtual readDouble() or readInt() call per value on a DataInputStream. Whitespace and padding are ignored. The buffers are in
+ * network byte order, like the payloads.
+ *
+ * @version 1
+ */
+public class Base64BulkDecoder {
+    /** Maps a Base64 character to its six bit value or -1 if it isn't part of the alphabet. */
+    private static final byte[] sValues = createValues();
+
+    /** Not instantiable. */
+    private Base64BulkDecoder() {}
+
+    /**
+     * Creates the table mapping characters to six bit values.
+     */
+    private static byte[] createValues() {
+        byte[] ret = new byte[128];
+        java.util.Arrays.fill(ret, (byte) -1);
+        for (int i = 0; i < 26; i++) {
+            ret['A' + i] = (byte) i;
+            ret['a' + i] = (byte) (26 + i);
+        }
+        for (int i = 0; i < 10; i++) {
+            ret['0' + i] = (byte) (52 + i);
+        }
+        ret['+'] = 62;
+        ret['/'] = 63;
+        return ret;
+    }
+
+    /**
+     * Returns the six bit value of a character or -1 if it isn't part of the alphabet.
+     */
+    private static int value(char c) {
+        return (c < 128 ? sValues[c] : -1);
+    }
+
+    /**
+     * Decodes Base64 encoded characters.
+     *
+     * @param s The characters.
+     * @return A big endian buffer wrapping the decoded octets, positioned at the first.
+     */
+    public static ByteBuffer decode(CharSequence s) {
+        int length = s.length();
+        byte[] out = new byte[length / 4 * 3 + 3];
+        int o = 0;
+        int quantum = 0;
+        int chars = 0;
+        int i = 0;
+        while (i < length) {
+            if (chars == 0 && i + 4 <= length) {
+                // A whole quantum at once. Negative if any of the four
+                // characters is whitespace, padding or garbage.
+                int q = (value(s.charAt(i)) << 18)
+                        | (value(s.charAt(i + 1)) << 12)
+                        | (value(s.charAt(i + 2)) << 6) | value(s.charAt(i + 3));
+                if (q >= 0) {
+                    out[o++] = (byte) (q >> 16);
+                    out[o++] = (byte) (q >> 8);
+                    out[o++] = (byte) q;
+                    i += 4;
+                    continue;
+                }
+            }
+            int v = value(s.charAt(i++));
+            if (v < 0) {
+                continue;
+            }
+            quantum = (quantum << 6) | v;
+            if (++chars == 4) {
+                out[o++] = (byte) (quantum >> 16);
+                out[o++] = (byte) (quantum >> 8);
+                out[o++] = (byte) quantum;
+                quantum = 0;
+                chars = 0;
+            }
+        }
+        // The last, padded, quantum.
+        if (chars == 2) {
+            out[o++] = (byte) (quantum >> 4);
+        } else if (chars == 3) {
+            out[o++] = (byte) (quantum >> 10);
+            out[o++] = (byte) (quantum >> 2);
+        }
+        return ByteBuffer.wrap(out, 0, o);
+    }
+
+    /**
+     * Decodes Base64 encoded 64 bit doubles into an array. Doubles beyond the end of the array are counted but not stored.
+     *
+     * @param s The characters.
+     * @param target The array to write the doubles to, starting at index 0.
+     * @return The number of complete doubles decoded.
+     */
+    public static int decodeDoubles(CharSequence s, double[] target) {
+        ByteBuffer buffer = decode(s);
+        int count = buffer.remaining() / 8;
+        buffer.asDoubleBuffer().get(target, 0, Math.min(count, target.length));
+        return count;
+    }
+
+    /**
+     * Decodes Base64 encoded 32 bit integers.
+     *
+     * @param s The characters.
+     * @return The complete integers decoded.
+     */
+    public static int[] decodeInts(CharSequence s) {
+        ByteBuffer buffer = decode(s);
+        int[] ret = new int[buffer.remaining() / 4];
+        buffer.asIntBuffer().get(ret);
+        return ret;
+    }
+
+    /**
+     * Decodes Base64 encoded octets into an array. Octets beyond the end of the array are counted but not stored.
+     *
+     * @param s The characters.
+     * @param target The array to write the octets to, starting at index 0.
+     * @return The number of octets decoded.
+     */
+    public static int decodeBytes(CharSequence s, byte[] target) {
+        ByteBuffer buffer = decode(s);
+        int count = buffer.remaining();
+        buffer.get(target, 0, Math.min(count, target.length));
+        return count;
+    }
+}
@@ -0,0 +1,123 @@
+package ApproxsimClient.communication;
+
+/**
+ * Incremental decoder for Base64 encoded arrays of 64 bit network byte order doubles. Characters may be fed in any number of chunks, e.g. as
+ * they are delivered by the xml parser, and the doubles are written directly into the target array without any intermediate String or byte
+ * array. Whitespace and padding are ignored. Doubles beyond the end of the target array are counted but not stored.
+ *
+ * @version 1
+ */
+public class Base64DoubleDecoder {
+    /** Maps a Base64 character to its six bit value or -1 if it isn't part of the alphabet. */
+    private static final byte[] sValues = createValues();
+
+    /** The array to write doubles to. */
+    private double[] mTarget;
+
+    /** The number of doubles decoded so far. */
+    private int mCount = 0;
+
+    /** Bits of the current quantum of four characters. */
+    private int mQuantum = 0;
+
+    /** Number of characters in the current quantum. */
+    private int mChars = 0;
+
+    /** Bits of the double being assembled. */
+    private long mBits = 0;
+
+    /** Number of octets of the double being assembled. */
+    private int mOctets = 0;
+
+    /**
+     * Creates a decoder writing to the provided array.
+     *
+     * @param target The array to write doubles to, starting at index 0.
+     */
+    public Base64DoubleDecoder(double[] target) {
+        mTarget = target;
+    }
+
+    /**
+     * Creates the table mapping characters to six bit values.
+     */
+    private static byte[] createValues() {
+        byte[] ret = new byte[128];
+        java.util.Arrays.fill(ret, (byte) -1);
+        for (int i = 0; i < 26; i++) {
+            ret['A' + i] = (byte) i;
+            ret['a' + i] = (byte) (26 + i);
+        }
+        for (int i = 0; i < 10; i++) {
+            ret['0' + i] = (byte) (52 + i);
+        }
+        ret['+'] = 62;
+        ret['/'] = 63;
+        return ret;
+    }
+
+    /**
+     * Decodes a chunk of characters.
+     *
+     * @param ch The array holding the characters.
+     * @param offset The index of the first character to decode.
+     * @param length The number of characters to decode.
+     */
+    public void decode(char[] ch, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            char c = ch[i];
+            int v = (c < 128 ? sValues[c] : -1);
+            if (v < 0) {
+                // Whitespace, padding or garbage.
+                continue;
+            }
+            mQuantum = (mQuantum << 6) | v;
+            if (++mChars == 4) {
+                octet(mQuantum >> 16);
+                octet(mQuantum >> 8);
+                octet(mQuantum);
+                mQuantum = 0;
+                mChars = 0;
+            }
+        }
+    }
+
+    /**
+     * Decodes the last, padded, quantum. Must be called after the last chunk.
+     */
+    public void finish() {
+        if (mChars == 2) {
+            octet(mQuantum >> 4);
+        } else if (mChars == 3) {
+            octet(mQuantum >> 10);
+            octet(mQuantum >> 2);
+        }
+        mQuantum = 0;
+        mChars = 0;
+    }
+
+    /**
+     * Returns the number of complete doubles decoded, including those that didn't fit in the target array.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Adds an octet to the double being assembled.
+     *
+     * @param b The octet in the lowest eight bits.
+     */
+    private void octet(int b) {
+        mBits = (mBits << 8) | (b & 0xff);
+        if (++mOctets == 8) {
+            if (mCount < mTarget.length) {
+                mTarget[mCount] = Double.longBitsToDouble(mBits);
+            }
+            mCount++;
+            mBits = 0;
+            mOctets = 0;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package ApproxsimClient.communication;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Encoding and decoding helpers for the binary form of the high rate messages. The binary form is used instead of xml for StepMessage,
+ * SubscribedDataMessage and UpdateClientMessage when both the client and the server have agreed on it in the ConnectMessage and
+ * ConnectResponseMessage. All other messages are always sent as xml. A binary message is sent in the same frame as an xml message (see
+ * ApproxsimSocket) but its contents has the following structure.
+ * <p>
+ * <t> |---magic---|---type---|---body---|
+ * <p>
+ * where 'magic' is the 32 bit network byte order integer MAGIC (which can never be the start of an xml message) and 'type' is one octet
+ * identifying the message. The body of a StepMessage is the number of timesteps as a 32 bit integer followed by the detached flag as one
+ * octet. The body of a SubscribedDataMessage and an UpdateClientMessage is
+ * <p>
+ * <t> |---time---|---nLayers---|---layer 0---| ... |---layer n---|---xmlLength---|---xml---|
+ * <p>
+ * where 'time' is the simulation time in milliseconds as a 64 bit integer, 'nLayers' is the number of layers as a 32 bit integer and each
+ * layer is a 32 bit subscription id, a 32 bit number of values and that number of 64 bit doubles. The remaining subscribed data, e.g. region
+ * data and object updates, is sent as an ordinary xml message of the same type that is 'xmlLength' octets long, or not at all if 'xmlLength'
+ * is zero.
+ * <p>
+ * The approxsim server (server/src) does not implement the binary encoding. It never agrees to it in its ConnectResponseMessage, so it
+ * always answers with xml and the client falls back to xml. Only the in-process stand-in LoopbackServer, which is used for benchmarks,
+ * answers with the binary encoding.
+ *
+ * @version 1
+ */
+public class BinaryCodec {
+    /** The value of the encoding element when xml is used. */
+    public static final String XML = "xml";
+
+    /** The value of the encoding element when the binary encoding is used. */
+    public static final String BINARY = "binary";
+
+    /** The first four octets of every binary message ('SPB1'). */
+    public static final int MAGIC = 0x53504231;
+
+    /** Type octet for StepMessage. */
+    public static final byte STEP = 1;
+
+    /** Type octet for SubscribedDataMessage. */
+    public static final byte SUBSCRIBED_DATA = 2;
+
+    /** Type octet for UpdateClientMessage. */
+    public static final byte UPDATE_CLIENT = 3;
+
+    /** The encoding used when writing the embedded xml. */
+    static final String CHARSET = "ISO-8859-1";
+
+    /** Not to be instantiated. */
+    private BinaryCodec() {}
+
+    /**
+     * Checks if the provided message contents is a binary message.
+     *
+     * @param data The contents of a message.
+     * @return true if data starts with MAGIC, false otherwise.
+     */
+    public static boolean isBinary(byte[] data) {
+        return data.length >= 5 && readInt(data, 0) == MAGIC;
+    }
+
+    /**
+     * Returns the type octet of a binary message.
+     *
+     * @param data The contents of a binary message.
+     * @return The type octet.
+     */
+    public static byte getType(byte[] data) {
+        return data[4];
+    }
+
+    /**
+     * Extracts the encoding element from a ConnectResponseMessage. The message is small and only received once per connection so it is
+     * simply searched rather than parsed.
+     *
+     * @param connectResponse The contents of a ConnectResponseMessage.
+     * @return The value of the encoding element or XML if there is none.
+     */
+    public static String getEncoding(byte[] connectResponse) {
+        String xml;
+        try {
+            xml = new String(connectResponse, CHARSET);
+        } catch (java.io.UnsupportedEncodingException e) {
+            return XML;
+        }
+        int start = xml.indexOf("<encoding>");
+        int end = xml.indexOf("</encoding>");
+        if (start < 0 || end < start) {
+            return XML;
+        }
+        return xml.substring(start + "<encoding>".length(), end).trim();
+    }
+
+    /**
+     * Encodes a StepMessage.
+     *
+     * @param steps The number of timesteps.
+     * @param detached True if the steps should be executed detached.
+     * @return The binary message.
+     */
+    public static byte[] encodeStep(int steps, boolean detached) {
+        byte[] ret = new byte[10];
+        writeInt(ret, 0, MAGIC);
+        ret[4] = STEP;
+        writeInt(ret, 5, steps);
+        ret[9] = (byte) (detached ? 1 : 0);
+        return ret;
+    }
+
+    /**
+     * Encodes a SubscribedDataMessage or an UpdateClientMessage. Used by stand-in servers and tests since the client never sends these.
+     *
+     * @param type SUBSCRIBED_DATA or UPDATE_CLIENT.
+     * @param time The simulation time in milliseconds.
+     * @param ids The subscription ids of the layers.
+     * @param layers The layer values, one array per id.
+     * @param xml The remaining data as an xml message or null if there is none.
+     * @return The binary message.
+     */
+    public static byte[] encodeData(byte type, long time, int[] ids,
+            double[][] layers, String xml) throws IOException {
+        int size = 5 + 8 + 4 + 4;
+        for (int i = 0; i < ids.length; i++) {
+            size += 8 + 8 * layers[i].length;
+        }
+        byte[] xmlBytes = (xml == null ? new byte[0] : xml.getBytes(CHARSET));
+        size += xmlBytes.length;
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(size);
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(MAGIC);
+        out.writeByte(type);
+        out.writeLong(time);
+        out.writeInt(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            out.writeInt(ids[i]);
+            out.writeInt(layers[i].length);
+            for (int j = 0; j < layers[i].length; j++) {
+                out.writeDouble(layers[i][j]);
+            }
+        }
+        out.writeInt(xmlBytes.length);
+        out.write(xmlBytes);
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    /**
+     * Reads a 32 bit network byte order integer.
+     *
+     * @param data The array to read from.
+     * @param pos The position of the first octet.
+     * @return The integer.
+     */
+    public static int readInt(byte[] data, int pos) {
+        return ((data[pos] & 0xff) << 24) | ((data[pos + 1] & 0xff) << 16)
+                | ((data[pos + 2] & 0xff) << 8) | (data[pos + 3] & 0xff);
+    }
+
+    /**
+     * Writes a 32 bit network byte order integer.
+     *
+     * @param data The array to write to.
+     * @param pos The position of the first octet.
+     * @param v The integer.
+     */
+    static void writeInt(byte[] data, int pos, int v) {
+        data[pos] = (byte) (v >>> 24);
+        data[pos + 1] = (byte) (v >>> 16);
+        data[pos + 2] = (byte) (v >>> 8);
+        data[pos + 3] = (byte) v;
+    }
+}
@@ -0,0 +1,201 @@
+package ApproxsimClient.communication;
+
+import java.util.LinkedList;
+import java.util.Vector;
+
+/**
+ * A thread safe queue that hands out its contents in batches. A batch is closed either when it holds the maximum number of elements or when
+ * its oldest element has waited for the maximum latency, whichever comes first. Waiting is done with timed waits on the queue's monitor so a
+ * thread collecting a batch does not consume any CPU. The queue keeps statistics of the size and latency of the batches it has handed out.
+ *
+ * @version 1
+ */
+public class CoalescingQueue {
+    /** The queued objects. */
+    private LinkedList mLL = new LinkedList();
+
+    /** The time in milliseconds at which each of the queued objects was enqueued. */
+    private LinkedList mTimes = new LinkedList();
+
+    /** The maximum number of elements in a batch. */
+    private int mMaxBatch;
+
+    /** The maximum time in milliseconds from when an object is enqueued until the batch containing it is closed. */
+    private long mMaxLatencyms;
+
+    /** The number of batches handed out. */
+    private long mBatches = 0;
+
+    /** The total number of elements in all batches handed out. */
+    private long mElements = 0;
+
+    /** The size of the largest batch handed out. */
+    private int mLargestBatch = 0;
+
+    /** The sum of the latencies of all batches, i.e. the times their oldest element waited, in milliseconds. */
+    private long mTotalLatencyms = 0;
+
+    /** The largest latency of any batch in milliseconds. */
+    private long mLargestLatencyms = 0;
+
+    /**
+     * Creates a queue.
+     *
+     * @param maxBatch The maximum number of elements in a batch.
+     * @param maxLatencyms The maximum time in milliseconds from when an object is enqueued until the batch containing it is closed.
+     */
+    public CoalescingQueue(int maxBatch, long maxLatencyms) {
+        mMaxBatch = maxBatch;
+        mMaxLatencyms = maxLatencyms;
+    }
+
+    /**
+     * Enqueues an Object. Null may be enqueued in order to close the current batch immediately, e.g. when the consuming thread should quit.
+     *
+     * @param o The Object to be enqueued.
+     */
+    public synchronized void enqueue(Object o) {
+        mLL.addLast(o);
+        mTimes.addLast(new Long(System.currentTimeMillis()));
+        notifyAll();
+    }
+
+    /**
+     * Dequeues the Object at the front of the queue, waiting at most the specified time for one to be enqueued.
+     *
+     * @param timeoutms The maximum time to wait in milliseconds, 0 to not wait at all.
+     * @return The Object at the front of the queue or null if the queue was still empty when the timeout expired.
+     */
+    public synchronized Object poll(long timeoutms) {
+        long deadline = System.currentTimeMillis() + timeoutms;
+        while (mLL.isEmpty()) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return null;
+            }
+            try {
+                wait(left);
+            } catch (InterruptedException e) {}
+        }
+        mTimes.removeFirst();
+        return mLL.removeFirst();
+    }
+
+    /**
+     * Blocks until at least one Object has been enqueued and returns the next batch. The batch is closed when it holds the maximum number
+     * of elements, when the oldest element in it has waited for the maximum latency or when null is dequeued. Null is never part of the
+     * batch, so the batch is empty if null was the first element dequeued.
+     *
+     * @return The elements of the batch in the order they were enqueued.
+     */
+    public synchronized Vector takeBatch() {
+        Vector batch = new Vector();
+        while (mLL.isEmpty()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {}
+        }
+        long first = ((Long) mTimes.getFirst()).longValue();
+        long deadline = first + mMaxLatencyms;
+        while (batch.size() < mMaxBatch) {
+            if (mLL.isEmpty()) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    break;
+                }
+                try {
+                    wait(left);
+                } catch (InterruptedException e) {}
+                continue;
+            }
+            mTimes.removeFirst();
+            Object o = mLL.removeFirst();
+            if (o == null) {
+                break;
+            }
+            batch.add(o);
+        }
+
+        if (!batch.isEmpty()) {
+            long latency = System.currentTimeMillis() - first;
+            mBatches++;
+            mElements += batch.size();
+            mLargestBatch = Math.max(mLargestBatch, batch.size());
+            mTotalLatencyms += latency;
+            mLargestLatencyms = Math.max(mLargestLatencyms, latency);
+        }
+        return batch;
+    }
+
+    /**
+     * Removes all entries in the queue.
+     */
+    public synchronized void clear() {
+        mLL.clear();
+        mTimes.clear();
+    }
+
+    /**
+     * Checks if the queue is empty.
+     *
+     * @return true if the queue is empty, false otherwise.
+     */
+    public synchronized boolean isEmpty() {
+        return mLL.isEmpty();
+    }
+
+    /**
+     * Returns the number of elements in the queue.
+     *
+     * @return The number of elements in the queue.
+     */
+    public synchronized int size() {
+        return mLL.size();
+    }
+
+    /**
+     * Returns the number of batches handed out so far.
+     */
+    public synchronized long getBatchCount() {
+        return mBatches;
+    }
+
+    /**
+     * Returns the mean number of elements per batch or 0 if no batch has been handed out.
+     */
+    public synchronized double getMeanBatchSize() {
+        return (mBatches == 0 ? 0 : (double) mElements / mBatches);
+    }
+
+    /**
+     * Returns the number of elements in the largest batch handed out.
+     */
+    public synchronized int getLargestBatchSize() {
+        return mLargestBatch;
+    }
+
+    /**
+     * Returns the mean time in milliseconds that the oldest element of a batch waited before the batch was handed out, or 0 if no batch has
+     * been handed out.
+     */
+    public synchronized double getMeanLatency() {
+        return (mBatches == 0 ? 0 : (double) mTotalLatencyms / mBatches);
+    }
+
+    /**
+     * Returns the largest time in milliseconds that the oldest element of a batch waited before the batch was handed out.
+     */
+    public synchronized long getLargestLatency() {
+        return mLargestLatencyms;
+    }
+
+    /**
+     * Returns a one line summary of the batch statistics.
+     */
+    public synchronized String getStatistics() {
+        return mBatches + " batches, " + mElements + " elements, batch size mean "
+                + getMeanBatchSize() + " max " + mLargestBatch
+                + ", latency mean " + getMeanLatency() + " ms max "
+                + mLargestLatencyms + " ms";
+    }
+}
@@ -10,6 +10,34 @@ import java.lang.StringBuffer;
  * @author Per Alexius
  */
 public class ConnectMessage extends ApproxsimMessage {
+    /** The encoding to request for the high rate messages or null if xml should be used. */
+    private String mEncoding;
+
+    /**
+     * Creates a connect message that doesn't request any encoding, i.e. xml will be used for all messages.
+     */
+    public ConnectMessage() {
+        this(null);
+    }
+
+    /**
+     * Creates a connect message that requests the specified encoding for the high rate messages.
+     * 
+     * @param encoding BinaryCodec.BINARY, BinaryCodec.XML or null.
+     */
+    public ConnectMessage(String encoding) {
+        mEncoding = encoding;
+    }
+
+    /**
+     * Accessor for the requested encoding.
+     * 
+     * @return The requested encoding or null if none was requested.
+     */
+    public String getEncoding() {
+        return mEncoding;
+    }
+
     /**
      * Returns a string representation of the type of this message.
      * 
@@ -27,6 +55,10 @@ public class ConnectMessage extends ApproxsimMessage {
      */
     public StringBuffer bodyXML(StringBuffer b) {
         b.append(NL).append("<bigEndian>true</bigEndian>");
+        if (mEncoding != null) {
+            b.append(NL).append("<encoding>").append(mEncoding)
+                    .append("</encoding>");
+        }
         return b;
     }
 }
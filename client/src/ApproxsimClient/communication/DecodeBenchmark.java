@@ -0,0 +1,200 @@
+package ApproxsimClient.communication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.apache.xerces.impl.dv.util.Base64;
+
+/**
+ * Compares decoding the Base64 payloads of grid and layer data through Base64.decode(String) and a DataInputStream, as GridData and
+ * LayerData used to, with Base64BulkDecoder. Run main for the time per payload of both.
+ *
+ * @version 1
+ */
+public class DecodeBenchmark {
+    /** The sink for the decoded values, so that the decoding isn't optimized away. */
+    private static double sSink = 0;
+
+    /**
+     * Decodes doubles the way GridData and LayerData used to.
+     *
+     * @param s The encoded doubles.
+     * @param target The array to decode to.
+     */
+    static void streamDecodeDoubles(String s, double[] target)
+            throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(
+                Base64.decode(s)));
+        for (int i = 0; i < target.length; i++) {
+            target[i] = dis.readDouble();
+        }
+    }
+
+    /**
+     * Decodes integers the way GridData used to.
+     *
+     * @param s The encoded integers.
+     */
+    static int[] streamDecodeInts(String s) throws IOException {
+        byte[] rawData = Base64.decode(s);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(
+                rawData));
+        int[] cells = new int[rawData.length / 4];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = dis.readInt();
+        }
+        return cells;
+    }
+
+    /**
+     * Encodes doubles like the server does, with line breaks every 76 characters.
+     *
+     * @param values The values.
+     */
+    static String encodeDoubles(double[] values) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(values.length * 8);
+        DataOutputStream out = new DataOutputStream(bos);
+        for (int i = 0; i < values.length; i++) {
+            out.writeDouble(values[i]);
+        }
+        out.flush();
+        return wrap(Base64.encode(bos.toByteArray()));
+    }
+
+    /**
+     * Encodes integers like the server does, with line breaks every 76 characters.
+     *
+     * @param values The values.
+     */
+    static String encodeInts(int[] values) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(values.length * 4);
+        DataOutputStream out = new DataOutputStream(bos);
+        for (int i = 0; i < values.length; i++) {
+            out.writeInt(values[i]);
+        }
+        out.flush();
+        return wrap(Base64.encode(bos.toByteArray()));
+    }
+
+    /**
+     * Breaks Base64 characters into lines of 76 characters.
+     */
+    static String wrap(String s) {
+        StringBuffer b = new StringBuffer(s.length() + s.length() / 76 + 1);
+        for (int i = 0; i < s.length(); i += 76) {
+            b.append(s, i, Math.min(s.length(), i + 76)).append('\n');
+        }
+        return b.toString();
+    }
+
+    /**
+     * Runs a decoder repeatedly and returns the time per run in milliseconds.
+     *
+     * @param task The decoder.
+     * @param runs The number of measured runs, preceded by as many warm up runs.
+     */
+    static double time(Runnable task, int runs) {
+        for (int i = 0; i < runs; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / 1000000.0 / runs;
+    }
+
+    /**
+     * Times both decoders on the cell positions, a layer and the region cells of square grids.
+     *
+     * @param args [sides...], the number of cells along each side of the grids, by default 100 300 1000.
+     */
+    public static void main(String[] args) throws Exception {
+        int[] sides = { 100, 300, 1000 };
+        if (args.length > 0) {
+            sides = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sides[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        for (int k = 0; k < sides.length; k++) {
+            int side = sides[k];
+            int runs = Math.max(3, 20000000 / (side * side * 8));
+            final double[] positions = new double[(side + 1) * (side + 1) * 2];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = 59.3 + i * 1e-6;
+            }
+            final double[] layer = new double[side * side];
+            for (int i = 0; i < layer.length; i++) {
+                layer[i] = Math.sin(i * 0.001) * 100;
+            }
+            int[] cells = new int[side * side / 4];
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = i * 4;
+            }
+            final String encodedPositions = encodeDoubles(positions);
+            final String encodedLayer = encodeDoubles(layer);
+            final String encodedCells = encodeInts(cells);
+
+            // Check that both decoders agree before timing them.
+            double[] a = new double[positions.length];
+            double[] b = new double[positions.length];
+            streamDecodeDoubles(encodedPositions, a);
+            Base64BulkDecoder.decodeDoubles(encodedPositions, b);
+            if (!java.util.Arrays.equals(a, b)
+                    || !java.util.Arrays.equals(streamDecodeInts(encodedCells),
+                                                Base64BulkDecoder
+                                                        .decodeInts(encodedCells))) {
+                throw new AssertionError("Decoders disagree");
+            }
+
+            final double[] target = new double[positions.length];
+            Runnable streamGrid = new Runnable() {
+                public void run() {
+                    try {
+                        streamDecodeDoubles(encodedPositions, target);
+                        sSink += streamDecodeInts(encodedCells).length;
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            Runnable bulkGrid = new Runnable() {
+                public void run() {
+                    Base64BulkDecoder.decodeDoubles(encodedPositions, target);
+                    sSink += Base64BulkDecoder.decodeInts(encodedCells).length;
+                }
+            };
+            final double[] layerTarget = new double[layer.length];
+            Runnable streamLayer = new Runnable() {
+                public void run() {
+                    try {
+                        streamDecodeDoubles(encodedLayer, layerTarget);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            Runnable bulkLayer = new Runnable() {
+                public void run() {
+                    Base64BulkDecoder.decodeDoubles(encodedLayer, layerTarget);
+                }
+            };
+
+            System.out.println(side + "x" + side + " grid, "
+                    + (encodedPositions.length() + encodedCells.length())
+                    / 1024 + " kB: stream " + time(streamGrid, runs)
+                    + " ms, bulk " + time(bulkGrid, runs) + " ms");
+            System.out.println(side + "x" + side + " layer, "
+                    + encodedLayer.length() / 1024 + " kB: stream "
+                    + time(streamLayer, runs) + " ms, bulk "
+                    + time(bulkLayer, runs) + " ms");
+        }
+        if (sSink < 0) {
+            System.out.println(sSink);
+        }
+    }
+}
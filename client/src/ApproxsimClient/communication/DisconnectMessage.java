@@ -16,4 +16,13 @@ public class DisconnectMessage extends ApproxsimMessage {
     public String getTypeAsString() {
         return "DisconnectMessage";
     }
+
+    /**
+     * Returns the priority with which messages of this class are sent.
+     * 
+     * @return TOP_PRIORITY.
+     */
+    public int getPriority() {
+        return TOP_PRIORITY;
+    }
 }
@@ -0,0 +1,156 @@
+package ApproxsimClient.communication;
+
+import java.util.Hashtable;
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.parsers.DOMParserImpl;
+import org.apache.xerces.parsers.IntegratedParserConfiguration;
+import org.apache.xerces.parsers.XMLGrammarPreparser;
+import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.util.SynchronizedSymbolTable;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.util.XMLResourceIdentifierImpl;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParserConfiguration;
+import org.w3c.dom.DOMError;
+import org.w3c.dom.DOMErrorHandler;
+import org.w3c.dom.ls.LSException;
+import org.w3c.dom.ls.LSParser;
+import org.w3c.dom.ls.LSResourceResolver;
+import ApproxsimClient.LSJarXSDResolver;
+
+/**
+ * Process-wide cache of preparsed schemas. Each schema file is preparsed once into a grammar pool of its own, which is then locked and
+ * shared by all parsers validating against that schema, so that creating a parser no longer means loading and compiling the schema.
+ * <p>
+ * The pools are kept per schema file rather than per namespace since several of the protocol schemas share the same target namespace.
+ *
+ * @version 1
+ */
+public class GrammarCache {
+    /** Property identifier: grammar pool. */
+    private static final String GRAMMAR_POOL = Constants.XERCES_PROPERTY_PREFIX
+            + Constants.XMLGRAMMAR_POOL_PROPERTY;
+
+    /** Namespaces feature id (http://xml.org/sax/features/namespaces). */
+    private static final String NAMESPACES_FEATURE_ID = Constants.SAX_FEATURE_PREFIX
+            + Constants.NAMESPACES_FEATURE;
+
+    /** Validation feature id (http://xml.org/sax/features/validation). */
+    private static final String VALIDATION_FEATURE_ID = Constants.SAX_FEATURE_PREFIX
+            + Constants.VALIDATION_FEATURE;
+
+    /** Schema validation feature id (http://apache.org/xml/features/validation/schema). */
+    private static final String SCHEMA_VALIDATION_FEATURE_ID = Constants.XERCES_FEATURE_PREFIX
+            + Constants.SCHEMA_VALIDATION_FEATURE;
+
+    /** Schema full checking feature id (http://apache.org/xml/features/validation/schema-full-checking). */
+    private static final String SCHEMA_FULL_CHECKING_FEATURE_ID = Constants.XERCES_FEATURE_PREFIX
+            + Constants.SCHEMA_FULL_CHECKING;
+
+    /** The symbol table shared by the preparser and all parsers. */
+    private static SymbolTable sSymbolTable = new SynchronizedSymbolTable(
+            new SymbolTable(2039));
+
+    /** The grammar pools, indexed by schema file name. */
+    private static Hashtable<String, XMLGrammarPool> sPools = new Hashtable<String, XMLGrammarPool>();
+
+    /**
+     * Returns the grammar pool of a schema, preparsing the schema on first use. If the schema can't be preparsed an empty pool is
+     * returned, to which the grammar is added by the first parser that loads it.
+     *
+     * @param grammar The name of the schema file.
+     * @return The grammar pool.
+     */
+    public static synchronized XMLGrammarPool getGrammarPool(String grammar) {
+        XMLGrammarPool pool = sPools.get(grammar);
+        if (pool == null) {
+            pool = new XMLGrammarPoolImpl();
+            XMLGrammarPreparser preparser = new XMLGrammarPreparser(
+                    sSymbolTable);
+            preparser.registerPreparser(XMLGrammarDescription.XML_SCHEMA, null);
+            preparser.setProperty(GRAMMAR_POOL, pool);
+            preparser.setFeature(NAMESPACES_FEATURE_ID, true);
+            preparser.setFeature(VALIDATION_FEATURE_ID, true);
+            preparser.setFeature(SCHEMA_VALIDATION_FEATURE_ID, true);
+            preparser.setFeature(SCHEMA_FULL_CHECKING_FEATURE_ID, true);
+            try {
+                preparser.setEntityResolver(new LSJarXSDResolver(preparser
+                        .getEntityResolver()));
+                XMLInputSource source = preparser.getEntityResolver()
+                        .resolveEntity(new XMLResourceIdentifierImpl(null,
+                                               grammar, null, null));
+                preparser.preparseGrammar(XMLGrammarDescription.XML_SCHEMA,
+                                          source);
+                pool.lockPool();
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.err.println("Unable to preparse " + grammar);
+            }
+            sPools.put(grammar, pool);
+        }
+        return pool;
+    }
+
+    /**
+     * Returns the symbol table shared by all parsers using the cache.
+     */
+    public static SymbolTable getSymbolTable() {
+        return sSymbolTable;
+    }
+
+    /**
+     * Creates a parser configuration using the cached grammar of a schema.
+     *
+     * @param grammar The name of the schema file.
+     * @param validate Whether to validate against the schema.
+     * @return The configuration.
+     */
+    public static XMLParserConfiguration createConfiguration(String grammar,
+            boolean validate) {
+        XMLParserConfiguration config = new IntegratedParserConfiguration(
+                sSymbolTable, getGrammarPool(grammar));
+        config.setEntityResolver(new LSJarXSDResolver(config
+                .getEntityResolver()));
+        config.setFeature(NAMESPACES_FEATURE_ID, true);
+        config.setFeature(VALIDATION_FEATURE_ID, validate);
+        config.setFeature(SCHEMA_VALIDATION_FEATURE_ID, validate);
+        config.setFeature(SCHEMA_FULL_CHECKING_FEATURE_ID, validate);
+        return config;
+    }
+
+    /**
+     * Creates a validating LSParser using the cached grammar of a schema. The parser throws an LSException on the first error.
+     *
+     * @param grammar The name of the schema file.
+     * @return The parser.
+     */
+    public static LSParser createLSParser(String grammar) {
+        LSParser parser = new DOMParserImpl(sSymbolTable,
+                getGrammarPool(grammar));
+        parser.getDomConfig().setParameter("error-handler",
+                                           new DOMErrorHandler() {
+                                               /**
+                                                * This method is called on the error handler when an error occurs.
+                                                *
+                                                * @param error the error;
+                                                */
+                                               public boolean handleError(
+                                                       DOMError error) {
+                                                   throw new LSException(
+                                                           LSException.PARSE_ERR,
+                                                           error.getMessage());
+                                               }
+                                           });
+        parser.getDomConfig().setParameter("schema-location", grammar);
+        parser.getDomConfig().setParameter("validate", Boolean.TRUE);
+        parser.getDomConfig().setParameter("namespaces", Boolean.TRUE);
+
+        LSResourceResolver prevResolver = (LSResourceResolver) parser
+                .getDomConfig().getParameter("resource-resolver");
+        parser.getDomConfig().setParameter("resource-resolver",
+                                           new LSJarXSDResolver(prevResolver));
+        return parser;
+    }
+}
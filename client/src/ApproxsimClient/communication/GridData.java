@@ -1,11 +1,6 @@
 package ApproxsimClient.communication;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
-import java.io.EOFException;
-import java.io.IOException;
 import java.util.Hashtable;
-import org.apache.xerces.impl.dv.util.Base64;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import ApproxsimClient.object.primitive.Reference;
@@ -61,68 +56,50 @@ public class GridData {
         // passive. Cells are ordered from top left to bottom right.
         mActiveCells = new byte[mRows * mCols];
 
-        byte[] rawData = null;
-        DataInputStream dis = null;
-
-        try {
-            // Read cell positions.
-            rawData = Base64.decode(XMLHandler.getString(elem, "positionData"));
-            dis = new DataInputStream(new ByteArrayInputStream(rawData));
-            for (int i = 0; i < numDoubles; i++) {
-                mCellPositions[i] = dis.readDouble();
-            }
+        // Read cell positions.
+        if (Base64BulkDecoder.decodeDoubles(XMLHandler.getString(elem,
+                "positionData"), mCellPositions) < numDoubles) {
+            System.err.println("Too few cell positions in grid data.");
+        }
 
-            // Read active cell info.
-            rawData = Base64.decode(XMLHandler.getString(elem, "activeCells"));
-            dis = new DataInputStream(new ByteArrayInputStream(rawData));
-            nrOfActiveCells = 0;
-            for (int i = 0; i < mRows * mCols; i++) {
-                mActiveCells[i] = dis.readByte();
-                if ((int) mActiveCells[i] == 1) {
-                    nrOfActiveCells++;
-                }
+        // Read active cell info.
+        if (Base64BulkDecoder.decodeBytes(XMLHandler.getString(elem,
+                "activeCells"), mActiveCells) < mRows * mCols) {
+            System.err.println("Too few active cells in grid data.");
+        }
+        nrOfActiveCells = 0;
+        for (int i = 0; i < mRows * mCols; i++) {
+            if ((int) mActiveCells[i] == 1) {
+                nrOfActiveCells++;
             }
+        }
 
-            // Read which cells that belongs to which region
-            for (Node child = elem.getFirstChild(); child != null; child = child
-                    .getNextSibling()) {
-                if (child.getNodeType() == Node.ELEMENT_NODE) {
-                    Element rdElem = (Element) child;
-                    if (rdElem.getTagName().equals("regionData")) {
-                        Reference r = Reference.getReference(XMLHandler
-                                .getFirstChildByTag(rdElem, "reference"));
-                        rawData = Base64.decode(XMLHandler.getString(XMLHandler
-                                .getFirstChildByTag(rdElem, "cells")));
-                        dis = new DataInputStream(new ByteArrayInputStream(
-                                rawData));
-                        int[] cells = new int[rawData.length / 4];
-                        for (int i = 0; i < rawData.length / 4; i++) {
-                            cells[i] = dis.readInt();
-                        }
-                        mRegionCells.put(r, cells);
-                    }
+        // Read which cells that belongs to which region
+        for (Node child = elem.getFirstChild(); child != null; child = child
+                .getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                Element rdElem = (Element) child;
+                if (rdElem.getTagName().equals("regionData")) {
+                    Reference r = Reference.getReference(XMLHandler
+                            .getFirstChildByTag(rdElem, "reference"));
+                    mRegionCells.put(r, Base64BulkDecoder
+                            .decodeInts(XMLHandler.getString(XMLHandler
+                                    .getFirstChildByTag(rdElem, "cells"))));
                 }
             }
-
-            // for (java.util.Enumeration en = mRegionCells.keys(); en.hasMoreElements(); ) {
-            // Reference foo = (Reference)en.nextElement();
-            // Debug.err.println(foo + ", " + ((int[])mRegionCells.get(foo)).length);
-            // }
-
-            // java.io.PrintWriter pw =
-            // new java.io.PrintWriter(new java.io.FileWriter("gridData.tmp"));
-            // for (int i = 0; i < numDoubles; i+=2) {
-            // pw.println(mCellPositions[i] + ", " + mCellPositions[i+1]);
-            // }
-            // pw.close();
-
-        } catch (EOFException e) {
-            e.printStackTrace();
-            System.err.println(e.getMessage());
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.err.println(e.getMessage());
         }
+
+        // for (java.util.Enumeration en = mRegionCells.keys(); en.hasMoreElements(); ) {
+        // Reference foo = (Reference)en.nextElement();
+        // Debug.err.println(foo + ", " + ((int[])mRegionCells.get(foo)).length);
+        // }
+
+        // java.io.PrintWriter pw =
+        // new java.io.PrintWriter(new java.io.FileWriter("gridData.tmp"));
+        // for (int i = 0; i < numDoubles; i+=2) {
+        // pw.println(mCellPositions[i] + ", " + mCellPositions[i+1]);
+        // }
+        // pw.close();
     }
 
     /**
@@ -1,5 +1,6 @@
 package ApproxsimClient.communication;
 
+import java.io.UnsupportedEncodingException;
 import java.lang.StringBuffer;
 import ApproxsimClient.Client;
 import ApproxsimClient.object.ApproxsimObject;
@@ -54,6 +55,15 @@ public class InitializationMessage extends ApproxsimMessage {
         return "InitializationMessage";
     }
 
+    /**
+     * Returns the priority with which messages of this class are sent.
+     * 
+     * @return INIT_PRIORITY.
+     */
+    public int getPriority() {
+        return INIT_PRIORITY;
+    }
+
     /**
      * Creates an XML representation of the body of this object.
      * 
@@ -61,15 +71,52 @@ public class InitializationMessage extends ApproxsimMessage {
      * @return The StringBuffer b with an XML representation of this object's body appended to it.
      */
     public StringBuffer bodyXML(StringBuffer b) {
+        simulationXML(mSimulation, b);
+        initialValuesXML(b);
+        return b;
+    }
+
+    /**
+     * Creates the encoded XML representation of this message in three parts, where the simulation in the middle is taken from the
+     * ScenarioCache of the simulation and thus only rebuilt when the simulation has changed. The cached part is sent as is, without being
+     * copied into a buffer holding the whole message.
+     * 
+     * @return The parts of the encoded XML representation of this message.
+     */
+    public byte[][] toXMLParts() throws UnsupportedEncodingException {
+        StringBuffer head = openXML(new StringBuffer());
+        StringBuffer tail = closeXML(initialValuesXML(new StringBuffer()));
+        return new byte[][] { head.toString().getBytes("ISO-8859-1"),
+                ScenarioCache.getCache(mSimulation).getBytes(),
+                tail.toString().getBytes("ISO-8859-1") };
+    }
+
+    /**
+     * Creates an XML representation of the simulation element of an initialization message.
+     * 
+     * @param simulation The simulation object.
+     * @param b The StringBuffer to write to.
+     * @return The StringBuffer b with an XML representation of the simulation appended to it.
+     */
+    static StringBuffer simulationXML(ApproxsimObject simulation, StringBuffer b) {
         b.append(NL).append("<simulation xsi:type=\"sp:")
-                .append(mSimulation.getType().getName());
+                .append(simulation.getType().getName());
         b.append("\" identifier=\"");
         b.append(ApproxsimClient.communication.XMLHandler
-                .encodeSpecialCharacters(mSimulation.getIdentifier()));
+                .encodeSpecialCharacters(simulation.getIdentifier()));
         b.append("\">");
-        mSimulation.bodyXML(b);
+        simulation.bodyXML(b);
         b.append(NL).append("</simulation>");
-        // insert the initial values for process variables
+        return b;
+    }
+
+    /**
+     * Creates an XML representation of the initial values for process variables, if there is a client that has any.
+     * 
+     * @param b The StringBuffer to write to.
+     * @return The StringBuffer b with the initial values appended to it.
+     */
+    private StringBuffer initialValuesXML(StringBuffer b) {
         if (client != null) {
             StringBuffer pvBuffer = client
                     .getInitialValuesForProcessVariables();
@@ -77,7 +124,6 @@ public class InitializationMessage extends ApproxsimMessage {
                 b.append(pvBuffer);
             }
         }
-
         return b;
     }
 }
@@ -0,0 +1,114 @@
+package ApproxsimClient.communication;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A thread safe priority queue with a fixed number of priority lanes, where lane 0 has the highest priority. Objects in the same lane are
+ * dequeued in FIFO order. Each lane is a lock-free queue and the number of queued objects is kept by a semaphore, so enqueueing never
+ * takes a lock and a blocking dequeue parks until an object is available instead of spinning. Null may be enqueued, e.g. as a stop signal.
+ *
+ * @version 1
+ */
+public class LaneQueue<T> {
+    /** Stands in for null in the lanes, which can't hold null. */
+    private static final Object sNull = new Object();
+
+    /** The lanes, highest priority first. */
+    private ConcurrentLinkedQueue<Object>[] mLanes;
+
+    /** One permit per object enqueued and not yet claimed by a dequeue. */
+    private Semaphore mAvailable = new Semaphore(0);
+
+    /**
+     * Creates an empty queue.
+     *
+     * @param lanes The number of priority lanes.
+     */
+    @SuppressWarnings("unchecked")
+    public LaneQueue(int lanes) {
+        mLanes = new ConcurrentLinkedQueue[lanes];
+        for (int i = 0; i < lanes; i++) {
+            mLanes[i] = new ConcurrentLinkedQueue<Object>();
+        }
+    }
+
+    /**
+     * Enqueues an Object last in a lane.
+     *
+     * @param o The Object to be enqueued, may be null.
+     * @param lane The lane, from 0 (highest priority) to the number of lanes - 1.
+     */
+    public void enqueue(T o, int lane) {
+        mLanes[lane].offer(o == null ? sNull : o);
+        mAvailable.release();
+    }
+
+    /**
+     * Dequeues the first Object of the highest priority lane that isn't empty.
+     *
+     * @return The Object or null if the queue is empty.
+     */
+    public T dequeue() {
+        return (mAvailable.tryAcquire() ? take() : null);
+    }
+
+    /**
+     * Dequeues the first Object of the highest priority lane that isn't empty or if the queue is empty - block until an Object is enqueued
+     * by another thread.
+     *
+     * @return The Object.
+     */
+    public T blockingDequeue() {
+        mAvailable.acquireUninterruptibly();
+        return take();
+    }
+
+    /**
+     * Removes the first Object of the highest priority lane that isn't empty. The caller must hold a permit, which guarantees that there is
+     * an Object to remove.
+     *
+     * @return The Object.
+     */
+    @SuppressWarnings("unchecked")
+    private T take() {
+        while (true) {
+            for (int i = 0; i < mLanes.length; i++) {
+                Object o = mLanes[i].poll();
+                if (o != null) {
+                    return (o == sNull ? null : (T) o);
+                }
+            }
+            // A concurrent dequeue took the object of a lower lane after this scan passed a lane that has since been filled. The object is
+            // there, so scan again.
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Removes all entries in the queue.
+     */
+    public void clear() {
+        while (mAvailable.tryAcquire()) {
+            take();
+        }
+    }
+
+    /**
+     * Checks if the queue is empty.
+     *
+     * @return true if the queue is empty, false otherwise.
+     */
+    public boolean empty() {
+        return mAvailable.availablePermits() == 0;
+    }
+
+    /**
+     * Returns the size of the queue.
+     *
+     * @return size of the queue.
+     */
+    public int size() {
+        return mAvailable.availablePermits();
+    }
+}
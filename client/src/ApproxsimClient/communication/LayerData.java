@@ -1,12 +1,8 @@
 package ApproxsimClient.communication;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
-import java.io.EOFException;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.Vector;
-import org.apache.xerces.impl.dv.util.Base64;
 import ApproxsimClient.Debug;
 import ApproxsimClient.object.primitive.Reference;
 import ApproxsimClient.object.ApproxsimEvent;
@@ -30,6 +26,12 @@ public class LayerData {
     private double[] mData;
     private Timestamp mTimestamp;
 
+    /** The number of the frame of a delta subscription held by this layer, or -1 if unknown. */
+    private long mFrame = -1;
+
+    /** True if a full frame has been requested because a delta didn't apply to the values held. */
+    private boolean mFullFrameRequested = false;
+
     public LayerData(ProcessVariableDescription pvd, Reference faction,
             double[] data) {
         mSize = data.length;
@@ -59,6 +61,15 @@ public class LayerData {
         return mTimestamp;
     }
 
+    /**
+     * Returns the number of the frame of a delta subscription held by this layer.
+     * 
+     * @return The frame number or -1 if unknown.
+     */
+    public synchronized long getFrame() {
+        return mFrame;
+    }
+
     public void addListener(ApproxsimEventListener listener) {
         mListeners.add(listener);
     }
@@ -69,24 +80,153 @@ public class LayerData {
 
     public synchronized void update(org.w3c.dom.Element n, Timestamp t) {
         mTimestamp = t;
-        byte[] rawData = Base64.decode(XMLHandler.getString(n, "layerData"));
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(
-                rawData));
-        try {
-            for (int i = 0; i < mSize; i++) {
-                mData[i] = dis.readDouble();
+        setFrame(getFrame(n));
+        int count = Base64BulkDecoder.decodeDoubles(XMLHandler.getString(n,
+                "layerData"), mData);
+        if (count < mSize) {
+            Debug.err
+                    .println("This indicates that the Client has a larger grid than the server.");
+        }
+        Debug.err.println("Read " + Math.min(count, mSize) + " doubles");
+
+        fireUpdated();
+    }
+
+    /**
+     * Updates the layer with values read from a binary message. Values beyond the size of this layer are skipped.
+     * 
+     * @param in The buffer to read the values from, positioned at the first value. Positioned after the last value on return.
+     * @param count The number of values in the buffer.
+     * @param t The simulation time for which the data is valid.
+     */
+    public synchronized void update(ByteBuffer in, int count, Timestamp t) {
+        mTimestamp = t;
+        setFrame(-1);
+        int n = Math.min(count, mSize);
+        in.asDoubleBuffer().get(mData, 0, n);
+        in.position(in.position() + count * 8);
+        if (count > mSize) {
+            Debug.err
+                    .println("This indicates that the Client has a smaller grid than the server.");
+        } else if (count < mSize) {
+            Debug.err
+                    .println("This indicates that the Client has a larger grid than the server.");
+        }
+        Debug.err.println("Read " + n + " doubles");
+        fireUpdated();
+    }
+
+    /**
+     * Applies the changes of a SubscribedLayerDelta in place, provided that they are relative to the frame held by this layer.
+     * 
+     * @param n The subscribedData element.
+     * @param t The simulation time for which the data is valid.
+     * @return False if the changes are relative to another frame and were ignored.
+     */
+    public synchronized boolean applyDelta(org.w3c.dom.Element n, Timestamp t) {
+        long base = Long.parseLong(XMLHandler.getString(n, "base").trim());
+        if (base != mFrame) {
+            Debug.err.println("Ignoring delta from frame " + base
+                    + " for layer at frame " + mFrame);
+            return false;
+        }
+        int[] index = Base64BulkDecoder.decodeInts(XMLHandler.getString(n,
+                "index"));
+        double[] values = new double[index.length];
+        int count = Base64BulkDecoder.decodeDoubles(XMLHandler.getString(n,
+                "layerData"), values);
+        if (count != index.length) {
+            Debug.err.println("Delta has " + index.length + " positions but "
+                    + count + " values");
+            return false;
+        }
+        for (int i = 0; i < index.length; i++) {
+            if (index[i] >= 0 && index[i] < mSize) {
+                mData[index[i]] = values[i];
             }
-            Debug.err.println("Read " + mSize + " doubles");
-        } catch (EOFException e) {
-            e.printStackTrace();
-            System.err.println(e.getMessage());
+        }
+        mTimestamp = t;
+        mFrame = getFrame(n);
+        Debug.err.println("Applied " + index.length + " changed doubles");
+        fireUpdated();
+        return true;
+    }
+
+    /**
+     * Notes that a full frame has been requested, unless one already has been and hasn't arrived yet.
+     * 
+     * @return True if no full frame was already requested.
+     */
+    synchronized boolean requestFullFrame() {
+        if (mFullFrameRequested) {
+            return false;
+        }
+        mFullFrameRequested = true;
+        return true;
+    }
+
+    /**
+     * Sets the frame held after a full update.
+     * 
+     * @param frame The frame number or -1 if unknown.
+     */
+    private void setFrame(long frame) {
+        mFrame = frame;
+        mFullFrameRequested = false;
+    }
+
+    /**
+     * Returns the frame number of a subscribedData element.
+     * 
+     * @param n The subscribedData element.
+     * @return The frame number or -1 if the element has none.
+     */
+    static long getFrame(org.w3c.dom.Element n) {
+        org.w3c.dom.Element frame = XMLHandler.getFirstChildByTag(n, "frame");
+        if (frame == null) {
+            return -1;
+        }
+        return Long.parseLong(XMLHandler.getString(frame).trim());
+    }
+
+    /**
+     * Starts an update where the Base64 encoded values are decoded directly into this layer as they are parsed. The update must be ended by
+     * a call to finishUpdate.
+     * 
+     * @return The decoder to feed the encoded values to.
+     */
+    public Base64DoubleDecoder startUpdate() {
+        return new Base64DoubleDecoder(mData);
+    }
+
+    /**
+     * Ends an update started by startUpdate.
+     * 
+     * @param decoder The decoder returned by startUpdate.
+     * @param t The simulation time for which the data is valid.
+     * @param frame The number of the frame or -1 if unknown.
+     */
+    public synchronized void finishUpdate(Base64DoubleDecoder decoder,
+            Timestamp t, long frame) {
+        decoder.finish();
+        mTimestamp = t;
+        setFrame(frame);
+        if (decoder.getCount() < mSize) {
             Debug.err
                     .println("This indicates that the Client has a larger grid than the server.");
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.err.println(e.getMessage());
+        } else if (decoder.getCount() > mSize) {
+            Debug.err
+                    .println("This indicates that the Client has a smaller grid than the server.");
         }
+        Debug.err.println("Read " + Math.min(decoder.getCount(), mSize)
+                + " doubles");
+        fireUpdated();
+    }
 
+    /**
+     * Notifies the listeners that this layer has been updated.
+     */
+    private void fireUpdated() {
         ApproxsimEvent event = ApproxsimEvent.getGeneric(this);
         for (Iterator it = mListeners.iterator(); it.hasNext();) {
             ((ApproxsimEventListener) it.next()).eventOccured(event);
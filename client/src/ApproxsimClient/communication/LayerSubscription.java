@@ -1,6 +1,7 @@
 package ApproxsimClient.communication;
 
 import java.lang.StringBuffer;
+import java.nio.ByteBuffer;
 import org.w3c.dom.Element;
 import ApproxsimClient.object.primitive.Timestamp;
 
@@ -14,14 +15,57 @@ public class LayerSubscription extends Subscription {
     /** The LayerData. */
     private LayerData mLD;
 
+    /** True if the server should only send the values that changed since the previous frame. */
+    private boolean mDelta;
+
+    /** The SubscriptionHandler to register this subscription with again if a full frame is needed. */
+    private SubscriptionHandler mSH = null;
+
     /**
      * Creates a subscription to the specified layer.
      * 
      * @param ld The LayerData.
      */
     public LayerSubscription(LayerData ld) {
+        this(ld, false);
+    }
+
+    /**
+     * Creates a subscription to the specified layer.
+     * 
+     * @param ld The LayerData.
+     * @param delta True if the server should only send the values that changed since the previous frame.
+     */
+    public LayerSubscription(LayerData ld, boolean delta) {
         super();
         mLD = ld;
+        mDelta = delta;
+    }
+
+    /**
+     * Returns true if the server only sends the values that changed since the previous frame.
+     */
+    public boolean isDelta() {
+        return mDelta;
+    }
+
+    /**
+     * Sets the subscription handler of this class. Called by the SubscriptionHandler when the subscription is registered so that a full
+     * frame can be requested if a delta doesn't apply.
+     * 
+     * @param sh The SubscriptionHandler.
+     */
+    void setSubscriptionHandler(SubscriptionHandler sh) {
+        mSH = sh;
+    }
+
+    /**
+     * Accessor for the LayerData.
+     * 
+     * @return The LayerData this subscription refers to.
+     */
+    public LayerData getLayerData() {
+        return mLD;
     }
 
     /**
@@ -31,7 +75,26 @@ public class LayerSubscription extends Subscription {
      * @param t The simulation time for which this update is valid.
      */
     public void update(Element n, Timestamp t) {
-        mLD.update(n, t);
+        String type = XMLHandler.removeNamespace(n.getAttribute("xsi:type"));
+        if (!type.equals("SubscribedLayerDelta")) {
+            mLD.update(n, t);
+        } else if (!mLD.applyDelta(n, t) && mLD.requestFullFrame()
+                && mSH != null) {
+            // Registering the subscription again replaces it on the
+            // server, which then starts over with a full frame.
+            mSH.regSubscription(this);
+        }
+    }
+
+    /**
+     * Updates the layer this subscription refers to with values read from a binary message.
+     * 
+     * @param in The buffer to read the values from, positioned at the first value.
+     * @param count The number of values in the buffer.
+     * @param t The simulation time for which this update is valid.
+     */
+    public void update(ByteBuffer in, int count, Timestamp t) {
+        mLD.update(in, count, t);
     }
 
     /**
@@ -57,6 +120,9 @@ public class LayerSubscription extends Subscription {
             mLD.getFaction().bodyXML(b);
             b.append(NL).append("</faction>");
         }
+        if (mDelta) {
+            b.append(NL).append("<delta>true</delta>");
+        }
         return b;
     }
 }
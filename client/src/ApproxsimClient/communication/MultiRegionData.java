@@ -0,0 +1,183 @@
+package ApproxsimClient.communication;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import ApproxsimClient.ApproxsimConstants;
+import ApproxsimClient.object.ApproxsimEvent;
+import ApproxsimClient.object.ApproxsimEventListener;
+import ApproxsimClient.object.Shape;
+import ApproxsimClient.object.primitive.Reference;
+import ApproxsimClient.object.primitive.Timestamp;
+
+/**
+ * Class used when subscribing to aggregated pv values over many regions with one subscription. Each update is decoded straight into a new
+ * RegionPVSnapshot which is then published, so readers never see a partial update and never have to copy the values.
+ *
+ * @version 1
+ */
+public class MultiRegionData {
+    /** Vector of ApproxsimEventListeners listening to this object. */
+    private Vector<ApproxsimEventListener> mListeners = new Vector<ApproxsimEventListener>();
+
+    /** The regions this data refers to. */
+    private Shape[] mRegions;
+
+    /** The latest snapshot or null if no data has been received. */
+    private volatile RegionPVSnapshot mSnapshot;
+
+    /** The pv name of each column in the last update. */
+    private String[] mKeyNames = new String[0];
+
+    /** The faction name of each column in the last update. */
+    private String[] mKeyFactions = new String[0];
+
+    /** The names of the process variables in the last update. */
+    private List<String> mPVs;
+
+    /** The names of the factions in the last update. */
+    private List<String> mFactions;
+
+    /** The column index of the last update, see RegionPVSnapshot. */
+    private int[] mColumns;
+
+    /**
+     * Constructs a MultiRegionData object for the specified shapes.
+     *
+     * @param regions The regions this data should refer to, in the order their values are indexed.
+     */
+    public MultiRegionData(Shape[] regions) {
+        mRegions = (Shape[]) regions.clone();
+    }
+
+    /**
+     * Creates a subscription for this object.
+     */
+    public Subscription createSubscription() {
+        return new MultiRegionSubscription(this);
+    }
+
+    /**
+     * Returns the number of regions.
+     */
+    public int getRegionCount() {
+        return mRegions.length;
+    }
+
+    /**
+     * Returns the specified region.
+     *
+     * @param index The index of the region.
+     */
+    public Shape getRegion(int index) {
+        return mRegions[index];
+    }
+
+    /**
+     * Returns the latest snapshot of the values, or null if no data has been received yet.
+     */
+    public RegionPVSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Adds a listener to this object. Listeners will be notified when the object has been updated.
+     *
+     * @param listener The listener to add.
+     */
+    public synchronized void addListener(ApproxsimEventListener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener from this object.
+     *
+     * @param listener The listener to remove.
+     */
+    public synchronized void removeListener(ApproxsimEventListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Updates this object with the data contained in the Element n.
+     *
+     * @param n The DOM Element from which to fetch the data.
+     * @param t The simulation time for which the data is valid.
+     */
+    public synchronized void update(Element n, Timestamp t) {
+        ArrayList<String> names = new ArrayList<String>();
+        ArrayList<String> factions = new ArrayList<String>();
+        for (Node child = n.getFirstChild(); child != null; child = child
+                .getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE
+                    && child.getNodeName().equals("key")) {
+                Element elem = (Element) child;
+                names.add(XMLHandler.getString(elem, "name").trim());
+                Element factionElem = XMLHandler.getFirstChildByTag(elem,
+                                                                    "faction");
+                factions.add(factionElem == null ? ApproxsimConstants.factionAll
+                        : Reference.getReference(factionElem).getIdentifier());
+            }
+        }
+        String[] keyNames = names.toArray(new String[names.size()]);
+        String[] keyFactions = factions.toArray(new String[factions.size()]);
+        if (!Arrays.equals(keyNames, mKeyNames)
+                || !Arrays.equals(keyFactions, mKeyFactions)) {
+            createIndex(keyNames, keyFactions);
+        }
+
+        double[] values = new double[keyNames.length * mRegions.length];
+        int count = Base64BulkDecoder.decodeDoubles(XMLHandler.getString(n,
+                "values"), values);
+        if (count != values.length) {
+            System.err.println("Expected " + values.length
+                    + " region values but got " + count);
+            if (count < values.length) {
+                Arrays.fill(values, count, values.length, Double.NaN);
+            }
+        }
+        mSnapshot = new RegionPVSnapshot(t, mRegions.length, mPVs, mFactions,
+                mColumns, values);
+
+        ApproxsimEvent event = ApproxsimEvent.getGeneric(this);
+        for (Iterator<ApproxsimEventListener> it = mListeners.iterator(); it
+                .hasNext();) {
+            it.next().eventOccured(event);
+        }
+    }
+
+    /**
+     * Creates the index from (pv, faction) to column for a new set of keys.
+     *
+     * @param keyNames The pv name of each column.
+     * @param keyFactions The faction name of each column.
+     */
+    private void createIndex(String[] keyNames, String[] keyFactions) {
+        ArrayList<String> pvs = new ArrayList<String>();
+        ArrayList<String> factions = new ArrayList<String>();
+        for (int i = 0; i < keyNames.length; i++) {
+            if (!pvs.contains(keyNames[i])) {
+                pvs.add(keyNames[i]);
+            }
+            if (!factions.contains(keyFactions[i])) {
+                factions.add(keyFactions[i]);
+            }
+        }
+        int[] columns = new int[pvs.size() * factions.size()];
+        Arrays.fill(columns, -1);
+        for (int i = 0; i < keyNames.length; i++) {
+            columns[pvs.indexOf(keyNames[i]) * factions.size()
+                    + factions.indexOf(keyFactions[i])] = i;
+        }
+        mKeyNames = keyNames;
+        mKeyFactions = keyFactions;
+        mPVs = Collections.unmodifiableList(pvs);
+        mFactions = Collections.unmodifiableList(factions);
+        mColumns = columns;
+    }
+}
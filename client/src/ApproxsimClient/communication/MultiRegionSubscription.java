@@ -0,0 +1,68 @@
+package ApproxsimClient.communication;
+
+import ApproxsimClient.object.Shape;
+import ApproxsimClient.object.primitive.Timestamp;
+
+/**
+ * This class represents a subscription to the aggregates of the process variables for many regions at once.
+ *
+ * @version 1
+ */
+public class MultiRegionSubscription extends Subscription {
+    /**
+     * Contains data about the regions this subscription refers to.
+     */
+    private MultiRegionData mData;
+
+    /**
+     * Creates a subscription to the specified regions.
+     *
+     * @param data The data for the regions.
+     */
+    public MultiRegionSubscription(MultiRegionData data) {
+        mData = data;
+    }
+
+    /**
+     * Updates the object this subscription refers to with the contents of the provided dom element.
+     *
+     * @param n The dom element to fetch data from.
+     * @param t The simulation time for which this update is valid.
+     */
+    public void update(org.w3c.dom.Element n, Timestamp t) {
+        mData.update(n, t);
+    }
+
+    /**
+     * Returns a string representation of the type of this object.
+     *
+     * @return A string representation of the type of this object.
+     */
+    public String getTypeAsString() {
+        return "MultiRegionSubscription";
+    }
+
+    /**
+     * Creates an XML representation of the body of this object.
+     *
+     * @param b The StringBuffer to write to.
+     * @return The StringBuffer b with an XML representation of this object's body appended to it.
+     */
+    public StringBuffer bodyXML(StringBuffer b) {
+        for (int i = 0; i < mData.getRegionCount(); i++) {
+            Shape region = mData.getRegion(i);
+            b.append(NL).append("<region xsi:type=\"sp:");
+            b.append(region.getType().getName()).append("\">");
+            region.bodyXML(b);
+            b.append(NL).append("</region>");
+        }
+        return b;
+    }
+
+    /**
+     * Returns the MultiRegionData of this subscription.
+     */
+    public MultiRegionData getMultiRegionData() {
+        return this.mData;
+    }
+}
@@ -0,0 +1,98 @@
+package ApproxsimClient.communication;
+
+import java.util.Hashtable;
+import java.util.LinkedList;
+import org.w3c.dom.Document;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSParser;
+
+/**
+ * A thread-safe pool of validating LSParsers for one schema, all using the preparsed grammar of GrammarCache. Parsers are borrowed for a
+ * single parse and then returned, so that threads parsing at the same time never share a parser while no parser is created per message.
+ *
+ * @version 1
+ */
+public class ParserPool {
+    /** The maximum number of idle parsers kept by a pool. */
+    private static final int sMaxIdle = 8;
+
+    /** The shared pools, indexed by schema file name. */
+    private static Hashtable<String, ParserPool> sPools = new Hashtable<String, ParserPool>();
+
+    /** The name of the schema file. */
+    private String mGrammar;
+
+    /** The parsers not currently borrowed. */
+    private LinkedList<LSParser> mIdle = new LinkedList<LSParser>();
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param grammar The name of the schema file to validate against.
+     */
+    public ParserPool(String grammar) {
+        mGrammar = grammar;
+    }
+
+    /**
+     * Returns the process-wide pool for a schema.
+     *
+     * @param grammar The name of the schema file.
+     * @return The pool.
+     */
+    public static synchronized ParserPool getPool(String grammar) {
+        ParserPool pool = sPools.get(grammar);
+        if (pool == null) {
+            pool = new ParserPool(grammar);
+            sPools.put(grammar, pool);
+        }
+        return pool;
+    }
+
+    /**
+     * Borrows a parser, creating one if none is idle. The parser must be returned with release when done.
+     *
+     * @return The parser.
+     */
+    public LSParser borrow() {
+        LSParser parser;
+        synchronized (mIdle) {
+            parser = mIdle.poll();
+        }
+        if (parser == null) {
+            return GrammarCache.createLSParser(mGrammar);
+        }
+        // The parser forgets the schema location after each parse.
+        parser.getDomConfig().setParameter("schema-location", mGrammar);
+        return parser;
+    }
+
+    /**
+     * Returns a borrowed parser to the pool.
+     *
+     * @param parser The parser.
+     */
+    public void release(LSParser parser) {
+        synchronized (mIdle) {
+            if (mIdle.size() < sMaxIdle) {
+                mIdle.add(parser);
+            }
+        }
+    }
+
+    /**
+     * Parses an input with a borrowed parser.
+     *
+     * @param input The input to parse.
+     * @return The parsed document.
+     * @throws org.w3c.dom.ls.LSException if the input isn't valid.
+     */
+    public Document parse(LSInput input) {
+        LSParser parser = borrow();
+        try {
+            return parser.parse(input);
+        } finally {
+            release(parser);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package ApproxsimClient.communication;
+
+import java.nio.DoubleBuffer;
+import java.util.List;
+import ApproxsimClient.object.primitive.Timestamp;
+
+/**
+ * The aggregated process variables of the regions of a MultiRegionData at one simulation time. The values are stored in columns of
+ * primitive doubles, one column per process variable and faction holding the value for every region, and are never modified once the
+ * snapshot has been created. Consumers may therefore keep and read a snapshot from any thread without copying or locking.
+ *
+ * @version 1
+ */
+public class RegionPVSnapshot {
+    /** The simulation time the values are valid for. */
+    private final Timestamp mTimestamp;
+
+    /** The number of regions. */
+    private final int mRegions;
+
+    /** The names of the process variables. */
+    private final List<String> mPVs;
+
+    /** The names of the factions, including the all faction. */
+    private final List<String> mFactions;
+
+    /** Maps pv index * number of factions + faction index to a column, or -1 if there is no such column. */
+    private final int[] mColumns;
+
+    /** The values, column by column. */
+    private final double[] mValues;
+
+    /**
+     * Creates a snapshot. The arrays and lists are not copied and must not be modified afterwards.
+     *
+     * @param t The simulation time the values are valid for.
+     * @param regions The number of regions.
+     * @param pvs The names of the process variables.
+     * @param factions The names of the factions.
+     * @param columns Maps pv index * number of factions + faction index to a column, or -1 if there is no such column.
+     * @param values The values, column by column.
+     */
+    RegionPVSnapshot(Timestamp t, int regions, List<String> pvs,
+            List<String> factions, int[] columns, double[] values) {
+        mTimestamp = t;
+        mRegions = regions;
+        mPVs = pvs;
+        mFactions = factions;
+        mColumns = columns;
+        mValues = values;
+    }
+
+    /**
+     * Returns the simulation time the values are valid for.
+     */
+    public Timestamp getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * Returns the number of regions.
+     */
+    public int getRegionCount() {
+        return mRegions;
+    }
+
+    /**
+     * Returns the unmodifiable list of the names of the process variables.
+     */
+    public List<String> getProcessVariables() {
+        return mPVs;
+    }
+
+    /**
+     * Returns the unmodifiable list of the names of the factions, including the all faction.
+     */
+    public List<String> getFactions() {
+        return mFactions;
+    }
+
+    /**
+     * Returns the index of the specified process variable or -1 if there is no such process variable.
+     *
+     * @param pvName The name of the process variable.
+     */
+    public int getPVIndex(String pvName) {
+        return mPVs.indexOf(pvName);
+    }
+
+    /**
+     * Returns the index of the specified faction or -1 if there is no such faction.
+     *
+     * @param factionName The name of the faction.
+     */
+    public int getFactionIndex(String factionName) {
+        return mFactions.indexOf(factionName);
+    }
+
+    /**
+     * Returns the column of the specified process variable and faction, or -1 if there is none.
+     *
+     * @param pv The index of the process variable.
+     * @param faction The index of the faction.
+     */
+    private int column(int pv, int faction) {
+        if (pv < 0 || faction < 0 || pv >= mPVs.size()
+                || faction >= mFactions.size()) {
+            return -1;
+        }
+        return mColumns[pv * mFactions.size() + faction];
+    }
+
+    /**
+     * Returns true if there is a value for the specified process variable and faction.
+     *
+     * @param pv The index of the process variable.
+     * @param faction The index of the faction.
+     */
+    public boolean hasValue(int pv, int faction) {
+        return column(pv, faction) != -1;
+    }
+
+    /**
+     * Returns the value of a process variable for a faction in a region.
+     *
+     * @param region The index of the region, in the order of the MultiRegionData.
+     * @param pv The index of the process variable.
+     * @param faction The index of the faction.
+     * @return The value or NaN if there is no value for the process variable and faction.
+     */
+    public double getValue(int region, int pv, int faction) {
+        int c = column(pv, faction);
+        return (c == -1 ? Double.NaN : mValues[c * mRegions + region]);
+    }
+
+    /**
+     * Returns the value of a process variable for a faction in a region.
+     *
+     * @param region The index of the region, in the order of the MultiRegionData.
+     * @param pvName The name of the process variable.
+     * @param factionName The name of the faction.
+     * @return The value or NaN if there is no value for the process variable and faction.
+     */
+    public double getValue(int region, String pvName, String factionName) {
+        return getValue(region, getPVIndex(pvName),
+                        getFactionIndex(factionName));
+    }
+
+    /**
+     * Returns a read-only view of the values of a process variable for a faction in all regions, without copying.
+     *
+     * @param pv The index of the process variable.
+     * @param faction The index of the faction.
+     * @return The view, positioned at the first region, or null if there is no value for the process variable and faction.
+     */
+    public DoubleBuffer getColumn(int pv, int faction) {
+        int c = column(pv, faction);
+        if (c == -1) {
+            return null;
+        }
+        return DoubleBuffer.wrap(mValues, c * mRegions, mRegions).slice()
+                .asReadOnlyBuffer();
+    }
+}
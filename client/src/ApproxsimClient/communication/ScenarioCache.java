@@ -0,0 +1,165 @@
+package ApproxsimClient.communication;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.WeakReference;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import ApproxsimClient.object.ApproxsimEvent;
+import ApproxsimClient.object.ApproxsimEventListener;
+import ApproxsimClient.object.ApproxsimObject;
+import ApproxsimClient.object.Polygon;
+
+/**
+ * Keeps the encoded xml of a simulation, as sent in an InitializationMessage, so that it does not have to be rebuilt for every message
+ * sending the same simulation. The cache listens to every object in the simulation tree and counts the ApproxsimEvents that may change the
+ * xml as the modification version of the tree. The xml is rebuilt when requested if the version has changed since it was built.
+ *
+ * @version 1
+ */
+public class ScenarioCache implements ApproxsimEventListener {
+    /** The cache of each simulation, weakly keyed so that a cache goes away with its simulation. */
+    private static final Map<ApproxsimObject, ScenarioCache> sCaches = new WeakHashMap<ApproxsimObject, ScenarioCache>();
+
+    /** The simulation. Weakly referenced, since the cache itself is referenced from sCaches. */
+    private final WeakReference<ApproxsimObject> mSimulation;
+
+    /** The modification version of the simulation tree. */
+    private long mVersion = 0;
+
+    /** The modification version the encoded xml was built from, -1 if none. */
+    private long mCachedVersion = -1;
+
+    /** The encoded xml of the simulation. */
+    private byte[] mCached = null;
+
+    /** The number of times the encoded xml has been built. */
+    private int mBuildCount = 0;
+
+    /** The number of times the encoded xml has been requested. */
+    private int mRequestCount = 0;
+
+    /**
+     * Returns the cache of the given simulation, creating it if needed.
+     *
+     * @param simulation The simulation.
+     * @return The cache.
+     */
+    public static ScenarioCache getCache(ApproxsimObject simulation) {
+        synchronized (sCaches) {
+            ScenarioCache cache = sCaches.get(simulation);
+            if (cache == null) {
+                cache = new ScenarioCache(simulation);
+                sCaches.put(simulation, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Creates a cache for the given simulation and starts listening to the simulation tree.
+     *
+     * @param simulation The simulation.
+     */
+    private ScenarioCache(ApproxsimObject simulation) {
+        mSimulation = new WeakReference<ApproxsimObject>(simulation);
+        listenTo(simulation);
+    }
+
+    /**
+     * Adds this cache as listener to an object and all its descendants. The curves of a polygon held packed only are not walked, since
+     * that would create them. Such a polygon changes only through events on the polygon itself, and once its curves are created, changes
+     * to them are passed up as child changed events of the polygon.
+     *
+     * @param object The root of the subtree.
+     */
+    private void listenTo(ApproxsimObject object) {
+        object.removeEventListener(this);
+        object.addEventListener(this);
+        if (object instanceof Polygon && ((Polygon) object).isPacked()) {
+            return;
+        }
+        for (Enumeration<ApproxsimObject> e = object.children(); e
+                .hasMoreElements();) {
+            listenTo(e.nextElement());
+        }
+    }
+
+    /**
+     * Counts events that may change the xml of the simulation and starts listening to objects added to the tree.
+     *
+     * @param event The event.
+     */
+    public void eventOccured(ApproxsimEvent event) {
+        if (event.isSelected() || event.isUnselected()) {
+            return;
+        }
+        if ((event.isObjectAdded() || event.isReplaced())
+                && event.getArgument() instanceof ApproxsimObject) {
+            listenTo((ApproxsimObject) event.getArgument());
+        }
+        if (event.isRemoved() || event.isReplaced()) {
+            ((ApproxsimObject) event.getSource()).removeEventListener(this);
+        }
+        synchronized (this) {
+            mVersion++;
+        }
+    }
+
+    /**
+     * Returns the modification version of the simulation tree, i. e. the number of events received that may have changed its xml.
+     *
+     * @return The version.
+     */
+    public synchronized long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Returns the ISO-8859-1 encoded xml of the simulation element of an InitializationMessage, building it only if the simulation has
+     * changed since the last call. The returned array is shared and must not be modified.
+     *
+     * @return The encoded xml.
+     */
+    public byte[] getBytes() {
+        ApproxsimObject simulation = mSimulation.get();
+        synchronized (this) {
+            mRequestCount++;
+            if (mCached != null && mCachedVersion == mVersion) {
+                return mCached;
+            }
+        }
+
+        // Build outside the lock so that events are not blocked. A change
+        // during the build leaves the version ahead of the result, which is
+        // then rebuilt on the next call.
+        long version = getVersion();
+        StringBuffer b = new StringBuffer();
+        InitializationMessage.simulationXML(simulation, b);
+        byte[] bytes;
+        try {
+            bytes = b.toString().getBytes("ISO-8859-1");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+
+        synchronized (this) {
+            mBuildCount++;
+            mCached = bytes;
+            mCachedVersion = version;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns a string describing how often the cached xml has been used.
+     *
+     * @return The statistics.
+     */
+    public synchronized String getStatistics() {
+        return "requests: " + mRequestCount + ", builds: " + mBuildCount
+                + ", size: " + (mCached == null ? 0 : mCached.length)
+                + " bytes";
+    }
+}
@@ -2,6 +2,7 @@ package ApproxsimClient.communication;
 
 import java.util.Vector;
 import java.util.Hashtable;
+import java.util.LinkedList;
 import java.io.IOException;
 import java.net.ConnectException;
 import java.net.UnknownHostException;
@@ -17,22 +18,44 @@ import java.util.TimerTask;
  * @author Per Alexius
  */
 public class ServerConnection implements Runnable {
-    private static final int sDefaultPrio = 20;
-    private static final int sStepPrio = 25;
-    private static final int sSubscriptionPrio = 50;
-    private static final int sInitPrio = 75;
-    private static final int sTopPrio = 100000;
-
     private int mPort;
     private String mHost;
     private boolean mQuitRuthless = false;
-    private boolean mAlive = false;
+    private volatile boolean mAlive = false;
+    /** Set when the thread running this connection has ended. */
+    private volatile boolean mFinished = false;
     private XMLHandler mXMLHandler;
     private ApproxsimSocket mSocket = null;
-    private PriorityQueue<ApproxsimMessage> mPQ = new PriorityQueue<ApproxsimMessage>();
+    private LaneQueue<ApproxsimMessage> mPQ = new LaneQueue<ApproxsimMessage>(
+            ApproxsimMessage.PRIORITIES);
     private Client mClient;
     private int messTreshold = 2;
-    private Hashtable mPrioHash = new Hashtable();
+
+    /**
+     * The encoding to request for the high rate messages when connecting, see BinaryCodec. Defaults to the ENCODING system property.
+     */
+    private String mRequestedEncoding = System.getProperty("ENCODING");
+
+    /** True if the server has agreed to use the binary encoding. */
+    private boolean mBinary = false;
+
+    /**
+     * The maximum number of messages that may be sent before the response to the first of them has been received. Defaults to the WINDOW
+     * system property or 1, i.e. stop-and-wait, if it isn't set.
+     */
+    private int mWindow = Integer.getInteger("WINDOW", 1).intValue();
+
+    /**
+     * Messages that have been sent but whose response has not yet been received, in the order they were sent. Also used as lock for the
+     * pipelining state.
+     */
+    private LinkedList<ApproxsimMessage> mInFlight = new LinkedList<ApproxsimMessage>();
+
+    /** Set when the sender is done and the receiver should stop once all messages in flight have been handled. */
+    private boolean mStopReceiving = false;
+
+    /** The error that stopped the receiver or null if it has not failed. */
+    private IOException mReceiveError = null;
 
     /**
      * Indicates whether the ServerConnection is connected or not.
@@ -51,14 +74,6 @@ public class ServerConnection implements Runnable {
         mSocket = new ApproxsimSocket();
         mSocket.id(id);
         mClient = client;
-
-        // Set up message priorities
-        mPrioHash.put("DisconnectMessage", new Integer(sTopPrio));
-        mPrioHash.put("InitializationMessage", new Integer(sInitPrio));
-        mPrioHash.put("SetPropertyMessage", new Integer(sTopPrio));
-        mPrioHash.put("StepMessage", new Integer(sStepPrio));
-        mPrioHash.put("SubscriptionMessage", new Integer(sSubscriptionPrio));
-        mPrioHash.put("UpdateMessage", new Integer(sTopPrio));
     }
 
     public ServerConnection(Client client, XMLHandler xh, ApproxsimSocket socket) {
@@ -70,14 +85,6 @@ public class ServerConnection implements Runnable {
 
         mAlive = true;
         setIsConnected(true);
-
-        // Set up message priorities
-        mPrioHash.put("DisconnectMessage", new Integer(sTopPrio));
-        mPrioHash.put("InitializationMessage", new Integer(sInitPrio));
-        mPrioHash.put("SetPropertyMessage", new Integer(sTopPrio));
-        mPrioHash.put("StepMessage", new Integer(sStepPrio));
-        mPrioHash.put("SubscriptionMessage", new Integer(sSubscriptionPrio));
-        mPrioHash.put("UpdateMessage", new Integer(sTopPrio));
     }
 
     /**
@@ -87,6 +94,47 @@ public class ServerConnection implements Runnable {
         this(null, new XMLHandler(), socket);
     }
 
+    /**
+     * Sets the encoding to request for the high rate messages. Must be called before the connection is started in order to have any effect.
+     * 
+     * @param encoding BinaryCodec.BINARY, BinaryCodec.XML or null to not request any encoding at all.
+     */
+    public void setRequestedEncoding(String encoding) {
+        mRequestedEncoding = encoding;
+    }
+
+    /**
+     * Checks if the binary encoding is used for the high rate messages on this connection.
+     * 
+     * @return True if the server has agreed to use the binary encoding, false if xml is used.
+     */
+    public boolean isBinary() {
+        return mBinary;
+    }
+
+    /**
+     * Sets the maximum number of messages that may be in flight at once. With a window of 1 each message is sent only after the response to
+     * the previous message has been handled. With a larger window messages are sent as soon as they are dequeued, which hides the round trip
+     * time to a remote server. The server handles the messages of a session in the order they are received and the frame id carries the
+     * session id rather than a message id, so each response is matched with the oldest message in flight. Must be called before the
+     * connection is started in order to have any effect.
+     * 
+     * @param window The window size, at least 1.
+     */
+    public void setWindow(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window < 1");
+        }
+        mWindow = window;
+    }
+
+    /**
+     * Returns the maximum number of messages that may be in flight at once.
+     */
+    public int getWindow() {
+        return mWindow;
+    }
+
     /** Creates a thread that runs this server connection. */
     public void start() {
         (new Thread(this, getClass().getName())).start();
@@ -94,33 +142,33 @@ public class ServerConnection implements Runnable {
 
     /**
      * Enqueues a message in the priorityqueue. The message will be sent by the ServerConnection thread when it reaches the front of the
-     * PriorityQueue. This method is non-blocking.
+     * send queue. This method is non-blocking.
      * 
      * @param msg The message to be sent.
      */
     public void send(ApproxsimMessage msg) {
-        Integer prio = (Integer) mPrioHash.get(msg.getTypeAsString());
-        mPQ.enqueue(msg, prio == null ? sDefaultPrio : prio.intValue());
+        mPQ.enqueue(msg, msg.getPriority());
     }
 
     /**
      * Enqueues a message in the priorityqueue. The message will be sent by the ServerConnection thread when it reaches the front of the
-     * PriorityQueue. This method is blocking and does not return until the XMLHandler has signaled that it has handled the contents of the
+     * send queue. This method is blocking and does not return until the XMLHandler has signaled that it has handled the contents of the
      * response to the sent message. !!! Notice that a deadlock situation will occur if the thread calling this method owns an object needed
      * to complete the sending, receiving and handling of the message and its response, for example the Client object.
      * 
      * @param msg The message to be sent.
      */
     public void blockingSend(ApproxsimMessage msg) throws ServerException {
-        Integer prio = (Integer) mPrioHash.get(msg.getTypeAsString());
         class Blocker extends DefaultApproxsimMessageListener {
             Object block = new Object();
             ServerException error = null;
+            boolean done = false;
 
             public void messageHandled(ApproxsimMessageEvent e, Object reply) {
                 Debug.err.println(e.getMessage().getTypeAsString()
                         + " SC handled");
                 synchronized (getBlock()) {
+                    done = true;
                     getBlock().notifyAll();
                 }
             }
@@ -131,6 +179,7 @@ public class ServerConnection implements Runnable {
                 this.error = new ServerException("Error sending "
                         + e.getMessage().getTypeAsString());
                 synchronized (getBlock()) {
+                    done = true;
                     getBlock().notifyAll();
                 }
             }
@@ -144,12 +193,25 @@ public class ServerConnection implements Runnable {
             }
         };
 
+        if (mFinished) {
+            // Nobody would ever dequeue the message.
+            throw new ServerException("Connection to " + mHost + ":" + mPort
+                    + " is closed");
+        }
+
         Blocker listener = new Blocker();
         synchronized (listener.getBlock()) {
             msg.addEventListener(listener);
-            mPQ.enqueue(msg, prio == null ? sDefaultPrio : prio.intValue());
+            mPQ.enqueue(msg, msg.getPriority());
+            if (mFinished) {
+                // The connection finished after the check above and may
+                // already have failed the queued messages.
+                failQueued();
+            }
             try {
-                listener.getBlock().wait();
+                while (!listener.done) {
+                    listener.getBlock().wait();
+                }
             } catch (InterruptedException e) {
                 throw new ServerException(e.getMessage());
             }
@@ -178,7 +240,7 @@ public class ServerConnection implements Runnable {
      * Closes this connection and eventually terminates the thread running it.
      */
     public void disconnect() {
-        mPQ.enqueue(null, sTopPrio);
+        mPQ.enqueue(null, ApproxsimMessage.TOP_PRIORITY);
     }
 
     /**
@@ -197,7 +259,7 @@ public class ServerConnection implements Runnable {
             }
         }, timeout);
 
-        mPQ.enqueue(null, sTopPrio);
+        mPQ.enqueue(null, ApproxsimMessage.TOP_PRIORITY);
     }
 
     /**
@@ -238,9 +300,15 @@ public class ServerConnection implements Runnable {
         if (!isConnected()) {
             mSocket.connect(mHost, mPort);
             SubscriptionCounter.updateNrOfSendedMessages();
-            sendRecvHandle(new ConnectMessage());
+            byte[] reply = sendRecvHandle(new ConnectMessage(mRequestedEncoding));
             SubscriptionCounter.updateNrOfReceivedMessages();
 
+            // Fall back to xml unless the server explicitly agreed. The
+            // approxsim server never does and always answers with xml.
+            mBinary = BinaryCodec.BINARY.equals(mRequestedEncoding)
+                    && BinaryCodec.BINARY.equals(BinaryCodec
+                            .getEncoding(reply));
+
             mAlive = true;
             setIsConnected(true);
         }
@@ -251,8 +319,9 @@ public class ServerConnection implements Runnable {
      * handle firing of events.
      * 
      * @param msg The message to be sent.
+     * @return The contents of the received response.
      */
-    private void sendRecvHandle(ApproxsimMessage msg) throws IOException {
+    private byte[] sendRecvHandle(ApproxsimMessage msg) throws IOException {
         try {
             // For time step slider
 //                while (msg instanceof StepMessage &&
@@ -266,52 +335,168 @@ public class ServerConnection implements Runnable {
 //                     }
 //                }
 
-            mSocket.sendMessage(msg.toXML());
+            sendOnly(msg);
 
             // For time step slider
 //                if (msg instanceof StepMessage) {
 //                     timeForLastSentTimestep = System.currentTimeMillis();
 //                }
 
-            msg.fireMessageSent();
-
-            String xml = mSocket.recvMessage();
-            msg.fireMessageReceived();
-            mXMLHandler.handle(xml, msg);
+            byte[] reply = recvHandle(msg);
 
             // For time step slider
 //                if (msg instanceof StepMessage) {
 //                     tsdf.registerStepTime(System.currentTimeMillis() - timeForLastSentTimestep);
 //                }
+            return reply;
         } catch (IOException e) {
+            // Not alive before the error is fired, so that listeners can tell a lost connection from an error reply.
+            mAlive = false;
             msg.fireErrorOccurred();
             throw e;
         }
     }
 
     /**
-     * Opens a connection to a approxsim server, sends the connect message and blocks on the queue where messages to be sent will be
-     * enqueued. If null is enqueued - send a disconnect message or quit ruthless (depending on wheter disconnect or kill has been called).
+     * Sends a message in the agreed encoding and fires messageSent. Does not fire errorOccurred.
+     * 
+     * @param msg The message to be sent.
      */
-    public void run() {
-        // For time step slider
-//          tsdf = TimeSliderDebugFrame.openTimeSliderDebugFrame();
+    private void sendOnly(ApproxsimMessage msg) throws IOException {
+        byte[] binary = (mBinary ? msg.toBinary() : null);
+        if (binary != null) {
+            mSocket.sendMessage(binary);
+        } else {
+            mSocket.sendMessage(msg.toXMLParts());
+        }
+        msg.fireMessageSent();
+    }
 
-        ApproxsimMessage msg;
-        try {
-            // Init
-            connect();
+    /**
+     * Receives the response to a message, fires messageReceived and forwards the response to the XMLHandler. Does not fire errorOccurred.
+     * 
+     * @param msg The message the response belongs to.
+     * @return The contents of the received response.
+     */
+    private byte[] recvHandle(ApproxsimMessage msg) throws IOException {
+        long id = mSocket.id();
+        byte[] reply = mSocket.recvMessageBytes();
+        if (id != -1 && mSocket.id() != id) {
+            throw new IOException("Response for session " + mSocket.id()
+                    + " received on session " + id);
+        }
+        msg.fireMessageReceived();
+        mXMLHandler.handle(reply, msg);
+        return reply;
+    }
 
-            // Running
+    /**
+     * Sends the messages of the queue without waiting for the responses, as long as there are less than mWindow messages in flight. The
+     * responses are received and handled by a Receiver in a separate thread. Returns when null has been dequeued and all responses have been
+     * handled.
+     */
+    private void runPipelined() throws IOException {
+        mStopReceiving = false;
+        mReceiveError = null;
+        Thread receiver = new Thread(new Receiver(), getClass().getName()
+                + "Receiver");
+        receiver.start();
+
+        try {
             while (true) {
-                msg = mPQ.blockingDequeue();
+                ApproxsimMessage msg = mPQ.blockingDequeue();
                 if (msg == null) {
                     break;
                 }
                 SubscriptionCounter.updateNrOfMessInSendingQueue1(mPQ.size());
                 SubscriptionCounter.updateNrOfSendedMessages();
 
-                sendRecvHandle(msg);
+                synchronized (mInFlight) {
+                    while (mInFlight.size() >= mWindow && mReceiveError == null) {
+                        waitInFlight();
+                    }
+                    if (mReceiveError != null) {
+                        msg.fireErrorOccurred();
+                        break;
+                    }
+                    // Added before sending since the response may arrive before sendOnly returns.
+                    mInFlight.addLast(msg);
+                    mInFlight.notifyAll();
+                }
+                // On failure the receiver fails as well and fires errorOccurred for all messages in flight.
+                sendOnly(msg);
+            }
+
+            synchronized (mInFlight) {
+                while (!mInFlight.isEmpty() && mReceiveError == null) {
+                    waitInFlight();
+                }
+            }
+        } finally {
+            synchronized (mInFlight) {
+                mStopReceiving = true;
+                mInFlight.notifyAll();
+            }
+        }
+
+        if (mReceiveError != null) {
+            throw mReceiveError;
+        }
+    }
+
+    /**
+     * Waits for the state of mInFlight to change. The caller must own the lock of mInFlight.
+     */
+    private void waitInFlight() throws IOException {
+        try {
+            mInFlight.wait();
+        } catch (InterruptedException e) {
+            throw new java.io.InterruptedIOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Receives and handles the responses to the messages in flight, in the order the messages were sent, when pipelining.
+     */
+    private class Receiver implements Runnable {
+        public void run() {
+            while (true) {
+                ApproxsimMessage msg;
+                synchronized (mInFlight) {
+                    while (mInFlight.isEmpty() && !mStopReceiving) {
+                        try {
+                            mInFlight.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (mInFlight.isEmpty()) {
+                        return;
+                    }
+                    msg = mInFlight.getFirst();
+                }
+
+                try {
+                    recvHandle(msg);
+                } catch (IOException e) {
+                    mAlive = false;
+                    synchronized (mInFlight) {
+                        mReceiveError = e;
+                        while (!mInFlight.isEmpty()) {
+                            mInFlight.removeFirst().fireErrorOccurred();
+                        }
+                        mInFlight.notifyAll();
+                    }
+                    // Wake the sender if it is waiting for more messages.
+                    quitRuthlessly();
+                    mPQ.enqueue(null, ApproxsimMessage.TOP_PRIORITY);
+                    return;
+                }
+
+                synchronized (mInFlight) {
+                    mInFlight.removeFirst();
+                    mInFlight.notifyAll();
+                }
 
                 if (thresholdReached() && mClient != null) {
                     mClient.setNotify();
@@ -319,6 +504,43 @@ public class ServerConnection implements Runnable {
 
                 SubscriptionCounter.updateNrOfReceivedMessages();
             }
+        }
+    }
+
+    /**
+     * Opens a connection to a approxsim server, sends the connect message and blocks on the queue where messages to be sent will be
+     * enqueued. If null is enqueued - send a disconnect message or quit ruthless (depending on wheter disconnect or kill has been called).
+     */
+    public void run() {
+        // For time step slider
+//          tsdf = TimeSliderDebugFrame.openTimeSliderDebugFrame();
+
+        ApproxsimMessage msg;
+        try {
+            // Init
+            connect();
+
+            // Running
+            if (mWindow > 1) {
+                runPipelined();
+            } else {
+                while (true) {
+                    msg = mPQ.blockingDequeue();
+                    if (msg == null) {
+                        break;
+                    }
+                    SubscriptionCounter.updateNrOfMessInSendingQueue1(mPQ.size());
+                    SubscriptionCounter.updateNrOfSendedMessages();
+
+                    sendRecvHandle(msg);
+
+                    if (thresholdReached() && mClient != null) {
+                        mClient.setNotify();
+                    }
+
+                    SubscriptionCounter.updateNrOfReceivedMessages();
+                }
+            }
 
             if (!mQuitRuthless) {
                 // Cleanup
@@ -346,10 +568,9 @@ public class ServerConnection implements Runnable {
             e.printStackTrace();
             sendErrorMessage("general", "IOException", "Unknown");
         } finally {
-            while (!mPQ.empty()) {
-                ApproxsimMessage m = mPQ.dequeue();
-                if (m != null) m.fireErrorOccurred();
-            }
+            mAlive = false;
+            mFinished = true;
+            failQueued();
         }
 
         // Close socket if opened.
@@ -358,6 +579,17 @@ public class ServerConnection implements Runnable {
         }
     }
 
+    /**
+     * Fires errorOccurred for the messages left in the queue once the connection has finished. Each message is failed by the thread that
+     * dequeues it, so a message enqueued concurrently is failed exactly once.
+     */
+    private void failQueued() {
+        while (!mPQ.empty()) {
+            ApproxsimMessage m = mPQ.dequeue();
+            if (m != null) m.fireErrorOccurred();
+        }
+    }
+
     /**
      * Sends the error message to mClient.
      * 
@@ -381,6 +613,13 @@ public class ServerConnection implements Runnable {
         return mSocket;
     }
 
+    /**
+     * Returns the server of this connection as host:port, also before the connection has been established.
+     */
+    public String getAddress() {
+        return mHost + ":" + mPort;
+    }
+
     /**
      * Returns the xmlhandler of this connection.
      */
@@ -34,6 +34,15 @@ public class SetPropertyMessage extends ApproxsimMessage {
         return "SetPropertyMessage";
     }
 
+    /**
+     * Returns the priority with which messages of this class are sent.
+     * 
+     * @return TOP_PRIORITY.
+     */
+    public int getPriority() {
+        return TOP_PRIORITY;
+    }
+
     /**
      * Creates an XML representation of the body of this object.
      * 
@@ -35,6 +35,15 @@ public class StepMessage extends ApproxsimMessage {
         return "StepMessage";
     }
 
+    /**
+     * Returns the priority with which messages of this class are sent.
+     * 
+     * @return STEP_PRIORITY.
+     */
+    public int getPriority() {
+        return STEP_PRIORITY;
+    }
+
     /**
      * Creates an XML representation of the body of this object.
      * 
@@ -48,4 +57,13 @@ public class StepMessage extends ApproxsimMessage {
                 .append("</detached>");
         return b;
     }
+
+    /**
+     * Creates the binary representation of this message.
+     * 
+     * @return The binary representation of this message.
+     */
+    public byte[] toBinary() {
+        return BinaryCodec.encodeStep(mSteps, mDetached);
+    }
 }
@@ -0,0 +1,171 @@
+package ApproxsimClient.communication;
+
+import org.apache.xerces.parsers.DOMParser;
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLParserConfiguration;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import ApproxsimClient.ApproxsimConstants;
+import ApproxsimClient.object.primitive.Timestamp;
+
+/**
+ * A DOMParser that hands the contents of SubscribedDataMessages and UpdateClientMessages to the subscriptions while the message is still
+ * being parsed. Each subscribedData element (and the update element) is handled as soon as it has been parsed and is then removed from the
+ * document, so the complete message never exists as a DOM tree. The Base64 contents of layer data is decoded directly into the subscribed
+ * LayerData as the characters are delivered by the scanner and never becomes a text node. All other messages are parsed into a DOM tree as
+ * usual.
+ * <p>
+ * Note that if the message turns out to be invalid, the subscriptions that preceded the error have already been updated.
+ *
+ * @version 1
+ */
+class SubscribedDataParser extends DOMParser {
+    /** Feature id for deferred node expansion, which must be off since the tree is modified while parsing. */
+    private static final String DEFER_NODE_EXPANSION = "http://apache.org/xml/features/dom/defer-node-expansion";
+
+    /** The XMLHandler that owns this parser. */
+    private XMLHandler mHandler;
+
+    /** Depth of the current element, where the root element has depth 1. */
+    private int mDepth;
+
+    /** True if the current message is one whose subscribed data should be streamed. */
+    private boolean mStreaming;
+
+    /** True if the simulation time of the current message is a dateTime, false if it is milliseconds. */
+    private boolean mDateTime;
+
+    /** The simulation time of the current message or null if not parsed yet. */
+    private Timestamp mTimestamp;
+
+    /** The layer the current subscribedData element refers to or null if it isn't layer data. */
+    private LayerData mLayer;
+
+    /** The decoder for the layerData element of the current subscribedData element or null if there is none. */
+    private Base64DoubleDecoder mDecoder;
+
+    /** True while inside a layerData element that is being decoded. */
+    private boolean mInLayerData;
+
+    /**
+     * Creates a parser using the default configuration.
+     *
+     * @param handler The XMLHandler that owns this parser.
+     */
+    SubscribedDataParser(XMLHandler handler) {
+        super();
+        init(handler);
+    }
+
+    /**
+     * Creates a parser using the provided configuration.
+     *
+     * @param config The parser configuration.
+     * @param handler The XMLHandler that owns this parser.
+     */
+    SubscribedDataParser(XMLParserConfiguration config, XMLHandler handler) {
+        super(config);
+        init(handler);
+    }
+
+    /**
+     * Common initialization.
+     *
+     * @param handler The XMLHandler that owns this parser.
+     */
+    private void init(XMLHandler handler) {
+        mHandler = handler;
+        try {
+            setFeature(DEFER_NODE_EXPANSION, false);
+        } catch (org.xml.sax.SAXException e) {
+            throw new AssertionError(e.toString());
+        }
+    }
+
+    public void startElement(QName element, XMLAttributes attributes,
+            Augmentations augs) throws XNIException {
+        mDepth++;
+        if (mDepth == 1) {
+            String type = XMLHandler.removeNamespace(String.valueOf(attributes
+                    .getValue(ApproxsimConstants.xmlnsNamespace, "type")));
+            mDateTime = type.equals("UpdateClientMessage");
+            mStreaming = mDateTime || type.equals("SubscribedDataMessage");
+            mTimestamp = null;
+            mLayer = null;
+            mDecoder = null;
+        } else if (mStreaming && mDepth == 2
+                && element.localpart.equals("subscribedData")) {
+            mLayer = null;
+            SubscriptionHandler sh = mHandler.getSubscriptionHandler();
+            String id = attributes.getValue("id");
+            String type = XMLHandler.removeNamespace(String.valueOf(attributes
+                    .getValue(ApproxsimConstants.xmlnsNamespace, "type")));
+            // Deltas are applied through the DOM since their values are
+            // not a complete layer.
+            if (sh != null && id != null
+                    && type.equals("SubscribedLayerData")) {
+                mLayer = sh.getLayerData(Integer.parseInt(id.trim()));
+            }
+        } else if (mLayer != null && mDepth == 3
+                && element.localpart.equals("layerData")) {
+            mDecoder = mLayer.startUpdate();
+            mInLayerData = true;
+        }
+        super.startElement(element, attributes, augs);
+    }
+
+    public void characters(XMLString text, Augmentations augs)
+            throws XNIException {
+        if (mInLayerData) {
+            mDecoder.decode(text.ch, text.offset, text.length);
+        } else {
+            super.characters(text, augs);
+        }
+    }
+
+    public void endElement(QName element, Augmentations augs)
+            throws XNIException {
+        super.endElement(element, augs);
+        if (mInLayerData && mDepth == 3) {
+            mInLayerData = false;
+        } else if (mStreaming && mDepth == 2) {
+            // The element just ended is the last child of the root.
+            Node root = fCurrentNode;
+            Element elem = (Element) root.getLastChild();
+            String name = element.localpart;
+            if (name.equals("simulationTime")) {
+                mTimestamp = XMLHandler.getSimulationTime(elem, mDateTime);
+            } else if (name.equals("update")) {
+                mHandler.handleStreamedUpdate(elem, mTimestamp);
+                root.removeChild(elem);
+            } else if (name.equals("subscribedData")) {
+                if (mLayer != null) {
+                    if (mDecoder != null) {
+                        mLayer.finishUpdate(mDecoder, mTimestamp,
+                                            LayerData.getFrame(elem));
+                    }
+                } else if (mHandler.getSubscriptionHandler() != null) {
+                    mHandler.getSubscriptionHandler()
+                            .handleSubscribedData(elem, mTimestamp);
+                }
+                mLayer = null;
+                mDecoder = null;
+                root.removeChild(elem);
+            }
+        }
+        mDepth--;
+    }
+
+    public void reset() throws XNIException {
+        super.reset();
+        mDepth = 0;
+        mStreaming = false;
+        mLayer = null;
+        mDecoder = null;
+        mInLayerData = false;
+    }
+}
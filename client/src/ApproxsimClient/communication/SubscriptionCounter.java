@@ -23,6 +23,20 @@ public class SubscriptionCounter {
      * Number of messages in the second sending queue.
      */
     private static int messNrInSendingQueue2 = 0;
+    /**
+     * False if the progress bar should be left alone, as when running without a user interface.
+     */
+    private static boolean enabled = true;
+
+    /**
+     * Sets whether the progress bar in ClientMainFrame should be updated. Disabling it keeps ClientMainFrame, and with it Swing, from being
+     * loaded by the communication.
+     * 
+     * @param flag false to leave the progress bar alone.
+     */
+    public static void setEnabled(boolean flag) {
+        enabled = flag;
+    }
 
     /**
      * Update the number of messages in the first sending queue.
@@ -63,6 +77,9 @@ public class SubscriptionCounter {
      * @param secs number of seconds before the timer starts.
      */
     public static void startTimer(double secs) {
+        if (!enabled) {
+            return;
+        }
         timer = new Timer();
         int totalNrOfMessages = messNrInSendingQueue1 + messNrInSendingQueue2;
         if (totalNrOfMessages <= 1) {
@@ -88,7 +105,7 @@ public class SubscriptionCounter {
      * Ends the timer and sets the progress bar in ClientMainFrame to zero.
      */
     public static void endTimer() {
-        if (timer != null) {
+        if (enabled && timer != null) {
             timer.cancel();
             ClientMainFrame.activateProgressBar(false, "");
         }
@@ -1,7 +1,9 @@
 package ApproxsimClient.communication;
 
+import java.nio.ByteBuffer;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Vector;
 import ApproxsimClient.Debug;
 import ApproxsimClient.object.primitive.Timestamp;
 
@@ -17,15 +19,16 @@ public class SubscriptionHandler implements Runnable {
     private static final int sMaxNumSubsPerMsg = 400;
 
     /**
-     * The time to wait after receiving a subscription before sending a subscription message.
+     * The maximum time to wait after receiving a subscription before sending a subscription message.
      */
     private static final long sDelayms = 100;
 
     /** Set to true if we should quit. */
     private boolean mQuit = false;
 
-    /** The queue in which incomming subscriptions are stored. */
-    private TSQueue mQueue = new TSQueue();
+    /** The queue in which incomming subscriptions are stored until they are sent in a batch. */
+    private CoalescingQueue mQueue = new CoalescingQueue(sMaxNumSubsPerMsg,
+            sDelayms);
 
     /** Maps subscription id to the subscription itself. */
     private Hashtable mSubs = new Hashtable();
@@ -94,6 +97,10 @@ public class SubscriptionHandler implements Runnable {
             sosub.setSubscriptionHandler(this);
             mSubs.put(new Integer(sub.id()), sub);
             mQueue.enqueue(sub);
+        } else if (sub instanceof LayerSubscription) {
+            ((LayerSubscription) sub).setSubscriptionHandler(this);
+            mSubs.put(new Integer(sub.id()), sub);
+            mQueue.enqueue(sub);
         } else {
             mSubs.put(new Integer(sub.id()), sub);
             mQueue.enqueue(sub);
@@ -113,6 +120,9 @@ public class SubscriptionHandler implements Runnable {
             ApproxsimObjectSubscription sosub = (ApproxsimObjectSubscription) sub;
             sosub.setSubscriptionHandler(this);
             mSubs.put(new Integer(sub.id()), sub);
+        } else if (sub instanceof LayerSubscription) {
+            ((LayerSubscription) sub).setSubscriptionHandler(this);
+            mSubs.put(new Integer(sub.id()), sub);
         } else {
             mSubs.put(new Integer(sub.id()), sub);
         }
@@ -139,48 +149,40 @@ public class SubscriptionHandler implements Runnable {
      * The main loop.
      */
     public void run() {
-        Subscription sub;
-        SubscriptionMessage msg = new SubscriptionMessage(sMaxNumSubsPerMsg);
-        long firstDequeueTime = 0;
-
         while (!mQuit) {
-            if (msg.isEmpty()) {
-                sub = (Subscription) mQueue.blockingDequeue();
-                if (mQuit) {
-                    break;
-                }
-                msg.addSubscription(sub);
-                SubscriptionCounter.updateNrOfMessInSendingQueue2(msg.size());
-                firstDequeueTime = System.currentTimeMillis();
-            } else {
-                while (System.currentTimeMillis() - firstDequeueTime < sDelayms
-                        && msg.size() < sMaxNumSubsPerMsg && !mQuit) {
-                    sub = (Subscription) mQueue.dequeue();
-                    if (sub != null) {
-                        msg.addSubscription(sub);
-                    }
-                    SubscriptionCounter.updateNrOfMessInSendingQueue2(msg
-                            .size());
-                }
-                if (mQuit) {
-                    break;
-                }
-
-                // Send
-                if (mSC != null) {
-                    mSC.send(msg);
-                    msg = new SubscriptionMessage(sMaxNumSubsPerMsg);
-                } else {
-                    System.err
-                            .println("No ServerConnection in SubscriptionHandler!");
-                    mQuit = true;
-                }
+            Vector batch = mQueue.takeBatch();
+            if (mQuit) {
+                break;
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            SubscriptionMessage msg = new SubscriptionMessage(sMaxNumSubsPerMsg);
+            for (int i = 0; i < batch.size(); i++) {
+                msg.addSubscription((Subscription) batch.get(i));
             }
             SubscriptionCounter.updateNrOfMessInSendingQueue2(msg.size());
+
+            // Send
+            if (mSC != null) {
+                mSC.send(msg);
+            } else {
+                System.err.println("No ServerConnection in SubscriptionHandler!");
+                mQuit = true;
+            }
+            SubscriptionCounter.updateNrOfMessInSendingQueue2(0);
         }
+        Debug.err.println("SubscriptionHandler: " + getBatchStatistics());
         disconnectSubscriptionsFromObjects();
     }
 
+    /**
+     * Returns a one line summary of the size and latency of the subscription messages sent so far, see CoalescingQueue.getStatistics.
+     */
+    public String getBatchStatistics() {
+        return mQueue.getStatistics();
+    }
+
     /**
      * Handle the data contained in the provided Element.
      * 
@@ -202,4 +204,36 @@ public class SubscriptionHandler implements Runnable {
                     + n.getAttribute("xsi:type") + "' with id " + id);
         }
     }
+
+    /**
+     * Returns the LayerData of the layer subscription with the specified id.
+     * 
+     * @param id The id of the subscription.
+     * @return The LayerData or null if there is no layer subscription with that id.
+     */
+    public LayerData getLayerData(int id) {
+        Subscription sub = (Subscription) mSubs.get(new Integer(id));
+        if (sub instanceof LayerSubscription) {
+            return ((LayerSubscription) sub).getLayerData();
+        }
+        return null;
+    }
+
+    /**
+     * Handle layer data read from a binary message.
+     * 
+     * @param id The id of the subscription the data belongs to.
+     * @param in The buffer positioned at the first value. Positioned after the last value on return.
+     * @param count The number of values in the buffer.
+     * @param t The simulation time for which the data is valid.
+     */
+    public void handleLayerData(int id, ByteBuffer in, int count, Timestamp t) {
+        Subscription sub = (Subscription) mSubs.get(new Integer(id));
+        if (sub instanceof LayerSubscription) {
+            ((LayerSubscription) sub).update(in, count, t);
+        } else {
+            Debug.err.println("Can't find layer subscription with id " + id);
+            in.position(in.position() + count * 8);
+        }
+    }
 }
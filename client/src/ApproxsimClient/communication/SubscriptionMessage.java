@@ -67,6 +67,15 @@ public class SubscriptionMessage extends ApproxsimMessage {
         return "SubscriptionMessage";
     }
 
+    /**
+     * Returns the priority with which messages of this class are sent.
+     * 
+     * @return SUBSCRIPTION_PRIORITY.
+     */
+    public int getPriority() {
+        return SUBSCRIPTION_PRIORITY;
+    }
+
     /**
      * Creates an XML representation of the body of this object.
      * 
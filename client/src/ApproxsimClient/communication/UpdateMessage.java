@@ -44,6 +44,15 @@ public class UpdateMessage extends ApproxsimMessage {
         return "UpdateServerMessage";
     }
 
+    /**
+     * Returns the priority with which messages of this class are sent.
+     * 
+     * @return TOP_PRIORITY.
+     */
+    public int getPriority() {
+        return TOP_PRIORITY;
+    }
+
     /**
      * Creates an XML representation of the body of this object.
      * 
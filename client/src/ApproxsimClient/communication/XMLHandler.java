@@ -1,21 +1,19 @@
 package ApproxsimClient.communication;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.StringReader;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.Set;
 import java.util.Vector;
 import org.apache.xerces.impl.Constants;
 import org.apache.xerces.parsers.DOMParser;
-import org.apache.xerces.parsers.IntegratedParserConfiguration;
-import org.apache.xerces.parsers.XMLGrammarPreparser;
-import org.apache.xerces.util.SymbolTable;
-import org.apache.xerces.util.XMLGrammarPoolImpl;
-import org.apache.xerces.xni.grammars.XMLGrammarDescription;
-import org.apache.xerces.xni.parser.XMLInputSource;
-import org.apache.xerces.xni.parser.XMLParserConfiguration;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.TypeInfo;
@@ -28,8 +26,6 @@ import ApproxsimClient.object.primitive.Timestamp;
 import ApproxsimClient.object.type.TypeFactory;
 import ApproxsimClient.object.type.Type;
 import ApproxsimClient.ApproxsimConstants;
-import ApproxsimClient.LSJarXSDResolver;
-import org.apache.xerces.util.XMLResourceIdentifierImpl;
 
 // For printNode only
 import org.w3c.dom.bootstrap.DOMImplementationRegistry;
@@ -76,6 +72,18 @@ public class XMLHandler implements Runnable {
     /** The SubscriptionHandler. */
     private SubscriptionHandler mSH;
 
+    /** True if the parser uses the cached schema and thus can validate. */
+    private boolean mCanValidate;
+
+    /** True if the parser currently validates against the schema. */
+    private boolean mValidating;
+
+    /**
+     * The types of the messages that are parsed without validation, without namespace prefix. Initialized from the comma separated list
+     * of the system property UNVALIDATED_MESSAGES, e.g. "SubscribedDataMessage,UpdateClientMessage".
+     */
+    private static Set<String> sUnvalidatedTypes = createUnvalidatedTypes();
+
     /**
      * Constructor. Creates and initializes the DOMParser.
      * 
@@ -83,53 +91,117 @@ public class XMLHandler implements Runnable {
      * @param grammar The name of the schema file to use for validation.
      */
     public XMLHandler(Client client, String grammar) {
-        boolean validate = true;
         mClient = client;
 
         if (!(grammar == null)) {
-            SymbolTable sym = new SymbolTable(2039);
-            XMLGrammarPreparser preparser = new XMLGrammarPreparser(sym);
-            XMLGrammarPoolImpl grammarPool = new XMLGrammarPoolImpl();
-            preparser.registerPreparser(XMLGrammarDescription.XML_SCHEMA, null);
-            preparser.setProperty(GRAMMAR_POOL, grammarPool);
-            preparser.setFeature(NAMESPACES_FEATURE_ID, true);
-            preparser.setFeature(VALIDATION_FEATURE_ID, validate);
-            preparser.setFeature(SCHEMA_VALIDATION_FEATURE_ID, validate);
-            preparser.setFeature(SCHEMA_FULL_CHECKING_FEATURE_ID, validate);
-            try {
-                preparser.setEntityResolver(new LSJarXSDResolver(preparser
-                        .getEntityResolver()));
-                XMLInputSource source = preparser.getEntityResolver()
-                        .resolveEntity(new XMLResourceIdentifierImpl(null,
-                                               grammar, null, null));
-                preparser.preparseGrammar(XMLGrammarDescription.XML_SCHEMA,
-                                          source);
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.exit(1);
-            }
-            XMLParserConfiguration parserConfiguration = new IntegratedParserConfiguration(
-                    sym, grammarPool);
-            parserConfiguration.setEntityResolver(new LSJarXSDResolver(
-                    parserConfiguration.getEntityResolver()));
-            // Now must reset features, unfortunately:
-            parserConfiguration.setFeature(NAMESPACES_FEATURE_ID, true);
-            parserConfiguration.setFeature(VALIDATION_FEATURE_ID, validate);
-            parserConfiguration.setFeature(SCHEMA_VALIDATION_FEATURE_ID,
-                                           validate);
-            parserConfiguration.setFeature(SCHEMA_FULL_CHECKING_FEATURE_ID,
-                                           validate);
-
             if (System.getProperty("os.name").matches("Windows.*")) {
-                mParser = new DOMParser();
+                mParser = new SubscribedDataParser(this);
             } else {
-                mParser = new DOMParser(parserConfiguration);
+                mParser = new SubscribedDataParser(
+                        GrammarCache.createConfiguration(grammar, true), this);
+                mCanValidate = true;
+                mValidating = true;
             }
         } else {
             Debug.err.println("No grammar!");
         }
     }
 
+    /**
+     * Returns the initial set of message types parsed without validation.
+     */
+    private static Set<String> createUnvalidatedTypes() {
+        Set<String> ret = Collections.synchronizedSet(new HashSet<String>());
+        String types = System.getProperty("UNVALIDATED_MESSAGES");
+        if (types != null) {
+            for (String type : types.split(",")) {
+                if (type.trim().length() > 0) {
+                    ret.add(type.trim());
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Sets whether messages of a type are validated against the schema by all XMLHandlers. All messages are validated by default. Skipping
+     * validation saves time for trusted high-rate messages, but note that defaults in the schema aren't applied to unvalidated messages.
+     * 
+     * @param type The type of the message, e.g. "SubscribedDataMessage".
+     * @param validate Whether to validate messages of the type.
+     */
+    public static void setValidated(String type, boolean validate) {
+        if (validate) {
+            sUnvalidatedTypes.remove(type);
+        } else {
+            sUnvalidatedTypes.add(type);
+        }
+    }
+
+    /**
+     * Returns true if messages of a type are validated against the schema.
+     * 
+     * @param type The type of the message without namespace prefix, or null if unknown.
+     */
+    public static boolean isValidated(String type) {
+        return type == null || !sUnvalidatedTypes.contains(type);
+    }
+
+    /**
+     * Returns the xsi:type of the root element of an xml message without parsing the message.
+     * 
+     * @param xml The message.
+     * @return The type without namespace prefix, or null if it couldn't be found.
+     */
+    static String peekType(byte[] xml) {
+        int start = 0;
+        // Skip the xml declaration and any comments before the root.
+        while (true) {
+            while (start < xml.length && xml[start] != '<') {
+                start++;
+            }
+            if (start + 1 >= xml.length) {
+                return null;
+            }
+            if (xml[start + 1] != '?' && xml[start + 1] != '!') {
+                break;
+            }
+            start++;
+        }
+        int end = start;
+        while (end < xml.length && xml[end] != '>') {
+            end++;
+        }
+        String tag;
+        try {
+            tag = new String(xml, start, end - start, "ISO-8859-1");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new AssertionError(e.toString());
+        }
+        int index = tag.indexOf(":type=");
+        if (index < 0 || index + 7 >= tag.length()) {
+            return null;
+        }
+        int close = tag.indexOf(tag.charAt(index + 6), index + 7);
+        if (close < 0) {
+            return null;
+        }
+        return removeNamespace(tag.substring(index + 7, close).trim());
+    }
+
+    /**
+     * Turns validation of the parser on or off, unless it already is. Only the parser configuration using the cached schema can validate.
+     * 
+     * @param validate Whether to validate.
+     */
+    private void setValidating(boolean validate) throws SAXException {
+        if (validate != mValidating) {
+            mParser.setFeature(VALIDATION_FEATURE_ID, validate);
+            mParser.setFeature(SCHEMA_VALIDATION_FEATURE_ID, validate);
+            mValidating = validate;
+        }
+    }
+
     /**
      * Creates an XMLHandler operating independently of any Client, initializes a default DOMParser.
      */
@@ -165,7 +237,7 @@ public class XMLHandler implements Runnable {
                 break;
             }
             try {
-                Object reply = handleDoc(qe.getResponseString());
+                Object reply = handleResponse(qe.getResponse());
                 if (reply instanceof HandleException) {
                     throw (HandleException) reply;
                 }
@@ -220,6 +292,18 @@ public class XMLHandler implements Runnable {
         }
     }
 
+    protected void dumpToFile(String filename, byte[] toDump) {
+        try {
+            java.io.FileOutputStream out = new java.io.FileOutputStream(
+                    filename);
+            System.err.println("Dumping to file: " + filename);
+            out.write(toDump);
+            out.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Enqueues an xml message for handling.
      * 
@@ -227,22 +311,102 @@ public class XMLHandler implements Runnable {
      * @param msg The ApproxsimMessage that generated the response now to be handled.
      */
     public void handle(String xml, ApproxsimMessage msg) {
-        mQueue.enqueue(new QueueEntry(msg, xml));
+        try {
+            handle(xml.getBytes("ISO-8859-1"), msg);
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new AssertionError(e.toString());
+        }
+    }
+
+    /**
+     * Enqueues a received message, either xml or binary, for handling.
+     * 
+     * @param data The contents of the message to enqueue.
+     * @param msg The ApproxsimMessage that generated the response now to be handled.
+     */
+    public void handle(byte[] data, ApproxsimMessage msg) {
+        mQueue.enqueue(new QueueEntry(msg, data));
+    }
+
+    /**
+     * Handles the provided message contents, which may be either xml or a binary message as described in BinaryCodec.
+     * 
+     * @param data The contents of the message to handle.
+     * @return the result of the handling, if any, else null
+     * @throws HandleException on error.
+     */
+    private Object handleResponse(byte[] data) throws HandleException {
+        if (BinaryCodec.isBinary(data)) {
+            return handleBinary(data);
+        }
+        return handleDoc(data);
     }
 
     /**
-     * Handles the provided xml message.
+     * Handles a binary SubscribedDataMessage or UpdateClientMessage. Layer data is read directly into the subscribed layers while the
+     * remaining data, if any, is handled as an ordinary xml message.
+     * 
+     * @param data The contents of the message to handle.
+     * @return The simulation time of the message.
+     * @throws HandleException on error.
+     */
+    private Object handleBinary(byte[] data) throws HandleException {
+        byte type = BinaryCodec.getType(data);
+        if (type != BinaryCodec.SUBSCRIBED_DATA
+                && type != BinaryCodec.UPDATE_CLIENT) {
+            Debug.err.println("Unknown binary message type '" + type + "'");
+            throw new HandleException();
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(data, 5, data.length - 5);
+            Timestamp t = new Timestamp(in.getLong());
+            Debug.err.println("Current time: " + t
+                    + ". Now handling binary layers...");
+            int numLayers = in.getInt();
+            for (int i = 0; i < numLayers; i++) {
+                int id = in.getInt();
+                int count = in.getInt();
+                if (count < 0 || count > in.remaining() / 8) {
+                    throw new BufferUnderflowException();
+                }
+                mSH.handleLayerData(id, in, count, t);
+            }
+            int xmlLength = in.getInt();
+            if (xmlLength > 0) {
+                byte[] xml = new byte[xmlLength];
+                in.get(xml);
+                return handleDoc(xml);
+            }
+            if (mClient != null) {
+                mClient.notifyHandledSubs(t);
+            }
+            return t;
+        } catch (BufferUnderflowException e) {
+            e.printStackTrace();
+            System.err.println(e.getMessage());
+            throw new HandleException();
+        }
+    }
+
+    /**
+     * Handles the provided xml message. The subscribed data of SubscribedDataMessages and UpdateClientMessages is handled by the parser
+     * while parsing, see SubscribedDataParser.
      * 
      * @param xml The message to handle.
      * @return the result of the handling, if any, else null
      * @throws HandleException on error.
      */
-    private Object handleDoc(String xml) throws HandleException {
+    private Object handleDoc(byte[] xml) throws HandleException {
         Object reply = null;
         try {
             // Parse the Document
-            InputSource inputSource = new InputSource(new StringReader(xml));
+            InputSource inputSource = new InputSource(new ByteArrayInputStream(
+                    xml));
             inputSource.setEncoding("ISO-8859-1");
+            if (mCanValidate) {
+                setValidating(sUnvalidatedTypes.isEmpty()
+                        || isValidated(peekType(xml)));
+            }
             mParser.parse(inputSource);
 
             Element elem = mParser.getDocument().getDocumentElement();
@@ -447,8 +611,8 @@ public class XMLHandler implements Runnable {
      * @param n The message to handle.
      */
     private Timestamp handleSubscribedDataMsg(Element n) {
-        Timestamp t = new Timestamp(
-                getLong(getFirstChildByTag(n, "simulationTime"), "value"));
+        Timestamp t = getSimulationTime(getFirstChildByTag(n, "simulationTime"),
+                                        false);
         Debug.err.println("Current time: " + t
                 + ". Now handling subscriptions...");
         for (Node child = n.getFirstChild(); child != null; child = child
@@ -467,19 +631,12 @@ public class XMLHandler implements Runnable {
      * @param n The message to handle.
      */
     private Timestamp handleUpdateMsg(Element n) {
-        String tsStr = getString(getFirstChildByTag(n, "simulationTime"),
-                                 "value");
-        Timestamp t;
-        try {
-            t = new Timestamp(Timestamp.parseDateTime(tsStr).getTime());
-        } catch (java.text.ParseException e) {
-            throw new AssertionError("Failed to extract a dateTime from '"
-                    + tsStr + "'.");
-        }
+        Timestamp t = getSimulationTime(getFirstChildByTag(n, "simulationTime"),
+                                        true);
         Debug.err.println("Current time: " + t + ". Now handling updates...");
         Element elem = getFirstChildByTag(n, "update");
         if (elem != null) {
-            mClient.getRootObject().update(elem, t);
+            handleStreamedUpdate(elem, t);
         }
         for (Iterator<Element> it = getChildElementsByTag(n, "subscribedData")
                 .iterator(); it.hasNext();) {
@@ -489,8 +646,40 @@ public class XMLHandler implements Runnable {
         return t;
     }
 
+    /**
+     * Applies the update element of an UpdateClientMessage to the client's objects.
+     * 
+     * @param elem The update element.
+     * @param t The simulation time for which the update is valid.
+     */
+    void handleStreamedUpdate(Element elem, Timestamp t) {
+        if (mClient != null) {
+            mClient.getRootObject().update(elem, t);
+        }
+    }
+
 /// Helpers
 
+    /**
+     * Extracts the simulation time from a simulationTime element.
+     * 
+     * @param elem The simulationTime element.
+     * @param dateTime True if the value is an xsd:dateTime (as in UpdateClientMessage), false if it is milliseconds.
+     * @return The simulation time.
+     */
+    static Timestamp getSimulationTime(Element elem, boolean dateTime) {
+        if (!dateTime) {
+            return new Timestamp(getLong(elem, "value"));
+        }
+        String tsStr = getString(elem, "value");
+        try {
+            return new Timestamp(Timestamp.parseDateTime(tsStr).getTime());
+        } catch (java.text.ParseException e) {
+            throw new AssertionError("Failed to extract a dateTime from '"
+                    + tsStr + "'.");
+        }
+    }
+
     /**
      * Gets the type of ApproxsimObject represented by the provided dom element. Casts the provided Element to an ElementImpl to avoid the
      * problem that the getSchemaTypeInfo method does not exist in 1.4.2. This is not a perfect solution but rather an acceptable hack until
@@ -758,17 +947,17 @@ public class XMLHandler implements Runnable {
  */
 class QueueEntry {
     public ApproxsimMessage mMessage;
-    public String mResponseMessageString;
+    public byte[] mResponse;
 
     /**
      * Constructor
      * 
      * @param msg The approxsim message.
-     * @param reMsgStr The response message xml string.
+     * @param response The contents of the response message.
      */
-    public QueueEntry(ApproxsimMessage msg, String reMsgStr) {
+    public QueueEntry(ApproxsimMessage msg, byte[] response) {
         mMessage = msg;
-        mResponseMessageString = reMsgStr;
+        mResponse = response;
     }
 
     /**
@@ -781,12 +970,12 @@ class QueueEntry {
     }
 
     /**
-     * Gets the response message xml string.
+     * Gets the contents of the response message, either xml or binary.
      * 
-     * @return The response message xml string.
+     * @return The contents of the response message.
      */
-    public String getResponseString() {
-        return mResponseMessageString;
+    public byte[] getResponse() {
+        return mResponse;
     }
 }
 
@@ -8,7 +8,8 @@ package ApproxsimClient.dispatcher;
 
 import ApproxsimClient.communication.ApproxsimSocket;
 import ApproxsimClient.communication.ConnectMessage;
-import ApproxsimClient.LSJarXSDResolver;
+import ApproxsimClient.communication.GrammarCache;
+import ApproxsimClient.communication.ParserPool;
 import ApproxsimClient.ApproxsimConstants;
 
 import ApproxsimClient.Debug;
@@ -16,6 +17,8 @@ import ApproxsimClient.Debug;
 import java.util.Vector;
 import java.util.Enumeration;
 import java.util.Random;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.ByteArrayOutputStream;
 
@@ -30,13 +33,10 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 import org.w3c.dom.ls.DOMImplementationLS;
-import org.w3c.dom.DOMError;
-import org.w3c.dom.DOMErrorHandler;
 import org.w3c.dom.ls.LSInput;
 import org.w3c.dom.ls.LSOutput;
 import org.w3c.dom.ls.LSParser;
 import org.w3c.dom.ls.LSException;
-import org.w3c.dom.ls.LSResourceResolver;
 
 /**
  * ApproxsimDispatcher represents information about a dispatcher server
@@ -71,9 +71,19 @@ public class ApproxsimDispatcher {
     private static DOMImplementationLS domImplementationLS = createDomImplementationLS();
 
     /**
-     * The buffer containing a ready made bytebuffer of the request. (Initialized by createLoadQueryMessage())
+     * The default duration of the leases taken by allocateServers, in milliseconds.
      */
-    private static byte[] listServersMessageBuffer;
+    public static final long DEFAULT_LEASE_DURATION = 15000;
+
+    /**
+     * The duration of the leases taken by allocateServers, in milliseconds.
+     */
+    long leaseDuration = DEFAULT_LEASE_DURATION;
+
+    /**
+     * The buffer containing a ready made bytebuffer of the request.
+     */
+    private static byte[] listServersMessageBuffer = createRequestMessage("ListRequest", "");
 
     /**
      * Creates a new server record using the specified hostname and port.
@@ -100,6 +110,22 @@ public class ApproxsimDispatcher {
         return this.hostname;
     }
 
+    /**
+     * Returns the duration of the leases taken by allocateServers, in milliseconds.
+     */
+    public long getLeaseDuration() {
+        return this.leaseDuration;
+    }
+
+    /**
+     * Sets the duration of the leases taken by allocateServers.
+     * 
+     * @param leaseDuration the duration in milliseconds.
+     */
+    public void setLeaseDuration(long leaseDuration) {
+        this.leaseDuration = leaseDuration;
+    }
+
     /**
      * Returns an instance of a default dispatcher
      */
@@ -123,8 +149,71 @@ public class ApproxsimDispatcher {
      * @param retries max number of times to trie to allocate.
      */
     public ApproxsimSocket allocateServer(int retries) {
+        Vector sockets = allocateServers(1, retries);
+        return (sockets.isEmpty() ? null : (ApproxsimSocket) sockets.get(0));
+    }
+
+    /**
+     * Tries to allocate a number of servers from the pool of servers known to the dispatcher. The servers are leased from the dispatcher in
+     * one round trip, so that no other client is handed the same servers, and the least loaded servers are picked first. The leases are
+     * kept until they expire, see setLeaseDuration, by which time the dispatcher sees the servers as having an active client. If the
+     * dispatcher does not support leasing, the servers are picked at random from the list of servers.
+     * 
+     * @param count the number of servers wanted.
+     * @param retries max number of times to trie to allocate.
+     * @return a vector of ApproxsimSockets connected as active client, at most count of them.
+     */
+    public Vector allocateServers(int count, int retries) {
+        Vector res = new Vector();
+        for (int i = 0; i < retries && res.size() < count; i++) {
+            Vector leases = leaseServers(count - res.size(),
+                                         getLeaseDuration());
+            if (leases == null) {
+                Debug.err.println("Dispatcher does not support leases");
+                while (res.size() < count) {
+                    ApproxsimSocket socket = allocateListedServer(retries - i);
+                    if (socket == null) {
+                        break;
+                    }
+                    res.add(socket);
+                }
+                break;
+            }
+
+            for (Enumeration e = leases.elements(); e.hasMoreElements();) {
+                ServerLease lease = (ServerLease) e.nextElement();
+                Debug.err.println(i + ": Trying " + lease.toString());
+                // A lease that fails is left to expire, so that the
+                // server is not handed out again right away.
+                ApproxsimSocket socket = connectActive(lease.getServer());
+                if (socket != null) {
+                    res.add(socket);
+                }
+            }
+
+            if (leases.isEmpty()) {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+
+        if (res.size() < count) {
+            Debug.err.println("allocateServers allocated " + res.size()
+                    + " of " + count + " servers");
+        }
+        return res;
+    }
+
+    /**
+     * Tries to allocate a server picked at random from the servers listed on the dispatcher.
+     * 
+     * @param retries max number of times to trie to allocate.
+     */
+    ApproxsimSocket allocateListedServer(int retries) {
         Random random = new Random();
-        LSInput parserInput = domImplementationLS.createLSInput();
 
         for (int i = 0; i < retries; i++) {
             Vector prospects = new Vector();
@@ -140,39 +229,9 @@ public class ApproxsimDispatcher {
                 int index = random.nextInt(prospects.size());
                 ApproxsimServer prospect = (ApproxsimServer) prospects.get(index);
                 Debug.err.println(i + ": Trying " + prospect.toString());
-                // Try to become active client.
-                ApproxsimSocket socket = null;
-                try {
-                    socket = new ApproxsimSocket();
-                    socket.connect(prospect.getHost(), prospect.getPort());
-                    ConnectMessage message = new ConnectMessage();
-                    socket.sendMessage(message.toXML());
-                    parserInput.setStringData(socket.recvMessage());
-                    Document reply = createApproxsimParser().parse(parserInput);
-                    NodeList list = reply.getDocumentElement()
-                            .getElementsByTagName("active");
-                    if (list.getLength() != 1) {
-                        Debug.err
-                                .println("Unexpected form of ConnectResponseMessage");
-                    } else if (Boolean.valueOf(list.item(0).getFirstChild()
-                                                       .getNodeValue())
-                            .booleanValue()) {
-                        // Hurray, we are active.
-                        Debug.err.println("Returning " + prospect.toString());
-                        return socket;
-                    }
-
-                    socket.close();
-                } catch (IOException e) {
-                    Debug.err.println(e.getMessage());
-                    if (socket != null) {
-                        socket.close();
-                    }
-                } catch (LSException e) {
-                    Debug.err.println(e.getMessage());
-                    if (socket != null) {
-                        socket.close();
-                    }
+                ApproxsimSocket socket = connectActive(prospect);
+                if (socket != null) {
+                    return socket;
                 }
             }
         }
@@ -181,77 +240,184 @@ public class ApproxsimDispatcher {
         return null;
     }
 
+    /**
+     * Connects to a server and tries to become its active client.
+     * 
+     * @param prospect the server.
+     * @return the socket connected as active client, or null if that failed.
+     */
+    ApproxsimSocket connectActive(ApproxsimServer prospect) {
+        LSInput parserInput = domImplementationLS.createLSInput();
+        ApproxsimSocket socket = null;
+        try {
+            socket = new ApproxsimSocket();
+            socket.connect(prospect.getHost(), prospect.getPort());
+            ConnectMessage message = new ConnectMessage();
+            socket.sendMessage(message.toXML());
+            parserInput.setStringData(socket.recvMessage());
+            Document reply = ParserPool.getPool(
+                    ApproxsimConstants.APPROXSIM_PROTOCOL_SCHEMA).parse(
+                    parserInput);
+            NodeList list = reply.getDocumentElement()
+                    .getElementsByTagName("active");
+            if (list.getLength() != 1) {
+                Debug.err.println("Unexpected form of ConnectResponseMessage");
+            } else if (Boolean.valueOf(list.item(0).getFirstChild()
+                                               .getNodeValue())
+                    .booleanValue()) {
+                // Hurray, we are active.
+                Debug.err.println("Returning " + prospect.toString());
+                return socket;
+            }
+
+            socket.close();
+        } catch (IOException e) {
+            Debug.err.println(e.getMessage());
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (LSException e) {
+            Debug.err.println(e.getMessage());
+            if (socket != null) {
+                socket.close();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Leases servers from the dispatcher in one round trip. The dispatcher picks the least loaded of the available servers.
+     * 
+     * @param count the number of servers wanted.
+     * @param duration the duration of the leases in milliseconds.
+     * @return a vector of ServerLeases, possibly fewer than count, or null if the dispatcher could not be asked or does not support leases.
+     */
+    public Vector leaseServers(int count, long duration) {
+        Document reply;
+        try {
+            reply = request(createRequestMessage("LeaseRequest", "<count>"
+                    + count + "</count><duration>" + duration
+                    + "</duration>"));
+        } catch (IOException e) {
+            Debug.err.println(e.getMessage());
+            return null;
+        } catch (LSException e) {
+            Debug.err.println(e.getMessage());
+            return null;
+        }
+
+        Vector res = new Vector();
+        NodeList leases = reply.getDocumentElement().getElementsByTagName(
+                "lease");
+        for (int i = 0; i < leases.getLength(); i++) {
+            res.add(ServerLease.fromDOMElement((Element) leases.item(i)));
+        }
+        return res;
+    }
+
+    /**
+     * Ends leases before they expire, making the servers available to other clients.
+     * 
+     * @param leases a vector of ServerLeases.
+     */
+    public void releaseLeases(Vector leases) {
+        StringBuffer body = new StringBuffer();
+        for (Enumeration e = leases.elements(); e.hasMoreElements();) {
+            body.append("<lease>")
+                    .append(((ServerLease) e.nextElement()).getId())
+                    .append("</lease>");
+        }
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open(new InetSocketAddress(getHostname(),
+                    getPort()));
+            channel.socket().getOutputStream()
+                    .write(createRequestMessage("ReleaseRequest",
+                                                body.toString()));
+        } catch (IOException e) {
+            Debug.err.println(e.getMessage());
+        } finally {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                Debug.err.println(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sends a request to the dispatcher and returns its reply.
+     * 
+     * @param message the framed request, as created by createRequestMessage.
+     * @return the reply.
+     * @throws IOException if the dispatcher could not be reached or closed the connection without replying.
+     */
+    Document request(byte[] message) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(
+                getHostname(), getPort()));
+        try {
+            channel.socket().getOutputStream().write(message);
+            ByteBuffer header = ByteBuffer.allocate(4);
+            readFully(channel, header);
+            header.rewind();
+            ByteBuffer body = ByteBuffer.allocate(header.getInt());
+            readFully(channel, body);
+            LSInput parserInput = domImplementationLS.createLSInput();
+            parserInput.setByteStream(new ByteArrayInputStream(body.array()));
+            return ParserPool.getPool(DISPATCHER_PROTOCOL).parse(parserInput);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads from a channel until the buffer is full.
+     * 
+     * @throws EOFException if the channel is closed first.
+     */
+    static void readFully(SocketChannel channel, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Dispatcher closed connection");
+            }
+        }
+    }
+
+    /**
+     * Creates a dispatcher request, framed with its length as the dispatcher expects.
+     * 
+     * @param type the type of the request.
+     * @param body the xml of the contents of the request.
+     */
+    static byte[] createRequestMessage(String type, String body) {
+        try {
+            byte[] xml = ("<dispatcherRequest xmlns:xsi=\"" + XML_SCHEMA_NS
+                    + "\" xsi:type=\"" + type + "\">" + body + "</dispatcherRequest>")
+                    .getBytes("ISO-8859-1");
+            ByteBuffer buffer = ByteBuffer.allocate(4 + xml.length);
+            buffer.putInt(xml.length);
+            buffer.put(xml);
+            return buffer.array();
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     /**
      * Creates a parser for communication with a ApproxsimServer.
      */
     public LSParser createApproxsimParser() {
-        LSParser parser = domImplementationLS
-                .createLSParser(DOMImplementationLS.MODE_SYNCHRONOUS,
-                                "http://www.w3.org/2001/XMLSchema");
-        parser.getDomConfig().setParameter("error-handler",
-                                           new DOMErrorHandler() {
-                                               /**
-                                                * This method is called on the error handler when an error occurs.
-                                                * 
-                                                * @param error the error;
-                                                */
-                                               public boolean handleError(
-                                                       DOMError error) {
-                                                   throw new LSException(
-                                                           LSException.PARSE_ERR,
-                                                           error.getMessage());
-
-                                               }
-                                           });
-
-        parser.getDomConfig()
-                .setParameter("schema-location",
-                              ApproxsimConstants.APPROXSIM_PROTOCOL_SCHEMA);
-        parser.getDomConfig().setParameter("validate", Boolean.TRUE);
-        parser.getDomConfig().setParameter("namespaces", Boolean.TRUE);
-
-        LSResourceResolver prevResolver = (LSResourceResolver) parser
-                .getDomConfig().getParameter("resource-resolver");
-        parser.getDomConfig().setParameter("resource-resolver",
-                                           new LSJarXSDResolver(prevResolver));
-
-        return parser;
+        return GrammarCache.createLSParser(ApproxsimConstants.APPROXSIM_PROTOCOL_SCHEMA);
     }
 
     /**
      * Creates a parser for communication with a Dispatcher replier..
      */
     public LSParser createDispatcherParser() {
-        LSParser parser = domImplementationLS
-                .createLSParser(DOMImplementationLS.MODE_SYNCHRONOUS,
-                                "http://www.w3.org/2001/XMLSchema");
-        parser.getDomConfig().setParameter("error-handler",
-                                           new DOMErrorHandler() {
-                                               /**
-                                                * This method is called on the error handler when an error occurs.
-                                                * 
-                                                * @param error the error;
-                                                */
-                                               public boolean handleError(
-                                                       DOMError error) {
-                                                   throw new LSException(
-                                                           LSException.PARSE_ERR,
-                                                           error.getMessage());
-
-                                               }
-                                           });
-
-        parser.getDomConfig().setParameter("schema-location",
-                                           DISPATCHER_PROTOCOL);
-        parser.getDomConfig().setParameter("validate", Boolean.TRUE);
-        parser.getDomConfig().setParameter("namespaces", Boolean.TRUE);
-
-        LSResourceResolver prevResolver = (LSResourceResolver) parser
-                .getDomConfig().getParameter("resource-resolver");
-        parser.getDomConfig().setParameter("resource-resolver",
-                                           new LSJarXSDResolver(prevResolver));
-
-        return parser;
+        return GrammarCache.createLSParser(DISPATCHER_PROTOCOL);
     }
 
     /**
@@ -307,7 +473,8 @@ public class ApproxsimDispatcher {
                 header.rewind();
                 header.getInt();
                 parserInput.setByteStream(channel.socket().getInputStream());
-                Document reply = createDispatcherParser().parse(parserInput);
+                Document reply = ParserPool.getPool(DISPATCHER_PROTOCOL)
+                        .parse(parserInput);
                 NodeList servers = reply.getDocumentElement()
                         .getElementsByTagName("approxsimServer");
                 for (int i = 0; i < servers.getLength(); i++) {
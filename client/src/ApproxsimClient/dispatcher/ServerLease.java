@@ -0,0 +1,102 @@
+/*
+ * @(#)ServerLease.java
+ */
+
+package ApproxsimClient.dispatcher;
+
+import org.w3c.dom.Element;
+
+/**
+ * ServerLease represents a server handed out by the dispatcher. Until the lease expires or is released the dispatcher will not hand out
+ * the server again.
+ *
+ * @version 1
+ */
+public class ServerLease {
+    /**
+     * The id of the lease.
+     */
+    long id;
+
+    /**
+     * The duration of the lease in milliseconds.
+     */
+    long duration;
+
+    /**
+     * The time at which the lease was received, in milliseconds.
+     */
+    long received;
+
+    /**
+     * The leased server.
+     */
+    ApproxsimServer server;
+
+    /**
+     * Creates a new lease.
+     *
+     * @param id the id of the lease.
+     * @param duration the duration of the lease in milliseconds.
+     * @param server the leased server.
+     */
+    public ServerLease(long id, long duration, ApproxsimServer server) {
+        this.id = id;
+        this.duration = duration;
+        this.server = server;
+        this.received = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the id of this lease.
+     */
+    public long getId() {
+        return this.id;
+    }
+
+    /**
+     * Returns the duration of this lease in milliseconds.
+     */
+    public long getDuration() {
+        return this.duration;
+    }
+
+    /**
+     * Returns the time at which this lease expires, as measured by the local clock.
+     */
+    public long getExpiry() {
+        return this.received + this.duration;
+    }
+
+    /**
+     * Returns the leased server.
+     */
+    public ApproxsimServer getServer() {
+        return this.server;
+    }
+
+    /**
+     * Creates a lease from an XML representation of this object.
+     *
+     * @param element the element representing the lease.
+     */
+    public static ServerLease fromDOMElement(Element element) {
+        long id = Long.parseLong(element.getElementsByTagName("id").item(0)
+                .getFirstChild().getNodeValue().trim());
+        long duration = Long.parseLong(element
+                .getElementsByTagName("duration").item(0).getFirstChild()
+                .getNodeValue().trim());
+        ApproxsimServer server = ApproxsimServer
+                .fromDOMElement((Element) element
+                        .getElementsByTagName("approxsimServer").item(0));
+        return new ServerLease(id, duration, server);
+    }
+
+    /**
+     * Returns a string representation of this lease.
+     */
+    public String toString() {
+        return "lease " + getId() + " of " + getServer().getHost() + ":"
+                + getServer().getPort();
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * @(#)BatchSampler.java
+ */
+
+package ApproxsimClient.evolver;
+
+import java.util.Vector;
+
+/**
+ * A sampler that proposes a whole population of ParameterInstanceSets to sample at once, so that they can be evaluated concurrently. Since
+ * it is also a Sampler it can be used by evolvers that request one sample at a time, in which case the samples of each population are handed
+ * out one by one.
+ *
+ * @version 1
+ */
+public interface BatchSampler extends Sampler {
+    /**
+     * Returns the samples of the next generation. The samples may be evaluated in any order and concurrently, and the evaluations of a
+     * generation need not be complete when the next generation is requested.
+     *
+     * @param evaluations a vector of Evaluations of the previous samples.
+     * @param size the number of samples to return.
+     * @return a vector of at most size ParameterInstanceSets, empty if no samples can be created.
+     */
+    public Vector getSamples(Vector evaluations, int size);
+
+    /**
+     * Returns the number of samples this sampler prefers per generation.
+     */
+    public int getPopulationSize();
+}
@@ -0,0 +1,315 @@
+/*
+ * @(#)CmaSampler.java
+ */
+
+package ApproxsimClient.evolver;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Vector;
+
+/**
+ * CmaSampler is a simplified covariance matrix adaptation evolution strategy. Each generation is drawn from a multivariate normal
+ * distribution. When the next generation is requested the mean is moved to the weighted mean of the best half of the evaluated samples of
+ * the previous generation, and the covariance matrix is updated with their steps (the rank-mu update). Instead of the cumulative step size
+ * adaptation of full CMA-ES the step size follows a success rule: it grows when a generation improves on the best evaluation so far and
+ * shrinks otherwise.
+ * <p>
+ * When samples are evaluated in parallel the next generation is usually requested before the previous one has been evaluated. The
+ * distribution is then only updated once at least half a population of evaluations has arrived, and evaluations arriving after their
+ * generation are used in a later update, with their steps taken from the distribution they were drawn from.
+ *
+ * @version 1
+ */
+public class CmaSampler extends PopulationSampler {
+    /**
+     * The factor the step size is multiplied with after a successful generation.
+     */
+    static final double SUCCESS_FACTOR = 1.2;
+
+    /**
+     * The factor the step size is multiplied with after an unsuccessful generation.
+     */
+    static final double FAILURE_FACTOR = 0.82;
+
+    /**
+     * The mean of the distribution or null before the first generation.
+     */
+    double[] mean = null;
+
+    /**
+     * The covariance matrix of the distribution.
+     */
+    double[][] covariance;
+
+    /**
+     * The current step size.
+     */
+    double sigma;
+
+    /**
+     * The best evaluation so far.
+     */
+    Evaluation best = null;
+
+    /**
+     * The number of generations after which samples not yet evaluated are forgotten.
+     */
+    static final int MAX_AGE = 5;
+
+    /**
+     * A generation and the distribution it was drawn from.
+     */
+    static class Generation {
+        /**
+         * The number of the generation.
+         */
+        final int number;
+
+        /**
+         * The mean of the distribution.
+         */
+        final double[] mean;
+
+        /**
+         * The step size of the distribution.
+         */
+        final double sigma;
+
+        Generation(int number, double[] mean, double sigma) {
+            this.number = number;
+            this.mean = mean;
+            this.sigma = sigma;
+        }
+    }
+
+    /**
+     * The number of generations created.
+     */
+    int generations = 0;
+
+    /**
+     * The generation of each sample not yet evaluated.
+     */
+    IdentityHashMap<ParameterInstanceSet, Generation> unevaluated = new IdentityHashMap<ParameterInstanceSet, Generation>();
+
+    /**
+     * The evaluations of samples not yet used to update the distribution, with the generations they belong to.
+     */
+    IdentityHashMap<Evaluation, Generation> evaluated = new IdentityHashMap<Evaluation, Generation>();
+
+    /**
+     * The number of evaluations that have been examined.
+     */
+    int scanned = 0;
+
+    /**
+     * Creates a new CmaSampler.
+     *
+     * @param isMinimizing true if this sampler should seek to minimize the evaluations.
+     * @param populationSize the number of samples per generation.
+     */
+    public CmaSampler(boolean isMinimizing, int populationSize) {
+        super(isMinimizing, populationSize);
+    }
+
+    /**
+     * Creates a new CmaSampler with eight samples per generation.
+     *
+     * @param isMinimizing true if this sampler should seek to minimize the evaluations.
+     */
+    public CmaSampler(boolean isMinimizing) {
+        this(isMinimizing, 8);
+    }
+
+    /**
+     * Creates the points of the next generation.
+     *
+     * @param evaluations a vector of Evaluations of the previous samples.
+     * @param size the number of points to create.
+     */
+    Vector createGeneration(Vector evaluations, int size) {
+        int n = getDimension();
+        if (mean == null) {
+            mean = new double[n];
+            covariance = new double[n][n];
+            for (int i = 0; i < n; i++) {
+                covariance[i][i] = 1.0;
+            }
+            sigma = getStepSize();
+        }
+
+        // Collect the evaluated samples of all generations, late ones included.
+        Vector first = new Vector();
+        for (; scanned < evaluations.size(); scanned++) {
+            Evaluation evaluation = (Evaluation) evaluations.get(scanned);
+            if (evaluation == null) {
+                continue;
+            }
+            Generation generation = unevaluated.remove(evaluation
+                    .getParameterInstanceSet());
+            if (generation != null) {
+                if (isRankable(evaluation)) {
+                    evaluated.put(evaluation, generation);
+                }
+            } else if (generations == 0) {
+                first.add(evaluation);
+            }
+        }
+        // Update once at least half a population has been evaluated.
+        Vector<Evaluation> ranked = rank(new Vector(evaluated.keySet()));
+        if (ranked.size() >= getMu()) {
+            update(ranked);
+            evaluated.clear();
+        }
+        if (generations == 0) {
+            ranked = rank(first);
+        }
+        if (!ranked.isEmpty() && (best == null || isBetter(ranked.get(0), best))) {
+            best = ranked.get(0);
+        }
+
+        double[][] l = cholesky(covariance);
+        Vector res = new Vector();
+        double[] z = new double[n];
+        for (int k = 0; k < size; k++) {
+            for (int i = 0; i < n; i++) {
+                z[i] = random.nextGaussian();
+            }
+            double[] x = new double[n];
+            for (int i = 0; i < n; i++) {
+                double v = 0;
+                for (int j = 0; j <= i; j++) {
+                    v += l[i][j] * z[j];
+                }
+                x[i] = mean[i] + sigma * v;
+            }
+            res.add(x);
+        }
+        return res;
+    }
+
+    /**
+     * Remembers the samples of the generation just created and the distribution they were drawn from, and forgets samples too old to
+     * matter, e. g. those that failed to evaluate.
+     *
+     * @param samples the samples.
+     */
+    void generationCreated(Vector samples) {
+        Generation generation = new Generation(generations++, mean.clone(),
+                                               sigma);
+        for (int i = 0; i < samples.size(); i++) {
+            unevaluated.put((ParameterInstanceSet) samples.get(i), generation);
+        }
+        for (Iterator<Generation> it = unevaluated.values().iterator(); it
+                .hasNext();) {
+            if (it.next().number <= generation.number - MAX_AGE) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of evaluations the distribution is updated with.
+     */
+    int getMu() {
+        return Math.max(1, getPopulationSize() / 2);
+    }
+
+    /**
+     * Updates the mean, covariance and step size from the ranked evaluations not yet used.
+     *
+     * @param ranked the evaluations, best first.
+     */
+    void update(Vector<Evaluation> ranked) {
+        int n = getDimension();
+        int mu = Math.min(ranked.size(), getMu());
+
+        double[] weights = new double[mu];
+        double sum = 0;
+        for (int i = 0; i < mu; i++) {
+            weights[i] = Math.log(mu + 0.5) - Math.log(i + 1);
+            sum += weights[i];
+        }
+        double sumSquares = 0;
+        for (int i = 0; i < mu; i++) {
+            weights[i] /= sum;
+            sumSquares += weights[i] * weights[i];
+        }
+        double muEff = 1 / sumSquares;
+
+        double[][] steps = new double[mu][];
+        double[] newMean = new double[n];
+        for (int k = 0; k < mu; k++) {
+            double[] x = toPoint(ranked.get(k).getParameterInstanceSet());
+            // the step within the distribution the sample was drawn from
+            Generation generation = evaluated.get(ranked.get(k));
+            steps[k] = new double[n];
+            for (int i = 0; i < n; i++) {
+                steps[k][i] = (x[i] - generation.mean[i]) / generation.sigma;
+                newMean[i] += weights[k] * x[i];
+            }
+        }
+
+        double c = Math.min(1.0, Math.max(2 / ((n + 1.3) * (n + 1.3) + muEff),
+                                          2 * (muEff - 2 + 1 / muEff)
+                                                  / ((n + 2) * (n + 2) + muEff)));
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double rankMu = 0;
+                for (int k = 0; k < mu; k++) {
+                    rankMu += weights[k] * steps[k][i] * steps[k][j];
+                }
+                covariance[i][j] = (1 - c) * covariance[i][j] + c * rankMu;
+            }
+        }
+        mean = newMean;
+
+        if (best == null || isBetter(ranked.get(0), best)) {
+            sigma *= SUCCESS_FACTOR;
+        } else {
+            sigma *= FAILURE_FACTOR;
+        }
+    }
+
+    /**
+     * Returns the lower triangular Cholesky factor of a symmetric matrix. If the matrix is not positive definite, e. g. due to rounding,
+     * the diagonal is increased until it is. Returns the identity matrix as a last resort.
+     *
+     * @param a the matrix.
+     */
+    static double[][] cholesky(double[][] a) {
+        int n = a.length;
+        double jitter = 0;
+        for (int attempt = 0; attempt < 10; attempt++) {
+            double[][] l = new double[n][n];
+            boolean ok = true;
+            for (int i = 0; i < n && ok; i++) {
+                for (int j = 0; j <= i; j++) {
+                    double s = a[i][j] + (i == j ? jitter : 0);
+                    for (int k = 0; k < j; k++) {
+                        s -= l[i][k] * l[j][k];
+                    }
+                    if (i == j) {
+                        if (s <= 0 || Double.isNaN(s)) {
+                            ok = false;
+                            break;
+                        }
+                        l[i][i] = Math.sqrt(s);
+                    } else {
+                        l[i][j] = s / l[j][j];
+                    }
+                }
+            }
+            if (ok) {
+                return l;
+            }
+            jitter = (jitter == 0 ? 1e-10 : jitter * 100);
+        }
+        double[][] identity = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            identity[i][i] = 1.0;
+        }
+        return identity;
+    }
+}
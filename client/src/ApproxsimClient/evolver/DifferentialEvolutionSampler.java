@@ -0,0 +1,256 @@
+/*
+ * @(#)DifferentialEvolutionSampler.java
+ */
+
+package ApproxsimClient.evolver;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Vector;
+
+/**
+ * DifferentialEvolutionSampler implements the DE/rand/1/bin scheme. The sampler keeps a population of target samples. Each generation
+ * contains one trial sample per target, created by adding the scaled difference of two random targets to a third and crossing the result
+ * over with the target. A trial replaces its target as soon as its evaluation turns out better, even if that is after later generations have
+ * been created. Trials not evaluated within a few generations, e. g. because their evaluation failed, are forgotten. Targets not yet known
+ * are filled with random samples around the origin.
+ *
+ * @version 1
+ */
+public class DifferentialEvolutionSampler extends PopulationSampler {
+    /**
+     * The differential weight.
+     */
+    double weight = 0.8;
+
+    /**
+     * The crossover probability.
+     */
+    double crossover = 0.9;
+
+    /**
+     * The current target of each population slot, null if not yet known.
+     */
+    Evaluation[] targets;
+
+    /**
+     * The number of generations after which trials not yet evaluated are forgotten.
+     */
+    static final int MAX_AGE = 5;
+
+    /**
+     * A trial sample not yet evaluated.
+     */
+    static class Trial {
+        /**
+         * The population slot the trial competes for.
+         */
+        final int slot;
+
+        /**
+         * The number of the generation the trial belongs to.
+         */
+        final int generation;
+
+        Trial(int slot, int generation) {
+            this.slot = slot;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * The number of generations created.
+     */
+    int generations = 0;
+
+    /**
+     * Maps each trial sample not yet evaluated to the population slot it competes for.
+     */
+    IdentityHashMap<ParameterInstanceSet, Trial> trials = new IdentityHashMap<ParameterInstanceSet, Trial>();
+
+    /**
+     * The population slots of the generation being created, in sample order.
+     */
+    Vector<Integer> slots = new Vector<Integer>();
+
+    /**
+     * The number of evaluations that have been examined.
+     */
+    int scanned = 0;
+
+    /**
+     * Creates a new DifferentialEvolutionSampler.
+     *
+     * @param isMinimizing true if this sampler should seek to minimize the evaluations.
+     * @param populationSize the number of targets and the number of trials per generation.
+     */
+    public DifferentialEvolutionSampler(boolean isMinimizing,
+            int populationSize) {
+        super(isMinimizing, populationSize);
+        targets = new Evaluation[getPopulationSize()];
+    }
+
+    /**
+     * Creates a new DifferentialEvolutionSampler with a population of ten.
+     *
+     * @param isMinimizing true if this sampler should seek to minimize the evaluations.
+     */
+    public DifferentialEvolutionSampler(boolean isMinimizing) {
+        this(isMinimizing, 10);
+    }
+
+    /**
+     * Returns the differential weight.
+     */
+    public double getWeight() {
+        return this.weight;
+    }
+
+    /**
+     * Sets the differential weight, typically in [0, 2].
+     *
+     * @param weight the weight.
+     */
+    public void setWeight(double weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * Returns the crossover probability.
+     */
+    public double getCrossover() {
+        return this.crossover;
+    }
+
+    /**
+     * Sets the crossover probability.
+     *
+     * @param crossover the probability, in [0, 1].
+     */
+    public void setCrossover(double crossover) {
+        this.crossover = crossover;
+    }
+
+    /**
+     * Creates the points of the next generation, one trial per population slot in turn.
+     *
+     * @param evaluations a vector of Evaluations of the previous samples.
+     * @param size the number of points to create.
+     */
+    Vector createGeneration(Vector evaluations, int size) {
+        // Selection: let evaluated trials compete with their targets.
+        for (; scanned < evaluations.size(); scanned++) {
+            Evaluation evaluation = (Evaluation) evaluations.get(scanned);
+            if (evaluation == null) {
+                continue;
+            }
+            Trial trial = trials.remove(evaluation.getParameterInstanceSet());
+            if (!isRankable(evaluation)) {
+                continue;
+            }
+            Integer slot = (trial != null ? new Integer(trial.slot) : null);
+            if (slot == null) {
+                // The origin, or a sample from elsewhere, seeds the first free slot.
+                slot = getFreeSlot();
+                if (slot == null) {
+                    continue;
+                }
+            }
+            int i = slot.intValue();
+            if (targets[i] == null || !isBetter(targets[i], evaluation)) {
+                targets[i] = evaluation;
+            }
+        }
+
+        Vector<double[]> known = new Vector<double[]>();
+        double[][] points = new double[targets.length][];
+        for (int i = 0; i < targets.length; i++) {
+            if (targets[i] != null) {
+                points[i] = toPoint(targets[i].getParameterInstanceSet());
+                known.add(points[i]);
+            }
+        }
+
+        int n = getDimension();
+        Vector res = new Vector();
+        slots.clear();
+        for (int k = 0; k < size; k++) {
+            int i = k % targets.length;
+            double[] x = new double[n];
+            if (points[i] == null || known.size() < 4) {
+                // Not enough targets for differences, sample around a known target or the origin.
+                double[] base = (points[i] != null ? points[i]
+                        : (known.isEmpty() ? new double[n] : known.get(random
+                                .nextInt(known.size()))));
+                for (int d = 0; d < n; d++) {
+                    x[d] = base[d] + getStepSize() * random.nextGaussian();
+                }
+            } else {
+                double[][] abc = pickDistinct(known, points[i], 3);
+                int forced = random.nextInt(n);
+                for (int d = 0; d < n; d++) {
+                    if (d == forced || random.nextDouble() < getCrossover()) {
+                        x[d] = abc[0][d] + getWeight() * (abc[1][d] - abc[2][d]);
+                    } else {
+                        x[d] = points[i][d];
+                    }
+                }
+            }
+            res.add(x);
+            slots.add(new Integer(i));
+        }
+        return res;
+    }
+
+    /**
+     * Remembers which population slot each trial competes for, and forgets trials too old to be evaluated.
+     *
+     * @param samples the samples.
+     */
+    void generationCreated(Vector samples) {
+        int generation = generations++;
+        for (int k = 0; k < samples.size(); k++) {
+            trials.put((ParameterInstanceSet) samples.get(k), new Trial(slots
+                    .get(k).intValue(), generation));
+        }
+        for (Iterator<Trial> it = trials.values().iterator(); it.hasNext();) {
+            if (it.next().generation <= generation - MAX_AGE) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the first population slot without a target that no trial competes for, or null if there is none.
+     */
+    Integer getFreeSlot() {
+        boolean[] taken = new boolean[targets.length];
+        for (Trial trial : trials.values()) {
+            taken[trial.slot] = true;
+        }
+        for (int i = 0; i < targets.length; i++) {
+            if (targets[i] == null && !taken[i]) {
+                return new Integer(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Picks points at random from the candidates, all distinct from each other and from the excluded point.
+     *
+     * @param candidates the points to pick from, at least count + 1 of them.
+     * @param excluded the point not to pick.
+     * @param count the number of points to pick.
+     */
+    double[][] pickDistinct(Vector<double[]> candidates, double[] excluded,
+            int count) {
+        Vector<double[]> pool = new Vector<double[]>(candidates);
+        pool.remove(excluded);
+        double[][] res = new double[count][];
+        for (int i = 0; i < count; i++) {
+            res[i] = pool.remove(random.nextInt(pool.size()));
+        }
+        return res;
+    }
+}
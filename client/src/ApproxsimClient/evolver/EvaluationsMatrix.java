@@ -5,15 +5,16 @@
 
 package ApproxsimClient.evolver;
 
+import java.util.Arrays;
 import java.util.Vector;
-import java.util.Hashtable;
 import java.util.Enumeration;
-import java.util.Collections;
 import javax.swing.event.EventListenerList;
 
 /**
  * EvaluationsMatrix is a convinience class that by listening to an evolver keeps a double matrix updated with the numeric parameters of the
- * evaluations produced by the evolver.
+ * evaluations produced by the evolver. Each element is the distance from the parameter instance of the evaluation to the smallest instance of
+ * that parameter so far. The matrix is kept column by column in append-only primitive arrays. A new evaluation only appends a row, unless it
+ * holds a new smallest instance of some parameter, in which case the distances of that column are recomputed.
  * 
  * @version 1, $Date: 2006/03/31 16:55:51 $
  * @author Daniel Ahlin
@@ -21,9 +22,35 @@ import javax.swing.event.EventListenerList;
 
 public class EvaluationsMatrix {
     /**
-     * The matrix.
+     * The matrix in row major order, created on demand from the columns, or null if it has to be recreated. Rows appended to the columns
+     * are added to it the next time it is requested, the rows already in it are kept.
      */
-    double[][] matrix = new double[0][0];
+    double[][] matrix = null;
+
+    /**
+     * The distance columns of the matrix, each with room for at least rows elements.
+     */
+    double[][] columns = new double[0][0];
+
+    /**
+     * The parameter instances of each column, needed to recompute distances when the smallest instance changes.
+     */
+    ParameterInstance[][] instances = new ParameterInstance[0][0];
+
+    /**
+     * The smallest instance of each column so far.
+     */
+    ParameterInstance[] minimums = new ParameterInstance[0];
+
+    /**
+     * The smallest and largest distance of each column, {min, max}.
+     */
+    double[][] spans = new double[0][0];
+
+    /**
+     * The number of rows of the matrix.
+     */
+    int rows = 0;
 
     /**
      * A map of parameters to column indexes in the matrix
@@ -110,6 +137,12 @@ public class EvaluationsMatrix {
         }
 
         setColumnMap(createColumnMap(evolver));
+        if (evolver != null) {
+            Vector evaluations = evolver.getEvaluations();
+            for (int i = 0; i < evaluations.size(); i++) {
+                addEvaluation(evolver, (Evaluation) evaluations.get(i));
+            }
+        }
     }
 
     /**
@@ -117,8 +150,15 @@ public class EvaluationsMatrix {
      * 
      * @param map the map
      */
-    void setColumnMap(ColumnMap map) {
+    synchronized void setColumnMap(ColumnMap map) {
         this.columnMap = map;
+        int m = map.getParameters().size();
+        columns = new double[m][16];
+        instances = new ParameterInstance[m][16];
+        minimums = new ParameterInstance[m];
+        spans = new double[m][2];
+        rows = 0;
+        matrix = null;
     }
 
     /**
@@ -157,81 +197,154 @@ public class EvaluationsMatrix {
     }
 
     /**
-     * Called when a new evaluation has been added by an evolver. For now, lazily recreates the matrix.
+     * Called when a new evaluation has been added by an evolver. Appends a row and recomputes the columns whose smallest instance changed.
+     * Evaluations lacking an instance of any of the parameters of the matrix are ignored.
      * 
      * @param evolver the evolver making the evaluation.
      * @param newEvaluation the new evaluation.
      */
     void addEvaluation(Evolver evolver, Evaluation newEvaluation) {
-        // Sort different parameterInstances into different vectors.
-        Hashtable columns = new Hashtable();
-        for (Enumeration e = getColumnMap().getParameters().elements(); e
-                .hasMoreElements();) {
-            columns.put(e.nextElement(), new Vector());
-        }
+        MatrixEvent event;
+        synchronized (this) {
+            Vector<Parameter> parameters = getColumnMap().getParameters();
+            if (parameters.isEmpty()) {
+                return;
+            }
+            ParameterInstance[] row = new ParameterInstance[parameters.size()];
+            for (int k = 0; k < row.length; k++) {
+                Parameter parameter = parameters.get(k);
+                if (newEvaluation.getEvaluation() != null
+                        && newEvaluation.getEvaluation().getParameter() == parameter) {
+                    row[k] = newEvaluation.getEvaluation();
+                } else {
+                    row[k] = newEvaluation.getParameterInstanceSet()
+                            .getParameterInstance(parameter);
+                }
+                if (row[k] == null) {
+                    return;
+                }
+            }
 
-        Vector evaluations = evolver.getEvaluations();
-        for (int i = 0; i < evaluations.size(); i++) {
-            Evaluation evaluation = (Evaluation) evaluations.get(i);
-            for (Enumeration p = evaluation.getParameterInstanceSet()
-                    .getParameterInstances(); p.hasMoreElements();) {
-                ParameterInstance instance = (ParameterInstance) p
-                        .nextElement();
-                Vector v = (Vector) columns.get(instance.getParameter());
-                if (v != null) {
-                    v.add(instance);
+            if (rows == instances[0].length) {
+                grow();
+            }
+
+            Vector<Integer> recomputed = new Vector<Integer>();
+            for (int k = 0; k < row.length; k++) {
+                Parameter parameter = parameters.get(k);
+                int j = getColumnMap().getIndex(parameter);
+                instances[j][rows] = row[k];
+                if (minimums[j] == null
+                        || parameter.getComparator().compare(row[k],
+                                                             minimums[j]) < 0) {
+                    minimums[j] = row[k];
+                    if (rows > 0) {
+                        recomputed.add(new Integer(j));
+                    }
+                    recomputeColumn(j, rows + 1);
+                } else {
+                    double d = parameter.getMetric().d(minimums[j], row[k]);
+                    columns[j][rows] = d;
+                    spans[j][0] = Math.min(spans[j][0], d);
+                    spans[j][1] = Math.max(spans[j][1], d);
                 }
             }
+            rows++;
+            if (!recomputed.isEmpty()) {
+                // Existing rows have changed, the row view is recreated.
+                matrix = null;
+            }
 
-            ParameterInstance instance = evaluation.getEvaluation();
-            Vector v = (Vector) columns.get(instance.getParameter());
-            if (v != null) {
-                v.add(instance);
+            int[] recomputedColumns = new int[recomputed.size()];
+            for (int i = 0; i < recomputedColumns.length; i++) {
+                recomputedColumns[i] = recomputed.get(i).intValue();
             }
+            event = new MatrixEvent(this, rows - 1, 1, recomputedColumns);
         }
+        fireMatrixUpdated(event);
+    }
 
-        // Create map with the minimums of each parameter.
-        Hashtable mins = new Hashtable();
-        for (Enumeration e = columns.keys(); e.hasMoreElements();) {
-            Parameter parameter = (Parameter) e.nextElement();
-            mins.put(parameter,
-                     Collections.min((Vector) columns.get(parameter),
-                                     parameter.getComparator()));
+    /**
+     * Doubles the capacity of the columns.
+     */
+    void grow() {
+        for (int j = 0; j < columns.length; j++) {
+            double[] column = new double[columns[j].length * 2];
+            System.arraycopy(columns[j], 0, column, 0, rows);
+            columns[j] = column;
+            ParameterInstance[] instanceColumn = new ParameterInstance[instances[j].length * 2];
+            System.arraycopy(instances[j], 0, instanceColumn, 0, rows);
+            instances[j] = instanceColumn;
         }
+    }
 
-        // Fill in new matrix with distances to the min instance.
-        double[][] newMatrix = new double[evaluations.size()][mins.size()];
-        for (Enumeration e = getColumnMap().getParameters().elements(); e
-                .hasMoreElements();) {
-            Parameter parameter = (Parameter) e.nextElement();
-            Vector v = (Vector) columns.get(parameter);
-            ParameterInstance minInstance = (ParameterInstance) mins
-                    .get(parameter);
-            int j = getColumnMap().getIndex(parameter);
-            for (int i = 0; i < v.size(); i++) {
-                newMatrix[i][j] = parameter.getMetric().d(minInstance,
-                                                          (ParameterInstance) v
-                                                                  .get(i));
-            }
+    /**
+     * Recomputes the distances of a column to its smallest instance, and its span.
+     * 
+     * @param j the index of the column.
+     * @param n the number of rows to recompute.
+     */
+    void recomputeColumn(int j, int n) {
+        Metric metric = getColumnMap().getParameter(j).getMetric();
+        spans[j][0] = Double.POSITIVE_INFINITY;
+        spans[j][1] = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            double d = metric.d(minimums[j], instances[j][i]);
+            columns[j][i] = d;
+            spans[j][0] = Math.min(spans[j][0], d);
+            spans[j][1] = Math.max(spans[j][1], d);
         }
+    }
+
+    /**
+     * Returns the number of rows, i. e. evaluations, of the matrix.
+     */
+    public synchronized int getRowCount() {
+        return this.rows;
+    }
 
-        setMatrix(newMatrix);
+    /**
+     * Returns a column of the matrix. The array is longer than the number of rows and the elements beyond getRowCount() are undefined.
+     * Don't write in it!
+     * 
+     * @param j the index of the column.
+     */
+    public synchronized double[] getColumn(int j) {
+        return this.columns[j];
     }
 
     /**
-     * Sets the matrix
+     * Returns the smallest and largest element of a column.
      * 
-     * @param newMatrix the new matrix
+     * @param j the index of the column.
+     * @return {min, max} or {NaN, NaN} if the matrix is empty.
      */
-    void setMatrix(double[][] newMatrix) {
-        this.matrix = newMatrix;
-        fireMatrixUpdated();
+    public synchronized double[] getColumnSpan(int j) {
+        if (rows == 0) {
+            return new double[] { Double.NaN, Double.NaN };
+        }
+        return new double[] { spans[j][0], spans[j][1] };
     }
 
     /**
-     * Returns the matrix, don't write in it!
+     * Returns the matrix, don't write in it! After rows have been appended only the new rows are created, the whole matrix is only
+     * recreated when existing rows have changed. Matrices returned earlier are left as they were.
      */
-    public double[][] getMatrix() {
+    public synchronized double[][] getMatrix() {
+        if (matrix == null) {
+            matrix = new double[0][];
+        }
+        if (matrix.length < rows) {
+            // The row arrays are shared with the previous matrix.
+            double[][] res = Arrays.copyOf(matrix, rows);
+            for (int i = matrix.length; i < rows; i++) {
+                res[i] = new double[columns.length];
+                for (int j = 0; j < columns.length; j++) {
+                    res[i][j] = columns[j][i];
+                }
+            }
+            matrix = res;
+        }
         return this.matrix;
     }
 
@@ -280,10 +393,10 @@ public class EvaluationsMatrix {
 
     /**
      * Notifies listeners that the matrix has been changed.
+     * 
+     * @param event the event describing the change.
      */
-    public void fireMatrixUpdated() {
-        MatrixEvent event = new MatrixEvent(this);
-
+    public void fireMatrixUpdated(MatrixEvent event) {
         // Guaranteed to return a non-null array
         Object[] listeners = getEventListenerList().getListenerList();
 
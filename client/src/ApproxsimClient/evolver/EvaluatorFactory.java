@@ -16,4 +16,9 @@ public interface EvaluatorFactory {
      * Returns an instance of an Evaluator.
      */
     public Evaluator getEvaluator();
+
+    /**
+     * Releases what this factory holds on to between evaluators. Called by the Evolver when it stops.
+     */
+    public void close();
 }
@@ -7,6 +7,7 @@ package ApproxsimClient.evolver;
 
 import java.util.Vector;
 import java.util.Enumeration;
+import java.util.LinkedList;
 
 import javax.swing.event.EventListenerList;
 
@@ -67,6 +68,18 @@ public class Evolver extends Thread {
      */
     boolean abort = false;
 
+    /**
+     * The maximum number of evaluations run concurrently, each on its own evaluator. Defaults to the EVALUATORS system property or 1 if it
+     * isn't set.
+     */
+    int parallelism = Integer.getInteger("EVALUATORS", 1).intValue();
+
+    /**
+     * Completions of concurrently running evaluations not yet added to the evaluations, in the order they completed. Also the lock the
+     * evolver waits on for completions.
+     */
+    LinkedList completions = new LinkedList();
+
     /**
      * Creates a new evolver using the provided parameters.
      * 
@@ -118,6 +131,10 @@ public class Evolver extends Thread {
      * Steps forth until either stopped or the some internal stopCondition is reached.
      */
     public void run() {
+        if (getParallelism() > 1) {
+            runParallel();
+            return;
+        }
         fireRunningStateChanged();
         while (true) {
             // What to do this round:
@@ -161,6 +178,223 @@ public class Evolver extends Thread {
             }
         }
         fireRunningStateChanged();
+        getEvaluatorFactory().close();
+    }
+
+    /**
+     * Steps forth like run, but keeps up to getParallelism() evaluations running concurrently on separate evaluators. New samples are
+     * requested from the sampler as soon as an evaluator is available, based on the evaluations completed so far. The evaluations are added,
+     * and all listeners are notified, from this thread in the order the evaluations complete. Evaluations still running when the evolver is
+     * aborted are discarded.
+     */
+    void runParallel() {
+        int running = 0;
+        int started = 0;
+        // A sample that has not been started yet for lack of an evaluator.
+        ParameterInstanceSet next = null;
+
+        fireRunningStateChanged();
+        while (true) {
+            // Add everything that has completed so far.
+            Completion completion;
+            while ((completion = pollCompletion()) != null) {
+                if (completion.getInformation() != null) {
+                    fireInformation(completion.getInformation());
+                    continue;
+                }
+                running--;
+                if (completion.getError() != null) {
+                    fireInformation("Error evaluating sample"
+                            + completion.getError().getMessage());
+                } else {
+                    addEvaluation(completion.getEvaluation());
+                }
+            }
+
+            if (isInterrupted() || isAborted()) {
+                if (!isAborted()) {
+                    throw new AssertionError(
+                            "Evolver thread unexpectedly interrupted.");
+                } else {
+                    break;
+                }
+            } else if (isPaused()) {
+                try {
+                    fireRunningStateChanged();
+                    synchronized (getPauseLock()) {
+                        getPauseLock().wait();
+                    }
+                    fireRunningStateChanged();
+                } catch (InterruptedException e) {}
+            } else if (isFinished() || running >= getParallelism()
+                    || running > 0 && getRemainingIterations() <= running) {
+                if (running == 0) {
+                    // No more work to do. Exit nicely.
+                    break;
+                }
+                // Nothing more to start until an evaluation completes.
+                waitForCompletion();
+            } else {
+                if (next == null) {
+                    next = (started == 0 && evaluations.size() == 0 ? initialSettings
+                            : getSampler().getSample(getEvaluations()));
+                }
+                if (next == null) {
+                    // The sampler may need more evaluations before it
+                    // can provide another sample.
+                    if (running == 0) {
+                        fireInformation("No sample provided by sampler, aborting");
+                        abort();
+                    } else {
+                        waitForCompletion();
+                    }
+                    continue;
+                }
+
+                // Only back off while nothing is running, otherwise wait
+                // for a running evaluation to release its server.
+                Evaluator evaluator = (running == 0 ? getEvaluator(8)
+                        : getEvaluator());
+                if (evaluator == null) {
+                    if (running == 0) {
+                        fireInformation("Timed out waiting for Evaluator, aborting");
+                        abort();
+                    } else {
+                        waitForCompletion();
+                    }
+                } else {
+                    fireInformation("Step: " + (getEvaluations().size() + running));
+                    evaluator.addEventListener(getParallelEvaluatorListener());
+                    fireNewEvaluator(evaluator);
+                    startEvaluation(evaluator, next);
+                    next = null;
+                    running++;
+                    started++;
+                }
+            }
+        }
+        fireRunningStateChanged();
+        // Evaluations still running release their servers when done.
+        getEvaluatorFactory().close();
+    }
+
+    /**
+     * Starts a thread evaluating the provided sample and posting the result as a Completion.
+     *
+     * @param evaluator the evaluator to use.
+     * @param sample the sample to evaluate.
+     */
+    void startEvaluation(final Evaluator evaluator,
+            final ParameterInstanceSet sample) {
+        Thread thread = new Thread(getName() + "-Evaluation") {
+            public void run() {
+                Completion completion;
+                try {
+                    completion = new Completion(evaluator.evaluate(sample),
+                            null, null);
+                } catch (EvaluatorException e) {
+                    completion = new Completion(null, e, null);
+                } catch (RuntimeException e) {
+                    // Must always complete or the evolver waits forever.
+                    completion = new Completion(null, new EvaluatorException(
+                            evaluator, e.toString()), null);
+                }
+                postCompletion(completion);
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the Evaluator listener used in parallel mode, which passes errors to the evolver thread instead of notifying the evolver's
+     * listeners directly from the evaluating thread.
+     */
+    EvaluatorEventListener getParallelEvaluatorListener() {
+        return new EvaluatorEventListener() {
+            public void finished(EvaluatorEvent event) {
+                event.getEvaluator().removeEventListener(this);
+            }
+
+            public void error(EvaluatorEvent event, String errorMessage) {
+                event.getEvaluator().removeEventListener(this);
+                postCompletion(new Completion(null, null, errorMessage));
+            }
+
+            public void newPreliminaryEvaluation(EvaluatorEvent event,
+                    Evaluation evaluation) {}
+        };
+    }
+
+    /**
+     * Hands a completion over to the evolver thread.
+     *
+     * @param completion the completion.
+     */
+    void postCompletion(Completion completion) {
+        synchronized (this.completions) {
+            completions.addLast(completion);
+            completions.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the oldest completion not yet handled or null if there is none.
+     */
+    Completion pollCompletion() {
+        synchronized (this.completions) {
+            return (completions.isEmpty() ? null
+                    : (Completion) completions.removeFirst());
+        }
+    }
+
+    /**
+     * Waits until there is a completion to handle or the evolver is interrupted.
+     */
+    void waitForCompletion() {
+        synchronized (this.completions) {
+            if (completions.isEmpty()) {
+                try {
+                    completions.wait();
+                } catch (InterruptedException e) {
+                    // Abort or pause, handled by the caller.
+                    interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of evaluations left before the stopper is satisfied if the stopper counts the evaluations of this evolver, else
+     * Integer.MAX_VALUE.
+     */
+    int getRemainingIterations() {
+        if (getStopper() instanceof IterationsStopper) {
+            IterationsStopper stopper = (IterationsStopper) getStopper();
+            return stopper.getMinIterations() - stopper.getIterations(this);
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the maximum number of evaluations run concurrently.
+     */
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * Sets the maximum number of evaluations run concurrently. Each concurrent evaluation allocates a server of its own, so there is no
+     * point in setting this higher than the number of servers available to the evaluator factory. Must be called before the evolver is
+     * started.
+     *
+     * @param parallelism the number of concurrent evaluations, 1 to run them one at a time.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism < 1");
+        }
+        this.parallelism = parallelism;
     }
 
     /**
@@ -442,3 +676,58 @@ public class Evolver extends Thread {
         }
     }
 }
+
+/**
+ * The outcome of an evaluation run concurrently by an Evolver, or information reported while running it.
+ */
+class Completion {
+    /**
+     * The evaluation or null.
+     */
+    Evaluation evaluation;
+
+    /**
+     * The error that stopped the evaluation or null.
+     */
+    EvaluatorException error;
+
+    /**
+     * Information to report or null if this is the outcome of an evaluation.
+     */
+    String information;
+
+    /**
+     * Creates a new Completion.
+     *
+     * @param evaluation the evaluation, may be null.
+     * @param error the error that stopped the evaluation, or null.
+     * @param information information to report, or null if this is the outcome of an evaluation.
+     */
+    Completion(Evaluation evaluation, EvaluatorException error,
+            String information) {
+        this.evaluation = evaluation;
+        this.error = error;
+        this.information = information;
+    }
+
+    /**
+     * Returns the evaluation.
+     */
+    Evaluation getEvaluation() {
+        return this.evaluation;
+    }
+
+    /**
+     * Returns the error that stopped the evaluation.
+     */
+    EvaluatorException getError() {
+        return this.error;
+    }
+
+    /**
+     * Returns the information to report.
+     */
+    String getInformation() {
+        return this.information;
+    }
+}
@@ -16,6 +16,13 @@ import javax.media.opengl.GLEventListener;
 import javax.media.opengl.GLCapabilities;
 import javax.media.opengl.GLProfile;
 import java.io.UnsupportedEncodingException;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JPanel;
 import java.nio.IntBuffer;
@@ -222,6 +229,45 @@ public class GLPlotter extends JPanel implements GLEventListener,
      */
     double[] parameterSlice;
 
+    /**
+     * Index over the matrix rows used when interpolating the grid, or null if it needs to be rebuilt.
+     */
+    SampleIndex sampleIndex;
+
+    /**
+     * The matrix sampleIndex was built from.
+     */
+    EvaluationsMatrix indexedMatrix;
+
+    /**
+     * The number of nearest samples each grid point is interpolated from.
+     */
+    int neighbours = 32;
+
+    /**
+     * The largest distance of samples a grid point is interpolated from.
+     */
+    double radius = Double.POSITIVE_INFINITY;
+
+    /**
+     * The number of grid rows filled in by each grid task.
+     */
+    static final int GRID_ROWS_PER_TASK = 4;
+
+    /**
+     * The threads filling in grid rows, shared by all plotters.
+     */
+    static final ExecutorService gridWorkers = Executors
+            .newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                                new ThreadFactory() {
+                                    public Thread newThread(Runnable r) {
+                                        Thread t = new Thread(r,
+                                                "GLPlotterGrid");
+                                        t.setDaemon(true);
+                                        return t;
+                                    }
+                                });
+
     /**
      * The GLAutoDrawable used to render the plot.
      */
@@ -346,6 +392,9 @@ public class GLPlotter extends JPanel implements GLEventListener,
      * @param event the event.
      */
     public void matrixUpdated(MatrixEvent event) {
+        if (!event.isAppendOnly()) {
+            invalidateSampleIndex();
+        }
         setXSpan();
         setYSpan();
         setZSpan();
@@ -743,19 +792,11 @@ public class GLPlotter extends JPanel implements GLEventListener,
     double[] findParameterSpan(Parameter parameter) {
         int j = getMatrix().getColumnMap().getIndex(parameter);
         if (j != -1) {
-            double[] res = new double[] { Double.POSITIVE_INFINITY,
-                    Double.NEGATIVE_INFINITY };
-            double[][] data = getMatrix().getMatrix();
-            for (int i = 0; i < data.length; i++) {
-                if (data[i][j] < res[0]) {
-                    res[0] = data[i][j];
-                }
-                if (data[i][j] > res[1]) {
-                    res[1] = data[i][j];
-                }
+            if (getMatrix().getRowCount() == 0) {
+                return new double[] { Double.POSITIVE_INFINITY,
+                        Double.NEGATIVE_INFINITY };
             }
-
-            return res;
+            return getMatrix().getColumnSpan(j);
         } else {
             return new double[] { Double.NaN, Double.NaN };
         }
@@ -958,31 +999,169 @@ public class GLPlotter extends JPanel implements GLEventListener,
             iIndices = new int[0];
         }
 
-        // Get a copy of the point to use.
-        double[] values = new double[getParameterSlice().length];
-        System.arraycopy(getParameterSlice(), 0, values, 0, values.length);
-
-        for (int i = 0; i < xTiles + 1; i++) {
-            double x = getXMin() + ((double) i) * xRes;
-            for (int j = 0; j < yTiles + 1; j++) {
-                double y = getYMin() + ((double) j) * yRes;
-
-                // note that interpolator currently changes values
-                // directly.
-                values[yIndex] = y;
-                values[xIndex] = x;
-                double[] point = Interpolator.interpolate(samples, iIndices,
-                                                          values);
-                grid[4 * (i * (yTiles + 1) + j) + 0] = x;
-                grid[4 * (i * (yTiles + 1) + j) + 1] = y;
-                grid[4 * (i * (yTiles + 1) + j) + 2] = point[zIndex];
-                grid[4 * (i * (yTiles + 1) + j) + 3] = point[cIndex];
+        int[] pIndices = Interpolator.getComplement(iIndices,
+                                                    getParameterSlice().length);
+
+        synchronized (this) {
+            SampleIndex index = getSampleIndex(samples, pIndices);
+            Vector<GridTask> tasks = new Vector<GridTask>();
+            for (int from = 0; from < xTiles + 1; from += GRID_ROWS_PER_TASK) {
+                tasks.add(new GridTask(samples, iIndices, index, xIndex,
+                                       yIndex, zIndex, cIndex, xRes, yRes,
+                                       yTiles, grid, from, Math
+                                               .min(xTiles + 1, from
+                                                       + GRID_ROWS_PER_TASK)));
+            }
+            try {
+                for (Future<Object> future : gridWorkers.invokeAll(tasks)) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
             }
         }
 
         return grid;
     }
 
+    /**
+     * Returns the number of nearest samples each grid point is interpolated from.
+     */
+    public int getNeighbours() {
+        return this.neighbours;
+    }
+
+    /**
+     * Sets the number of nearest samples each grid point is interpolated from. A value of at least the number of samples interpolates from
+     * all of them, as Shepards method does.
+     * 
+     * @param neighbours the number of samples.
+     */
+    public void setNeighbours(int neighbours) {
+        this.neighbours = Math.max(1, neighbours);
+        updateGrid();
+        invalidatePlot();
+    }
+
+    /**
+     * Returns the largest distance of samples a grid point is interpolated from.
+     */
+    public double getRadius() {
+        return this.radius;
+    }
+
+    /**
+     * Sets the largest distance of samples a grid point is interpolated from. Grid points with no samples within the radius take the value of
+     * the nearest sample.
+     * 
+     * @param radius the distance, Double.POSITIVE_INFINITY for no limit.
+     */
+    public void setRadius(double radius) {
+        this.radius = radius;
+        updateGrid();
+        invalidatePlot();
+    }
+
+    /**
+     * Makes the next grid update rebuild the sample index, e. g. since matrix values have been recomputed.
+     */
+    synchronized void invalidateSampleIndex() {
+        this.sampleIndex = null;
+    }
+
+    /**
+     * Returns an index covering pIndices of all rows of samples, adding rows appended since the last call and rebuilding it if the matrix, the
+     * covered columns or the values of existing rows have changed.
+     * 
+     * @param samples the matrix rows.
+     * @param pIndices the indices of the columns to cover.
+     */
+    synchronized SampleIndex getSampleIndex(double[][] samples, int[] pIndices) {
+        if (sampleIndex == null || indexedMatrix != getMatrix()
+                || !sampleIndex.covers(pIndices)
+                || sampleIndex.size() > samples.length) {
+            sampleIndex = new SampleIndex(pIndices);
+            indexedMatrix = getMatrix();
+        }
+        sampleIndex.addAll(samples);
+        return sampleIndex;
+    }
+
+    /**
+     * Fills in a range of grid rows, i. e. grid points with the same x component.
+     */
+    class GridTask implements Callable<Object> {
+        double[][] samples;
+
+        int[] iIndices;
+
+        SampleIndex index;
+
+        int xIndex, yIndex, zIndex, cIndex;
+
+        double xRes, yRes;
+
+        int yTiles;
+
+        double[] grid;
+
+        /**
+         * The first grid row to fill in.
+         */
+        int from;
+
+        /**
+         * One past the last grid row to fill in.
+         */
+        int to;
+
+        GridTask(double[][] samples, int[] iIndices, SampleIndex index,
+                int xIndex, int yIndex, int zIndex, int cIndex, double xRes,
+                double yRes, int yTiles, double[] grid, int from, int to) {
+            this.samples = samples;
+            this.iIndices = iIndices;
+            this.index = index;
+            this.xIndex = xIndex;
+            this.yIndex = yIndex;
+            this.zIndex = zIndex;
+            this.cIndex = cIndex;
+            this.xRes = xRes;
+            this.yRes = yRes;
+            this.yTiles = yTiles;
+            this.grid = grid;
+            this.from = from;
+            this.to = to;
+        }
+
+        public Object call() {
+            // Get a copy of the point to use, one per task.
+            double[] values = new double[getParameterSlice().length];
+            System.arraycopy(getParameterSlice(), 0, values, 0, values.length);
+
+            for (int i = from; i < to; i++) {
+                double x = getXMin() + ((double) i) * xRes;
+                for (int j = 0; j < yTiles + 1; j++) {
+                    double y = getYMin() + ((double) j) * yRes;
+
+                    // note that interpolator currently changes values
+                    // directly.
+                    values[yIndex] = y;
+                    values[xIndex] = x;
+                    double[] point = Interpolator
+                            .interpolate(samples, iIndices, index,
+                                         getNeighbours(), getRadius(), values);
+                    grid[4 * (i * (yTiles + 1) + j) + 0] = x;
+                    grid[4 * (i * (yTiles + 1) + j) + 1] = y;
+                    grid[4 * (i * (yTiles + 1) + j) + 2] = point[zIndex];
+                    grid[4 * (i * (yTiles + 1) + j) + 3] = point[cIndex];
+                }
+            }
+            return null;
+        }
+    }
+
     /**
      * Called by the drawable during the first repaint after the component has been resized.
      * 
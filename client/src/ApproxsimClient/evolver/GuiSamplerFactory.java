@@ -11,6 +11,10 @@ import javax.swing.ButtonGroup;
 import javax.swing.JPanel;
 import javax.swing.BoxLayout;
 import javax.swing.BorderFactory;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 import java.awt.event.ActionEvent;
 
@@ -30,6 +34,36 @@ public class GuiSamplerFactory extends JPanel implements SamplerFactory {
      */
     boolean isMinimizing = true;
 
+    /**
+     * Strategy using the gradient of the two latest samples.
+     */
+    public static final String GRADIENT = "Gradient";
+
+    /**
+     * Strategy using generations forming latin hypercubes.
+     */
+    public static final String LATIN_HYPERCUBE = "Latin hypercube";
+
+    /**
+     * Strategy using covariance matrix adaptation.
+     */
+    public static final String CMA = "CMA-ES";
+
+    /**
+     * Strategy using differential evolution.
+     */
+    public static final String DIFFERENTIAL_EVOLUTION = "Differential evolution";
+
+    /**
+     * The strategy of the samplers created by this factory. Default is GRADIENT.
+     */
+    String strategy = GRADIENT;
+
+    /**
+     * The number of samples per generation for population based strategies.
+     */
+    int populationSize = 10;
+
     /**
      * Creates a new SamplerFactory letting the user configure the various components of an Sampler.
      */
@@ -69,6 +103,40 @@ public class GuiSamplerFactory extends JPanel implements SamplerFactory {
 
         add(panel);
 
+        ButtonGroup strategies = new ButtonGroup();
+        JPanel strategyPanel = new JPanel();
+        strategyPanel.setLayout(new BoxLayout(strategyPanel, BoxLayout.Y_AXIS));
+        String[] names = { GRADIENT, LATIN_HYPERCUBE, CMA,
+                DIFFERENTIAL_EVOLUTION };
+        for (int i = 0; i < names.length; i++) {
+            final String name = names[i];
+            JRadioButton button = new JRadioButton(new AbstractAction(name) {
+                private static final long serialVersionUID = 1L;
+
+                public void actionPerformed(ActionEvent event) {
+                    setStrategy(name);
+                }
+            });
+            strategies.add(button);
+            button.setSelected(name.equals(getStrategy()));
+            strategyPanel.add(button);
+        }
+        add(strategyPanel);
+
+        SpinnerNumberModel spinnerModel = new SpinnerNumberModel(
+                getPopulationSize(), 1, Integer.MAX_VALUE, 1);
+        spinnerModel.addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent event) {
+                setPopulationSize(((SpinnerNumberModel) event.getSource())
+                        .getNumber().intValue());
+            }
+        });
+        JPanel populationPanel = new JPanel();
+        populationPanel.setBorder(BorderFactory
+                .createTitledBorder("Population"));
+        populationPanel.add(new JSpinner(spinnerModel));
+        add(populationPanel);
+
         setBorder(BorderFactory.createCompoundBorder(BorderFactory
                 .createTitledBorder("Search Strategy"), BorderFactory
                 .createEmptyBorder(5, 5, 5, 5)));
@@ -90,10 +158,52 @@ public class GuiSamplerFactory extends JPanel implements SamplerFactory {
         this.isMinimizing = flag;
     }
 
+    /**
+     * Returns the strategy of the samplers created by this factory.
+     */
+    public String getStrategy() {
+        return this.strategy;
+    }
+
+    /**
+     * Sets the strategy of the samplers created by this factory.
+     * 
+     * @param strategy GRADIENT, LATIN_HYPERCUBE, CMA or DIFFERENTIAL_EVOLUTION.
+     */
+    public void setStrategy(String strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * Returns the number of samples per generation for population based strategies.
+     */
+    public int getPopulationSize() {
+        return this.populationSize;
+    }
+
+    /**
+     * Sets the number of samples per generation for population based strategies. Should be at least the number of concurrent evaluations
+     * of the evolver in order to keep all servers busy.
+     * 
+     * @param populationSize the number of samples per generation.
+     */
+    public void setPopulationSize(int populationSize) {
+        this.populationSize = populationSize;
+    }
+
     /**
      * Returns an instance of an Sampler.
      */
     public Sampler getSampler() {
+        if (LATIN_HYPERCUBE.equals(getStrategy())) {
+            return new LatinHypercubeSampler(isMinimizing(),
+                    getPopulationSize());
+        } else if (CMA.equals(getStrategy())) {
+            return new CmaSampler(isMinimizing(), getPopulationSize());
+        } else if (DIFFERENTIAL_EVOLUTION.equals(getStrategy())) {
+            return new DifferentialEvolutionSampler(isMinimizing(),
+                    getPopulationSize());
+        }
         return new GradientSampler(isMinimizing());
     }
 }
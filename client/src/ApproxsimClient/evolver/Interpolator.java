@@ -23,18 +23,26 @@ public class Interpolator {
      */
     public static double[] interpolate(double[][] samples, int iIndices[],
             double[] values) {
-        // Find indices of values to interpolate from. Set these
-        // values in the result array.
-        int[] pIndices = new int[values.length - iIndices.length];
-        for (int i = 0, pStrider = 0, iStrider = 0; i < values.length; i++) {
+        return interpolate(samples, iIndices,
+                           getComplement(iIndices, values.length), values);
+    }
+
+    /**
+     * Returns the indices of the parameters to interpolate from, i. e. all indices in [0, length - 1] not in iIndices.
+     * 
+     * @param iIndices the indices of the parameters to be interpolated, sorted and containing no duplicates.
+     * @param length the number of parameters.
+     */
+    public static int[] getComplement(int iIndices[], int length) {
+        int[] pIndices = new int[length - iIndices.length];
+        for (int i = 0, pStrider = 0, iStrider = 0; i < length; i++) {
             if (iStrider < iIndices.length && i == iIndices[iStrider]) {
                 iStrider++;
             } else {
                 pIndices[pStrider++] = i;
             }
         }
-
-        return interpolate(samples, iIndices, pIndices, values);
+        return pIndices;
     }
 
     /**
@@ -93,4 +101,59 @@ public class Interpolator {
 
         return values;
     }
+
+    /**
+     * Interpolates a point using a weighted mean of the k samples nearest to it, found using an index over the parameters to interpolate from.
+     * The weights are the same as in Shepards method, so if k is at least samples.length the result equals that of the other interpolate
+     * methods. Only samples within radius are used, but if there are none the nearest sample is used regardless. If values is an exact sample
+     * that value is returned instead. If samples.length == 0, values is returned unchanged.
+     * 
+     * @param samples the samples to use as basis for the interpolation.
+     * @param iIndices the indices of the parameters to be interpolated.
+     * @param index an index of all rows of samples, covering the parameters to interpolate from.
+     * @param k the maximum number of samples to use.
+     * @param radius the largest distance of samples to use, Double.POSITIVE_INFINITY for no limit.
+     * @param values an array for where values[iIndex] should be interpolated and _filled in_. Note that values[] are expected to have the
+     *            same size and order as samples[*][]. values[i] for i = iIndices[0..] is ignored and may contain any value.
+     * @return values with the values[iIndex[0]..iIndex[iIndex.length - 1]] interpolated.
+     */
+    public static double[] interpolate(double[][] samples, int iIndices[],
+            SampleIndex index, int k, double radius, double[] values) {
+        int[] found = new int[Math.max(1, k)];
+        double[] distances = new double[found.length];
+        int n = index.nearest(values, k, radius, found, distances);
+        if (n == 0) {
+            n = index.nearest(values, 1, Double.POSITIVE_INFINITY, found,
+                              distances);
+            if (n == 0) {
+                return values;
+            }
+        }
+
+        if (distances[0] == 0) {
+            // Spot on, the nearest sample comes first.
+            for (int j = 0; j < iIndices.length; j++) {
+                values[iIndices[j]] = samples[found[0]][iIndices[j]];
+            }
+            return values;
+        }
+
+        for (int j = 0; j < iIndices.length; j++) {
+            values[iIndices[j]] = 0.0;
+        }
+        double invDistanceSum = 0;
+        for (int i = 0; i < n; i++) {
+            double distanceMeasure = 1.0 / distances[i];
+            for (int j = 0; j < iIndices.length; j++) {
+                values[iIndices[j]] += distanceMeasure
+                        * samples[found[i]][iIndices[j]];
+            }
+            invDistanceSum += distanceMeasure;
+        }
+        for (int j = 0; j < iIndices.length; j++) {
+            values[iIndices[j]] /= invDistanceSum;
+        }
+
+        return values;
+    }
 }
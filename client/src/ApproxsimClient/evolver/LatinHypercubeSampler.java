@@ -0,0 +1,101 @@
+/*
+ * @(#)LatinHypercubeSampler.java
+ */
+
+package ApproxsimClient.evolver;
+
+import java.util.Vector;
+
+/**
+ * LatinHypercubeSampler produces generations of samples forming a latin hypercube around the best sample so far. The range of each parameter
+ * is divided into as many strata as there are samples in the generation and each stratum is sampled exactly once, so a generation covers
+ * every parameter evenly regardless of the number of parameters. The range is the step size on either side of the center and is multiplied
+ * by the shrink factor after each generation.
+ *
+ * @version 1
+ */
+public class LatinHypercubeSampler extends PopulationSampler {
+    /**
+     * The factor the range is multiplied with after each generation.
+     */
+    double shrinkFactor = 1.0;
+
+    /**
+     * The number of generations created so far.
+     */
+    int generations = 0;
+
+    /**
+     * Creates a new LatinHypercubeSampler.
+     *
+     * @param isMinimizing true if this sampler should seek to minimize the evaluations.
+     * @param populationSize the number of samples per generation.
+     */
+    public LatinHypercubeSampler(boolean isMinimizing, int populationSize) {
+        super(isMinimizing, populationSize);
+    }
+
+    /**
+     * Creates a new LatinHypercubeSampler with ten samples per generation.
+     *
+     * @param isMinimizing true if this sampler should seek to minimize the evaluations.
+     */
+    public LatinHypercubeSampler(boolean isMinimizing) {
+        this(isMinimizing, 10);
+    }
+
+    /**
+     * Returns the factor the range is multiplied with after each generation.
+     */
+    public double getShrinkFactor() {
+        return this.shrinkFactor;
+    }
+
+    /**
+     * Sets the factor the range is multiplied with after each generation. 1 keeps the range constant.
+     *
+     * @param shrinkFactor the factor, in (0, 1].
+     */
+    public void setShrinkFactor(double shrinkFactor) {
+        this.shrinkFactor = shrinkFactor;
+    }
+
+    /**
+     * Creates the points of the next generation.
+     *
+     * @param evaluations a vector of Evaluations of the previous samples.
+     * @param size the number of points to create.
+     */
+    Vector createGeneration(Vector evaluations, int size) {
+        Vector<Evaluation> ranked = rank(evaluations);
+        double[] center = (ranked.isEmpty() ? new double[getDimension()]
+                : toPoint(ranked.get(0).getParameterInstanceSet()));
+        double halfWidth = getStepSize()
+                * Math.pow(getShrinkFactor(), generations++);
+
+        double[][] points = new double[size][getDimension()];
+        int[] strata = new int[size];
+        for (int d = 0; d < getDimension(); d++) {
+            // Random permutation of the strata for this dimension.
+            for (int i = 0; i < size; i++) {
+                strata[i] = i;
+            }
+            for (int i = size - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = strata[i];
+                strata[i] = strata[j];
+                strata[j] = tmp;
+            }
+            for (int i = 0; i < size; i++) {
+                double u = (strata[i] + random.nextDouble()) / size;
+                points[i][d] = center[d] + (2 * u - 1) * halfWidth;
+            }
+        }
+
+        Vector res = new Vector();
+        for (int i = 0; i < size; i++) {
+            res.add(points[i]);
+        }
+        return res;
+    }
+}
@@ -19,13 +19,64 @@ public class MatrixEvent extends EventObject {
 	 */
     private static final long serialVersionUID = -2053066901785183479L;
 
+    /**
+     * The index of the first row added.
+     */
+    int firstRow;
+
+    /**
+     * The number of rows added.
+     */
+    int rowCount;
+
+    /**
+     * The indexes of the columns whose existing rows have been recomputed.
+     */
+    int[] recomputedColumns;
+
     /**
      * Constructs a new MatrixEvent representing the specified type.
      * 
      * @param matrix the Matrix causing the event.
+     * @param firstRow the index of the first row added.
+     * @param rowCount the number of rows added.
+     * @param recomputedColumns the indexes of the columns whose existing rows have been recomputed.
      */
-    MatrixEvent(EvaluationsMatrix matrix) {
+    MatrixEvent(EvaluationsMatrix matrix, int firstRow, int rowCount,
+            int[] recomputedColumns) {
         super(matrix);
+        this.firstRow = firstRow;
+        this.rowCount = rowCount;
+        this.recomputedColumns = recomputedColumns;
+    }
+
+    /**
+     * Returns the index of the first row added.
+     */
+    public int getFirstRow() {
+        return this.firstRow;
+    }
+
+    /**
+     * Returns the number of rows added.
+     */
+    public int getRowCount() {
+        return this.rowCount;
+    }
+
+    /**
+     * Returns the indexes of the columns whose existing rows have been recomputed, i. e. changed, by this update. Rows not added by this
+     * update are unchanged in all other columns.
+     */
+    public int[] getRecomputedColumns() {
+        return this.recomputedColumns;
+    }
+
+    /**
+     * Returns true if only rows have been added, i. e. no existing row has changed.
+     */
+    public boolean isAppendOnly() {
+        return this.recomputedColumns.length == 0;
     }
 
     /**
@@ -15,7 +15,7 @@ import java.util.EventListener;
  */
 public interface MatrixEventListener extends EventListener {
     /**
-     * Called when matrix is updated.
+     * Called when matrix is updated. The event tells which rows were added and which columns were recomputed.
      * 
      * @param event the event.
      */
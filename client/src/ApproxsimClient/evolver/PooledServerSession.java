@@ -0,0 +1,196 @@
+/*
+ * @(#)PooledServerSession.java
+ */
+
+package ApproxsimClient.evolver;
+
+import java.util.Enumeration;
+import java.util.Vector;
+
+import ApproxsimClient.communication.ApproxsimMessage;
+import ApproxsimClient.communication.ApproxsimSocket;
+import ApproxsimClient.communication.ResetMessage;
+import ApproxsimClient.communication.ScenarioCache;
+import ApproxsimClient.communication.ServerCapabilitiesMessage;
+import ApproxsimClient.communication.ServerException;
+import ApproxsimClient.communication.Subscription;
+import ApproxsimClient.communication.Unsubscription;
+import ApproxsimClient.object.ApproxsimObject;
+
+/**
+ * A server session owned by a ServerSessionPool. Closing the session hands it back to the pool, which keeps the connection and its threads
+ * for the next evaluator. Before the session is handed out again its subscriptions are cancelled and the simulation is reset, so that a new
+ * evaluation of an unchanged simulation does not have to send it again.
+ *
+ * @version 1
+ */
+class PooledServerSession extends DefaultServerSession {
+    /**
+     * The pool this session belongs to.
+     */
+    ServerSessionPool pool;
+
+    /**
+     * The subscriptions registered since the session was last reset.
+     */
+    Vector<Subscription> subscriptions = new Vector<Subscription>();
+
+    /**
+     * The simulation the server was last initialized with, null if none.
+     */
+    ApproxsimObject initialized = null;
+
+    /**
+     * The version of the ScenarioCache of the simulation when it was sent.
+     */
+    long initializedVersion = -1;
+
+    /**
+     * True if the server has been reset since the simulation was last initialized or stepped.
+     */
+    boolean isReset = false;
+
+    /**
+     * True if communication with the server has failed.
+     */
+    boolean failed = false;
+
+    /**
+     * The time at which the session was last handed back to the pool.
+     */
+    long idleSince = 0;
+
+    /**
+     * Creates a new session for a pool.
+     *
+     * @param pool the pool the session belongs to.
+     * @param socket the socket to the server. It is expected that the socket is "active".
+     */
+    PooledServerSession(ServerSessionPool pool, ApproxsimSocket socket) {
+        super(socket);
+        this.pool = pool;
+    }
+
+    /**
+     * Registers the provided subscription.
+     *
+     * @param subscription the subscription to register
+     */
+    public void registerSubscription(Subscription subscription)
+            throws ServerException {
+        try {
+            super.registerSubscription(subscription);
+            subscriptions.add(subscription);
+        } catch (ServerException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Initializes the session with the provided ApproxsimObject as root. Nothing is sent if the server has been reset since it was
+     * initialized with the same, unchanged, simulation.
+     *
+     * @param root the object to use as root
+     * @throws ServerException on communication error.
+     */
+    public void initialize(ApproxsimObject root) throws ServerException {
+        long version = ScenarioCache.getCache(root).getVersion();
+        if (isReset && root == initialized && version == initializedVersion) {
+            pool.reinitializationSkipped();
+            return;
+        }
+        initialized = null;
+        super.initialize(root);
+        initialized = root;
+        initializedVersion = version;
+        isReset = false;
+        // Initialization drops the subscriptions on the server.
+        subscriptions.clear();
+    }
+
+    /**
+     * Tries to take an attached step.
+     *
+     * @throws ServerException on communication error.
+     */
+    public void step() throws ServerException {
+        isReset = false;
+        super.step();
+    }
+
+    /**
+     * The send method used by this session.
+     *
+     * @param message the message to send.
+     * @throws ServerException on communication error.
+     */
+    public void send(ApproxsimMessage message) throws ServerException {
+        if (!(message instanceof ResetMessage)
+                && !(message instanceof ServerCapabilitiesMessage)) {
+            // Anything but the pool's own messages may change the simulation.
+            isReset = false;
+        }
+        try {
+            super.send(message);
+        } catch (ServerException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Hands the session back to the pool.
+     *
+     * @throws ServerException never, failures are handled by the pool.
+     */
+    public void close() throws ServerException {
+        pool.release(this);
+    }
+
+    /**
+     * Closes the connection to the server.
+     */
+    void disconnect() {
+        try {
+            super.close();
+        } catch (ServerException e) {
+            // The session is discarded anyway.
+        }
+    }
+
+    /**
+     * Cancels the subscriptions and resets the simulation, making the session ready for a new evaluation.
+     *
+     * @throws ServerException on communication error.
+     */
+    void reset() throws ServerException {
+        for (Enumeration<Subscription> e = subscriptions.elements(); e
+                .hasMoreElements();) {
+            getConnection().getSubscriptionHandler().blockingRegSubscription(
+                    new Unsubscription(e.nextElement()));
+        }
+        subscriptions.clear();
+        send(new ResetMessage());
+        isReset = true;
+    }
+
+    /**
+     * Returns true if the session is still connected to the server.
+     *
+     * @param ping true if the server should be asked, otherwise only known failures are considered.
+     */
+    boolean isHealthy(boolean ping) {
+        if (failed || !getConnection().isAlive()) {
+            return false;
+        }
+        if (ping) {
+            try {
+                send(new ServerCapabilitiesMessage());
+            } catch (ServerException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
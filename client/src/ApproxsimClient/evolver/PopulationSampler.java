@@ -0,0 +1,269 @@
+/*
+ * @(#)PopulationSampler.java
+ */
+
+package ApproxsimClient.evolver;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * Base class for population based samplers. Samples are treated as points in a real coordinate space where the coordinate of each parameter
+ * is its signed distance from the origin, i. e. the first evaluated sample, as given by the parameter's Metric and Comparator. Points are
+ * turned back into samples using Parameter.getGradientNeighbour of the origin, so a sampler built on this class works for any parameter type
+ * that defines a metric, a comparator and gradient neighbours. Parameters lacking a metric or a comparator keep their original value.
+ *
+ * @version 1
+ */
+public abstract class PopulationSampler implements BatchSampler {
+    /**
+     * Indicates whether this sampler minimizes or maximizes.
+     */
+    boolean isMinimizing;
+
+    /**
+     * The number of samples per generation.
+     */
+    int populationSize;
+
+    /**
+     * The initial spread of the samples in each coordinate.
+     */
+    double stepSize = 1.0;
+
+    /**
+     * The random generator of this sampler.
+     */
+    Random random = new Random();
+
+    /**
+     * The origin of the coordinate space, or null until the first evaluation has been seen.
+     */
+    ParameterInstanceSet origin = null;
+
+    /**
+     * The parameters spanning the coordinate space, in coordinate order.
+     */
+    Vector<Parameter> parameters = new Vector<Parameter>();
+
+    /**
+     * Samples of the current generation not yet handed out by getSample.
+     */
+    Vector pending = new Vector();
+
+    /**
+     * Creates a new PopulationSampler.
+     *
+     * @param isMinimizing true if this sampler should seek to minimize the evaluations.
+     * @param populationSize the number of samples per generation.
+     */
+    PopulationSampler(boolean isMinimizing, int populationSize) {
+        this.isMinimizing = isMinimizing;
+        this.populationSize = Math.max(1, populationSize);
+    }
+
+    /**
+     * Returns true if this is a minimizing sampler.
+     */
+    public boolean isMinimizing() {
+        return this.isMinimizing;
+    }
+
+    /**
+     * Returns the number of samples this sampler prefers per generation.
+     */
+    public int getPopulationSize() {
+        return this.populationSize;
+    }
+
+    /**
+     * Returns the initial spread of the samples in each coordinate.
+     */
+    public double getStepSize() {
+        return this.stepSize;
+    }
+
+    /**
+     * Sets the initial spread of the samples in each coordinate, in units of the parameters' metrics.
+     *
+     * @param stepSize the spread.
+     */
+    public void setStepSize(double stepSize) {
+        this.stepSize = stepSize;
+    }
+
+    /**
+     * Returns the next sample of the current generation, creating a new generation when the current one has been handed out. It is assumed
+     * that the provided evaluations contains at least one sample (in order for the sampler to know what Parameters to create samples for)
+     * else it returns null.
+     *
+     * @param evaluations a vector of Evaluations of the previuos samples.
+     */
+    public ParameterInstanceSet getSample(Vector evaluations) {
+        if (pending.isEmpty()) {
+            pending.addAll(getSamples(evaluations, getPopulationSize()));
+        }
+        return (pending.isEmpty() ? null : (ParameterInstanceSet) pending
+                .remove(0));
+    }
+
+    /**
+     * Returns the samples of the next generation.
+     *
+     * @param evaluations a vector of Evaluations of the previous samples.
+     * @param size the number of samples to return.
+     */
+    public Vector getSamples(Vector evaluations, int size) {
+        if (origin == null) {
+            if (evaluations.size() == 0) {
+                return new Vector();
+            }
+            setOrigin(((Evaluation) evaluations.get(0))
+                    .getParameterInstanceSet());
+        }
+        Vector res = new Vector();
+        if (parameters.size() == 0) {
+            return res;
+        }
+        Vector points = createGeneration(evaluations, size);
+        for (int i = 0; i < points.size(); i++) {
+            res.add(toSample((double[]) points.get(i)));
+        }
+        generationCreated(res);
+        return res;
+    }
+
+    /**
+     * Creates the points of the next generation.
+     *
+     * @param evaluations a vector of Evaluations of the previous samples.
+     * @param size the number of points to create.
+     * @return a vector of double arrays of length getDimension().
+     */
+    abstract Vector createGeneration(Vector evaluations, int size);
+
+    /**
+     * Called with the samples of each generation once they have been created from the points returned by createGeneration, in the same
+     * order. Subclasses that need to recognize their samples among later evaluations may override this. Does nothing by default.
+     *
+     * @param samples the samples.
+     */
+    void generationCreated(Vector samples) {}
+
+    /**
+     * Sets the origin of the coordinate space and determines the parameters spanning it.
+     *
+     * @param set the origin.
+     */
+    void setOrigin(ParameterInstanceSet set) {
+        origin = set;
+        parameters.clear();
+        for (Enumeration e = set.getParameterInstances(); e.hasMoreElements();) {
+            Parameter parameter = ((ParameterInstance) e.nextElement())
+                    .getParameter();
+            if (parameter.getMetric() != null
+                    && parameter.getComparator() != null) {
+                parameters.add(parameter);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of coordinates.
+     */
+    int getDimension() {
+        return parameters.size();
+    }
+
+    /**
+     * Returns the coordinates of a sample.
+     *
+     * @param set the sample.
+     */
+    double[] toPoint(ParameterInstanceSet set) {
+        double[] res = new double[getDimension()];
+        for (int i = 0; i < res.length; i++) {
+            Parameter parameter = parameters.get(i);
+            ParameterInstance o = origin.getParameterInstance(parameter);
+            ParameterInstance x = set.getParameterInstance(parameter);
+            if (x != null) {
+                res[i] = parameter.getMetric().d(o, x)
+                        * Math.signum(parameter.getComparator().compare(x, o));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Returns the sample at the provided coordinates.
+     *
+     * @param point the coordinates.
+     */
+    ParameterInstanceSet toSample(double[] point) {
+        ParameterInstanceSet res = new ParameterInstanceSet();
+        res.addAll(origin);
+        for (int i = 0; i < point.length; i++) {
+            Parameter parameter = parameters.get(i);
+            ParameterInstance neighbour = parameter
+                    .getGradientNeighbour(origin.getParameterInstance(parameter),
+                                          point[i]);
+            if (neighbour != null) {
+                res.add(neighbour);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Returns true if the provided evaluation can be ranked, i. e. has an evaluation with a comparator.
+     *
+     * @param evaluation the evaluation.
+     */
+    boolean isRankable(Evaluation evaluation) {
+        return evaluation != null && evaluation.getEvaluation() != null
+                && evaluation.getEvaluation().getParameter().getComparator() != null;
+    }
+
+    /**
+     * Returns a comparator ordering Evaluations from best to worst.
+     */
+    Comparator<Evaluation> getEvaluationComparator() {
+        return new Comparator<Evaluation>() {
+            public int compare(Evaluation a, Evaluation b) {
+                int res = a.getEvaluation().getParameter().getComparator()
+                        .compare(a.getEvaluation(), b.getEvaluation());
+                return isMinimizing() ? res : -res;
+            }
+        };
+    }
+
+    /**
+     * Returns true if evaluation a is strictly better than evaluation b.
+     *
+     * @param a the first evaluation.
+     * @param b the second evaluation.
+     */
+    boolean isBetter(Evaluation a, Evaluation b) {
+        return getEvaluationComparator().compare(a, b) < 0;
+    }
+
+    /**
+     * Returns the rankable evaluations among the provided ones, ordered from best to worst.
+     *
+     * @param evaluations a vector of Evaluations.
+     */
+    Vector<Evaluation> rank(Vector evaluations) {
+        Vector<Evaluation> res = new Vector<Evaluation>();
+        for (int i = 0; i < evaluations.size(); i++) {
+            Evaluation evaluation = (Evaluation) evaluations.get(i);
+            if (isRankable(evaluation)) {
+                res.add(evaluation);
+            }
+        }
+        Collections.sort(res, getEvaluationComparator());
+        return res;
+    }
+}
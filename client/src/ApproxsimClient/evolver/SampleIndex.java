@@ -0,0 +1,361 @@
+/*
+ * @(#)SampleIndex.java
+ */
+
+package ApproxsimClient.evolver;
+
+/**
+ * A k-d tree over some of the columns of a sample matrix, e. g. the one of an EvaluationsMatrix, used to find the samples nearest to a point
+ * without looking at every sample. Rows are inserted one at a time as they are appended to the matrix. The tree is rebuilt balanced when
+ * insertions have made it too deep. The coordinates of each row are copied into the tree, so the matrix may be replaced by a new matrix with
+ * the same rows.
+ *
+ * @version 1
+ */
+public class SampleIndex {
+    /**
+     * The indices of the columns this index covers.
+     */
+    int[] dims;
+
+    /**
+     * The coordinates of each node, i. e. the covered columns of its row.
+     */
+    double[][] points = new double[16][];
+
+    /**
+     * The row of each node.
+     */
+    int[] rows = new int[16];
+
+    /**
+     * The left child of each node, -1 if none.
+     */
+    int[] left = new int[16];
+
+    /**
+     * The right child of each node, -1 if none.
+     */
+    int[] right = new int[16];
+
+    /**
+     * The splitting coordinate of each node.
+     */
+    int[] axes = new int[16];
+
+    /**
+     * The number of nodes.
+     */
+    int size = 0;
+
+    /**
+     * The root node or -1 if the tree is empty.
+     */
+    int root = -1;
+
+    /**
+     * The depth of the deepest node, where the root has depth 1.
+     */
+    int depth = 0;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param dims the indices of the columns to cover.
+     */
+    public SampleIndex(int[] dims) {
+        this.dims = (int[]) dims.clone();
+    }
+
+    /**
+     * Creates an index of all rows of a sample matrix.
+     *
+     * @param dims the indices of the columns to cover.
+     * @param samples the sample matrix.
+     */
+    public SampleIndex(int[] dims, double[][] samples) {
+        this(dims);
+        addAll(samples);
+    }
+
+    /**
+     * Returns true if this index covers exactly the provided columns.
+     *
+     * @param dims the indices of the columns.
+     */
+    public boolean covers(int[] dims) {
+        return java.util.Arrays.equals(this.dims, dims);
+    }
+
+    /**
+     * Returns the number of rows in the index.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Adds the rows of a sample matrix that are not yet in the index, i. e. rows size() and up.
+     *
+     * @param samples the sample matrix.
+     */
+    public void addAll(double[][] samples) {
+        for (int i = size; i < samples.length; i++) {
+            add(i, samples[i]);
+        }
+    }
+
+    /**
+     * Adds a row to the index.
+     *
+     * @param row the index of the row.
+     * @param sample the row of the sample matrix.
+     */
+    public void add(int row, double[] sample) {
+        if (size == rows.length) {
+            grow();
+        }
+        double[] point = new double[dims.length];
+        for (int d = 0; d < dims.length; d++) {
+            point[d] = sample[dims[d]];
+        }
+        int node = size++;
+        points[node] = point;
+        rows[node] = row;
+        left[node] = -1;
+        right[node] = -1;
+
+        if (root == -1) {
+            root = node;
+            axes[node] = 0;
+            depth = 1;
+            return;
+        }
+        int parent = root;
+        int level = 1;
+        while (true) {
+            int axis = axes[parent];
+            boolean goLeft = point[axis] < points[parent][axis];
+            int child = (goLeft ? left[parent] : right[parent]);
+            level++;
+            if (child == -1) {
+                if (goLeft) {
+                    left[parent] = node;
+                } else {
+                    right[parent] = node;
+                }
+                axes[node] = (dims.length == 0 ? 0 : (axis + 1) % dims.length);
+                break;
+            }
+            parent = child;
+        }
+        depth = Math.max(depth, level);
+
+        // Rebalance when the tree is far deeper than a balanced one.
+        if (depth > 2 * (32 - Integer.numberOfLeadingZeros(size)) + 8) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Doubles the capacity of the node arrays.
+     */
+    void grow() {
+        int capacity = rows.length * 2;
+        double[][] newPoints = new double[capacity][];
+        System.arraycopy(points, 0, newPoints, 0, size);
+        points = newPoints;
+        rows = copyOf(rows, capacity);
+        left = copyOf(left, capacity);
+        right = copyOf(right, capacity);
+        axes = copyOf(axes, capacity);
+    }
+
+    /**
+     * Returns a copy of an array with a new length.
+     */
+    static int[] copyOf(int[] a, int length) {
+        int[] res = new int[length];
+        System.arraycopy(a, 0, res, 0, Math.min(a.length, length));
+        return res;
+    }
+
+    /**
+     * Rebuilds the tree balanced by splitting at the median of alternating coordinates.
+     */
+    void rebuild() {
+        int[] nodes = new int[size];
+        for (int i = 0; i < size; i++) {
+            nodes[i] = i;
+        }
+        depth = 0;
+        root = build(nodes, 0, size, 0, 1);
+    }
+
+    /**
+     * Builds a balanced subtree of the provided nodes.
+     *
+     * @param nodes the nodes, reordered in place.
+     * @param from the first node to use.
+     * @param to one past the last node to use.
+     * @param axis the coordinate to split on.
+     * @param level the depth of the subtree root.
+     * @return the subtree root or -1 if empty.
+     */
+    int build(int[] nodes, int from, int to, int axis, int level) {
+        if (from >= to) {
+            return -1;
+        }
+        int mid = (from + to) >>> 1;
+        select(nodes, from, to - 1, mid, axis);
+        // Nodes equal to the median must end up to the right, as add expects.
+        while (mid > from
+                && points[nodes[mid - 1]][axis] == points[nodes[mid]][axis]) {
+            mid--;
+        }
+        int node = nodes[mid];
+        axes[node] = axis;
+        depth = Math.max(depth, level);
+        int next = (dims.length == 0 ? 0 : (axis + 1) % dims.length);
+        left[node] = build(nodes, from, mid, next, level + 1);
+        right[node] = build(nodes, mid + 1, to, next, level + 1);
+        return node;
+    }
+
+    /**
+     * Reorders nodes so that nodes[k] has the k:th smallest coordinate, with smaller to the left and larger or equal to the right.
+     */
+    void select(int[] nodes, int lo, int hi, int k, int axis) {
+        while (hi > lo) {
+            double pivot = points[nodes[(lo + hi) >>> 1]][axis];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (points[nodes[i]][axis] < pivot) {
+                    i++;
+                }
+                while (points[nodes[j]][axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = nodes[i];
+                    nodes[i] = nodes[j];
+                    nodes[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Finds the rows nearest to a point.
+     *
+     * @param query the point, in the same column order as the rows of the sample matrix.
+     * @param k the maximum number of rows to find.
+     * @param radius only rows within this distance are found, Double.POSITIVE_INFINITY for no limit.
+     * @param found the rows found are written here, nearest first. Must be at least k long.
+     * @param distances the squared distance of each row found is written here. Must be at least k long.
+     * @return the number of rows found.
+     */
+    public int nearest(double[] query, int k, double radius, int[] found,
+            double[] distances) {
+        double[] q = new double[dims.length];
+        for (int d = 0; d < dims.length; d++) {
+            q[d] = query[dims[d]];
+        }
+        Search search = new Search(q, k, radius * radius, found, distances);
+        search.visit(root);
+        return search.count;
+    }
+
+    /**
+     * The state of one nearest neighbour search. The rows found are kept sorted by distance.
+     */
+    class Search {
+        /** The query point. */
+        double[] q;
+
+        /** The maximum number of rows. */
+        int k;
+
+        /** The largest squared distance of interest. */
+        double limit;
+
+        /** The rows found. */
+        int[] found;
+
+        /** The squared distances of the rows found. */
+        double[] distances;
+
+        /** The number of rows found. */
+        int count = 0;
+
+        Search(double[] q, int k, double limit, int[] found, double[] distances) {
+            this.q = q;
+            this.k = k;
+            this.limit = limit;
+            this.found = found;
+            this.distances = distances;
+        }
+
+        /**
+         * Returns the squared distance beyond which rows are of no interest.
+         */
+        double worst() {
+            return (count < k ? limit : Math.min(limit, distances[count - 1]));
+        }
+
+        /**
+         * Searches the subtree rooted at node.
+         */
+        void visit(int node) {
+            if (node == -1 || k <= 0) {
+                return;
+            }
+            double[] p = points[node];
+            double d2 = 0;
+            for (int d = 0; d < p.length; d++) {
+                double diff = q[d] - p[d];
+                d2 += diff * diff;
+            }
+            if (d2 <= worst()) {
+                insert(rows[node], d2);
+            }
+            if (p.length == 0) {
+                visit(left[node]);
+                visit(right[node]);
+                return;
+            }
+            int axis = axes[node];
+            double diff = q[axis] - p[axis];
+            int near = (diff < 0 ? left[node] : right[node]);
+            int far = (diff < 0 ? right[node] : left[node]);
+            visit(near);
+            if (diff * diff <= worst()) {
+                visit(far);
+            }
+        }
+
+        /**
+         * Inserts a row among the rows found, dropping the farthest if there are already k.
+         */
+        void insert(int row, double d2) {
+            int i = (count < k ? count++ : k - 1);
+            while (i > 0 && distances[i - 1] > d2) {
+                found[i] = found[i - 1];
+                distances[i] = distances[i - 1];
+                i--;
+            }
+            found[i] = row;
+            distances[i] = d2;
+        }
+    }
+}
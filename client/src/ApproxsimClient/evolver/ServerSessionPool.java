@@ -0,0 +1,331 @@
+/*
+ * @(#)ServerSessionPool.java
+ */
+
+package ApproxsimClient.evolver;
+
+import java.util.Vector;
+
+import ApproxsimClient.Debug;
+import ApproxsimClient.communication.ApproxsimSocket;
+import ApproxsimClient.communication.ServerException;
+import ApproxsimClient.dispatcher.ApproxsimDispatcher;
+
+/**
+ * A pool of server sessions kept connected between evaluations. Setting up a session costs a connection to the server, a connect handshake
+ * and three threads, which is a large part of an evaluation of a short simulation. Sessions closed by their evaluators are reset and kept
+ * idle for the next evaluator. A background thread pings the idle sessions, replaces those that have failed and disconnects those that have
+ * been idle too long, so that the servers are not held when the pool is no longer used.
+ *
+ * @version 1
+ */
+public class ServerSessionPool implements Runnable {
+    /**
+     * The dispatcher used to allocate new servers.
+     */
+    ApproxsimDispatcher dispatcher;
+
+    /**
+     * The idle sessions, most recently used last.
+     */
+    Vector<PooledServerSession> idle = new Vector<PooledServerSession>();
+
+    /**
+     * The maximum number of idle sessions kept.
+     */
+    int maxIdle = 16;
+
+    /**
+     * The time in milliseconds after which an idle session is disconnected.
+     */
+    long maxIdleTime = 60000;
+
+    /**
+     * The time in milliseconds between the health checks of the idle sessions.
+     */
+    long checkInterval = 10000;
+
+    /**
+     * The number of failed idle sessions to replace.
+     */
+    int replacements = 0;
+
+    /**
+     * The thread checking the idle sessions, null if not started.
+     */
+    Thread checker = null;
+
+    /**
+     * True if the pool has been closed.
+     */
+    boolean closed = false;
+
+    /**
+     * The number of sessions created.
+     */
+    int created = 0;
+
+    /**
+     * The number of sessions handed out again after being used.
+     */
+    int reused = 0;
+
+    /**
+     * The number of sessions discarded because they had failed.
+     */
+    int discarded = 0;
+
+    /**
+     * The number of initializations that a reset made unnecessary.
+     */
+    int skipped = 0;
+
+    /**
+     * Creates a new pool.
+     *
+     * @param dispatcher the dispatcher to use when allocating new servers.
+     */
+    public ServerSessionPool(ApproxsimDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Returns the maximum number of idle sessions kept.
+     */
+    public int getMaxIdle() {
+        return this.maxIdle;
+    }
+
+    /**
+     * Sets the maximum number of idle sessions kept.
+     *
+     * @param maxIdle the number of sessions.
+     */
+    public synchronized void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Returns the time in milliseconds after which an idle session is disconnected.
+     */
+    public long getMaxIdleTime() {
+        return this.maxIdleTime;
+    }
+
+    /**
+     * Sets the time in milliseconds after which an idle session is disconnected.
+     *
+     * @param maxIdleTime the time.
+     */
+    public synchronized void setMaxIdleTime(long maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    /**
+     * Returns a session, reusing an idle one if there is one. Returns null if there is no idle session and no new server could be
+     * allocated.
+     */
+    public ServerSession acquire() {
+        while (true) {
+            PooledServerSession session = null;
+            synchronized (this) {
+                if (!idle.isEmpty()) {
+                    session = idle.remove(idle.size() - 1);
+                }
+            }
+            if (session == null) {
+                return createSession();
+            }
+            if (session.isHealthy(false)) {
+                synchronized (this) {
+                    reused++;
+                }
+                return session;
+            }
+            discard(session);
+        }
+    }
+
+    /**
+     * Allocates a new server and creates a session for it, or returns null if no server could be allocated.
+     */
+    PooledServerSession createSession() {
+        ApproxsimSocket socket = dispatcher.allocateServer(10);
+        if (socket == null) {
+            return null;
+        }
+        synchronized (this) {
+            created++;
+        }
+        return new PooledServerSession(this, socket);
+    }
+
+    /**
+     * Takes back a session from its evaluator. The session is reset and kept idle, or disconnected if it has failed or the pool is full.
+     *
+     * @param session the session.
+     */
+    void release(PooledServerSession session) {
+        if (session.isHealthy(false)) {
+            try {
+                session.reset();
+            } catch (ServerException e) {
+                Debug.err.println("Error resetting session " + session + ": "
+                        + e.getMessage());
+                session.failed = true;
+            }
+        }
+        if (session.failed) {
+            discard(session);
+            return;
+        }
+        synchronized (this) {
+            if (!closed && idle.size() < maxIdle) {
+                session.idleSince = System.currentTimeMillis();
+                idle.add(session);
+                startChecker();
+                return;
+            }
+        }
+        session.disconnect();
+    }
+
+    /**
+     * Disconnects a failed session.
+     *
+     * @param session the session.
+     */
+    void discard(PooledServerSession session) {
+        synchronized (this) {
+            discarded++;
+        }
+        Debug.err.println("Discarding failed session " + session);
+        session.disconnect();
+    }
+
+    /**
+     * Counts an initialization made unnecessary by a reset.
+     */
+    synchronized void reinitializationSkipped() {
+        skipped++;
+    }
+
+    /**
+     * Starts the thread checking the idle sessions, unless already started.
+     */
+    synchronized void startChecker() {
+        if (checker == null) {
+            checker = new Thread(this, getClass().getName());
+            checker.setDaemon(true);
+            checker.start();
+        }
+    }
+
+    /**
+     * Checks the idle sessions every checkInterval milliseconds until the pool is closed or has been empty for a full interval.
+     */
+    public void run() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    wait(checkInterval);
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                if (closed || (idle.isEmpty() && replacements == 0)) {
+                    checker = null;
+                    return;
+                }
+            }
+            check();
+        }
+    }
+
+    /**
+     * Disconnects the sessions that have been idle too long, pings the others and replaces those that have failed.
+     */
+    void check() {
+        long now = System.currentTimeMillis();
+        Vector<PooledServerSession> sessions;
+        synchronized (this) {
+            sessions = new Vector<PooledServerSession>(idle);
+        }
+        Vector<PooledServerSession> kept = new Vector<PooledServerSession>();
+        for (int i = 0; i < sessions.size(); i++) {
+            PooledServerSession session = sessions.get(i);
+            synchronized (this) {
+                // Only check sessions not handed out in the meantime.
+                if (!idle.remove(session)) {
+                    continue;
+                }
+            }
+            if (now - session.idleSince > maxIdleTime) {
+                session.disconnect();
+            } else if (session.isHealthy(true)) {
+                kept.add(session);
+            } else {
+                discard(session);
+                synchronized (this) {
+                    replacements++;
+                }
+            }
+        }
+        synchronized (this) {
+            // Sessions released during the check were used more recently.
+            idle.addAll(0, kept);
+        }
+
+        while (true) {
+            synchronized (this) {
+                if (replacements == 0 || closed || idle.size() >= maxIdle) {
+                    replacements = 0;
+                    return;
+                }
+                replacements--;
+            }
+            PooledServerSession session = createSession();
+            if (session == null) {
+                synchronized (this) {
+                    replacements = 0;
+                }
+                return;
+            }
+            session.idleSince = now;
+            synchronized (this) {
+                idle.add(0, session);
+            }
+        }
+    }
+
+    /**
+     * Disconnects the idle sessions and stops pooling. Sessions still in use are disconnected when closed by their evaluators.
+     */
+    public void close() {
+        Vector<PooledServerSession> sessions;
+        synchronized (this) {
+            closed = true;
+            sessions = new Vector<PooledServerSession>(idle);
+            idle.clear();
+            notifyAll();
+        }
+        for (int i = 0; i < sessions.size(); i++) {
+            sessions.get(i).disconnect();
+        }
+    }
+
+    /**
+     * Returns true if the pool has been closed.
+     */
+    public synchronized boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Returns a string describing how often sessions have been reused.
+     */
+    public synchronized String getStatistics() {
+        return "created: " + created + ", reused: " + reused
+                + ", discarded: " + discarded + ", initializations skipped: "
+                + skipped + ", idle: " + idle.size();
+    }
+}
@@ -5,11 +5,11 @@
 
 package ApproxsimClient.evolver;
 
+import ApproxsimClient.Debug;
 import ApproxsimClient.dispatcher.ApproxsimDispatcher;
 import ApproxsimClient.object.ApproxsimEvent;
 import ApproxsimClient.object.ApproxsimEventListener;
 import ApproxsimClient.object.ApproxsimObject;
-import ApproxsimClient.communication.ApproxsimSocket;
 
 /**
  * Provides an Evolver with SimulatorEvaluator instances
@@ -29,6 +29,11 @@ public abstract class SimulationEvaluatorFactory implements EvaluatorFactory,
      */
     ApproxsimObject simulation = null;
 
+    /**
+     * The pool of server sessions reused by the evaluators of this factory.
+     */
+    ServerSessionPool sessionPool;
+
     /**
      * Creates a new factory.
      * 
@@ -38,6 +43,7 @@ public abstract class SimulationEvaluatorFactory implements EvaluatorFactory,
     SimulationEvaluatorFactory(ApproxsimDispatcher dispatcher,
             ApproxsimObject simulation) {
         this.dispatcher = dispatcher;
+        this.sessionPool = new ServerSessionPool(dispatcher);
         setSimulation(simulation);
     }
 
@@ -64,6 +70,10 @@ public abstract class SimulationEvaluatorFactory implements EvaluatorFactory,
     void setSimulation(ApproxsimObject simulation) {
         if (getSimulation() != null) {
             getSimulation().removeEventListener(this);
+            // The idle sessions are initialized with the old simulation.
+            if (simulation != getSimulation()) {
+                close();
+            }
         }
 
         if (simulation != null) {
@@ -98,14 +108,28 @@ public abstract class SimulationEvaluatorFactory implements EvaluatorFactory,
 
     /**
      * Creates the server session fed to the SimulationEvaluators created for this factory returns. Returning null means no server session
-     * could be created.
+     * could be created. Sessions are taken from the session pool of this factory and go back to it when closed.
      */
     ServerSession createServerSession() {
-        ApproxsimSocket socket = getDispatcher().allocateServer(10);
-        if (socket != null) {
-            return new DefaultServerSession(socket);
-        } else {
-            return null;
+        return getSessionPool().acquire();
+    }
+
+    /**
+     * Returns the pool of server sessions used by this factory.
+     */
+    public ServerSessionPool getSessionPool() {
+        return this.sessionPool;
+    }
+
+    /**
+     * Closes the session pool of this factory, disconnecting its idle servers, and logs how often sessions were reused. Sessions still in
+     * use are disconnected when their evaluators are done.
+     */
+    public void close() {
+        if (!getSessionPool().isClosed()) {
+            getSessionPool().close();
+            Debug.err.println("Server sessions of " + getSimulation() + ": "
+                    + getSessionPool().getStatistics());
         }
     }
 
@@ -1,7 +1,6 @@
 package ApproxsimClient.map;
 
 import java.text.DecimalFormat;
-import java.nio.IntBuffer;
 import java.util.Vector;
 import java.util.Hashtable;
 import java.util.Enumeration;
@@ -31,7 +30,6 @@ import javax.swing.BorderFactory;
 import javax.media.opengl.GL2;
 import javax.media.opengl.GL2ES2;
 import javax.media.opengl.GLAutoDrawable;
-import com.jogamp.common.nio.Buffers;
 
 import ApproxsimClient.object.ApproxsimObject;
 import ApproxsimClient.ApproxsimDialog;
@@ -705,56 +703,21 @@ public class AreaCreationDrawer extends BasicMapDrawer {
      * @param gld the drawable.
      */
     protected void updateRenderSelection(GLAutoDrawable gld) {
-        GL2 gl = (GL2) gld.getGL();
-
-        IntBuffer renderSelectionBuffer;
-        int renderSelectionBufferAllocationSize = 2048;
-
-        int hits = -1;
-
-        do {
-            renderSelectionBuffer = Buffers
-                    .newDirectIntBuffer(renderSelectionBufferAllocationSize);
-            gl.glSelectBuffer(renderSelectionBuffer.capacity(),
-                              renderSelectionBuffer);
-
-            // Enable render selection.
-            gl.glRenderMode(GL2.GL_SELECT);
-
-            // Init names.
-            gl.glInitNames();
-
-            // Sets the selection area.
-            gl.glMatrixMode(GL2.GL_PROJECTION);
-            gl.glPushMatrix();
-            gl.glLoadIdentity();
-
-            glu.gluOrtho2D(renderSelectionX - renderSelectionDeltaX / 2,
-                           renderSelectionX + renderSelectionDeltaX / 2,
-                           renderSelectionY - renderSelectionDeltaY / 2,
-                           renderSelectionY + renderSelectionDeltaY / 2);
-
-            // Draw symbols.
-            updateDrawnMapDrawablesList();
-            gl.glCallLists(drawnMapDrawablesListBuf.capacity(), GL2ES2.GL_INT,
-                           drawnMapDrawablesListBuf);
-
-            // Restore view
-            gl.glMatrixMode(GL2.GL_PROJECTION);
-            gl.glPopMatrix();
-            gl.glFlush();
-
-            // End render selection mode.
-            hits = ((GL2) gld.getGL()).glRenderMode(GL2.GL_RENDER);
-
-            if (hits < 0) {
-                // To small selectionBuffer, try double size.
-                renderSelectionBufferAllocationSize = renderSelectionBufferAllocationSize * 2;
-            }
-        } while (hits < 0);
+        updateDrawnMapDrawablesList();
+        updateRenderSelection();
+    }
 
-        this.latestRenderSelection = new RenderSelection(hits,
-                renderSelectionBuffer, renderSelectionNames);
+    /**
+     * Updates the render selection array by picking what is drawn in the selection area from the pick index, without drawing.
+     */
+    protected void updateRenderSelection() {
+        double xmin = renderSelectionX - renderSelectionDeltaX / 2;
+        double xmax = renderSelectionX + renderSelectionDeltaX / 2;
+        double ymin = renderSelectionY - renderSelectionDeltaY / 2;
+        double ymax = renderSelectionY + renderSelectionDeltaY / 2;
+        this.latestRenderSelection = new RenderSelection(
+                pickDrawnMapDrawables(xmin, ymin, xmax, ymax),
+                renderSelectionNames);
     }
 
     /**
@@ -776,6 +739,7 @@ public class AreaCreationDrawer extends BasicMapDrawer {
 
         this.renderSelectionMouseX = x;
         this.renderSelectionMouseY = y;
+        updateRenderSelection();
     }
 
     /**
@@ -127,4 +127,77 @@ public class AzEqAreaProj extends Projection {
         return lon_lat;
     }
 
+    /**
+     * Converts (lon,lat) values to (x,y) coordinates without allocating. The same as projToXY for each point, with the center of the
+     * projection set up once.
+     * 
+     * @param lonlat [lon1, lat1, lon2, lat2, ...].
+     * @param outXY the array receiving [x1, y1, x2, y2, ...], which may be lonlat itself.
+     * @param count the number of points.
+     */
+    public void projectInPlace(double[] lonlat, double[] outXY, int count) {
+        double phi1 = Math.toRadians(lat_cen);
+        double lam0 = Math.toRadians(lon_cen);
+        double sin_phi1 = Math.sin(phi1);
+        double cos_phi1 = Math.cos(phi1);
+        for (int i = 0; i < 2 * count; i += 2) {
+            double lam = Math.toRadians(lonlat[i]);
+            double phi = Math.toRadians(lonlat[i + 1]);
+            double sin_phi = Math.sin(phi);
+            double cos_phi = Math.cos(phi);
+            double cos_lam = Math.cos(lam - lam0);
+            double sin_lam = Math.sin(lam - lam0);
+            double kprim = Math.sqrt(2.0 / (1.0 + sin_phi1 * sin_phi
+                    + cos_phi1 * cos_phi * cos_lam));
+            outXY[i] = GeoMath.R * kprim * cos_phi * sin_lam;
+            outXY[i + 1] = GeoMath.R * kprim
+                    * (cos_phi1 * sin_phi - sin_phi1 * cos_phi * cos_lam);
+        }
+    }
+
+    /**
+     * Converts (x,y) values to (lon,lat) coordinates without allocating. The same as projToLonLat for each point, with the center of the
+     * projection set up once.
+     * 
+     * @param xy [x1, y1, x2, y2, ...].
+     * @param outLonLat the array receiving [lon1, lat1, lon2, lat2, ...], which may be xy itself.
+     * @param count the number of points.
+     */
+    public void inverseProjectInPlace(double[] xy, double[] outLonLat,
+            int count) {
+        double phi1 = Math.toRadians(lat_cen);
+        double lam0 = Math.toRadians(lon_cen);
+        double sin_phi1 = Math.sin(phi1);
+        double cos_phi1 = Math.cos(phi1);
+        for (int i = 0; i < 2 * count; i += 2) {
+            double x = xy[i];
+            double y = xy[i + 1];
+            double ro = Math.sqrt(x * x + y * y);
+            double tmp = 0.5 * ro / GeoMath.R;
+            double c = 2.0 * Math.asin((tmp <= -1) ? -0.99
+                    : ((tmp >= 1) ? 0.99 : tmp));
+            double sinc = Math.sin(c);
+            double cosc = Math.cos(c);
+            double denom = ro * cos_phi1 * cosc - y * sin_phi1 * sinc;
+            double phi = Math.asin(cosc * sin_phi1 + y * sinc * cos_phi1 / ro);
+            double lam = lam0 + Math.atan(x * sinc / denom);
+            double lon = Math.toDegrees(lam);
+            double lat = Math.toDegrees(phi);
+            // check for sign change
+            if (denom < 0 && lon > lam0) {
+                lon -= 180;
+            } else if (denom < 0 && lon < lam0) {
+                lon += 180;
+            }
+            // correct latitude if necessary
+            if (lat > 90.0) {
+                lat = 90.0;
+            } else if (lat < -90.0) {
+                lat = -90.0;
+            }
+            outLonLat[i] = lon;
+            outLonLat[i + 1] = lat;
+        }
+    }
+
 }
@@ -205,6 +205,18 @@ public abstract class BasicMapDrawer extends JPanel implements GLEventListener,
      * The hashtable mapping renderSelectionNames to MapDrawableAdapters.
      */
     protected Hashtable<Integer, ApproxsimEventListener> renderSelectionNames = new Hashtable<Integer, ApproxsimEventListener>();
+    /**
+     * The drawn MapDrawableAdapters indexed by their projected bounds, used to find what is drawn under the cursor without drawing.
+     */
+    protected RTree<MapDrawableAdapter> pickIndex = new RTree<MapDrawableAdapter>();
+    /**
+     * The position of each drawn MapDrawableAdapter in the drawing order. Guarded by pickIndex.
+     */
+    protected Hashtable<MapDrawableAdapter, Integer> pickOrder = new Hashtable<MapDrawableAdapter, Integer>();
+    /**
+     * The width of the view in projected coordinates that the bounds in the pick index are computed for. Guarded by pickIndex.
+     */
+    protected double pickViewWidth = Double.NaN;
     /**
      * The counter assigning new renderSelectionNames
      */
@@ -430,6 +442,7 @@ public abstract class BasicMapDrawer extends JPanel implements GLEventListener,
             // update the list
             setIsDrawnMapDrawablesListUpdated(false);
         }
+        updatePickBounds(drawableAdapter);
         update();
     }
 
@@ -998,10 +1011,126 @@ public abstract class BasicMapDrawer extends JPanel implements GLEventListener,
             drawnMapDrawablesListBuf = Buffers.newDirectIntBuffer(res.length);
             drawnMapDrawablesListBuf.put(res);
             drawnMapDrawablesListBuf.rewind();
+            updatePickIndex(v);
             isDrawnMapDrawablesListUpdated = true;
         }
     }
 
+    /**
+     * Returns the width of the view in projected coordinates.
+     */
+    protected double getProjectedViewWidth() {
+        return (orts_box == null) ? 0 : orts_box.getXmax() - orts_box.getXmin();
+    }
+
+    /**
+     * Updates the pick index to hold the drawn MapDrawableAdapters. Adapters no longer drawn are removed and newly drawn ones are
+     * inserted, the others are kept current by mapDrawableAdapterUpdated.
+     * 
+     * @param drawn the drawn adapters in drawing order.
+     */
+    protected void updatePickIndex(Vector<MapDrawableAdapter> drawn) {
+        synchronized (pickIndex) {
+            Hashtable<MapDrawableAdapter, Integer> order = new Hashtable<MapDrawableAdapter, Integer>();
+            for (int i = 0; i < drawn.size(); i++) {
+                order.put(drawn.get(i), new Integer(i));
+            }
+            for (Enumeration<MapDrawableAdapter> e = pickOrder.keys(); e
+                    .hasMoreElements();) {
+                MapDrawableAdapter mda = e.nextElement();
+                if (!order.containsKey(mda)) {
+                    pickIndex.remove(mda);
+                }
+            }
+            for (Enumeration<MapDrawableAdapter> e = order.keys(); e
+                    .hasMoreElements();) {
+                MapDrawableAdapter mda = e.nextElement();
+                if (!pickOrder.containsKey(mda)) {
+                    indexPickBounds(mda);
+                }
+            }
+            pickOrder = order;
+        }
+    }
+
+    /**
+     * Updates the bounds of a MapDrawableAdapter in the pick index if it's drawn.
+     * 
+     * @param drawableAdapter the adapter.
+     */
+    protected void updatePickBounds(MapDrawableAdapter drawableAdapter) {
+        synchronized (pickIndex) {
+            if (pickOrder.containsKey(drawableAdapter)) {
+                indexPickBounds(drawableAdapter);
+            }
+        }
+    }
+
+    /**
+     * Inserts a MapDrawableAdapter in the pick index with its current bounds, or removes it if nothing of it can be picked.
+     */
+    private void indexPickBounds(MapDrawableAdapter drawableAdapter) {
+        double[] box = drawableAdapter.getPickBounds(getProjection(),
+                                                     pickViewWidth);
+        if (box == null || Double.isNaN(box[0] + box[1] + box[2] + box[3])) {
+            pickIndex.remove(drawableAdapter);
+        } else {
+            pickIndex.insert(drawableAdapter, box);
+        }
+    }
+
+    /**
+     * Finds the drawn MapDrawableAdapters hit by a rectangle in projected coordinates. This gives the same hits as drawing them in
+     * RENDER_SELECTION mode, but only tests the adapters whose bounds intersect the rectangle and needs no GL context.
+     * 
+     * @return the render selection names of each hit, first pushed name first, in drawing order.
+     */
+    protected Vector<int[]> pickDrawnMapDrawables(double xmin, double ymin,
+            double xmax, double ymax) {
+        Vector<MapDrawableAdapter> candidates = new Vector<MapDrawableAdapter>();
+        final Hashtable<MapDrawableAdapter, Integer> order;
+        double viewWidth = getProjectedViewWidth();
+        synchronized (pickIndex) {
+            // symbols of invariant size change size with the view
+            if (viewWidth != pickViewWidth) {
+                pickViewWidth = viewWidth;
+                Vector<MapDrawableAdapter> adapters = new Vector<MapDrawableAdapter>();
+                Vector<double[]> boxes = new Vector<double[]>();
+                for (Enumeration<MapDrawableAdapter> e = pickOrder.keys(); e
+                        .hasMoreElements();) {
+                    MapDrawableAdapter mda = e.nextElement();
+                    double[] box = mda.getPickBounds(getProjection(), viewWidth);
+                    if (box != null
+                            && !Double.isNaN(box[0] + box[1] + box[2] + box[3])) {
+                        adapters.add(mda);
+                        boxes.add(box);
+                    }
+                }
+                pickIndex.load(adapters, boxes);
+            }
+            pickIndex.search(xmin, ymin, xmax, ymax, candidates);
+            order = pickOrder;
+        }
+        java.util.Collections.sort(candidates,
+                                   new Comparator<MapDrawableAdapter>() {
+                                       public int compare(
+                                               MapDrawableAdapter d1,
+                                               MapDrawableAdapter d2) {
+                                           return order.get(d1).compareTo(order
+                                                   .get(d2));
+                                       }
+                                   });
+        Vector<int[]> res = new Vector<int[]>();
+        for (int i = 0; i < candidates.size(); i++) {
+            int[] names = candidates.get(i).pick(getProjection(), viewWidth,
+                                                 xmin, ymin, xmax, ymax);
+            if (names != null) {
+                res.add(names);
+            }
+        }
+        return res;
+    }
+
     /**
      * Indicates whether the list of currently drawn mapDrawableDisplayLists should be updated.
      */
@@ -1148,6 +1277,10 @@ public abstract class BasicMapDrawer extends JPanel implements GLEventListener,
         mapDrawableAdapters.remove(drawableAdapter.getObject());
         renderSelectionNames.remove(new Integer(drawableAdapter
                 .getRenderSelectionName()));
+        synchronized (pickIndex) {
+            pickIndex.remove(drawableAdapter);
+            pickOrder.remove(drawableAdapter);
+        }
         removeMapDrawableDisplayList(drawableAdapter.getDisplayList());
         setIsDrawnMapDrawablesListUpdated(false);
         update();
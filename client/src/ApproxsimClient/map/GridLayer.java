@@ -1,5 +1,7 @@
 package ApproxsimClient.map;
 
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Vector;
 import java.util.Enumeration;
 import java.text.DecimalFormat;
@@ -46,6 +48,14 @@ public class GridLayer implements ApproxsimEventListener {
      * The list of cells.
      */
     private Cell[] cellInfo;
+    /**
+     * The displayed cells indexed by their projected bounds, built on first pick.
+     */
+    private RTree<Cell> cellIndex = null;
+    /**
+     * The projection the cell index was built with.
+     */
+    private Projection cellIndexProjection = null;
     /**
      * The reference to the color map.
      */
@@ -79,13 +89,25 @@ public class GridLayer implements ApproxsimEventListener {
      */
     private GridData gridData;
     /**
-     * The display list of the grid.
+     * The displayed cells as two triangles each, colored by their values.
+     */
+    private TriangleBuffer cellTriangles;
+    /**
+     * The cells the cell triangles were built from.
+     */
+    private Cell[] cellTrianglesCells;
+    /**
+     * The projection the cell triangles were built with.
+     */
+    private Projection cellTrianglesProjection = null;
+    /**
+     * Whether the cell triangles are built from the current cells.
      */
-    private int displayList;
+    protected volatile boolean geometryUpdated = false;
     /**
-     * Whether the display list is updated since last redraw.
+     * Whether the colors of the cell triangles are updated with the current values.
      */
-    protected boolean displayListUpdated = false;
+    protected volatile boolean colorsUpdated = false;
     /**
      * Indicator for the active cells in the grid. If a cell covers the actual region it's value is true otherwise it's value is false.
      */
@@ -234,7 +256,7 @@ public class GridLayer implements ApproxsimEventListener {
             }
         }
         // update the information about the displayed cells
-        cellInfo = new Cell[nrOfActiveCells];
+        Cell[] cells = new Cell[nrOfActiveCells];
         int activeCellCounter = 0;
         int displayedCellCounter = 0;
         for (int i = 0; i < gridData.getActiveCells().length; i++) {
@@ -252,11 +274,14 @@ public class GridLayer implements ApproxsimEventListener {
                     cell.activeCellPos = activeCellCounter - 1;
                     cell.renderSelectionName = getRenderSelectionName() + 1
                             + displayedCellCounter;
-                    cellInfo[displayedCellCounter] = cell;
+                    cells[displayedCellCounter] = cell;
                     displayedCellCounter++;
                 }
             }
         }
+        cellInfo = cells;
+        cellIndex = null;
+        geometryUpdated = false;
     }
 
     /**
@@ -471,95 +496,182 @@ public class GridLayer implements ApproxsimEventListener {
     }
 
     /**
-     * Updates the display list that draws the entire grid.
+     * Draws the grid. The cells are drawn as triangles kept in buffer objects, which are only built again when the cells or the projection
+     * change. New values just rewrite the colors of the triangles.
      * 
      * @param proj the actual projection.
      * @param gld the gl drawable targeted.
      */
-    protected void updateDisplayList(Projection proj, GLAutoDrawable gld) {
+    public void draw(Projection proj, GLAutoDrawable gld) {
         GL2 gl = (GL2) gld.getGL();
-        // update the display list
-        displayList = (gl.glIsList(displayList)) ? displayList : gl
-                .glGenLists(1);
-        gl.glNewList(displayList, GL2.GL_COMPILE);
-        // shape display list
-        gl.glMatrixMode(GL2.GL_MODELVIEW);
-        gl.glPushMatrix();
-        // Pushes the name for RenderSelection mode.
-        gl.glPushName(getRenderSelectionName());
-
         // get cell values
         int[] grid_values = color_map.getScaledPV();
-        // get the actual color table
-        float[][] color_table = color_map.getColorTable();
-        if (grid_values != null) {
-            gridData.getRows();
-            int col_nr = gridData.getCols();
-            // get position for all the cells
-            double[] pos = gridData.getCellPositions();
-            gridData.getActiveCells();
-            // for each cell in the grid
-            for (int ii = 0; ii < cellInfo.length; ii++) {
-                // get row and column of the cell
-                int row = cellInfo[ii].cellPos / col_nr;
-                int col = cellInfo[ii].cellPos % col_nr;
-                // get the points
-                double[] upper_left = proj
-                        .projToXY(pos[2 * (row * (col_nr + 1) + col) + 1],
-                                  pos[2 * (row * (col_nr + 1) + col)]);
-                double[] lower_left = proj.projToXY(pos[2 * ((row + 1)
-                        * (col_nr + 1) + col) + 1], pos[2 * ((row + 1)
-                        * (col_nr + 1) + col)]);
-                double[] upper_right = proj.projToXY(pos[2 * (row
-                        * (col_nr + 1) + col + 1) + 1], pos[2 * (row
-                        * (col_nr + 1) + col + 1)]);
-                double[] lower_right = proj.projToXY(pos[2 * ((row + 1)
-                        * (col_nr + 1) + col + 1) + 1], pos[2 * ((row + 1)
-                        * (col_nr + 1) + col + 1)]);
-                // draw the cell
-                gl.glMatrixMode(GL2.GL_MODELVIEW);
-                gl.glPushMatrix();
-                gl.glPushName(cellInfo[ii].renderSelectionName);
-                int col_ind = grid_values[cellInfo[ii].activeCellPos];
-                gl.glColor3f(color_table[col_ind][0], color_table[col_ind][1],
-                             color_table[col_ind][2]);
-                gl.glBegin(GL2.GL_POLYGON);
-                gl.glVertex2d(upper_left[0], upper_left[1]);
-                gl.glVertex2d(lower_left[0], lower_left[1]);
-                gl.glVertex2d(lower_right[0], lower_right[1]);
-                gl.glVertex2d(upper_right[0], upper_right[1]);
-                gl.glEnd();
-                gl.glPopName();
-                gl.glMatrixMode(GL2.GL_MODELVIEW);
-                gl.glPopMatrix();
+        if (grid_values == null || cellInfo == null) {
+            return;
+        }
+        if (!geometryUpdated || cellTrianglesProjection != proj) {
+            geometryUpdated = true;
+            if (cellTriangles != null) {
+                cellTriangles.dispose(gl);
+            }
+            // two triangles for each cell
+            cellTrianglesCells = cellInfo;
+            int[] corners = { 0, 1, 2, 0, 2, 3 };
+            float[] triangles = new float[12 * cellTrianglesCells.length];
+            double[] points = getProjectedPoints(proj);
+            for (int ii = 0; ii < cellTrianglesCells.length; ii++) {
+                double[] xy = getCellCorners(points, cellTrianglesCells[ii]);
+                for (int i = 0; i < corners.length; i++) {
+                    triangles[12 * ii + 2 * i] = (float) xy[2 * corners[i]];
+                    triangles[12 * ii + 2 * i + 1] = (float) xy[2 * corners[i] + 1];
+                }
             }
+            cellTriangles = new TriangleBuffer(triangles, true);
+            cellTrianglesProjection = proj;
+            colorsUpdated = false;
         }
-        gl.glPopName();
-        gl.glMatrixMode(GL2.GL_MODELVIEW);
-        gl.glPopMatrix();
-        gl.glEndList();
-        displayListUpdated = true;
+        if (!colorsUpdated) {
+            colorsUpdated = true;
+            // get the actual color table
+            float[][] color_table = color_map.getColorTable();
+            for (int ii = 0; ii < cellTrianglesCells.length; ii++) {
+                int col_ind = grid_values[cellTrianglesCells[ii].activeCellPos];
+                cellTriangles.setColor(6 * ii, 6, color_table[col_ind]);
+            }
+        }
+        cellTriangles.draw(gl);
     }
 
     /**
-     * Invalidates the display list.
+     * Returns the corners of all cells in the grid, active or not, as packed projected coordinates in the order of the cell positions.
+     * 
+     * @param proj the actual projection.
      */
-    public void invalidateDisplayList() {
-        displayListUpdated = false;
+    protected double[] getProjectedPoints(Projection proj) {
+        // cell positions are {lat, lon}
+        double[] pos = gridData.getCellPositions();
+        double[] xy = new double[pos.length];
+        for (int i = 0; i < pos.length; i += 2) {
+            xy[i] = pos[i + 1];
+            xy[i + 1] = pos[i];
+        }
+        proj.projectInPlace(xy, xy, xy.length / 2);
+        return xy;
+    }
+
+    /**
+     * Returns the indices of the corners of a cell among the cell positions, in the order upper left, lower left, lower right and upper
+     * right.
+     * 
+     * @param cell the cell.
+     */
+    private int[] getCornerIndices(Cell cell) {
+        int col_nr = gridData.getCols();
+        // get row and column of the cell
+        int row = cell.cellPos / col_nr;
+        int col = cell.cellPos % col_nr;
+        return new int[] { row * (col_nr + 1) + col,
+                (row + 1) * (col_nr + 1) + col,
+                (row + 1) * (col_nr + 1) + col + 1,
+                row * (col_nr + 1) + col + 1 };
+    }
+
+    /**
+     * Returns the corners of a cell as packed projected coordinates, in the order upper left, lower left, lower right and upper right.
+     * 
+     * @param points the corners of all cells as returned by getProjectedPoints.
+     * @param cell the cell.
+     */
+    protected double[] getCellCorners(double[] points, Cell cell) {
+        int[] corners = getCornerIndices(cell);
+        double[] xy = new double[8];
+        for (int i = 0; i < 4; i++) {
+            xy[2 * i] = points[2 * corners[i]];
+            xy[2 * i + 1] = points[2 * corners[i] + 1];
+        }
+        return xy;
     }
 
     /**
-     * Returns true if the display list is updated.
+     * Returns the corners of a cell as packed projected coordinates, in the order upper left, lower left, lower right and upper right.
+     * 
+     * @param proj the actual projection.
+     * @param cell the cell.
      */
-    public boolean isDisplayListUpdated() {
-        return displayListUpdated;
+    protected double[] getProjectedCell(Projection proj, Cell cell) {
+        // get position for all the cells, {lat, lon}
+        double[] pos = gridData.getCellPositions();
+        int[] corners = getCornerIndices(cell);
+        double[] xy = new double[8];
+        for (int i = 0; i < 4; i++) {
+            xy[2 * i] = pos[2 * corners[i] + 1];
+            xy[2 * i + 1] = pos[2 * corners[i]];
+        }
+        proj.projectInPlace(xy, xy, 4);
+        return xy;
+    }
+
+    /**
+     * Returns the render selection names of the grid and of each cell hit by a rectangle in projected coordinates, the same hits as
+     * drawing the grid in RENDER_SELECTION mode.
+     * 
+     * @param proj the actual projection.
+     * @return one array {grid name, cell name} per cell hit.
+     */
+    public Vector<int[]> pick(Projection proj, double xmin, double ymin,
+            double xmax, double ymax) {
+        Vector<int[]> res = new Vector<int[]>();
+        // cells are only drawn when there are values
+        if (color_map.getScaledPV() == null) {
+            return res;
+        }
+        RTree<Cell> index = cellIndex;
+        if (index == null || cellIndexProjection != proj) {
+            Vector<Cell> cells = new Vector<Cell>();
+            Vector<double[]> boxes = new Vector<double[]>();
+            double[] points = getProjectedPoints(proj);
+            for (int i = 0; i < cellInfo.length; i++) {
+                cells.add(cellInfo[i]);
+                boxes.add(PickGeometry.getBounds(getCellCorners(points,
+                                                                cellInfo[i]),
+                                                 4));
+            }
+            index = new RTree<Cell>();
+            index.load(cells, boxes);
+            cellIndex = index;
+            cellIndexProjection = proj;
+        }
+        Vector<Cell> candidates = new Vector<Cell>();
+        index.search(xmin, ymin, xmax, ymax, candidates);
+        // report the cells in drawing order
+        Collections.sort(candidates, new Comparator<Cell>() {
+            public int compare(Cell c1, Cell c2) {
+                return c1.renderSelectionName - c2.renderSelectionName;
+            }
+        });
+        for (int i = 0; i < candidates.size(); i++) {
+            Cell cell = candidates.get(i);
+            if (PickGeometry.intersectsPolygon(getProjectedCell(proj, cell), 4,
+                                               xmin, ymin, xmax, ymax)) {
+                res.add(new int[] { getRenderSelectionName(),
+                        cell.renderSelectionName });
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Invalidates the drawn cells, for instance when the projection changes.
+     */
+    public void invalidateDisplayList() {
+        geometryUpdated = false;
     }
 
     /**
-     * Returns the display list of this grid.
+     * Invalidates the colors of the drawn cells, which is enough when only the values changed.
      */
-    public int getDisplayList() {
-        return displayList;
+    public void invalidateColors() {
+        colorsUpdated = false;
     }
 }
 
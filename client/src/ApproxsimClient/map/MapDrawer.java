@@ -15,7 +15,6 @@ import java.awt.dnd.DropTargetListener;
 import java.awt.event.MouseEvent;
 import java.io.UnsupportedEncodingException;
 import java.nio.DoubleBuffer;
-import java.nio.IntBuffer;
 import java.text.ParseException;
 import java.util.Enumeration;
 import java.util.TimerTask;
@@ -583,6 +582,9 @@ public class MapDrawer extends BasicMapDrawer implements DragGestureListener,
                     .elements(); e.hasMoreElements();) {
                 e.nextElement().invalidateAllLists();
             }
+            if (cell_layer != null) {
+                cell_layer.invalidateDisplayList();
+            }
 
             // update map scale
             zoom_and_scale.update();
@@ -666,63 +668,27 @@ public class MapDrawer extends BasicMapDrawer implements DragGestureListener,
      * @param gld the drawable
      */
     protected void updateRenderSelection(GLAutoDrawable gld) {
-        GL2 gl = (GL2) gld.getGL();
-
-        IntBuffer renderSelectionBuffer;
-        int renderSelectionBufferAllocationSize = 2048;
-
-        int hits = -1;
-
-        do {
-            renderSelectionBuffer = Buffers
-                    .newDirectIntBuffer(renderSelectionBufferAllocationSize);
-            gl.glSelectBuffer(renderSelectionBuffer.capacity(),
-                              renderSelectionBuffer);
-
-            // Enable render selection.
-            gl.glRenderMode(GL2.GL_SELECT);
-
-            // Init names.
-            gl.glInitNames();
-
-            // Sets the selection area.
-            gl.glMatrixMode(GL2.GL_PROJECTION);
-            gl.glPushMatrix();
-            gl.glLoadIdentity();
-
-            glu.gluOrtho2D(renderSelectionX - renderSelectionDeltaX / 2,
-                           renderSelectionX + renderSelectionDeltaX / 2,
-                           renderSelectionY - renderSelectionDeltaY / 2,
-                           renderSelectionY + renderSelectionDeltaY / 2);
-            // Draw symbols.
-            updateDrawnMapDrawablesList();
-            gl.glCallLists(drawnMapDrawablesListBuf.capacity(), GL2ES2.GL_INT,
-                           drawnMapDrawablesListBuf);
-
-            // draw the grid
-            if (grid_based_pv && cell_layer != null) {
-                if (!cell_layer.isDisplayListUpdated()) {
-                    cell_layer.updateDisplayList(getProjection(), gld);
-                }
-                gl.glCallList(cell_layer.getDisplayList());
-            }
-
-            // Restore view
-            gl.glMatrixMode(GL2.GL_PROJECTION);
-            gl.glPopMatrix();
-            gl.glFlush();
-
-            // End render selection mode.
-            hits = ((GL2) gld.getGL()).glRenderMode(GL2.GL_RENDER);
-
-            if (hits < 0) {
-                // To small selectionBuffer, try double size.
-                renderSelectionBufferAllocationSize = renderSelectionBufferAllocationSize * 2;
-            }
-        } while (hits < 0);
+        updateDrawnMapDrawablesList();
+        updateRenderSelection();
+    }
 
+    /**
+     * Updates the render selection array by picking what is drawn in the selection area from the pick index, the grid cells last. This
+     * gives the same selection as drawing in RENDER_SELECTION mode without drawing, so it needs no GL context.
+     */
+    protected void updateRenderSelection() {
+        double xmin = renderSelectionX - renderSelectionDeltaX / 2;
+        double xmax = renderSelectionX + renderSelectionDeltaX / 2;
+        double ymin = renderSelectionY - renderSelectionDeltaY / 2;
+        double ymax = renderSelectionY + renderSelectionDeltaY / 2;
+        Vector<int[]> hits = pickDrawnMapDrawables(xmin, ymin, xmax, ymax);
+        // the grid
+        if (grid_based_pv && cell_layer != null) {
+            hits.addAll(cell_layer.pick(getProjection(), xmin, ymin, xmax,
+                                        ymax));
+        }
         this.latestRenderSelection = new RenderSelection(hits,
-                renderSelectionBuffer, renderSelectionNames);
+                renderSelectionNames);
     }
 
     /**
@@ -744,6 +710,7 @@ public class MapDrawer extends BasicMapDrawer implements DragGestureListener,
 
         this.renderSelectionMouseX = x;
         this.renderSelectionMouseY = y;
+        updateRenderSelection();
     }
 
     /**
@@ -962,7 +929,8 @@ public class MapDrawer extends BasicMapDrawer implements DragGestureListener,
      * Notifies that the grid has to be updated.
      */
     public void setUpdatePVValues() {
-        cell_layer.invalidateDisplayList();
+        // new values, the cells stay the same
+        cell_layer.invalidateColors();
         if (!grid_based_pv) {
             // update the shape adapters
             for (Enumeration<MapDrawableAdapter> adapters = mapDrawableAdapters
@@ -1056,10 +1024,7 @@ public class MapDrawer extends BasicMapDrawer implements DragGestureListener,
         gl.glClear(GL2.GL_COLOR_BUFFER_BIT);
         // draw pv for each cell
         if (grid_based_pv && cell_layer != null) {
-            if (!cell_layer.isDisplayListUpdated()) {
-                cell_layer.updateDisplayList(getProjection(), gld);
-            }
-            gl.glCallList(cell_layer.getDisplayList());
+            cell_layer.draw(getProjection(), gld);
         }
 
         if (show_graticules) {
@@ -1326,6 +1291,7 @@ public class MapDrawer extends BasicMapDrawer implements DragGestureListener,
             drawnMapDrawablesListBuf = Buffers.newDirectIntBuffer(res.length);
             drawnMapDrawablesListBuf.put(res);
             drawnMapDrawablesListBuf.rewind();
+            updatePickIndex(v);
             isDrawnMapDrawablesListUpdated = true;
         }
     }
@@ -0,0 +1,143 @@
+package ApproxsimClient.map;
+
+/**
+ * Exact hit tests in projected coordinates, used to pick the objects drawn in a rectangle of the map the way OpenGL's RENDER_SELECTION
+ * mode does: a primitive is hit if any part of it lies inside the rectangle. Polygons are given as packed coordinates {x0, y0, x1, y1, ...}
+ * and are filled by the odd winding rule.
+ *
+ * @version 1
+ */
+public class PickGeometry {
+    /**
+     * Returns the bounding box {xmin, ymin, xmax, ymax} of packed coordinates, or null if there are none.
+     *
+     * @param xy the packed coordinates.
+     * @param n the number of points.
+     */
+    public static double[] getBounds(double[] xy, int n) {
+        if (n == 0) {
+            return null;
+        }
+        double[] box = { xy[0], xy[1], xy[0], xy[1] };
+        for (int i = 1; i < n; i++) {
+            include(box, xy[2 * i], xy[2 * i + 1]);
+        }
+        return box;
+    }
+
+    /**
+     * Enlarges a bounding box to include a point.
+     */
+    public static void include(double[] box, double x, double y) {
+        box[0] = Math.min(box[0], x);
+        box[1] = Math.min(box[1], y);
+        box[2] = Math.max(box[2], x);
+        box[3] = Math.max(box[3], y);
+    }
+
+    /**
+     * Enlarges a bounding box to include another, which may be null.
+     *
+     * @return the enlarged box, or the other box if box is null.
+     */
+    public static double[] union(double[] box, double[] other) {
+        if (box == null) {
+            return other;
+        }
+        if (other != null) {
+            include(box, other[0], other[1]);
+            include(box, other[2], other[3]);
+        }
+        return box;
+    }
+
+    /**
+     * Returns true if a point is inside a polygon.
+     *
+     * @param xy the packed coordinates of the polygon.
+     * @param n the number of points of the polygon.
+     * @param x the horizontal component of the point.
+     * @param y the vertical component of the point.
+     */
+    public static boolean contains(double[] xy, int n, double x, double y) {
+        boolean inside = false;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            double xi = xy[2 * i];
+            double yi = xy[2 * i + 1];
+            double xj = xy[2 * j];
+            double yj = xy[2 * j + 1];
+            if ((yi > y) != (yj > y)
+                    && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Returns true if a filled polygon intersects a rectangle.
+     *
+     * @param xy the packed coordinates of the polygon.
+     * @param n the number of points of the polygon.
+     */
+    public static boolean intersectsPolygon(double[] xy, int n, double xmin,
+            double ymin, double xmax, double ymax) {
+        if (n == 0) {
+            return false;
+        }
+        // The rectangle may lie inside the polygon, or an edge crosses it.
+        if (contains(xy, n, (xmin + xmax) / 2, (ymin + ymax) / 2)) {
+            return true;
+        }
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            if (intersectsSegment(xy[2 * j], xy[2 * j + 1], xy[2 * i],
+                                  xy[2 * i + 1], xmin, ymin, xmax, ymax)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if a line segment intersects a rectangle.
+     */
+    public static boolean intersectsSegment(double x1, double y1, double x2,
+            double y2, double xmin, double ymin, double xmax, double ymax) {
+        // Clip the segment against the rectangle (Liang-Barsky).
+        double t0 = 0;
+        double t1 = 1;
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double[] p = { -dx, dx, -dy, dy };
+        double[] q = { x1 - xmin, xmax - x1, y1 - ymin, ymax - y1 };
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                if (q[i] < 0) {
+                    return false;
+                }
+            } else {
+                double t = q[i] / p[i];
+                if (p[i] < 0) {
+                    t0 = Math.max(t0, t);
+                } else {
+                    t1 = Math.min(t1, t);
+                }
+                if (t0 > t1) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if an axis aligned box intersects a rectangle.
+     *
+     * @param box the box {xmin, ymin, xmax, ymax}.
+     */
+    public static boolean intersectsBox(double[] box, double xmin,
+            double ymin, double xmax, double ymax) {
+        return box[0] <= xmax && xmin <= box[2] && box[1] <= ymax
+                && ymin <= box[3];
+    }
+}
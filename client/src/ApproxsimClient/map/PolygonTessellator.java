@@ -0,0 +1,67 @@
+package ApproxsimClient.map;
+
+import java.util.Arrays;
+import java.util.Vector;
+
+import javax.media.opengl.glu.GLU;
+import javax.media.opengl.glu.GLUtessellator;
+import javax.media.opengl.glu.GLUtessellatorCallbackAdapter;
+
+/**
+ * Tessellates polygons in projected coordinates into packed triangles {x0, y0, x1, y1, ...} that can be drawn as GL_TRIANGLES without a
+ * GL context. Polygons are filled by the odd winding rule like the shapes on the map. Since no GL context is needed, the tessellation can
+ * be run on a background thread, so the GL thread only has to draw the result.
+ *
+ * @version 1
+ */
+public class PolygonTessellator {
+    /**
+     * Tessellates polygons one by one and returns all their triangles.
+     *
+     * @param polygons the packed projected coordinates of each polygon.
+     */
+    public static float[] tessellate(Vector<double[]> polygons) {
+        final float[][] res = { new float[64] };
+        final int[] size = { 0 };
+        GLUtessellator tess = GLU.gluNewTess();
+        GLUtessellatorCallbackAdapter callback = new GLUtessellatorCallbackAdapter() {
+            public void vertex(Object data) {
+                double[] v = (double[]) data;
+                if (size[0] + 2 > res[0].length) {
+                    res[0] = Arrays.copyOf(res[0], 2 * res[0].length);
+                }
+                res[0][size[0]++] = (float) v[0];
+                res[0][size[0]++] = (float) v[1];
+            }
+
+            public void edgeFlag(boolean boundaryEdge) {
+                // registered only to get separate triangles, no fans or strips
+            }
+
+            public void combine(double[] coords, Object[] data, float[] weight,
+                    Object[] outData) {
+                outData[0] = new double[] { coords[0], coords[1], 0 };
+            }
+        };
+        GLU.gluTessCallback(tess, GLU.GLU_TESS_VERTEX, callback);
+        GLU.gluTessCallback(tess, GLU.GLU_TESS_EDGE_FLAG, callback);
+        GLU.gluTessCallback(tess, GLU.GLU_TESS_COMBINE, callback);
+        GLU.gluTessCallback(tess, GLU.GLU_TESS_ERROR, callback);
+        GLU.gluTessProperty(tess, GLU.GLU_TESS_WINDING_RULE,
+                            GLU.GLU_TESS_WINDING_ODD);
+        for (int i = 0; i < polygons.size(); i++) {
+            double[] xy = polygons.get(i);
+            GLU.gluTessBeginPolygon(tess, null);
+            GLU.gluTessBeginContour(tess);
+            for (int n = 0; 2 * n < xy.length; n++) {
+                double[] v = { xy[2 * n], xy[2 * n + 1], 0 };
+                GLU.gluTessVertex(tess, v, 0, v);
+            }
+            GLU.gluTessEndContour(tess);
+            GLU.gluTessEndPolygon(tess);
+        }
+        GLU.gluDeleteTess(tess);
+        // a failed polygon may leave an incomplete triangle behind
+        return Arrays.copyOf(res[0], size[0] - size[0] % 6);
+    }
+}
@@ -7,7 +7,6 @@ import java.awt.event.MouseMotionListener;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseEvent;
 import java.util.Vector;
-import java.util.Enumeration;
 import java.text.DecimalFormat;
 import java.lang.Character;
 import javax.swing.*;
@@ -19,14 +18,11 @@ import javax.media.opengl.GLAutoDrawable;
 import javax.media.opengl.GL;
 import javax.media.opengl.GL2;
 import javax.media.opengl.glu.GLU;
-import javax.media.opengl.glu.GLUtessellator;
-import javax.media.opengl.glu.GLUtessellatorCallbackAdapter;
 
 import ApproxsimClient.Configuration;
 import ApproxsimClient.object.Shape;
 import ApproxsimClient.object.SimpleShape;
 import ApproxsimClient.object.Polygon;
-import ApproxsimClient.object.Line;
 import ApproxsimClient.BoundingBox;
 import ApproxsimClient.object.ApproxsimEvent;
 import ApproxsimClient.object.ApproxsimEventListener;
@@ -78,9 +74,14 @@ public class PositionMap implements GLEventListener, ActionListener,
      */
     private Region region;
     /**
-     * Adapter for tesselation callback mathods.
+     * Redraws the tesselated region when the triangles of one of its polygons are ready.
      */
-    private TessellatorAdapter adapter;
+    private TessellationCache.Listener tessellationListener = new TessellationCache.Listener() {
+        public void tessellated(Polygon polygon) {
+            update_region = true;
+            update();
+        }
+    };
     /*
      * Reference to the main container.
      */
@@ -176,7 +177,7 @@ public class PositionMap implements GLEventListener, ActionListener,
     /**
      * Indicates if the region has to be updated.
      */
-    private boolean update_region = false;
+    private volatile boolean update_region = false;
     /**
      * Indicates if the dragging action has started.
      */
@@ -472,15 +473,12 @@ public class PositionMap implements GLEventListener, ActionListener,
         glu.gluOrtho2D(pbox.getXmin(), pbox.getXmax(), pbox.getYmin(),
                        pbox.getYmax());
 
-        // initialize callback object for the tesselation
-        adapter = new TessellatorAdapter(gl, glu);
-
         // create display lists
         buildLists(gld);
 
         // update display lists for the region
         updateRegionList(gl);
-        updateTesselatedList(gl, glu);
+        updateTesselatedList(gl);
     }
 
     /**
@@ -500,8 +498,8 @@ public class PositionMap implements GLEventListener, ActionListener,
         // update the region
         if (update_region) {
             updateRegionList(gl);
-            updateTesselatedList(gl, glu);
             update_region = false;
+            updateTesselatedList(gl);
         }
 
         // draw the map
@@ -748,10 +746,11 @@ public class PositionMap implements GLEventListener, ActionListener,
             SimpleShape ss = (SimpleShape) simple_shapes.get(i);
             Polygon pol = (Polygon) ss.getPolygon(1.0);
             // for each polygonial
-            for (Enumeration e = pol.getCurves(); e.hasMoreElements();) {
-                Line line = (Line) e.nextElement();
-                gl.glVertex2dv(proj.projToXY(line.getStartPoint()), 0);
-                gl.glVertex2dv(proj.projToXY(line.getEndPoint()), 0);
+            double[] c = pol.getCoordinates();
+            double[] xy = new double[c.length];
+            proj.projectInPlace(c, xy, c.length / 2);
+            for (int j = 0; j < xy.length; j += 2) {
+                gl.glVertex2d(xy[j], xy[j + 1]);
             }
         }
         gl.glEnd();
@@ -760,86 +759,12 @@ public class PositionMap implements GLEventListener, ActionListener,
     }
 
     /**
-     * TessellatorAdapter - used to describe the callback methods used for the tesselation of the polygons.
-     */
-    class TessellatorAdapter extends GLUtessellatorCallbackAdapter {
-        /**
-         * Interface to OpenGL2.
-         */
-        GL2 gl;
-        /**
-         * Provides access to the OpenGL utility library routines.
-         */
-        GLU glu;
-
-        /**
-         * Creates the adapter.
-         */
-        public TessellatorAdapter(GL gl, GLU glu) {
-            this.gl = (GL2) gl;
-            this.glu = glu;
-        }
-
-        /**
-         * The vertex callback method is invoked between the begin and end callback methods
-         */
-        public void vertex(Object data) {
-            double[] p = (double[]) data;
-            gl.glColor3f(0.1f, 0.8f, 0.1f);
-            gl.glVertex2d(p[0], p[1]);
-        }
-
-        /**
-         * The begin callback method is invoked like glBegin to indicate the start of a (triangle) primitive.
-         */
-        public void begin(int type) {
-            gl.glBegin(type);
-        }
-
-        /**
-         * The end callback serves the same purpose as glEnd.
-         */
-        public void end() {
-            gl.glEnd();
-        }
-
-        /**
-         *
-         */
-        public void combine(double[] coords, Object[] data, float[] weight,
-                Object[] outData) {
-            float[] col = { 0.1f, 0.8f, 0.1f, 1.0f };
-            double[] vertex = new double[7];
-
-            vertex[0] = coords[0];
-            vertex[1] = coords[1];
-            vertex[2] = 0;
-            vertex[3] = col[0];
-            vertex[4] = col[1];
-            vertex[5] = col[2];
-            vertex[6] = col[3];
-
-            outData[0] = vertex;
-        }
-
-        /**
-         * The error callback method is called when an error is encountered
-         */
-        public void error(int errnum) {
-            String estring;
-            estring = glu.gluErrorString(errnum);
-            System.out.println("Tessellation Error: " + estring);
-            throw new RuntimeException();
-        }
-    }
-
-    /**
-     * Updates the display list consisting of the tesselated shapes the displayed region contains.
+     * Updates the display list consisting of the tesselated shapes the displayed region contains. The triangles are taken from the
+     * tessellation cache, the polygons not tessellated yet are added when they are ready.
      * 
      * @param GL interface to OpenGL2.
-     * @param GLU interface to OpenGL utility library routines.
      */
-    private void updateTesselatedList(GL gl2, GLU glu) {
+    private void updateTesselatedList(GL gl2) {
         GL2 gl = (GL2) gl2;
         // get shapes
         Vector shapes = (Vector) region.getShapes();
@@ -853,38 +778,19 @@ public class PositionMap implements GLEventListener, ActionListener,
             }
         }
 
-        // create new tessellator
-        GLUtessellator tess = GLU.gluNewTess();
-        GLU.gluTessProperty(tess, GLU.GLU_TESS_BOUNDARY_ONLY, GLU.GLU_FALSE);
-        GLU.gluTessProperty(tess, GLU.GLU_TESS_WINDING_RULE,
-                            GLU.GLU_TESS_WINDING_ODD);
-
-        // define callback functions
-        GLU.gluTessCallback(tess, GLU.GLU_TESS_VERTEX, adapter);
-        GLU.gluTessCallback(tess, GLU.GLU_TESS_BEGIN, adapter);
-        GLU.gluTessCallback(tess, GLU.GLU_TESS_END, adapter);
-        GLU.gluTessCallback(tess, GLU.GLU_TESS_ERROR, adapter);
-        GLU.gluTessCallback(tess, GLU.GLU_TESS_COMBINE, adapter);
-
         // create display list for all shapes
         gl.glNewList(tess_reg, GL2.GL_COMPILE);
+        gl.glColor3f(0.1f, 0.8f, 0.1f);
         Projection proj = stratmap.getProjection();
         for (int i = 0; i < simple_shapes.size(); i++) {
             SimpleShape ssh = (SimpleShape) simple_shapes.get(i);
             if (!ssh.isHole()) {
                 Polygon pol = (Polygon) ssh.getPolygon(1.0);
-                // start tesselation
-                GLU.gluBeginPolygon(tess);
-                // for each polygonial
-                for (Enumeration e = pol.getCurves(); e.hasMoreElements();) {
-                    Line line = (Line) e.nextElement();
-                    double[] xy = proj.projToXY(line.getStartPoint());
-                    double[] vv = { xy[0], xy[1], 0 };
-                    GLU.gluTessVertex(tess, vv, 0, vv);
+                TriangleBuffer triangles = TessellationCache
+                        .getTriangles(pol, proj, tessellationListener);
+                if (triangles != null) {
+                    triangles.drawArrays(gl);
                 }
-                //
-                GLU.gluNextContour(tess, GLU.GLU_UNKNOWN);
-                GLU.gluEndPolygon(tess);
             }
         }
         // ends display list
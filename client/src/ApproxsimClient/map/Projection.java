@@ -86,14 +86,43 @@ public abstract class Projection {
      */
     public double[] projToXY(double[] lon_lat) {
         double[] xy = new double[lon_lat.length];
-        for (int i = 0; i < lon_lat.length; i = i + 2) {
-            double[] xy2 = projToXY(lon_lat[i], lon_lat[i + 1]);
-            xy[i] = xy2[0];
-            xy[i + 1] = xy2[1];
-        }
+        projectInPlace(lon_lat, xy, lon_lat.length / 2);
         return xy;
     }
 
+    /**
+     * Converts (lon,lat) values to (x,y) coordinates without allocating. Subclasses override this with a loop that sets up the
+     * projection once for all points.
+     * 
+     * @param lonlat [lon1, lat1, lon2, lat2, ...].
+     * @param outXY the array receiving [x1, y1, x2, y2, ...], which may be lonlat itself.
+     * @param count the number of points.
+     */
+    public void projectInPlace(double[] lonlat, double[] outXY, int count) {
+        for (int i = 0; i < 2 * count; i += 2) {
+            double[] xy = projToXY(lonlat[i], lonlat[i + 1]);
+            outXY[i] = xy[0];
+            outXY[i + 1] = xy[1];
+        }
+    }
+
+    /**
+     * Converts (x,y) values to (lon,lat) coordinates without allocating. Subclasses override this with a loop that sets up the
+     * projection once for all points.
+     * 
+     * @param xy [x1, y1, x2, y2, ...].
+     * @param outLonLat the array receiving [lon1, lat1, lon2, lat2, ...], which may be xy itself.
+     * @param count the number of points.
+     */
+    public void inverseProjectInPlace(double[] xy, double[] outLonLat,
+            int count) {
+        for (int i = 0; i < 2 * count; i += 2) {
+            double[] lon_lat = projToLonLat(xy[i], xy[i + 1]);
+            outLonLat[i] = lon_lat[0];
+            outLonLat[i + 1] = lon_lat[1];
+        }
+    }
+
     /**
      * Returns the (x,y) coordinates for the provided point.
      * 
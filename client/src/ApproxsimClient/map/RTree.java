@@ -0,0 +1,411 @@
+package ApproxsimClient.map;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * An R-tree of objects by their bounding boxes, used to find the objects drawn in an area of the map without drawing them. Objects can be
+ * inserted, moved and removed one at a time, or the whole tree can be bulk loaded. Boxes are given as {xmin, ymin, xmax, ymax}.
+ * <p>
+ * All methods are synchronized, so the tree may be updated from the threads notifying about changed objects while it is queried from the
+ * event dispatching thread.
+ *
+ * @version 1
+ */
+public class RTree<T> {
+    /**
+     * The maximum number of children of a node.
+     */
+    static final int MAX_CHILDREN = 16;
+    /**
+     * The minimum number of children of a node other than the root.
+     */
+    static final int MIN_CHILDREN = 6;
+
+    /**
+     * A node of the tree. Leaf nodes have entries as children, an entry is a node holding an object and no children.
+     */
+    static class Node {
+        double xmin, ymin, xmax, ymax;
+        Node parent;
+        Node[] children;
+        int size = 0;
+        boolean leaf;
+        Object object;
+
+        Node(boolean leaf) {
+            this.leaf = leaf;
+            this.children = new Node[MAX_CHILDREN + 1];
+        }
+
+        Node(Object object, double[] box) {
+            this.object = object;
+            setBox(box[0], box[1], box[2], box[3]);
+        }
+
+        void setBox(double xmin, double ymin, double xmax, double ymax) {
+            this.xmin = xmin;
+            this.ymin = ymin;
+            this.xmax = xmax;
+            this.ymax = ymax;
+        }
+
+        void add(Node child) {
+            children[size++] = child;
+            child.parent = this;
+        }
+
+        void remove(Node child) {
+            for (int i = 0; i < size; i++) {
+                if (children[i] == child) {
+                    children[i] = children[--size];
+                    children[size] = null;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Recomputes the box as the union of the boxes of the children.
+         */
+        void fit() {
+            xmin = ymin = Double.POSITIVE_INFINITY;
+            xmax = ymax = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < size; i++) {
+                include(children[i]);
+            }
+        }
+
+        void include(Node n) {
+            xmin = Math.min(xmin, n.xmin);
+            ymin = Math.min(ymin, n.ymin);
+            xmax = Math.max(xmax, n.xmax);
+            ymax = Math.max(ymax, n.ymax);
+        }
+
+        double area() {
+            return (xmax - xmin) * (ymax - ymin);
+        }
+
+        double enlargement(Node n) {
+            return (Math.max(xmax, n.xmax) - Math.min(xmin, n.xmin))
+                    * (Math.max(ymax, n.ymax) - Math.min(ymin, n.ymin)) - area();
+        }
+
+        boolean intersects(double xmin, double ymin, double xmax, double ymax) {
+            return this.xmin <= xmax && xmin <= this.xmax && this.ymin <= ymax
+                    && ymin <= this.ymax;
+        }
+    }
+
+    /**
+     * Orders nodes by the x-coordinate of their centers.
+     */
+    static final Comparator<Node> X_ORDER = new Comparator<Node>() {
+        public int compare(Node n1, Node n2) {
+            return Double.compare(n1.xmin + n1.xmax, n2.xmin + n2.xmax);
+        }
+    };
+    /**
+     * Orders nodes by the y-coordinate of their centers.
+     */
+    static final Comparator<Node> Y_ORDER = new Comparator<Node>() {
+        public int compare(Node n1, Node n2) {
+            return Double.compare(n1.ymin + n1.ymax, n2.ymin + n2.ymax);
+        }
+    };
+
+    /**
+     * The root of the tree.
+     */
+    private Node root = new Node(true);
+    /**
+     * The entries of the tree, indexed by their objects.
+     */
+    private Hashtable<T, Node> entries = new Hashtable<T, Node>();
+
+    /**
+     * Inserts an object, or moves it if it's already in the tree.
+     *
+     * @param object the object.
+     * @param box the bounding box of the object.
+     */
+    public synchronized void insert(T object, double[] box) {
+        Node entry = entries.get(object);
+        if (entry != null) {
+            if (entry.xmin == box[0] && entry.ymin == box[1]
+                    && entry.xmax == box[2] && entry.ymax == box[3]) {
+                return;
+            }
+            remove(object);
+        }
+        entry = new Node(object, box);
+        entries.put(object, entry);
+        insert(entry);
+    }
+
+    /**
+     * Removes an object.
+     *
+     * @param object the object.
+     * @return true if the object was in the tree.
+     */
+    public synchronized boolean remove(T object) {
+        Node entry = entries.remove(object);
+        if (entry == null) {
+            return false;
+        }
+        Node node = entry.parent;
+        node.remove(entry);
+        // Dissolve the nodes left with too few children and reinsert their entries.
+        Vector<Node> orphans = new Vector<Node>();
+        while (node != root) {
+            Node parent = node.parent;
+            if (node.size < MIN_CHILDREN) {
+                parent.remove(node);
+                collectEntries(node, orphans);
+            } else {
+                node.fit();
+            }
+            node = parent;
+        }
+        root.fit();
+        while (!root.leaf && root.size == 1) {
+            root = root.children[0];
+            root.parent = null;
+        }
+        if (root.size == 0) {
+            root = new Node(true);
+        }
+        for (int i = 0; i < orphans.size(); i++) {
+            insert(orphans.get(i));
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the object is in the tree.
+     */
+    public synchronized boolean contains(T object) {
+        return entries.containsKey(object);
+    }
+
+    /**
+     * Returns the number of objects in the tree.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all objects.
+     */
+    public synchronized void clear() {
+        root = new Node(true);
+        entries.clear();
+    }
+
+    /**
+     * Replaces the content of the tree with the given objects, packing them into as few nodes as possible (Sort-Tile-Recursive).
+     *
+     * @param objects the objects.
+     * @param boxes the bounding boxes of the objects, in the same order.
+     */
+    public synchronized void load(Vector<T> objects, Vector<double[]> boxes) {
+        clear();
+        if (objects.isEmpty()) {
+            return;
+        }
+        Node[] level = new Node[objects.size()];
+        for (int i = 0; i < level.length; i++) {
+            level[i] = new Node(objects.get(i), boxes.get(i));
+            entries.put(objects.get(i), level[i]);
+        }
+        boolean leaf = true;
+        do {
+            level = pack(level, leaf);
+            leaf = false;
+        } while (level.length > 1);
+        root = level[0];
+        root.parent = null;
+    }
+
+    /**
+     * Finds the objects whose bounding boxes intersect a rectangle.
+     *
+     * @param xmin the left side of the rectangle.
+     * @param ymin the bottom of the rectangle.
+     * @param xmax the right side of the rectangle.
+     * @param ymax the top of the rectangle.
+     * @param result the collection the objects found are added to.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void search(double xmin, double ymin, double xmax,
+            double ymax, Collection<T> result) {
+        Node[] stack = new Node[64];
+        int top = 0;
+        if (root.size > 0) {
+            stack[top++] = root;
+        }
+        while (top > 0) {
+            Node node = stack[--top];
+            for (int i = 0; i < node.size; i++) {
+                Node child = node.children[i];
+                if (child.intersects(xmin, ymin, xmax, ymax)) {
+                    if (node.leaf) {
+                        result.add((T) child.object);
+                    } else {
+                        if (top == stack.length) {
+                            stack = Arrays.copyOf(stack, 2 * top);
+                        }
+                        stack[top++] = child;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts an entry into the leaf whose box needs the least enlargement, splitting nodes that overflow.
+     */
+    private void insert(Node entry) {
+        Node node = root;
+        while (!node.leaf) {
+            Node best = null;
+            double bestEnlargement = 0;
+            for (int i = 0; i < node.size; i++) {
+                Node child = node.children[i];
+                double enlargement = child.enlargement(entry);
+                if (best == null
+                        || enlargement < bestEnlargement
+                        || (enlargement == bestEnlargement && child.area() < best
+                                .area())) {
+                    best = child;
+                    bestEnlargement = enlargement;
+                }
+            }
+            node = best;
+        }
+        node.add(entry);
+        if (node.size == 1) {
+            node.setBox(entry.xmin, entry.ymin, entry.xmax, entry.ymax);
+        }
+        // Split overflowing nodes and enlarge the boxes up to the root.
+        while (node != null) {
+            if (node.size > MAX_CHILDREN) {
+                Node sibling = split(node);
+                if (node == root) {
+                    root = new Node(false);
+                    root.add(node);
+                    root.add(sibling);
+                    root.fit();
+                    return;
+                }
+                node.parent.add(sibling);
+            } else {
+                node.include(entry);
+            }
+            node = node.parent;
+        }
+    }
+
+    /**
+     * Splits an overflowing node in two by the quadratic algorithm. The node keeps one group, the other is returned in a new node.
+     */
+    private Node split(Node node) {
+        Node[] children = Arrays.copyOf(node.children, node.size);
+        // Pick the two children that would waste the most area together as seeds.
+        int seed1 = 0;
+        int seed2 = 1;
+        double worst = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < children.length; i++) {
+            for (int j = i + 1; j < children.length; j++) {
+                Node a = children[i];
+                Node b = children[j];
+                double waste = (Math.max(a.xmax, b.xmax) - Math.min(a.xmin,
+                                                                    b.xmin))
+                        * (Math.max(a.ymax, b.ymax) - Math.min(a.ymin, b.ymin))
+                        - a.area() - b.area();
+                if (waste > worst) {
+                    worst = waste;
+                    seed1 = i;
+                    seed2 = j;
+                }
+            }
+        }
+        Node sibling = new Node(node.leaf);
+        Arrays.fill(node.children, null);
+        node.size = 0;
+        node.add(children[seed1]);
+        node.fit();
+        sibling.add(children[seed2]);
+        sibling.fit();
+        int left = children.length - 2;
+        for (int i = 0; i < children.length; i++) {
+            if (i == seed1 || i == seed2) {
+                continue;
+            }
+            Node child = children[i];
+            // Fill up a group that needs all the remaining children to reach the minimum.
+            Node group;
+            if (node.size + left == MIN_CHILDREN) {
+                group = node;
+            } else if (sibling.size + left == MIN_CHILDREN) {
+                group = sibling;
+            } else {
+                double e1 = node.enlargement(child);
+                double e2 = sibling.enlargement(child);
+                if (e1 != e2) {
+                    group = (e1 < e2) ? node : sibling;
+                } else {
+                    group = (node.size <= sibling.size) ? node : sibling;
+                }
+            }
+            group.add(child);
+            group.include(child);
+            left--;
+        }
+        return sibling;
+    }
+
+    /**
+     * Packs nodes into parent nodes, tiling them first by x and then by y.
+     */
+    private Node[] pack(Node[] nodes, boolean leaf) {
+        int parents = (nodes.length + MAX_CHILDREN - 1) / MAX_CHILDREN;
+        int slices = (int) Math.ceil(Math.sqrt(parents));
+        int sliceSize = slices * MAX_CHILDREN;
+        Arrays.sort(nodes, X_ORDER);
+        Node[] res = new Node[parents];
+        int n = 0;
+        for (int start = 0; start < nodes.length; start += sliceSize) {
+            int end = Math.min(start + sliceSize, nodes.length);
+            Arrays.sort(nodes, start, end, Y_ORDER);
+            for (int i = start; i < end; i += MAX_CHILDREN) {
+                Node parent = new Node(leaf);
+                for (int j = i; j < Math.min(i + MAX_CHILDREN, end); j++) {
+                    parent.add(nodes[j]);
+                }
+                parent.fit();
+                res[n++] = parent;
+            }
+        }
+        return Arrays.copyOf(res, n);
+    }
+
+    /**
+     * Adds the entries below a node to a list.
+     */
+    private void collectEntries(Node node, Vector<Node> res) {
+        for (int i = 0; i < node.size; i++) {
+            if (node.leaf) {
+                res.add(node.children[i]);
+            } else {
+                collectEntries(node.children[i], res);
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@
 
 package ApproxsimClient.map;
 
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Vector;
 
@@ -95,6 +96,41 @@ public class RenderSelection extends Vector {
         }
     }
 
+    /**
+     * Creates a new RenderSelection from hits found without rendering, such as by picking in a spatial index.
+     *
+     * @param names the name stack of each hit, first pushed name first.
+     * @param mapper a mapping of selectionNames to Objects.
+     */
+    public RenderSelection(Vector<int[]> names, Hashtable mapper) {
+        this.hits = names.size();
+        this.mapper = mapper;
+        this.topSelectionIndex = new int[hits];
+        this.topSelectionNames = new int[hits];
+        this.secondLevelNames = new int[hits];
+
+        // Lay out the hits as a selection buffer: number of names, min depth, max depth and the names.
+        int length = 0;
+        for (int i = 0; i < hits; i++) {
+            length += 3 + names.get(i).length;
+        }
+        this.selectionBuffer = new int[length];
+        int pos = 0;
+        for (int i = 0; i < hits; i++) {
+            int[] stack = names.get(i);
+            topSelectionIndex[i] = pos;
+            selectionBuffer[pos] = stack.length;
+            System.arraycopy(stack, 0, selectionBuffer, pos + 3, stack.length);
+            pos += 3 + stack.length;
+            if (stack.length > 0) {
+                topSelectionNames[i] = stack[0];
+            }
+            if (stack.length > 1) {
+                secondLevelNames[i] = stack[1];
+            }
+        }
+    }
+
     /**
      * Creates a new RenderSelection
      * 
@@ -139,11 +175,15 @@ public class RenderSelection extends Vector {
         Vector res = new Vector();
         // If no mapper provided we are not able to match
         if (mapper != null) {
-            Hashtable hack = (Hashtable) mapper.clone();
+            // Each object once, without copying the whole mapper.
+            HashSet<Integer> found = new HashSet<Integer>();
             for (int i = 0; i < topSelectionNames.length; i++) {
-                Object o = hack.remove(new Integer(topSelectionNames[i]));
-                if (o != null) {
-                    res.add(o);
+                Integer name = new Integer(topSelectionNames[i]);
+                if (found.add(name)) {
+                    Object o = mapper.get(name);
+                    if (o != null) {
+                        res.add(o);
+                    }
                 }
             }
         }
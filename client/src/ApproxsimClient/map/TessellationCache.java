@@ -0,0 +1,159 @@
+package ApproxsimClient.map;
+
+import java.util.Map;
+import java.util.Vector;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import ApproxsimClient.object.Polygon;
+
+/**
+ * A cache of the triangles filling polygons on the map, keyed by the polygon, the version of its geometry and the projection. Polygons
+ * missing in the cache are projected and tessellated by a pool of background threads, and the triangles are handed to the GL thread as
+ * buffers ready to draw. As long as neither the polygon nor the projection changes, the polygon is never tessellated again, however
+ * the map is panned or zoomed.
+ * <p>
+ * Only the latest tessellation of each polygon is kept, and a polygon is dropped from the cache when it is no longer used.
+ *
+ * @version 1
+ */
+public class TessellationCache {
+    /**
+     * Notified when triangles asked for are ready.
+     */
+    public interface Listener {
+        /**
+         * Called on a tessellation thread when the triangles of a polygon are in the cache.
+         *
+         * @param polygon the polygon.
+         */
+        public void tessellated(Polygon polygon);
+    }
+
+    /**
+     * The tessellation of a polygon.
+     */
+    static class Entry {
+        /**
+         * The geometry version of the polygon.
+         */
+        int version;
+        /**
+         * The projection.
+         */
+        Projection proj;
+        /**
+         * The center {lon, lat} of the projection, which may be moved without creating a new projection.
+         */
+        double[] center;
+        /**
+         * The triangles, or null while tessellating.
+         */
+        TriangleBuffer triangles = null;
+        /**
+         * The listeners waiting for the triangles.
+         */
+        Vector<Listener> listeners = new Vector<Listener>();
+
+        Entry(int version, Projection proj, double[] center) {
+            this.version = version;
+            this.proj = proj;
+            this.center = center;
+        }
+
+        boolean matches(int version, Projection proj, double[] center) {
+            return this.version == version && this.proj == proj
+                    && this.center[0] == center[0]
+                    && this.center[1] == center[1];
+        }
+    }
+
+    /**
+     * The threads tessellating polygons.
+     */
+    private static final ExecutorService workers = Executors
+            .newFixedThreadPool(Math.max(1, Runtime.getRuntime()
+                    .availableProcessors() / 2), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "TessellationCache");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    /**
+     * The tessellations by polygon.
+     */
+    private static final Map<Polygon, Entry> entries = new WeakHashMap<Polygon, Entry>();
+
+    /**
+     * Returns the triangles filling a polygon by the odd winding rule, in projected coordinates. If they are not in the cache null is
+     * returned, and the listener is notified when they are.
+     *
+     * @param polygon the polygon.
+     * @param proj the projection.
+     * @param listener the listener to notify when the triangles are ready.
+     */
+    public static TriangleBuffer getTriangles(Polygon polygon,
+            Projection proj, Listener listener) {
+        int version = polygon.getGeometryVersion();
+        double[] center = proj.getProjectionCenter();
+        synchronized (entries) {
+            Entry entry = entries.get(polygon);
+            if (entry != null && entry.matches(version, proj, center)) {
+                if (entry.triangles == null
+                        && !entry.listeners.contains(listener)) {
+                    entry.listeners.add(listener);
+                }
+                return entry.triangles;
+            }
+            entry = new Entry(version, proj, center);
+            entry.listeners.add(listener);
+            entries.put(polygon, entry);
+            tessellateLater(polygon, entry);
+            return null;
+        }
+    }
+
+    /**
+     * Projects and tessellates a polygon on a background thread.
+     */
+    private static void tessellateLater(final Polygon polygon,
+            final Entry entry) {
+        final double[] c = polygon.getCoordinates();
+        workers.execute(new Runnable() {
+            public void run() {
+                // the start point of each line
+                double[] xy = new double[c.length / 2];
+                for (int n = 0; 4 * n < c.length; n++) {
+                    xy[2 * n] = c[4 * n];
+                    xy[2 * n + 1] = c[4 * n + 1];
+                }
+                entry.proj.projectInPlace(xy, xy, xy.length / 2);
+                Vector<double[]> contours = new Vector<double[]>();
+                contours.add(xy);
+                TriangleBuffer triangles = new TriangleBuffer(PolygonTessellator
+                        .tessellate(contours), false);
+                Vector<Listener> listeners;
+                synchronized (entries) {
+                    // the projection may have been moved meanwhile
+                    if (!entry.matches(entry.version, entry.proj, entry.proj
+                            .getProjectionCenter())) {
+                        if (entries.get(polygon) == entry) {
+                            entries.remove(polygon);
+                        }
+                    } else {
+                        entry.triangles = triangles;
+                    }
+                    listeners = entry.listeners;
+                    entry.listeners = new Vector<Listener>();
+                }
+                for (int i = 0; i < listeners.size(); i++) {
+                    listeners.get(i).tessellated(polygon);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,172 @@
+package ApproxsimClient.map;
+
+import java.nio.FloatBuffer;
+
+import com.jogamp.common.nio.Buffers;
+
+import javax.media.opengl.GL2;
+
+/**
+ * Triangles in projected coordinates kept in packed float buffers, with an optional colour per vertex. The vertices are uploaded once
+ * into a vertex buffer object, the colours go in a separate buffer object so they can be rewritten in place without touching the
+ * geometry. Only the part of the colours changed since the last draw is uploaded again.
+ * <p>
+ * Where vertex buffer objects are not available, and when compiling a display list, the triangles are drawn from client side arrays
+ * instead.
+ *
+ * @version 1
+ */
+public class TriangleBuffer {
+    /**
+     * The number of floats per vertex.
+     */
+    static final int VERTEX_SIZE = 2;
+    /**
+     * The number of floats per colour.
+     */
+    static final int COLOR_SIZE = 3;
+    /**
+     * The vertices {x0, y0, x1, y1, ...}, three per triangle.
+     */
+    private final FloatBuffer vertices;
+    /**
+     * The colours {r0, g0, b0, r1, ...} of the vertices, or null if the triangles are drawn with the current colour.
+     */
+    private final FloatBuffer colors;
+    /**
+     * The number of vertices.
+     */
+    private final int count;
+    /**
+     * The names of the vertex and colour buffer objects, 0 if not created.
+     */
+    private int[] bufferObjects = { 0, 0 };
+    /**
+     * The first vertex whose colour changed since the colours were uploaded.
+     */
+    private int dirtyFrom;
+    /**
+     * The vertex after the last vertex whose colour changed since the colours were uploaded.
+     */
+    private int dirtyTo;
+
+    /**
+     * Creates a buffer for triangles.
+     *
+     * @param vertices the packed vertices, three per triangle.
+     * @param withColors if true each vertex has a colour, initially black.
+     */
+    public TriangleBuffer(float[] vertices, boolean withColors) {
+        this.count = vertices.length / VERTEX_SIZE;
+        this.vertices = Buffers.newDirectFloatBuffer(vertices);
+        this.colors = (withColors) ? Buffers.newDirectFloatBuffer(count
+                * COLOR_SIZE) : null;
+        dirtyFrom = 0;
+        dirtyTo = count;
+    }
+
+    /**
+     * Returns the number of vertices.
+     */
+    public int getVertexCount() {
+        return count;
+    }
+
+    /**
+     * Sets the colour of consecutive vertices. The change is uploaded at the next draw.
+     *
+     * @param first the first vertex.
+     * @param n the number of vertices.
+     * @param rgb the colour {r, g, b}.
+     */
+    public synchronized void setColor(int first, int n, float[] rgb) {
+        for (int i = first; i < first + n; i++) {
+            colors.put(COLOR_SIZE * i, rgb[0]);
+            colors.put(COLOR_SIZE * i + 1, rgb[1]);
+            colors.put(COLOR_SIZE * i + 2, rgb[2]);
+        }
+        if (dirtyFrom >= dirtyTo) {
+            dirtyFrom = first;
+            dirtyTo = first + n;
+        } else {
+            dirtyFrom = Math.min(dirtyFrom, first);
+            dirtyTo = Math.max(dirtyTo, first + n);
+        }
+    }
+
+    /**
+     * Draws the triangles from buffer objects, creating them on first use in a context.
+     *
+     * @param gl the gl to draw with.
+     */
+    public synchronized void draw(GL2 gl) {
+        if (!gl.isFunctionAvailable("glGenBuffers")) {
+            drawArrays(gl);
+            return;
+        }
+        if (!gl.glIsBuffer(bufferObjects[0])) {
+            // first draw, or a new context
+            gl.glGenBuffers(2, bufferObjects, 0);
+            gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, bufferObjects[0]);
+            gl.glBufferData(GL2.GL_ARRAY_BUFFER, 4L * VERTEX_SIZE * count,
+                            vertices.rewind(), GL2.GL_STATIC_DRAW);
+            if (colors != null) {
+                gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, bufferObjects[1]);
+                gl.glBufferData(GL2.GL_ARRAY_BUFFER, 4L * COLOR_SIZE * count,
+                                colors.rewind(), GL2.GL_DYNAMIC_DRAW);
+            }
+            dirtyFrom = dirtyTo = 0;
+        } else if (colors != null && dirtyFrom < dirtyTo) {
+            // upload the changed colours only
+            gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, bufferObjects[1]);
+            colors.position(COLOR_SIZE * dirtyFrom);
+            gl.glBufferSubData(GL2.GL_ARRAY_BUFFER, 4L * COLOR_SIZE
+                    * dirtyFrom, 4L * COLOR_SIZE * (dirtyTo - dirtyFrom),
+                               colors.slice());
+            colors.rewind();
+            dirtyFrom = dirtyTo = 0;
+        }
+        gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
+        gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, bufferObjects[0]);
+        gl.glVertexPointer(VERTEX_SIZE, GL2.GL_FLOAT, 0, 0);
+        if (colors != null) {
+            gl.glEnableClientState(GL2.GL_COLOR_ARRAY);
+            gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, bufferObjects[1]);
+            gl.glColorPointer(COLOR_SIZE, GL2.GL_FLOAT, 0, 0);
+        }
+        gl.glDrawArrays(GL2.GL_TRIANGLES, 0, count);
+        gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+        gl.glDisableClientState(GL2.GL_COLOR_ARRAY);
+        gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
+    }
+
+    /**
+     * Draws the triangles from client side arrays. Unlike buffer objects this can be compiled into a display list, which then holds a
+     * copy of the triangles.
+     *
+     * @param gl the gl to draw with.
+     */
+    public synchronized void drawArrays(GL2 gl) {
+        gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
+        gl.glVertexPointer(VERTEX_SIZE, GL2.GL_FLOAT, 0, vertices.rewind());
+        if (colors != null) {
+            gl.glEnableClientState(GL2.GL_COLOR_ARRAY);
+            gl.glColorPointer(COLOR_SIZE, GL2.GL_FLOAT, 0, colors.rewind());
+        }
+        gl.glDrawArrays(GL2.GL_TRIANGLES, 0, count);
+        gl.glDisableClientState(GL2.GL_COLOR_ARRAY);
+        gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
+    }
+
+    /**
+     * Deletes the buffer objects.
+     *
+     * @param gl the gl the buffers were created with.
+     */
+    public synchronized void dispose(GL2 gl) {
+        if (gl.glIsBuffer(bufferObjects[0])) {
+            gl.glDeleteBuffers(2, bufferObjects, 0);
+        }
+        bufferObjects[0] = bufferObjects[1] = 0;
+    }
+}
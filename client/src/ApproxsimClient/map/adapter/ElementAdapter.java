@@ -134,6 +134,14 @@ public class ElementAdapter extends MapElementAdapter {
         displayListUpdated = true;
     }
 
+    /**
+     * Returns true if the symbol is drawn, which it is only while the element is present unless absent elements are shown or it's
+     * selected.
+     */
+    protected boolean isSymbolDrawn() {
+        return isPresent() || getIgnorePresent() || isSelected();
+    }
+
     /**
      * Called when the Element this adapter adapts changes.
      * 
@@ -14,6 +14,7 @@ import javax.media.opengl.glu.GLUtessellatorCallback;
 import javax.media.opengl.glu.GLUtessellatorCallbackAdapter;
 
 import ApproxsimClient.Debug;
+import ApproxsimClient.map.PickGeometry;
 import ApproxsimClient.map.Projection;
 import ApproxsimClient.object.Point;
 import ApproxsimClient.object.ApproxsimEvent;
@@ -192,6 +193,54 @@ public class GraphEdgeAdapter extends MapElementAdapter {
         }
     }
 
+    /**
+     * Returns the corners of the quad drawn for the edge as packed projected coordinates.
+     *
+     * @param proj the actual projection.
+     * @param viewWidth the width of the view in projected coordinates.
+     */
+    protected double[] getProjectedQuad(Projection proj, double viewWidth) {
+        double width = (getInvariantSymbolSize()) ? lineWidth * 0.000003d
+                * viewWidth / 2 : lineWidth;
+        double[] p1 = proj.projToXY(getOriginLonLat());
+        double[] p2 = proj.projToXY(getTargetLonLat());
+        double[] n = { p2[1] - p1[1], p1[0] - p2[0] };
+        double nLen = Math.sqrt(n[0] * n[0] + n[1] * n[1]);
+        if (nLen > 0) {
+            n[0] *= width / 2 / nLen;
+            n[1] *= width / 2 / nLen;
+        }
+        return new double[] { p1[0] + n[0], p1[1] + n[1], p2[0] + n[0],
+                p2[1] + n[1], p2[0] - n[0], p2[1] - n[1], p1[0] - n[0],
+                p1[1] - n[1] };
+    }
+
+    /**
+     * Returns the bounding box of the edge.
+     *
+     * @param proj the actual projection.
+     * @param viewWidth the width of the view in projected coordinates.
+     */
+    public double[] getPickBounds(Projection proj, double viewWidth) {
+        return PickGeometry.getBounds(getProjectedQuad(proj, viewWidth), 4);
+    }
+
+    /**
+     * Returns the names of this adapter and its symbol if the rectangle intersects the edge.
+     *
+     * @param proj the actual projection.
+     * @param viewWidth the width of the view in projected coordinates.
+     */
+    public int[] pick(Projection proj, double viewWidth, double xmin,
+            double ymin, double xmax, double ymax) {
+        if (PickGeometry.intersectsPolygon(getProjectedQuad(proj, viewWidth),
+                                           4, xmin, ymin, xmax, ymax)) {
+            return new int[] { getRenderSelectionName(),
+                    getRenderSelectionName() + 1 + SYMBOL_POS };
+        }
+        return null;
+    }
+
     protected double[] getOriginLonLat() {
         ApproxsimObject walker = getObject();
         while (walker != null && walker.getChild("origin") == null) {
@@ -208,6 +208,16 @@ public class GraphNodeAdapter extends MapElementAdapter {
         }
     }
 
+    /**
+     * Returns the scale the symbol is drawn with in a view of the given width.
+     *
+     * @param viewWidth the width of the view in projected coordinates.
+     */
+    protected double getSymbolScale(double viewWidth) {
+        return (getInvariantSymbolSize()) ? getSymbolScale() * 0.000003d
+                * viewWidth / 2 : getSymbolScale();
+    }
+
     protected double[] getLonLat() {
         ApproxsimObject walker = getObject();
         while (walker != null && walker.getChild("point") == null) {
@@ -132,6 +132,29 @@ public abstract class MapDrawableAdapter implements ApproxsimEventListener,
         return renderSelectionName == name;
     }
 
+    /**
+     * Returns the bounding box {xmin, ymin, xmax, ymax} in projected coordinates of the parts of this adapter that can be picked, or null
+     * if nothing of it can be picked.
+     *
+     * @param proj the actual projection.
+     * @param viewWidth the width of the view in projected coordinates, which sizes symbols of invariant size.
+     */
+    public double[] getPickBounds(Projection proj, double viewWidth) {
+        return null;
+    }
+
+    /**
+     * Returns the render selection names pushed when drawing the part of this adapter hit by a rectangle in projected coordinates, first
+     * pushed first, or null if the rectangle misses the adapter. This gives the same hit as drawing the adapter in RENDER_SELECTION mode.
+     *
+     * @param proj the actual projection.
+     * @param viewWidth the width of the view in projected coordinates, which sizes symbols of invariant size.
+     */
+    public int[] pick(Projection proj, double viewWidth, double xmin,
+            double ymin, double xmax, double ymax) {
+        return null;
+    }
+
     /**
      * Returns the display list of this adapter.
      */
@@ -15,10 +15,10 @@ import javax.media.opengl.glu.GLUtessellatorCallbackAdapter;
 
 import ApproxsimClient.BoundingBox;
 import ApproxsimClient.Debug;
+import ApproxsimClient.map.PickGeometry;
 import ApproxsimClient.map.Projection;
 import ApproxsimClient.map.SymbolToTextureMapper;
 import ApproxsimClient.object.Circle;
-import ApproxsimClient.object.Line;
 import ApproxsimClient.object.Shape;
 import ApproxsimClient.object.SimpleShape;
 import ApproxsimClient.object.ApproxsimDecimal;
@@ -413,14 +413,13 @@ public class MapElementAdapter extends MapDrawableAdapter {
                             tess = getLocationTessellator(gld);
                         }
                         GLU.gluBeginPolygon(tess);
-                        for (Enumeration le = simpleShape.getPolygon(100.0)
-                                .getCurves(); le.hasMoreElements();) {
-                            Line line = (Line) le.nextElement();
-
-                            double[] p1 = proj.projToXY(line.getStartPoint());
-                            double[] p2 = proj.projToXY(line.getEndPoint());
-                            double[] v1 = { p1[0], p1[1], 0 };
-                            double[] v2 = { p2[0], p2[1], 0 };
+                        double[] c = simpleShape.getPolygon(100.0)
+                                .getCoordinates();
+                        double[] xy = new double[c.length];
+                        proj.projectInPlace(c, xy, c.length / 2);
+                        for (int j = 0; j < xy.length; j += 4) {
+                            double[] v1 = { xy[j], xy[j + 1], 0 };
+                            double[] v2 = { xy[j + 2], xy[j + 3], 0 };
                             GLU.gluTessVertex(tess, v1, 0, v1);
                             GLU.gluTessVertex(tess, v2, 0, v2);
                         }
@@ -479,11 +478,11 @@ public class MapElementAdapter extends MapDrawableAdapter {
                     gl.glTranslated(-centerPoint[0], -centerPoint[1], 0.0d);
                 } else {
                     gl.glBegin(GL2.GL_LINES);
-                    for (Enumeration le = simpleShape.getPolygon(100.0)
-                            .getCurves(); le.hasMoreElements();) {
-                        Line line = (Line) le.nextElement();
-                        gl.glVertex2dv(proj.projToXY(line.getStartPoint()), 0);
-                        gl.glVertex2dv(proj.projToXY(line.getEndPoint()), 0);
+                    double[] c = simpleShape.getPolygon(100.0).getCoordinates();
+                    double[] xy = new double[c.length];
+                    proj.projectInPlace(c, xy, c.length / 2);
+                    for (int j = 0; j < xy.length; j += 2) {
+                        gl.glVertex2d(xy[j], xy[j + 1]);
                     }
                     gl.glEnd();
                 }
@@ -951,6 +950,58 @@ public class MapElementAdapter extends MapDrawableAdapter {
         return this.symbolScale;
     }
 
+    /**
+     * Returns the scale the symbol is drawn with in a view of the given width.
+     *
+     * @param viewWidth the width of the view in projected coordinates.
+     */
+    protected double getSymbolScale(double viewWidth) {
+        // The projection matrix of the view scales x by 2 / viewWidth.
+        return (getInvariantSymbolSize()) ? getSymbolScale() * 0.000004d
+                * viewWidth / 2 : getSymbolScale();
+    }
+
+    /**
+     * Returns true if the symbol is drawn.
+     */
+    protected boolean isSymbolDrawn() {
+        return true;
+    }
+
+    /**
+     * Returns the bounding box of the symbol, or null if it isn't drawn. The location is not picked.
+     *
+     * @param proj the actual projection.
+     * @param viewWidth the width of the view in projected coordinates.
+     */
+    public double[] getPickBounds(Projection proj, double viewWidth) {
+        if (!isSymbolDrawn()) {
+            return null;
+        }
+        double[] xy = proj.projToXY(getLonLat());
+        double scale = getSymbolScale(viewWidth);
+        double dx = scale * horizontalSymbolSize / 2;
+        double dy = scale * verticalSymbolSize / 2;
+        return new double[] { xy[0] - dx, xy[1] - dy, xy[0] + dx, xy[1] + dy };
+    }
+
+    /**
+     * Returns the names of this adapter and its symbol if the rectangle intersects the symbol.
+     *
+     * @param proj the actual projection.
+     * @param viewWidth the width of the view in projected coordinates.
+     */
+    public int[] pick(Projection proj, double viewWidth, double xmin,
+            double ymin, double xmax, double ymax) {
+        double[] box = getPickBounds(proj, viewWidth);
+        if (box != null
+                && PickGeometry.intersectsBox(box, xmin, ymin, xmax, ymax)) {
+            return new int[] { getRenderSelectionName(),
+                    getRenderSelectionName() + 1 + SYMBOL_POS };
+        }
+        return null;
+    }
+
     /**
      * Returns the symbol horizontal size of this MapElementAdapter.
      */
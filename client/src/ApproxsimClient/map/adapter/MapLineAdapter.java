@@ -2,6 +2,7 @@ package ApproxsimClient.map.adapter;
 
 import java.awt.Color;
 import ApproxsimClient.object.Line;
+import ApproxsimClient.map.PickGeometry;
 import ApproxsimClient.map.Projection;
 
 import javax.media.opengl.GL2;
@@ -99,6 +100,36 @@ public class MapLineAdapter extends MapDrawableAdapter {
         return NR_RENDER_SELECTION_NAMES;
     }
 
+    /**
+     * Returns the bounding box of the line.
+     *
+     * @param proj the actual projection.
+     * @param viewWidth the width of the view in projected coordinates.
+     */
+    public double[] getPickBounds(Projection proj, double viewWidth) {
+        double[] p1 = proj.projToXY(((Line) stComp).getStartPoint());
+        double[] p2 = proj.projToXY(((Line) stComp).getEndPoint());
+        return new double[] { Math.min(p1[0], p2[0]), Math.min(p1[1], p2[1]),
+                Math.max(p1[0], p2[0]), Math.max(p1[1], p2[1]) };
+    }
+
+    /**
+     * Returns the name of this adapter if the rectangle intersects the line.
+     *
+     * @param proj the actual projection.
+     * @param viewWidth the width of the view in projected coordinates.
+     */
+    public int[] pick(Projection proj, double viewWidth, double xmin,
+            double ymin, double xmax, double ymax) {
+        double[] p1 = proj.projToXY(((Line) stComp).getStartPoint());
+        double[] p2 = proj.projToXY(((Line) stComp).getEndPoint());
+        if (PickGeometry.intersectsSegment(p1[0], p1[1], p2[0], p2[1], xmin,
+                                           ymin, xmax, ymax)) {
+            return new int[] { getRenderSelectionName() };
+        }
+        return null;
+    }
+
     /**
      * Updates the display lists
      */
@@ -6,6 +6,7 @@ import ApproxsimClient.object.Point;
 import ApproxsimClient.Icon;
 import ApproxsimClient.IconFactory;
 import ApproxsimClient.object.ApproxsimEvent;
+import ApproxsimClient.map.PickGeometry;
 import ApproxsimClient.map.Projection;
 import ApproxsimClient.map.SymbolToTextureMapper;
 
@@ -166,6 +167,38 @@ public class MapPointAdapter extends MapDrawableAdapter {
         return NR_RENDER_SELECTION_NAMES;
     }
 
+    /**
+     * Returns the bounding box of the symbol.
+     *
+     * @param proj the actual projection.
+     * @param viewWidth the width of the view in projected coordinates.
+     */
+    public double[] getPickBounds(Projection proj, double viewWidth) {
+        double[] xy = proj.projToXY((Point) stComp);
+        // The projection matrix of the view scales x by 2 / viewWidth.
+        double scale = (getInvariantSymbolSize()) ? getSymbolScale()
+                * 0.000004d * viewWidth / 2 : getSymbolScale();
+        double dx = scale * horizontalSymbolSize / 2;
+        double dy = scale * verticalSymbolSize / 2;
+        return new double[] { xy[0] - dx, xy[1] - dy, xy[0] + dx, xy[1] + dy };
+    }
+
+    /**
+     * Returns the names of this adapter and its symbol if the rectangle intersects the symbol.
+     *
+     * @param proj the actual projection.
+     * @param viewWidth the width of the view in projected coordinates.
+     */
+    public int[] pick(Projection proj, double viewWidth, double xmin,
+            double ymin, double xmax, double ymax) {
+        if (PickGeometry.intersectsBox(getPickBounds(proj, viewWidth), xmin,
+                                       ymin, xmax, ymax)) {
+            return new int[] { getRenderSelectionName(),
+                    getRenderSelectionName() + 1 };
+        }
+        return null;
+    }
+
     /**
      * Updates the display lists
      */
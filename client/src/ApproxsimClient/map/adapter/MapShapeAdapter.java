@@ -5,7 +5,6 @@ import java.util.Enumeration;
 import java.util.Vector;
 import java.util.Hashtable;
 import ApproxsimClient.object.Point;
-import ApproxsimClient.object.Line;
 import ApproxsimClient.object.Polygon;
 import ApproxsimClient.object.Circle;
 import ApproxsimClient.object.Shape;
@@ -13,7 +12,10 @@ import ApproxsimClient.object.SimpleShape;
 import ApproxsimClient.object.Composite;
 import ApproxsimClient.object.ApproxsimObject;
 import ApproxsimClient.object.ApproxsimEvent;
+import ApproxsimClient.map.PickGeometry;
 import ApproxsimClient.map.Projection;
+import ApproxsimClient.map.TessellationCache;
+import ApproxsimClient.map.TriangleBuffer;
 import ApproxsimClient.substrate.SubstrateEditor;
 import ApproxsimClient.substrate.ShapeValuePair;
 
@@ -70,6 +72,15 @@ public class MapShapeAdapter extends MapDrawableAdapter {
      * The list of ShapeColorPair objects. Each object contains an intersecting shape with its color value.
      */
     private Vector<ShapeColorPair> intersectingShapes = new Vector<ShapeColorPair>();
+    /**
+     * Updates the display lists when the triangles filling a polygon of the shape are tessellated.
+     */
+    private TessellationCache.Listener fillListener = new TessellationCache.Listener() {
+        public void tessellated(Polygon polygon) {
+            displayListUpdated = false;
+            fireAdapterUpdated();
+        }
+    };
 
     /**
      * Creates new adapter.
@@ -188,23 +199,29 @@ public class MapShapeAdapter extends MapDrawableAdapter {
     }
 
     /**
-     * Fills the shape with color.
+     * Fills the shape with color. The fill is drawn from triangles tessellated in the background and cached, so neither changing the
+     * color nor panning and zooming tessellates the shape again. Polygons are not filled until their triangles are ready.
      * 
      * @param gld interface to the OpenGL routines.
      * @param proj the actual projection.
      */
     protected void fillShape(GLAutoDrawable gld, Projection proj) {
-        // fill the polygon with color
-        if (stComp instanceof Polygon) {
-            fillPolygon(gld, proj, (Polygon) stComp);
-        }
-        // fill the circle with color
-        else if (stComp instanceof Circle) {
-            fillCircle(gld, proj, (Circle) stComp);
+        GL2 gl = (GL2) gld.getGL();
+        float[] rgba = fillColor.getRGBComponents(null);
+        gl.glColor4f(rgba[0], rgba[1], rgba[2], rgba[3]);
+        Vector<Polygon> polygons = getFilledPolygons();
+        for (int i = 0; i < polygons.size(); i++) {
+            TriangleBuffer triangles = TessellationCache
+                    .getTriangles(polygons.get(i), proj, fillListener);
+            if (triangles != null) {
+                triangles.drawArrays(gl);
+            }
         }
-        // fill the composite shape with color
-        else if (stComp instanceof Composite) {
-            fillComposite(gld, proj, (Composite) stComp);
+        // find intersections with the intersecting shapes
+        if (!intersectingShapes.isEmpty()) {
+            for (int i = 0; i < polygons.size(); i++) {
+                fillPolygonIntersections(gld, proj, polygons.get(i));
+            }
         }
     }
 
@@ -228,53 +245,17 @@ public class MapShapeAdapter extends MapDrawableAdapter {
         // width of the shape line
         gl.glLineWidth(lineWidth);
         gl.glBegin(GL2.GL_LINES);
-        for (Enumeration e = polygon.getCurves(); e.hasMoreElements();) {
-            Line line = (Line) e.nextElement();
-            gl.glVertex2dv(proj.projToXY(line.getStartPoint()), 0);
-            gl.glVertex2dv(proj.projToXY(line.getEndPoint()), 0);
+        double[] c = polygon.getCoordinates();
+        double[] xy = new double[c.length];
+        proj.projectInPlace(c, xy, c.length / 2);
+        for (int i = 0; i < xy.length; i += 2) {
+            gl.glVertex2d(xy[i], xy[i + 1]);
         }
         gl.glEnd();
         gl.glMatrixMode(GL2.GL_MODELVIEW);
         gl.glPopMatrix();
     }
 
-    /**
-     * Fills the polygon with color.
-     * 
-     * @param gld interface to the OpenGL routines.
-     * @param proj the actual projection.
-     * @param polygon the polygon to draw.
-     */
-    protected void fillPolygon(GLAutoDrawable gld, Projection proj,
-            Polygon polygon) {
-        GL2 gl = (GL2) gld.getGL();
-        new GLU();
-
-        // draw tesselated polygon
-        gl.glMatrixMode(GL2.GL_MODELVIEW);
-        gl.glPushMatrix();
-        // create new tessellator
-        GLUtessellator tess = getShapeTessellator(gld, fillColor);
-        // start tesselation for the polygon
-        GLU.gluBeginPolygon(tess);
-        for (Enumeration e = polygon.getCurves(); e.hasMoreElements();) {
-            Line line = (Line) e.nextElement();
-            double[] xy = proj.projToXY(line.getStartPoint());
-            float[] rgba = fillColor.getRGBComponents(null);
-            double[] xyrgba = { xy[0], xy[1], 0, rgba[0], rgba[1], rgba[2],
-                    rgba[3] };
-            GLU.gluTessVertex(tess, xyrgba, 0, xyrgba);
-        }
-        GLU.gluNextContour(tess, GLU.GLU_UNKNOWN);
-        GLU.gluEndPolygon(tess);
-
-        // find intersections with the intersecting shapes
-        fillPolygonIntersections(gld, proj, polygon);
-
-        gl.glMatrixMode(GL2.GL_MODELVIEW);
-        gl.glPopMatrix();
-    }
-
     /**
      * Finds intersections between the shape this adapter adapts and the given shapes. These intersection areas are then colored with the
      * given colors.
@@ -366,17 +347,6 @@ public class MapShapeAdapter extends MapDrawableAdapter {
         drawPolygonLines(gld, proj, circle.getPolygon(1));
     }
 
-    /**
-     * Converts the circle to a polygonial and fill it with color.
-     * 
-     * @param gld interface to the OpenGL routines.
-     * @param proj the actual projection.
-     * @param circle the circle to draw.
-     */
-    protected void fillCircle(GLAutoDrawable gld, Projection proj, Circle circle) {
-        fillPolygon(gld, proj, circle.getPolygon(1));
-    }
-
     /**
      * Converts the composite into simple shapes and draws lines of those shapes.
      * 
@@ -398,49 +368,6 @@ public class MapShapeAdapter extends MapDrawableAdapter {
         }
     }
 
-    /**
-     * Converts the composite into simple shapes and fills those shapes with color.
-     * 
-     * @param gld interface to the OpenGL routines.
-     * @param proj the actual projection.
-     * @param comp the composite to draw.
-     */
-    protected void fillComposite(GLAutoDrawable gld, Projection proj,
-            Composite comp) {
-        Vector simpleShapes = comp
-                .constructSimpleShapes(new Vector<SimpleShape>());
-        for (Enumeration e = simpleShapes.elements(); e.hasMoreElements();) {
-            SimpleShape sShape = (SimpleShape) e.nextElement();
-            if (sShape instanceof Polygon) {
-                fillPolygon(gld, proj, (Polygon) sShape);
-            } else if (sShape instanceof Circle) {
-                fillCircle(gld, proj, (Circle) sShape);
-            }
-        }
-    }
-
-    /**
-     * Returns the tessellator to use for drawing the shape.
-     * 
-     * @param gld the glDrawable context to use.
-     */
-    protected GLUtessellator getShapeTessellator(GLAutoDrawable gld, Color color) {
-        new GLU();
-
-        GLUtessellator tess = GLU.gluNewTess();
-        GLUtessellatorCallback adapter = getLocationTessellatorCallback(gld,
-                                                                        color);
-        GLU.gluTessCallback(tess, GLU.GLU_TESS_BEGIN, adapter);
-        GLU.gluTessCallback(tess, GLU.GLU_TESS_VERTEX, adapter);
-        GLU.gluTessCallback(tess, GLU.GLU_TESS_END, adapter);
-        GLU.gluTessCallback(tess, GLU.GLU_TESS_ERROR, adapter);
-        GLU.gluTessProperty(tess, GLU.GLU_TESS_BOUNDARY_ONLY, GLU.GLU_FALSE);
-        GLU.gluTessProperty(tess, GLU.GLU_TESS_WINDING_RULE,
-                            GLU.GLU_TESS_WINDING_ODD);
-
-        return tess;
-    }
-
     /**
      * Returns the tessellator to use for drawing the shape intersection.
      * 
@@ -511,6 +438,81 @@ public class MapShapeAdapter extends MapDrawableAdapter {
         return NR_RENDER_SELECTION_NAMES;
     }
 
+    /**
+     * Returns the bounding box of the filled polygons of the shape.
+     *
+     * @param proj the actual projection.
+     * @param viewWidth the width of the view in projected coordinates.
+     */
+    public double[] getPickBounds(Projection proj, double viewWidth) {
+        double[] box = null;
+        Vector<double[]> polygons = getProjectedPolygons(proj);
+        for (int i = 0; i < polygons.size(); i++) {
+            double[] xy = polygons.get(i);
+            box = PickGeometry.union(box, PickGeometry.getBounds(xy,
+                                                                 xy.length / 2));
+        }
+        return box;
+    }
+
+    /**
+     * Returns the name of this adapter if the rectangle intersects one of the filled polygons of the shape.
+     *
+     * @param proj the actual projection.
+     * @param viewWidth the width of the view in projected coordinates.
+     */
+    public int[] pick(Projection proj, double viewWidth, double xmin,
+            double ymin, double xmax, double ymax) {
+        Vector<double[]> polygons = getProjectedPolygons(proj);
+        for (int i = 0; i < polygons.size(); i++) {
+            double[] xy = polygons.get(i);
+            if (PickGeometry.intersectsPolygon(xy, xy.length / 2, xmin, ymin,
+                                               xmax, ymax)) {
+                return new int[] { getRenderSelectionName() };
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the polygons filled when drawing the shape as packed projected coordinates, one array per simple shape.
+     *
+     * @param proj the actual projection.
+     */
+    protected Vector<double[]> getProjectedPolygons(Projection proj) {
+        Vector<double[]> res = new Vector<double[]>();
+        Vector<Polygon> polygons = getFilledPolygons();
+        for (int i = 0; i < polygons.size(); i++) {
+            double[] c = polygons.get(i).getCoordinates();
+            double[] xy = new double[c.length / 2];
+            for (int n = 0; 4 * n < c.length; n++) {
+                xy[2 * n] = c[4 * n];
+                xy[2 * n + 1] = c[4 * n + 1];
+            }
+            proj.projectInPlace(xy, xy, xy.length / 2);
+            res.add(xy);
+        }
+        return res;
+    }
+
+    /**
+     * Returns the polygons filled when drawing the shape, one per simple shape.
+     */
+    protected Vector<Polygon> getFilledPolygons() {
+        Vector<Polygon> res = new Vector<Polygon>();
+        Vector<SimpleShape> simpleShapes = ((Shape) stComp)
+                .constructSimpleShapes(new Vector<SimpleShape>());
+        for (int i = 0; i < simpleShapes.size(); i++) {
+            SimpleShape sShape = simpleShapes.get(i);
+            if (sShape instanceof Polygon) {
+                res.add((Polygon) sShape);
+            } else if (sShape instanceof Circle) {
+                res.add(((Circle) sShape).getPolygon(1));
+            }
+        }
+        return res;
+    }
+
     /**
      * Returns the display list for the shape lines of this adapter.
      */
@@ -132,6 +132,17 @@ public class PopulationAdapter extends ElementAdapter {
         }
     }
 
+    /**
+     * Returns the scale the symbol is drawn with in a view of the given width, which includes the scaling by the number of inhabitants.
+     *
+     * @param viewWidth the width of the view in projected coordinates.
+     */
+    protected double getSymbolScale(double viewWidth) {
+        double scale = (getInvariantSymbolSize()) ? getSymbolScale()
+                * 0.000003d * viewWidth / 2 : getSymbolScale();
+        return scale * 0.5 * inhabitantsScale;
+    }
+
     /**
      * Updates (recreates) the displayList that draws the symbol of the element this adapter represents.
      * 
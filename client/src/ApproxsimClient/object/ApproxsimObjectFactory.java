@@ -798,6 +798,20 @@ public class ApproxsimObjectFactory {
         return res;
     }
 
+    /**
+     * Creates a polygon with the specified identifier from packed coordinates. The lines of the polygon are created when asked for.
+     * 
+     * @param identifier the identifier of the polygon.
+     * @param curveIdentifiers the identifiers of the lines.
+     * @param coordinates the start and end points of the lines packed as {lon1, lat1, lon2, lat2} per line.
+     */
+    public static Polygon createPolygon(String identifier,
+            String[] curveIdentifiers, double[] coordinates) {
+        Polygon res = new Polygon(identifier, curveIdentifiers, coordinates);
+        register(res);
+        return res;
+    }
+
     /**
      * Creates a circle with the specified centre and radius.
      * 
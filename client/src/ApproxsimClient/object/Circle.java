@@ -112,43 +112,34 @@ public class Circle extends SimpleShape {
         double latDistance = getRadius() / 111000;
         double lonDistance = latDistance / Math.cos(Math.toRadians(centerLat));
 
-        // Create lines
-        Vector<Line> lines = new Vector<Line>();
+        // Create lines, packed as {lon1, lat1, lon2, lat2} per line
+        String[] ids = new String[partitions];
+        double[] coordinates = new double[4 * partitions];
         // First line along degreeLine
         double startLat = centerLat + latDistance * Math.sin(0);
         double startLon = centerLon + lonDistance * Math.cos(0);
         double lon1 = startLon;
         double lat1 = startLat;
-        for (int i = 1; i < partitions; i++) {
-            double angle = ((double) i) * angleStep;
-            double lat2 = centerLat + latDistance * Math.sin(angle);
-            double lon2 = centerLon + lonDistance * Math.cos(angle);
-            lines.add(ApproxsimObjectFactory.createLine(Integer.toString(i),
-                                                       ApproxsimObjectFactory
-                                                               .createPoint("p1",
-                                                                            lat1,
-                                                                            lon1),
-                                                       ApproxsimObjectFactory
-                                                               .createPoint("p2",
-                                                                            lat2,
-                                                                            lon2)));
+        for (int i = 1; i <= partitions; i++) {
+            // The last line ties the polygon together
+            double lat2 = startLat;
+            double lon2 = startLon;
+            if (i < partitions) {
+                double angle = ((double) i) * angleStep;
+                lat2 = centerLat + latDistance * Math.sin(angle);
+                lon2 = centerLon + lonDistance * Math.cos(angle);
+            }
+            ids[i - 1] = Integer.toString(i);
+            coordinates[4 * (i - 1)] = lon1;
+            coordinates[4 * (i - 1) + 1] = lat1;
+            coordinates[4 * (i - 1) + 2] = lon2;
+            coordinates[4 * (i - 1) + 3] = lat2;
             lat1 = lat2;
             lon1 = lon2;
         }
-        // Tie polygon together
-        lines.add(ApproxsimObjectFactory.createLine(Integer.toString(partitions),
-                                                   ApproxsimObjectFactory
-                                                           .createPoint("p1",
-                                                                        lat1,
-                                                                        lon1),
-                                                   ApproxsimObjectFactory
-                                                           .createPoint("p2",
-                                                                        startLat,
-                                                                        startLon)));
-
-        Vector<ApproxsimList> v = new Vector<ApproxsimList>();
-        v.add(new ApproxsimList("curves", TypeFactory.getType("Line"), lines));
-        return new Polygon("Approximation of " + getIdentifier(), v);
+
+        return new Polygon("Approximation of " + getIdentifier(), ids,
+                coordinates);
     }
 
     /**
@@ -44,9 +44,9 @@ public class Line extends Curve {
     static Type type = TypeFactory.getType("Line");
 
     /**
-     * The icon of this object.
+     * The icon of this object, loaded on first use so that objects can be created without loading any images.
      */
-    static Icon icon = IconFactory.useTypeMapping(TypeFactory.getType("Point"));
+    static Icon icon = null;
 
     /**
      * Creates a new Line.
@@ -242,6 +242,9 @@ public class Line extends Curve {
      * Returns the icon used to symbolize this object.
      */
     public Icon getIcon() {
+        if (icon == null) {
+            icon = IconFactory.useTypeMapping(TypeFactory.getType("Point"));
+        }
         return icon;
     }
 
@@ -43,9 +43,9 @@ public class Point extends ApproxsimObjectImpl {
     static Type type = TypeFactory.getType("Point");
 
     /**
-     * The icon of this Point
+     * The icon of this Point, loaded on first use so that objects can be created without loading any images.
      */
-    static Icon icon = IconFactory.useTypeMapping(TypeFactory.getType("Point"));
+    static Icon icon = null;
 
     /**
      * Creates a new point.
@@ -82,6 +82,9 @@ public class Point extends ApproxsimObjectImpl {
      * Returns the icon used to symbolize this object.
      */
     public Icon getIcon() {
+        if (icon == null) {
+            icon = IconFactory.useTypeMapping(TypeFactory.getType("Point"));
+        }
         return icon;
     }
 
@@ -29,6 +29,22 @@ import org.w3c.dom.Element;
  */
 
 public class Polygon extends Segmented {
+    /**
+     * The start and end points of the curves packed as {lon1, lat1, lon2, lat2} per curve. While the curves are not created this is the
+     * geometry of the polygon, afterwards it is a cache of the curves that is cleared when they change.
+     */
+    private double[] coordinates = null;
+
+    /**
+     * The identifiers of the curves while they are held packed only, or null once the curve objects are created.
+     */
+    private String[] curveIdentifiers = null;
+
+    /**
+     * The bounding box {xmin, ymin, xmax, ymax} in degrees of the packed coordinates, or null if not calculated.
+     */
+    private double[] bounds = null;
+
     /**
      * Creates an identified polygon, defined by the supplied lines.
      * 
@@ -50,6 +66,21 @@ public class Polygon extends Segmented {
         this(declaration.getName(), lines);
     }
 
+    /**
+     * Creates an identified polygon from packed coordinates. The Line and Point objects of the curves are not created until they are asked
+     * for, e. g. by the object tree or when editing.
+     * 
+     * @param identifier the identifier of the shape.
+     * @param curveIdentifiers the identifiers of the lines.
+     * @param coordinates the start and end points of the lines packed as {lon1, lat1, lon2, lat2} per line.
+     */
+    protected Polygon(String identifier, String[] curveIdentifiers,
+            double[] coordinates) {
+        super(identifier, TypeFactory.getType("Polygon"));
+        this.curveIdentifiers = curveIdentifiers;
+        this.coordinates = coordinates;
+    }
+
     /**
      * Constructs an approximated polygon of this shape.
      * 
@@ -69,6 +100,37 @@ public class Polygon extends Segmented {
         return new PolygonVectorConstructor(declaration);
     }
 
+    /**
+     * Creates a Polygon from the element n. The coordinates of the lines are read straight into the packed form. Polygons with curves
+     * other than plain lines are created the generic way.
+     * 
+     * @param n The Element to get the object from.
+     * @return The newly created Polygon.
+     */
+    protected static ApproxsimObject domCreate(Element n) {
+        Type lineType = TypeFactory.getType("Line");
+        Type pointType = TypeFactory.getType("Point");
+        Vector v = XMLHelper.getChildElementsByTag(n, "curves");
+        String[] ids = new String[v.size()];
+        double[] coordinates = new double[4 * v.size()];
+        for (int i = 0; i < ids.length; i++) {
+            Element curveElem = (Element) v.get(i);
+            Element p1 = XMLHelper.getFirstChildByTag(curveElem, "p1");
+            Element p2 = XMLHelper.getFirstChildByTag(curveElem, "p2");
+            if (!lineType.equals(TypeFactory.getType(curveElem)) || p1 == null
+                    || p2 == null || !pointType.equals(TypeFactory.getType(p1))
+                    || !pointType.equals(TypeFactory.getType(p2))) {
+                return DefaultComplex.domCreate(n);
+            }
+            ids[i] = Identifier.getIdentifier(curveElem);
+            coordinates[4 * i] = XMLHelper.getDouble(p1, "lon");
+            coordinates[4 * i + 1] = XMLHelper.getDouble(p1, "lat");
+            coordinates[4 * i + 2] = XMLHelper.getDouble(p2, "lon");
+            coordinates[4 * i + 3] = XMLHelper.getDouble(p2, "lat");
+        }
+        return new Polygon(Identifier.getIdentifier(n), ids, coordinates);
+    }
+
     /**
      * Creates a Polygon from the specified Declaration.
      * <p>
@@ -84,64 +146,194 @@ public class Polygon extends Segmented {
      * Creates this shapes bounding box. This method assumes that the polygon is nonempty.
      */
     public BoundingBox createBoundingBox() {
+        double[] b = getBounds();
+        return new BoundingBox(b[0], b[1], b[2], b[3]);
+    }
+
+    /**
+     * Returns the bounding box with respect to its projected parts.
+     */
+    public BoundingBox getBoundingBox(Projection proj) {
         double xmin = Double.POSITIVE_INFINITY;
         double ymin = Double.POSITIVE_INFINITY;
         double xmax = Double.NEGATIVE_INFINITY;
         double ymax = Double.NEGATIVE_INFINITY;
 
-        for (Enumeration ls = this.getCurves(); ls.hasMoreElements();) {
-            Line l = (Line) ls.nextElement();
-            xmin = xmin < l.getStartPoint().getLon() ? xmin : l.getStartPoint()
-                    .getLon();
-            xmin = xmin < l.getEndPoint().getLon() ? xmin : l.getEndPoint()
-                    .getLon();
-
-            ymin = ymin < l.getStartPoint().getLat() ? ymin : l.getStartPoint()
-                    .getLat();
-            ymin = ymin < l.getEndPoint().getLat() ? ymin : l.getEndPoint()
-                    .getLat();
-
-            xmax = xmax > l.getStartPoint().getLon() ? xmax : l.getStartPoint()
-                    .getLon();
-            xmax = xmax > l.getEndPoint().getLon() ? xmax : l.getEndPoint()
-                    .getLon();
-
-            ymax = ymax > l.getStartPoint().getLat() ? ymax : l.getStartPoint()
-                    .getLat();
-            ymax = ymax > l.getEndPoint().getLat() ? ymax : l.getEndPoint()
-                    .getLat();
+        double[] c = getCoordinates();
+        double[] p = new double[c.length];
+        proj.projectInPlace(c, p, c.length / 2);
+        for (int i = 0; i < p.length; i += 2) {
+            xmin = xmin < p[i] ? xmin : p[i];
+            ymin = ymin < p[i + 1] ? ymin : p[i + 1];
+            xmax = xmax > p[i] ? xmax : p[i];
+            ymax = ymax > p[i + 1] ? ymax : p[i + 1];
         }
+        return new BoundingBox(xmin, ymin, xmax, ymax, proj);
+    }
 
-        return new BoundingBox(xmin, ymin, xmax, ymax);
+    /**
+     * Returns the start and end points of the curves packed as {lon1, lat1, lon2, lat2} per curve, in the order of the curves. The array
+     * is shared and must not be modified.
+     */
+    public synchronized double[] getCoordinates() {
+        if (curveIdentifiers == null) {
+            ApproxsimList curves = (ApproxsimList) partsHash.get("curves");
+            int n = (curves != null) ? curves.getChildCount() : 0;
+            // Adding curves is notified through childChanged, removing
+            // them is not, so check the number of curves as well.
+            if (coordinates == null || coordinates.length != 4 * n) {
+                double[] c = new double[4 * n];
+                if (n > 0) {
+                    int i = 0;
+                    for (Enumeration ls = curves.children(); ls
+                            .hasMoreElements() && i < c.length;) {
+                        Curve l = (Curve) ls.nextElement();
+                        c[i++] = l.getStartPoint().getLon();
+                        c[i++] = l.getStartPoint().getLat();
+                        c[i++] = l.getEndPoint().getLon();
+                        c[i++] = l.getEndPoint().getLat();
+                    }
+                }
+                coordinates = c;
+                bounds = null;
+            }
+        }
+        return coordinates;
     }
 
     /**
-     * Returns the bounding box with respect to its projected parts.
+     * Returns the number of curves of this polygon.
      */
-    public BoundingBox getBoundingBox(Projection proj) {
-        double xmin = Double.POSITIVE_INFINITY;
-        double ymin = Double.POSITIVE_INFINITY;
-        double xmax = Double.NEGATIVE_INFINITY;
-        double ymax = Double.NEGATIVE_INFINITY;
+    public int getCurveCount() {
+        return getCoordinates().length / 4;
+    }
 
-        for (Enumeration ls = this.getCurves(); ls.hasMoreElements();) {
-            Line l = (Line) ls.nextElement();
-            double[] p1 = proj.projToXY(l.getStartPoint());
-            double[] p2 = proj.projToXY(l.getEndPoint());
+    /**
+     * Returns the bounding box {xmin, ymin, xmax, ymax} in degrees of this polygon. The array is shared and must not be modified.
+     */
+    public synchronized double[] getBounds() {
+        double[] c = getCoordinates();
+        if (bounds == null) {
+            double[] b = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                    Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+            for (int i = 0; i < c.length; i += 2) {
+                b[0] = b[0] < c[i] ? b[0] : c[i];
+                b[1] = b[1] < c[i + 1] ? b[1] : c[i + 1];
+                b[2] = b[2] > c[i] ? b[2] : c[i];
+                b[3] = b[3] > c[i + 1] ? b[3] : c[i + 1];
+            }
+            bounds = b;
+        }
+        return bounds;
+    }
+
+    /**
+     * Creates the Line and Point objects of the curves from the packed coordinates, if not already done. No events are generated since
+     * the geometry of the polygon does not change.
+     */
+    private synchronized void createCurves() {
+        if (curveIdentifiers == null) {
+            return;
+        }
+        Vector lines = new Vector();
+        for (int i = 0; i < curveIdentifiers.length; i++) {
+            lines.add(ApproxsimObjectFactory.createLine(
+                    curveIdentifiers[i],
+                    ApproxsimObjectFactory.createPoint("p1",
+                                                      coordinates[4 * i + 1],
+                                                      coordinates[4 * i]),
+                    ApproxsimObjectFactory.createPoint("p2",
+                                                      coordinates[4 * i + 3],
+                                                      coordinates[4 * i + 2])));
+        }
+        ApproxsimObject curves = ApproxsimObjectFactory.createList(getType()
+                .getSubElement("curves"), lines);
+        curveIdentifiers = null;
+        parts.add(curves);
+        partsHash.put(curves.getIdentifier(), curves);
+        curves.setParent(this);
+    }
+
+    /**
+     * Returns true if the curves of this polygon are held packed only, i. e. their Line and Point objects have not been created.
+     */
+    public synchronized boolean isPacked() {
+        return curveIdentifiers != null;
+    }
 
-            xmin = xmin < p1[0] ? xmin : p1[0];
-            xmin = xmin < p2[0] ? xmin : p2[0];
+    /**
+     * Returns the children of this object, creating the curves if they are held packed only.
+     */
+    public Enumeration<ApproxsimObject> children() {
+        createCurves();
+        return super.children();
+    }
 
-            ymin = ymin < p1[1] ? ymin : p1[1];
-            ymin = ymin < p2[1] ? ymin : p2[1];
+    /**
+     * Returns the number of children this object contains.
+     */
+    public int getChildCount() {
+        createCurves();
+        return super.getChildCount();
+    }
+
+    /**
+     * Returns the child with the specified identifier (or null), creating the curves if they are held packed only.
+     * 
+     * @param id identifier of object to get
+     */
+    public ApproxsimObject getChild(String id) {
+        createCurves();
+        return super.getChild(id);
+    }
 
-            xmax = xmax > p1[0] ? xmax : p1[0];
-            xmax = xmax > p2[0] ? xmax : p2[0];
+    /**
+     * Notifies listeners that this object has been removed. Curves held packed only have no listeners, so they are not created for this.
+     * 
+     * @param initiator The initator of the event.
+     */
+    public void fireRemoved(Object initiator) {
+        boolean packed;
+        synchronized (this) {
+            packed = curveIdentifiers != null;
+        }
+        if (!packed) {
+            super.fireRemoved(initiator);
+            return;
+        }
+        ApproxsimEvent event = ApproxsimEvent.getRemoved(this, initiator);
+        for (int i = getEventListenerList().size() - 1; i >= 0; i--) {
+            getEventListenerList().get(i).eventOccured(event);
+        }
+    }
 
-            ymax = ymax > p1[1] ? ymax : p1[1];
-            ymax = ymax > p2[1] ? ymax : p2[1];
+    /**
+     * Creates an XML representation of the body of this object. Curves held packed only are written straight from the coordinates.
+     * 
+     * @param b The StringBuffer to write to.
+     * @return The StringBuffer b with an XML representation of this object's body appended to it.
+     */
+    public synchronized StringBuffer bodyXML(StringBuffer b) {
+        if (curveIdentifiers == null) {
+            return super.bodyXML(b);
         }
-        return new BoundingBox(xmin, ymin, xmax, ymax, proj);
+        for (int i = 0; i < curveIdentifiers.length; i++) {
+            b.append(NL).append("<curves xsi:type=\"sp:Line\" identifier=\"")
+                    .append(XMLHelper.encodeSpecialCharacters(curveIdentifiers[i]))
+                    .append("\">");
+            b.append(NL).append("<p1 xsi:type=\"sp:Point\">");
+            b.append(NL).append("<lat>").append(coordinates[4 * i + 1])
+                    .append("</lat>");
+            b.append(NL).append("<lon>").append(coordinates[4 * i])
+                    .append("</lon></p1>");
+            b.append(NL).append("<p2 xsi:type=\"sp:Point\">");
+            b.append(NL).append("<lat>").append(coordinates[4 * i + 3])
+                    .append("</lat>");
+            b.append(NL).append("<lon>").append(coordinates[4 * i + 2])
+                    .append("</lon></p2>");
+            b.append("</curves>");
+        }
+        return b;
     }
 
     /**
@@ -182,7 +374,11 @@ public class Polygon extends Segmented {
      * 
      * @return A clone of this object.
      */
-    protected Object clone() {
+    protected synchronized Object clone() {
+        if (curveIdentifiers != null) {
+            return new Polygon(identifier, curveIdentifiers.clone(),
+                    coordinates.clone());
+        }
         Vector elements = new Vector();
         for (Enumeration en = children(); en.hasMoreElements();) {
             elements.add(((ApproxsimObject) en.nextElement()).clone());
@@ -254,6 +450,13 @@ public class Polygon extends Segmented {
      * @param child the child that changed
      */
     public void childChanged(ApproxsimObject child, Object initiator) {
+        synchronized (this) {
+            geometryVersion++;
+            if (curveIdentifiers == null) {
+                coordinates = null;
+                bounds = null;
+            }
+        }
         if (getParent() != null) {
             getParent().childChanged(this, initiator);
         }
@@ -269,17 +472,13 @@ public class Polygon extends Segmented {
     public boolean isClosed() {
         // Should be cached and updated!!!
         Hashtable h = new Hashtable();
-        for (Enumeration en = getCurves(); en.hasMoreElements();) {
-            Line l = (Line) en.nextElement();
-            h.put(new java.awt.geom.Point2D.Double(l.getStartPoint().getLon(),
-                    l.getStartPoint().getLat()), l);
-//               h.put(l.getStartPoint(), l);
+        double[] c = getCoordinates();
+        for (int i = 0; i < c.length; i += 4) {
+            h.put(new java.awt.geom.Point2D.Double(c[i], c[i + 1]),
+                  new java.awt.geom.Point2D.Double(c[i + 2], c[i + 3]));
         }
         for (Enumeration en = h.elements(); en.hasMoreElements();) {
-            Line l = (Line) en.nextElement();
-            if (h.get(new java.awt.geom.Point2D.Double(
-                    l.getEndPoint().getLon(), l.getEndPoint().getLat())) == null) {
-//               if (h.get(l.getEndPoint()) == null) {
+            if (h.get(en.nextElement()) == null) {
                 return false;
             }
         }
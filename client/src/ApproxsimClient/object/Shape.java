@@ -30,6 +30,11 @@ public abstract class Shape extends DefaultComplex {
      */
     BoundingBox box;
 
+    /**
+     * Counts the changes of the shape, so that data derived from its geometry can tell when it is outdated.
+     */
+    volatile int geometryVersion = 0;
+
     /**
      * Creates an identified shape of specified type.
      * 
@@ -40,6 +45,13 @@ public abstract class Shape extends DefaultComplex {
         super(identifier, type);
     }
 
+    /**
+     * Returns the version of the geometry of this shape, which changes whenever the shape or one of its parts changes.
+     */
+    public int getGeometryVersion() {
+        return geometryVersion;
+    }
+
     /**
      * Reduces this Shape and adds it to supplied Vector.
      * 
@@ -141,6 +153,7 @@ public abstract class Shape extends DefaultComplex {
      * @param child the child that changed
      */
     public void childChanged(ApproxsimObject child, Object initiator) {
+        geometryVersion++;
         if (getParent() != null) {
             getParent().childChanged(this, initiator);
         }
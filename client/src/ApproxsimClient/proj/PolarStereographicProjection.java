@@ -148,36 +148,74 @@ public class PolarStereographicProjection {
      */
     public static double[] convertGeodeticToPolarStereographic(
             double longitude, double latitude) {
+        double[] east_north = new double[2];
+        if (!geodeticToPolarStereographic(longitude, latitude, east_north, 0)) {
+            return null;
+        }
+        return east_north;
+    }
+
+    /**
+     * Converts geodetic coordinates to Polar Stereographic coordinates like convertGeodeticToPolarStereographic for each point, without
+     * allocating. Points that can not be converted get NaN coordinates.
+     * 
+     * @param lonlat [longitude1, latitude1, longitude2, ...] in radians.
+     * @param outEN the array receiving [easting1, northing1, easting2, ...] in meters, which may be lonlat itself.
+     * @param count the number of points.
+     * @return true if all points were converted.
+     */
+    public static boolean convertGeodeticToPolarStereographic(double[] lonlat,
+            double[] outEN, int count) {
+        boolean res = true;
+        for (int i = 0; i < 2 * count; i += 2) {
+            if (!geodeticToPolarStereographic(lonlat[i], lonlat[i + 1], outEN,
+                                              i)) {
+                outEN[i] = outEN[i + 1] = Double.NaN;
+                res = false;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Converts a point to Polar Stereographic coordinates.
+     * 
+     * @param out the array receiving easting and northing at offset.
+     * @return true if the point was converted.
+     */
+    private static boolean geodeticToPolarStereographic(double longitude,
+            double latitude, double[] out, int offset) {
         double rho;
 
         // Latitude out of range
         if (latitude < -Math.PI / 2.0 || latitude > Math.PI / 2.0) {
             ProjectionErrorHandler
                     .handleError(ProjectionErrorHandler.LAT_ERROR);
-            return null;
+            return false;
         }
         // Latitude and Origin Latitude in different hemispheres
         else if (latitude < 0 && southern_hemisphere == 0) {
             ProjectionErrorHandler
                     .handleError(ProjectionErrorHandler.LAT_ERROR);
-            return null;
+            return false;
         }
         // Latitude and Origin Latitude in different hemispheres
         else if (latitude > 0 && southern_hemisphere == 1) {
             ProjectionErrorHandler
                     .handleError(ProjectionErrorHandler.LAT_ERROR);
-            return null;
+            return false;
         }
         // Longitude out of range
         else if (longitude < -Math.PI || longitude > 2 * Math.PI) {
             ProjectionErrorHandler
                     .handleError(ProjectionErrorHandler.LON_ERROR);
-            return null;
+            return false;
         }
 
         if (Math.abs(Math.abs(latitude) - Math.PI / 2.0) < 1.0e-10) {
-            double[] east_north = { 0, 0 };
-            return east_north;
+            out[offset] = 0;
+            out[offset + 1] = 0;
+            return true;
         } else {
             if (southern_hemisphere != 0) {
                 longitude *= -1.0;
@@ -211,8 +249,9 @@ public class PolarStereographicProjection {
                 northing = -rho * Math.cos(dlam) + polar_false_northing;
             }
             //
-            double[] east_north = { easting, northing };
-            return east_north;
+            out[offset] = easting;
+            out[offset + 1] = northing;
+            return true;
         }
     }
 
@@ -226,17 +265,53 @@ public class PolarStereographicProjection {
      */
     public static double[] convertPolarStereographicToGeodetic(double easting,
             double northing) {
+        double[] lon_lat = new double[2];
+        if (!polarStereographicToGeodetic(easting, northing, lon_lat, 0)) {
+            return null;
+        }
+        return lon_lat;
+    }
+
+    /**
+     * Converts Polar Stereographic coordinates to geodetic coordinates like convertPolarStereographicToGeodetic for each point, without
+     * allocating. Points that can not be converted get NaN coordinates.
+     * 
+     * @param en [easting1, northing1, easting2, ...] in meters.
+     * @param outLonLat the array receiving [longitude1, latitude1, longitude2, ...] in radians, which may be en itself.
+     * @param count the number of points.
+     * @return true if all points were converted.
+     */
+    public static boolean convertPolarStereographicToGeodetic(double[] en,
+            double[] outLonLat, int count) {
+        boolean res = true;
+        for (int i = 0; i < 2 * count; i += 2) {
+            if (!polarStereographicToGeodetic(en[i], en[i + 1], outLonLat, i)) {
+                outLonLat[i] = outLonLat[i + 1] = Double.NaN;
+                res = false;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Converts a point to geodetic coordinates.
+     * 
+     * @param out the array receiving longitude and latitude at offset.
+     * @return true if the point was converted.
+     */
+    private static boolean polarStereographicToGeodetic(double easting,
+            double northing, double[] out, int offset) {
         // Easting out of range
         if (easting > (polar_false_easting + polar_delta_easting)
                 || easting < (polar_false_easting - polar_delta_easting)) {
             ProjectionErrorHandler
                     .handleError(ProjectionErrorHandler.EASTING_ERROR);
-            return null;
+            return false;
         } else if (northing > (polar_false_northing + polar_delta_northing)
                 || northing < (polar_false_northing - polar_delta_northing)) {
             ProjectionErrorHandler
                     .handleError(ProjectionErrorHandler.NORTHING_ERROR);
-            return null;
+            return false;
         }
         double temp = Math.sqrt(easting * easting + northing * northing);
         // Point is outside of projection area
@@ -246,14 +321,15 @@ public class PolarStereographicProjection {
                 || temp < (polar_false_northing - polar_delta_northing)) {
             ProjectionErrorHandler
                     .handleError(ProjectionErrorHandler.POLAR_RADIUS_ERROR);
-            return null;
+            return false;
         }
 
         double dy = northing - polar_false_northing;
         double dx = easting - polar_false_easting;
         if (dy == 0.0 && dx == 0.0) {
-            double[] lon_lat = { polar_origin_lon, Math.PI / 2.0 };
-            return lon_lat;
+            out[offset] = polar_origin_lon;
+            out[offset + 1] = Math.PI / 2.0;
+            return true;
         } else {
             if (southern_hemisphere != 0) {
                 dy *= -1.0;
@@ -298,8 +374,9 @@ public class PolarStereographicProjection {
                 longitude *= -1.0;
             }
             //
-            double[] lon_lat = { longitude, latitude };
-            return lon_lat;
+            out[offset] = longitude;
+            out[offset + 1] = latitude;
+            return true;
         }
     }
 
@@ -0,0 +1,187 @@
+package ApproxsimClient.proj;
+
+import java.util.Arrays;
+
+import ApproxsimClient.map.AzEqAreaProj;
+
+/**
+ * Compares projecting points one at a time with the bulk conversions of AzEqAreaProj and the Transverse Mercator projection, both ways.
+ * Run main for the time per pass over the points.
+ *
+ * @version 1
+ */
+public class ProjectionBenchmark {
+    /** The sink for the projected values, so that the projection isn't optimized away. */
+    private static double sSink = 0;
+
+    /**
+     * Runs a projection repeatedly and returns the time per run in milliseconds.
+     *
+     * @param task The projection.
+     * @param runs The number of measured runs, preceded by as many warm up runs.
+     */
+    static double time(Runnable task, int runs) {
+        for (int i = 0; i < runs; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / 1000000.0 / runs;
+    }
+
+    /**
+     * Throws if two arrays of coordinates differ.
+     */
+    static void check(String what, double[] a, double[] b) {
+        if (!Arrays.equals(a, b)) {
+            throw new AssertionError(what + " disagree");
+        }
+    }
+
+    /**
+     * Times the projections on points spread over an area of about 300 by 300 km.
+     *
+     * @param args [points, runs], by default 1000000 points and 10 runs.
+     */
+    public static void main(String[] args) {
+        int points = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+
+        final double[] lonlat = new double[2 * points];
+        for (int i = 0; i < points; i++) {
+            lonlat[2 * i] = 17.0 + 3.0 * ((i * 0.618034) % 1.0);
+            lonlat[2 * i + 1] = 56.5 + 3.0 * ((i * 0.414214) % 1.0);
+        }
+        final double[] out = new double[2 * points];
+
+        // Azimuthal equal area, degrees to metres
+        final AzEqAreaProj proj = new AzEqAreaProj(17.0, 56.5, 20.0, 59.5);
+        final double[] xy = new double[2 * points];
+        proj.projectInPlace(lonlat, xy, points);
+        double[] single = new double[2 * points];
+        for (int i = 0; i < 2 * points; i += 2) {
+            double[] p = proj.projToXY(lonlat[i], lonlat[i + 1]);
+            single[i] = p[0];
+            single[i + 1] = p[1];
+        }
+        check("AzEqAreaProj projections", single, xy);
+        proj.inverseProjectInPlace(xy, out, points);
+        for (int i = 0; i < 2 * points; i += 2) {
+            double[] p = proj.projToLonLat(xy[i], xy[i + 1]);
+            single[i] = p[0];
+            single[i + 1] = p[1];
+        }
+        check("AzEqAreaProj inverse projections", single, out);
+
+        Runnable singleAz = new Runnable() {
+            public void run() {
+                for (int i = 0; i < lonlat.length; i += 2) {
+                    sSink += proj.projToXY(lonlat[i], lonlat[i + 1])[0];
+                }
+            }
+        };
+        Runnable bulkAz = new Runnable() {
+            public void run() {
+                proj.projectInPlace(lonlat, out, lonlat.length / 2);
+                sSink += out[0];
+            }
+        };
+        Runnable singleAzInverse = new Runnable() {
+            public void run() {
+                for (int i = 0; i < xy.length; i += 2) {
+                    sSink += proj.projToLonLat(xy[i], xy[i + 1])[0];
+                }
+            }
+        };
+        Runnable bulkAzInverse = new Runnable() {
+            public void run() {
+                proj.inverseProjectInPlace(xy, out, xy.length / 2);
+                sSink += out[0];
+            }
+        };
+
+        // Transverse Mercator in UTM zone 33, radians to metres
+        TransverseMercatorProjection.setTransverseMercatorParameters(0.0, Math
+                .toRadians(15.0), 500000.0, 0.0, 0.9996);
+        final double[] radians = new double[2 * points];
+        for (int i = 0; i < radians.length; i++) {
+            radians[i] = Math.toRadians(lonlat[i]);
+        }
+        final double[] en = new double[2 * points];
+        TransverseMercatorProjection.convertGeodeticToTransverseMercator(radians,
+                                                                         en,
+                                                                         points);
+        for (int i = 0; i < 2 * points; i += 2) {
+            double[] p = TransverseMercatorProjection
+                    .convertGeodeticToTransverseMercator(radians[i],
+                                                         radians[i + 1]);
+            single[i] = p[0];
+            single[i + 1] = p[1];
+        }
+        check("Transverse Mercator projections", single, en);
+        TransverseMercatorProjection.convertTransverseMercatorToGeodetic(en,
+                                                                         out,
+                                                                         points);
+        for (int i = 0; i < 2 * points; i += 2) {
+            double[] p = TransverseMercatorProjection
+                    .convertTransverseMercatorToGeodetic(en[i], en[i + 1]);
+            single[i] = p[0];
+            single[i + 1] = p[1];
+        }
+        check("Transverse Mercator inverse projections", single, out);
+
+        Runnable singleTm = new Runnable() {
+            public void run() {
+                for (int i = 0; i < radians.length; i += 2) {
+                    sSink += TransverseMercatorProjection
+                            .convertGeodeticToTransverseMercator(radians[i],
+                                                                 radians[i + 1])[0];
+                }
+            }
+        };
+        Runnable bulkTm = new Runnable() {
+            public void run() {
+                TransverseMercatorProjection
+                        .convertGeodeticToTransverseMercator(radians, out,
+                                                             radians.length / 2);
+                sSink += out[0];
+            }
+        };
+        Runnable singleTmInverse = new Runnable() {
+            public void run() {
+                for (int i = 0; i < en.length; i += 2) {
+                    sSink += TransverseMercatorProjection
+                            .convertTransverseMercatorToGeodetic(en[i],
+                                                                 en[i + 1])[0];
+                }
+            }
+        };
+        Runnable bulkTmInverse = new Runnable() {
+            public void run() {
+                TransverseMercatorProjection
+                        .convertTransverseMercatorToGeodetic(en, out,
+                                                             en.length / 2);
+                sSink += out[0];
+            }
+        };
+
+        System.out.println(points + " points, AzEqAreaProj: single "
+                + time(singleAz, runs) + " ms, bulk " + time(bulkAz, runs)
+                + " ms");
+        System.out.println(points + " points, AzEqAreaProj inverse: single "
+                + time(singleAzInverse, runs) + " ms, bulk "
+                + time(bulkAzInverse, runs) + " ms");
+        System.out.println(points + " points, Transverse Mercator: single "
+                + time(singleTm, runs) + " ms, bulk " + time(bulkTm, runs)
+                + " ms");
+        System.out.println(points
+                + " points, Transverse Mercator inverse: single "
+                + time(singleTmInverse, runs) + " ms, bulk "
+                + time(bulkTmInverse, runs) + " ms");
+        if (sSink == 0) {
+            System.out.println(sSink);
+        }
+    }
+}
@@ -183,6 +183,47 @@ class TransverseMercatorProjection {
      */
     public static double[] convertGeodeticToTransverseMercator(
             double longitude, double latitude) {
+        double[] output = new double[2];
+        if (!geodeticToTransverseMercator(longitude, latitude,
+                                          SPHTMD(tranMerc_origin_lat), output, 0)) {
+            return null;
+        }
+        return output;
+    }
+
+    /**
+     * Converts geodetic coordinates to Transverse Mercator projection coordinates like convertGeodeticToTransverseMercator for each
+     * point, without allocating and with the true meridional distance of the origin computed once. Points that can not be converted get
+     * NaN coordinates.
+     * 
+     * @param lonlat [longitude1, latitude1, longitude2, ...] in radians.
+     * @param outEN the array receiving [easting1, northing1, easting2, ...] in meters, which may be lonlat itself.
+     * @param count the number of points.
+     * @return true if all points were converted.
+     */
+    public static boolean convertGeodeticToTransverseMercator(double[] lonlat,
+            double[] outEN, int count) {
+        double tmdo = SPHTMD(tranMerc_origin_lat);
+        boolean res = true;
+        for (int i = 0; i < 2 * count; i += 2) {
+            if (!geodeticToTransverseMercator(lonlat[i], lonlat[i + 1], tmdo,
+                                              outEN, i)) {
+                outEN[i] = outEN[i + 1] = Double.NaN;
+                res = false;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Converts a point to Transverse Mercator projection coordinates.
+     * 
+     * @param tmdo the true meridional distance of the latitude of origin.
+     * @param out the array receiving easting and northing at offset.
+     * @return true if the point was converted.
+     */
+    private static boolean geodeticToTransverseMercator(double longitude,
+            double latitude, double tmdo, double[] out, int offset) {
         double temp_origin;
         double temp_lon;
 
@@ -190,7 +231,7 @@ class TransverseMercatorProjection {
         if (latitude < -MAX_LAT || latitude > MAX_LAT) {
             ProjectionErrorHandler
                     .handleError(ProjectionErrorHandler.LAT_ERROR);
-            return null;
+            return false;
         }
         if (longitude > Math.PI) {
             longitude -= (2 * Math.PI);
@@ -215,7 +256,7 @@ class TransverseMercatorProjection {
                 // System.out.println("Probably here");
                 ProjectionErrorHandler
                         .handleError(ProjectionErrorHandler.LON_ERROR);
-                return null;
+                return false;
             }
         }
         double dlam = longitude - tranMerc_origin_lon; /* Delta Longitude */
@@ -260,9 +301,6 @@ class TransverseMercatorProjection {
         // true Meridianal Distances
         double tmd = SPHTMD(latitude);
 
-        // origin
-        double tmdo = SPHTMD(tranMerc_origin_lat);
-
         // northing
         double t1 = (tmd - tmdo) * tranMerc_scale_factor;
         double t2 = sn * s * c * tranMerc_scale_factor / 2.e0;
@@ -303,8 +341,9 @@ class TransverseMercatorProjection {
                 + Math.pow(dlam, 7.e0) * t9;
 
         //
-        double[] output = { easting, northing };
-        return output;
+        out[offset] = easting;
+        out[offset + 1] = northing;
+        return true;
     }
 
     /*
@@ -316,6 +355,47 @@ class TransverseMercatorProjection {
      */
     public static double[] convertTransverseMercatorToGeodetic(double easting,
             double northing) {
+        double[] output = new double[2];
+        if (!transverseMercatorToGeodetic(easting, northing,
+                                          SPHTMD(tranMerc_origin_lat), output, 0)) {
+            return null;
+        }
+        return output;
+    }
+
+    /**
+     * Converts Transverse Mercator projection coordinates to geodetic coordinates like convertTransverseMercatorToGeodetic for each
+     * point, without allocating and with the true meridional distance of the origin computed once. Points that can not be converted get
+     * NaN coordinates.
+     * 
+     * @param en [easting1, northing1, easting2, ...] in meters.
+     * @param outLonLat the array receiving [longitude1, latitude1, longitude2, ...] in radians, which may be en itself.
+     * @param count the number of points.
+     * @return true if all points were converted.
+     */
+    public static boolean convertTransverseMercatorToGeodetic(double[] en,
+            double[] outLonLat, int count) {
+        double tmdo = SPHTMD(tranMerc_origin_lat);
+        boolean res = true;
+        for (int i = 0; i < 2 * count; i += 2) {
+            if (!transverseMercatorToGeodetic(en[i], en[i + 1], tmdo,
+                                              outLonLat, i)) {
+                outLonLat[i] = outLonLat[i + 1] = Double.NaN;
+                res = false;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Converts a point to geodetic coordinates.
+     * 
+     * @param tmdo the true meridional distance of the latitude of origin.
+     * @param out the array receiving longitude and latitude at offset.
+     * @return true if the point was converted.
+     */
+    private static boolean transverseMercatorToGeodetic(double easting,
+            double northing, double tmdo, double[] out, int offset) {
 
         // System.out.println("easting = "+easting+", northing = "+northing);
 
@@ -324,19 +404,16 @@ class TransverseMercatorProjection {
                 || easting > (tranMerc_false_easting + ProjectionConstants.deltaEasting)) {
             ProjectionErrorHandler
                     .handleError(ProjectionErrorHandler.EASTING_ERROR);
-            return null;
+            return false;
         }
         // Northing out of range
         if (northing < (tranMerc_false_northing - ProjectionConstants.deltaNorthing)
                 || northing > (tranMerc_false_northing + ProjectionConstants.deltaNorthing)) {
             ProjectionErrorHandler
                     .handleError(ProjectionErrorHandler.NORTHING_ERROR);
-            return null;
+            return false;
         }
 
-        // True Meridional Distances for latitude of origin
-        double tmdo = SPHTMD(tranMerc_origin_lat);
-
         // Origin
         double tmd = tmdo + (northing - tranMerc_false_northing)
                 / tranMerc_scale_factor;
@@ -447,8 +524,9 @@ class TransverseMercatorProjection {
                     .handleWarning(ProjectionErrorHandler.LON_WARNING);
         }
         //
-        double[] output = { longitude, latitude };
-        return output;
+        out[offset] = longitude;
+        out[offset + 1] = latitude;
+        return true;
     }
 
 }
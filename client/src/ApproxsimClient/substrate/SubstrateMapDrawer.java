@@ -229,60 +229,32 @@ public class SubstrateMapDrawer extends BasicMapDrawer {
      * @param gld the drawable.
      */
     protected void updateRenderSelection(GLAutoDrawable gld) {
-        GL2 gl = (GL2) gld.getGL();
-
-        IntBuffer renderSelectionBuffer;
-        int renderSelectionBufferAllocationSize = 2048;
-
-        int hits = -1;
-
-        do {
-            renderSelectionBuffer = Buffers
-                    .newDirectIntBuffer(renderSelectionBufferAllocationSize);
-            gl.glSelectBuffer(renderSelectionBuffer.capacity(),
-                              renderSelectionBuffer);
-
-            // enable render selection
-            gl.glRenderMode(GL2.GL_SELECT);
-
-            // init names
-            gl.glInitNames();
-
-            // set the selection area
-            gl.glMatrixMode(GL2.GL_PROJECTION);
-            gl.glPushMatrix();
-            gl.glLoadIdentity();
-            glu.gluOrtho2D(renderSelectionX - renderSelectionDeltaX / 2,
-                           renderSelectionX + renderSelectionDeltaX / 2,
-                           renderSelectionY - renderSelectionDeltaY / 2,
-                           renderSelectionY + renderSelectionDeltaY / 2);
-
-            // draw shapes
-            updateDrawnMapDrawablesList();
-            gl.glCallLists(drawnMapDrawablesListBuf.capacity(), GL2ES2.GL_INT,
-                           drawnMapDrawablesListBuf);
-
-            // draw the actual shape
-            if (shapeMaker != null && shapeMaker.getShapeAdapter() != null) {
-                gl.glCallList(shapeMaker.getShapeAdapter().getDisplayList());
-            }
-
-            // restore view
-            gl.glMatrixMode(GL2.GL_PROJECTION);
-            gl.glPopMatrix();
-            gl.glFlush();
-
-            // end render selection mode
-            hits = ((GL2) gld.getGL()).glRenderMode(GL2.GL_RENDER);
+        updateDrawnMapDrawablesList();
+        updateRenderSelection();
+    }
 
-            if (hits < 0) {
-                // too small selectionBuffer, try double size
-                renderSelectionBufferAllocationSize = renderSelectionBufferAllocationSize * 2;
+    /**
+     * Updates the render selection array by picking what is drawn in the selection area from the pick index, the actual shape last,
+     * without drawing.
+     */
+    protected void updateRenderSelection() {
+        double xmin = renderSelectionX - renderSelectionDeltaX / 2;
+        double xmax = renderSelectionX + renderSelectionDeltaX / 2;
+        double ymin = renderSelectionY - renderSelectionDeltaY / 2;
+        double ymax = renderSelectionY + renderSelectionDeltaY / 2;
+        Vector<int[]> hits = pickDrawnMapDrawables(xmin, ymin, xmax, ymax);
+        // the actual shape
+        if (shapeMaker != null && shapeMaker.getShapeAdapter() != null) {
+            int[] names = shapeMaker.getShapeAdapter().pick(getProjection(),
+                                                            getProjectedViewWidth(),
+                                                            xmin, ymin, xmax,
+                                                            ymax);
+            if (names != null) {
+                hits.add(names);
             }
-        } while (hits < 0);
-
+        }
         this.latestRenderSelection = new RenderSelection(hits,
-                renderSelectionBuffer, renderSelectionNames);
+                renderSelectionNames);
     }
 
     /**
@@ -304,6 +276,7 @@ public class SubstrateMapDrawer extends BasicMapDrawer {
 
         this.renderSelectionMouseX = x;
         this.renderSelectionMouseY = y;
+        updateRenderSelection();
     }
 
     /**
@@ -1151,6 +1124,7 @@ public class SubstrateMapDrawer extends BasicMapDrawer {
                     .newDirectIntBuffer(drawableDisplayLists.length);
             drawnMapDrawablesListBuf.put(drawableDisplayLists);
             drawnMapDrawablesListBuf.rewind();
+            updatePickIndex(drawableList);
 
             // update the list of display lists for lines and areas for the shapes
             int[] shapeAreasDisplayLists = new int[shapeList.size()];
@@ -9,18 +9,14 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 import org.w3c.dom.Node;
-import org.w3c.dom.DOMError;
-import org.w3c.dom.DOMErrorHandler;
 import org.w3c.dom.ls.DOMImplementationLS;
 import org.w3c.dom.ls.LSInput;
 import org.w3c.dom.ls.LSParser;
 import org.w3c.dom.ls.LSException;
-import org.w3c.dom.ls.LSResourceResolver;
 import org.w3c.dom.bootstrap.DOMImplementationRegistry;
 
 import ApproxsimClient.ProcessVariableDescription;
 import ApproxsimClient.ApproxsimDialog;
-import ApproxsimClient.LSJarXSDResolver;
 import ApproxsimClient.object.ApproxsimObject;
 import ApproxsimClient.object.Shape;
 import ApproxsimClient.object.Circle;
@@ -28,6 +24,8 @@ import ApproxsimClient.object.Polygon;
 import ApproxsimClient.object.ApproxsimObjectFactory;
 import ApproxsimClient.object.primitive.Reference;
 import ApproxsimClient.object.type.TypeFactory;
+import ApproxsimClient.communication.GrammarCache;
+import ApproxsimClient.communication.ParserPool;
 import ApproxsimClient.communication.XMLHandler;
 
 /**
@@ -58,30 +56,7 @@ public class SubstrateXMLReader {
      * Creates a parser for SubstrateEditor.
      */
     public static LSParser createParser() {
-        LSParser parser = domImplementationLS
-                .createLSParser(DOMImplementationLS.MODE_SYNCHRONOUS,
-                                "http://www.w3.org/2001/XMLSchema");
-        parser.getDomConfig().setParameter("error-handler",
-                                           new DOMErrorHandler() {
-                                               /** This method is called on the error handler when an error occurs. */
-                                               public boolean handleError(
-                                                       DOMError error) {
-                                                   throw new LSException(
-                                                           LSException.PARSE_ERR,
-                                                           error.getMessage());
-                                               }
-                                           });
-        parser.getDomConfig().setParameter("schema-location",
-                                           SUBSTRATE_PROTOCOL);
-        parser.getDomConfig().setParameter("validate", Boolean.TRUE);
-        parser.getDomConfig().setParameter("namespaces", Boolean.TRUE);
-
-        LSResourceResolver prevResolver = (LSResourceResolver) parser
-                .getDomConfig().getParameter("resource-resolver");
-        parser.getDomConfig().setParameter("resource-resolver",
-                                           new LSJarXSDResolver(prevResolver));
-
-        return parser;
+        return GrammarCache.createLSParser(SUBSTRATE_PROTOCOL);
     }
 
     /**
@@ -94,7 +69,7 @@ public class SubstrateXMLReader {
             LSInput parserInput = domImplementationLS.createLSInput();
             parserInput.setByteStream(new BufferedInputStream(
                     new FileInputStream(filename)));
-            return createParser().parse(parserInput);
+            return ParserPool.getPool(SUBSTRATE_PROTOCOL).parse(parserInput);
         } catch (FileNotFoundException e) {
             ApproxsimDialog.showErrorMessageDialog(null, "File '" + filename
                     + "' not found.", "File Not Found");
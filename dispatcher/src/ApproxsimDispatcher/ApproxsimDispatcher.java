@@ -6,17 +6,25 @@
 
 package ApproxsimDispatcher;
 
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.Vector;
 import java.util.Hashtable;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintWriter;
 
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.nio.ByteBuffer;
 
 import java.net.InetSocketAddress;
 
@@ -47,6 +55,67 @@ public class ApproxsimDispatcher implements Runnable
      */
     Vector servers;
 
+    /**
+     * The monitors of the servers, only accessed by the selector
+     * thread.
+     */
+    Vector monitors = new Vector();
+
+    /**
+     * Monitors of newly registered servers, to be started by the
+     * selector thread.
+     */
+    Vector newMonitors = new Vector();
+
+    /**
+     * The selector all channels of the dispatcher are registered
+     * with, or null until the dispatcher is started.
+     */
+    Selector selector;
+
+    /**
+     * Incremented whenever a server is added to or removed from the
+     * pool, or the status of any server changes. It never decreases,
+     * so a list reply built at one value is current as long as the
+     * counter keeps that value.
+     */
+    static final AtomicLong statusChanges = new AtomicLong();
+
+    /**
+     * The serialized reply to list requests, or null if not yet
+     * built.
+     */
+    byte[] listReply;
+
+    /**
+     * The status version listReply was built from.
+     */
+    long listReplyVersion = -1;
+
+    /**
+     * The longest message, in bytes, read from a requestor or from a
+     * server replying to a status request. Both are a few kilobytes
+     * at most, so anything longer is taken as a bad header.
+     */
+    static final int MAX_MESSAGE_LENGTH = 1 << 20;
+
+    /**
+     * The longest lease handed out, in milliseconds.
+     */
+    public static long MAX_LEASE_DURATION = 600000;
+
+    /**
+     * The id of the next lease. Starts at the time of startup so that
+     * ids are not reused by a restarted dispatcher.
+     */
+    long nextLeaseId = System.currentTimeMillis();
+
+    /**
+     * The file the registered servers are saved to and loaded from,
+     * or null if the registry should not be persistent.
+     */
+    File registryFile;
+
     /**
      * Creates a new ApproxsimDispatcher, listening on a specified
      * port.
@@ -85,12 +154,21 @@ public class ApproxsimDispatcher implements Runnable
                 ApproxsimServer oldServer = (ApproxsimServer) getServers().get(i);
                 log("Adding " + server.toString() + " to pool.");
                 getServers().setElementAt(server, i);
-                // FIXME: This is a ugly way of stopping the monitor thread...
+                // The monitor of the old server stops when it finds
+                // it marked as bad.
                 oldServer.markAsBad();
             } else {
                 log("Adding " + server.toString() + " to pool.");
                 getServers().add(server);
             }
+            statusChanged();
+            saveRegistry();
+        }
+        synchronized(newMonitors) {
+            newMonitors.add(new ServerMonitor(server));
+        }
+        if (selector != null) {
+            selector.wakeup();
         }
     }
 
@@ -104,67 +182,342 @@ public class ApproxsimDispatcher implements Runnable
         log("Evicting " + server.toString() + " from pool.");
         synchronized(servers) {
             getServers().remove(server);
+            statusChanged();
+            saveRegistry();
+        }
+    }
+
+    /**
+     * Removes a server if it is still in the pool, i.e. has not been
+     * replaced by a newer registration of the same host and port.
+     *
+     * @param server the server to remove.
+     */
+    void evictServer(ApproxsimServer server)
+    {
+        synchronized(servers) {
+            for (int i = 0; i < getServers().size(); i++) {
+                if (getServers().get(i) == server) {
+                    removeServer(server);
+                    return;
+                }
+            }
         }
     }
         
     /**
-     * Starts this dispatcher.
+     * Starts this dispatcher. All connections, both requests to the
+     * dispatcher and status requests to the servers, are handled by a
+     * single thread waiting on a selector.
      */
     public void run()
     {
-        // Create thread that removes bad nodes from the servers vector.
-        Thread evictorThread = new Thread("EvictorThread")
+        try {
+            selector = Selector.open();
+            ServerSocketChannel serverSocketChannel = 
+                ServerSocketChannel.open();
+            InetSocketAddress address = new InetSocketAddress(getPort());
+            serverSocketChannel.socket().bind(address);
+            serverSocketChannel.configureBlocking(false);
+            serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            log("Unable to bind to port: " + e.getMessage());
+            System.exit(1);
+        }
+
+        while(true) {
+            long now = System.currentTimeMillis();
+            long wakeup = serviceMonitors(now);
+            try {
+                selector.select(Math.max(1, wakeup - now));
+            } catch (IOException e) {
+                log("Error selecting: " + e.getMessage());
+            }
+
+            for (Iterator i = selector.selectedKeys().iterator(); i.hasNext();) {
+                SelectionKey key = (SelectionKey) i.next();
+                i.remove();
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept((ServerSocketChannel) key.channel());
+                    } else {
+                        ((ChannelHandler) key.attachment()).handle(key);
+                    }
+                } catch (RuntimeException e) {
+                    // Give up this connection only, never the loop
+                    // serving all the others.
+                    e.printStackTrace();
+                    log("Error handling connection: " + e);
+                    if (!(key.channel() instanceof ServerSocketChannel)) {
+                        key.cancel();
+                        try {
+                            key.channel().close();
+                        } catch (IOException ex) {
+                            // Don't care, the channel is abandoned anyway.
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Accepts a connection and registers a handler for it.
+     *
+     * @param serverSocketChannel the channel to accept from.
+     */
+    void accept(ServerSocketChannel serverSocketChannel)
+    {
+        try {
+            SocketChannel socketChannel = serverSocketChannel.accept();
+            if (socketChannel != null) {
+                socketChannel.configureBlocking(false);
+                socketChannel.register(selector, SelectionKey.OP_READ,
+                                       new ConnectionHandler(socketChannel, this));
+            }
+        } catch (IOException e) {
+            log("Error accepting connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts the monitors of newly registered servers, evicts bad
+     * servers from the pool, times out status requests and starts the
+     * status requests that are due.
+     *
+     * @param now the current time in milliseconds.
+     *
+     * @return the time at which this should be called next.
+     */
+    long serviceMonitors(long now)
+    {
+        synchronized(newMonitors) {
+            monitors.addAll(newMonitors);
+            newMonitors.clear();
+        }
+
+        long wakeup = now + 1000;
+        for (Iterator i = monitors.iterator(); i.hasNext();) {
+            ServerMonitor monitor = (ServerMonitor) i.next();
+            ApproxsimServer server = monitor.getServer();
+            if (server.isLeased()) {
+                if (now >= server.getLeaseExpiry()) {
+                    log("Lease of " + server.toString() + " expired.");
+                    server.release();
+                } else {
+                    wakeup = Math.min(wakeup, server.getLeaseExpiry());
+                }
+            }
+            monitor.checkTimeout(now);
+            if (monitor.getServer().isBad()) {
+                monitor.close();
+                i.remove();
+                evictServer(monitor.getServer());
+                continue;
+            }
+            if (!monitor.isPolling() && now >= monitor.getNextPoll()) {
+                monitor.poll(selector, now);
+            }
+            wakeup = Math.min(wakeup, (monitor.isPolling() ? monitor.getDeadline() 
+                                       : monitor.getNextPoll()));
+        }
+        return wakeup;
+    }
+
+    /**
+     * Leases up to count servers, picking the least loaded leasable
+     * servers first and among equally loaded the ones least recently
+     * leased. Since all requests are handled by the selector thread,
+     * a server is never handed out to two clients at once.
+     *
+     * @param count the number of servers wanted.
+     * @param duration the duration of the leases in milliseconds,
+     * limited to MAX_LEASE_DURATION.
+     *
+     * @return the leased servers.
+     */
+    public Vector leaseServers(int count, long duration)
+    {
+        long now = System.currentTimeMillis();
+        duration = Math.max(0, Math.min(duration, MAX_LEASE_DURATION));
+        Vector candidates = new Vector();
+        synchronized(servers) {
+            for (Enumeration e = getServers().elements(); e.hasMoreElements();) {
+                ApproxsimServer server = (ApproxsimServer) e.nextElement();
+                if (server.isLeasable()) {
+                    candidates.add(server);
+                }
+            }
+        }
+        Collections.sort(candidates, new Comparator() 
             {
-                /** 
-                 * Removes bad servers then sleeps then restarts.
-                 */
-                public void run() 
+                public int compare(Object o1, Object o2)
                 {
-                    try {
-                        while(true) {
-                            Vector bad = new Vector();
-                            for (Enumeration e = getServers().elements(); 
-                                 e.hasMoreElements();) {
-                                ApproxsimServer server = (ApproxsimServer) e.nextElement();
-                                if (server.isBad()) {
-                                    bad.add(server);
-                                }
-                            }
-
-                            for (Enumeration e = bad.elements(); 
-                                 e.hasMoreElements();) {
-                                ApproxsimServer server = (ApproxsimServer) e.nextElement();
-                                removeServer(server);
-                            }
-                            
-                            sleep(1000);
-                        }
-                    } catch (InterruptedException e) {
-                        log("evictorThread interupted. No more servers " + 
-                            "will be evicted from pool\n");
+                    ApproxsimServer s1 = (ApproxsimServer) o1;
+                    ApproxsimServer s2 = (ApproxsimServer) o2;
+                    if (s1.getLoad() != s2.getLoad()) {
+                        return (s1.getLoad() < s2.getLoad() ? -1 : 1);
                     }
+                    if (s1.getLastLeased() != s2.getLastLeased()) {
+                        return (s1.getLastLeased() < s2.getLastLeased() ? -1 : 1);
+                    }
+                    return 0;
+                }
+            });
+
+        Vector res = new Vector();
+        for (int i = 0; i < candidates.size() && res.size() < count; i++) {
+            ApproxsimServer server = (ApproxsimServer) candidates.get(i);
+            server.lease(nextLeaseId++, now, duration);
+            res.add(server);
+        }
+        if (selector != null) {
+            // Let the loop pick up the new expiry times.
+            selector.wakeup();
+        }
+        return res;
+    }
+
+    /**
+     * Ends a lease before it expires.
+     *
+     * @param id the id of the lease.
+     */
+    public void releaseLease(long id)
+    {
+        synchronized(servers) {
+            for (Enumeration e = getServers().elements(); e.hasMoreElements();) {
+                ApproxsimServer server = (ApproxsimServer) e.nextElement();
+                if (server.isLeased() && server.getLeaseId() == id) {
+                    server.release();
+                    return;
                 }
+            }
+        }
+    }
+
+    /**
+     * Records that the reply to a list request may have changed.
+     */
+    static void statusChanged()
+    {
+        statusChanges.incrementAndGet();
+    }
 
-            };
-        evictorThread.start();
+    /**
+     * Returns a number that changes whenever the reply to a list
+     * request would change.
+     */
+    long getStatusVersion()
+    {
+        return statusChanges.get();
+    }
 
+    /**
+     * Returns the serialized reply to list requests. The reply is a
+     * snapshot that is only rebuilt when the pool or the status of a
+     * server has changed.
+     */
+    synchronized byte[] getListReply()
+    {
+        long version = getStatusVersion();
+        if (listReply == null || version != listReplyVersion) {
+            Document reply = ConnectionHandler.createReplyDocument();
+            if (reply == null) {
+                return null;
+            }
+            reply.getDocumentElement().setAttribute("xsi:type", "ListReply");
+            addServersToElement(reply.getDocumentElement());
+            listReply = ConnectionHandler.serializeReply(reply);
+            listReplyVersion = version;
+        }
+        return listReply;
+    }
+
+    /**
+     * Sets the file the registered servers are saved to whenever the
+     * pool changes.
+     *
+     * @param file the file, or null if the registry should not be
+     * persistent.
+     */
+    public void setRegistryFile(File file)
+    {
+        this.registryFile = file;
+    }
+
+    /**
+     * Returns the file the registered servers are saved to, or null.
+     */
+    public File getRegistryFile()
+    {
+        return this.registryFile;
+    }
+
+    /**
+     * Registers the servers saved in the registry file, if there is
+     * one. Each line of the file holds the host and port of a server.
+     */
+    public void loadRegistry()
+    {
+        if (getRegistryFile() == null || !getRegistryFile().exists()) {
+            return;
+        }
         try {
-            ServerSocketChannel serverSocketChannel = 
-                ServerSocketChannel.open();
-            InetSocketAddress address = new InetSocketAddress(getPort());
-            serverSocketChannel.socket().bind(address);
-        
-            while(true) {
-                try {
-                    SocketChannel socketChannel = serverSocketChannel.accept();
-                    (new Thread(new ConnectionHandler(socketChannel, this), "Handler for " + address.toString())).start();
-                } catch (IOException e) {
-                    log("Error accepting connection: " + e.getMessage());
+            BufferedReader reader = new BufferedReader(new FileReader(getRegistryFile()));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.trim().split("\\s+");
+                    if (fields.length != 2) {
+                        continue;
+                    }
+                    try {
+                        registerServer(new ApproxsimServer(fields[0], 
+                                                           Integer.parseInt(fields[1])));
+                    } catch (NumberFormatException e) {
+                        log("Bad registry entry: \"" + line + "\"");
+                    }
                 }
+            } finally {
+                reader.close();
             }
         } catch (IOException e) {
-            log("Unable to bind to port: " + e.getMessage());
-            System.exit(1);
+            log("Unable to read registry " + getRegistryFile() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the servers in the pool to the registry file, if there is
+     * one.
+     */
+    void saveRegistry()
+    {
+        if (getRegistryFile() == null) {
+            return;
+        }
+        File tmp = new File(getRegistryFile().getPath() + ".tmp");
+        try {
+            PrintWriter writer = new PrintWriter(new FileWriter(tmp));
+            synchronized(servers) {
+                for (Enumeration e = getServers().elements(); e.hasMoreElements();) {
+                    ApproxsimServer server = (ApproxsimServer) e.nextElement();
+                    writer.println(server.getHost() + " " + server.getPort());
+                }
+            }
+            writer.close();
+            if (writer.checkError()) {
+                throw new IOException("Error writing " + tmp);
+            }
+            getRegistryFile().delete();
+            if (!tmp.renameTo(getRegistryFile())) {
+                throw new IOException("Unable to rename " + tmp);
+            }
+        } catch (IOException e) {
+            log("Unable to save registry " + getRegistryFile() + ": " + e.getMessage());
         }
     }
 
@@ -248,15 +601,22 @@ public class ApproxsimDispatcher implements Runnable
             }
         }
 
+        String registry = (String) options.remove("-r");
+
         // If unprocessed args remain, print usage string.
         if (options.size() != 0) {
             System.err.println("Unregocnised arguments, usage:");
             System.err.println(" -p portnr");
+            System.err.println(" -r registryfile");
 
             System.exit(1);
         }
 
         ApproxsimDispatcher dispatcher = new ApproxsimDispatcher(port);
+        if (registry != null && registry.length() > 0) {
+            dispatcher.setRegistryFile(new File(registry));
+            dispatcher.loadRegistry();
+        }
         dispatcher.run();
     }
 }
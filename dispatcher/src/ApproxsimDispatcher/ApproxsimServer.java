@@ -45,10 +45,32 @@ public class ApproxsimServer
     /**
      * Whether this Server should be used no more. This is a
      * nonrevocable state. After setting this to true, the monitoring
-     * thread will stop.
+     * of the server will stop.
      */
     public boolean bad = false;
 
+    /**
+     * Incremented whenever the status reported for this server in
+     * list replies changes.
+     */
+    int statusVersion = 0;
+
+    /**
+     * The id of the lease currently held on this server, or 0 if
+     * none.
+     */
+    long leaseId = 0;
+
+    /**
+     * The time at which the current lease expires, in milliseconds.
+     */
+    long leaseExpiry = 0;
+
+    /**
+     * The time at which this server was last leased, in milliseconds.
+     */
+    long lastLeased = 0;
+
     /**
      * The list of refererences of simulation running on this host.
      */
@@ -69,8 +91,6 @@ public class ApproxsimServer
     {
         this.host = host;
         this.port = port;
-        Thread monitorThread = new Thread(new ServerMonitor(this), "ServerMonitor: " + toString());
-        monitorThread.start();
         setSimulations(new Vector());
     }
 
@@ -128,7 +148,11 @@ public class ApproxsimServer
      */
     protected void setSimulations(Vector v)
     {
-        this.simulations = v;
+        if (!v.equals(this.simulations)) {
+            this.simulations = v;
+            this.statusVersion++;
+            ApproxsimDispatcher.statusChanged();
+        }
     }
 
     /**
@@ -170,7 +194,11 @@ public class ApproxsimServer
      */
     public void setPending(boolean flag)
     {
-        this.pending = flag;
+        if (this.pending != flag) {
+            this.pending = flag;
+            this.statusVersion++;
+            ApproxsimDispatcher.statusChanged();
+        }
     }
 
     /**
@@ -180,7 +208,11 @@ public class ApproxsimServer
      */
     public void setGood(boolean flag)
     {
-        this.good = flag;
+        if (this.good != flag) {
+            this.good = flag;
+            this.statusVersion++;
+            ApproxsimDispatcher.statusChanged();
+        }
     }
 
     /**
@@ -190,7 +222,101 @@ public class ApproxsimServer
      */
     public void setHasActiveClient(boolean flag)
     {
-        this.hasActiveClient = flag;
+        if (this.hasActiveClient != flag) {
+            this.hasActiveClient = flag;
+            this.statusVersion++;
+            ApproxsimDispatcher.statusChanged();
+        }
+    }
+
+    /**
+     * Returns true if a client holds a lease on this server.
+     */
+    public boolean isLeased()
+    {
+        return this.leaseId != 0;
+    }
+
+    /**
+     * Returns the id of the lease held on this server, or 0 if none.
+     */
+    public long getLeaseId()
+    {
+        return this.leaseId;
+    }
+
+    /**
+     * Returns the time at which the current lease expires, in
+     * milliseconds.
+     */
+    public long getLeaseExpiry()
+    {
+        return this.leaseExpiry;
+    }
+
+    /**
+     * Returns the time at which this server was last leased, in
+     * milliseconds.
+     */
+    public long getLastLeased()
+    {
+        return this.lastLeased;
+    }
+
+    /**
+     * Leases this server.
+     *
+     * @param id the id of the lease.
+     * @param now the current time in milliseconds.
+     * @param duration the duration of the lease in milliseconds.
+     */
+    public void lease(long id, long now, long duration)
+    {
+        this.leaseId = id;
+        this.leaseExpiry = now + duration;
+        this.lastLeased = now;
+        this.statusVersion++;
+        ApproxsimDispatcher.statusChanged();
+    }
+
+    /**
+     * Ends the current lease, if any.
+     */
+    public void release()
+    {
+        if (isLeased()) {
+            this.leaseId = 0;
+            this.statusVersion++;
+            ApproxsimDispatcher.statusChanged();
+        }
+    }
+
+    /**
+     * Returns true if this server can be leased, i.e. it is known to
+     * be up, has no active client and is not already leased.
+     */
+    public boolean isLeasable()
+    {
+        return isGood() && !isPending() && !isBad() && !hasActiveClient() 
+            && !isLeased();
+    }
+
+    /**
+     * Returns the load of this server as last reported by the server,
+     * i.e. the number of simulations running on it.
+     */
+    public int getLoad()
+    {
+        return getSimulations().size();
+    }
+
+    /**
+     * Returns a number that changes whenever the status reported for
+     * this server in list replies changes.
+     */
+    public int getStatusVersion()
+    {
+        return this.statusVersion;
     }
 
     /**
@@ -218,7 +344,9 @@ public class ApproxsimServer
         element.appendChild(portElement);
 
         Element hasActiveClientElement = document.createElement("hasActiveClient");
-        hasActiveClientElement.appendChild(document.createTextNode(Boolean.toString(hasActiveClient())));
+        // A leased server is reported as having an active client, so
+        // that clients picking from the list leave it alone.
+        hasActiveClientElement.appendChild(document.createTextNode(Boolean.toString(hasActiveClient() || isLeased())));
         element.appendChild(hasActiveClientElement);
 
         Element isPendingElement = document.createElement("isPending");
@@ -0,0 +1,25 @@
+/*
+ * @(#)ChannelHandler.java
+ */
+
+package ApproxsimDispatcher;
+
+import java.nio.channels.SelectionKey;
+
+/**
+ * Implemented by the objects attached to the channels registered with
+ * the selector of the dispatcher.
+ *
+ * @version 1
+ */
+interface ChannelHandler
+{
+    /**
+     * Called by the selector loop of the dispatcher when the channel
+     * of the provided key is ready for the operations of interest.
+     * Must not block.
+     *
+     * @param key the selection key of the channel.
+     */
+    void handle(SelectionKey key);
+}
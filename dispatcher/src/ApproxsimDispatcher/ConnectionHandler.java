@@ -7,42 +7,43 @@
 package ApproxsimDispatcher;
 
 import java.util.Enumeration;
-import java.util.Vector;
 import java.util.Hashtable;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Vector;
 
 import java.io.IOException;
 import java.io.ByteArrayOutputStream;
 import java.io.ByteArrayInputStream;
-import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.nio.ByteBuffer;
-import java.net.InetSocketAddress;
 
 import org.w3c.dom.bootstrap.DOMImplementationRegistry;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 import org.w3c.dom.ls.DOMImplementationLS;
 import org.w3c.dom.ls.LSParser;
 import org.w3c.dom.ls.LSInput;
 import org.w3c.dom.ls.LSOutput;
+import org.w3c.dom.ls.LSSerializer;
 import org.w3c.dom.ls.LSParserFilter;
 import org.w3c.dom.traversal.NodeFilter;
-import org.w3c.dom.DOMError;
-import org.w3c.dom.DOMErrorHandler;
-import org.w3c.dom.ls.LSResourceResolver;
 import org.w3c.dom.ls.LSException;
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
 /**
- * A class used to handle connections made to the dispatcher.
+ * A class used to handle connections made to the dispatcher. The
+ * handler is driven by the selector loop of the dispatcher: it reads
+ * the request as the channel becomes readable, handles it and writes
+ * the reply as the channel becomes writable, then closes the
+ * connection.
  *
  * @version 1, $Date: 2005/10/07 12:57:21 $
  * @author  Daniel Ahlin
 */        
-public class ConnectionHandler implements Runnable
+public class ConnectionHandler implements ChannelHandler
 {
     /**
      * The socket making up the connection
@@ -69,6 +70,38 @@ public class ConnectionHandler implements Runnable
      */
     private static DOMImplementationLS domImplementationLS = createDomImplementationLS();
 
+    /**
+     * The parser for requests, shared by all handlers, which all run
+     * on the selector thread of the dispatcher.
+     */
+    private static LSParser parser;
+
+    /**
+     * The serializer for replies.
+     */
+    private static LSSerializer serializer;
+
+    /**
+     * The document builder for replies.
+     */
+    private static DocumentBuilder documentBuilder;
+
+    /**
+     * The length of the request.
+     */
+    ByteBuffer header = ByteBuffer.allocate(4);
+
+    /**
+     * The contents of the request, or null until the length is read.
+     */
+    ByteBuffer message;
+
+    /**
+     * The part of the reply not yet written, or null until the request
+     * is handled.
+     */
+    ByteBuffer replyBuffer;
+
     /**
      * The handlers for the different element types.
      */
@@ -134,40 +167,27 @@ public class ConnectionHandler implements Runnable
     }
 
     /**
-     * Creates a parser for communication with a Dispatcher requestor..
+     * Returns the parser for requests, creating it on first use.
      */
-    public LSParser createParser()
+    static synchronized LSParser getParser()
     {
-        LSParser parser = 
-            domImplementationLS.createLSParser(DOMImplementationLS.MODE_SYNCHRONOUS, 
-                                               "http://www.w3.org/2001/XMLSchema");
-        parser.getDomConfig().setParameter("error-handler", new DOMErrorHandler() 
-            {
-                /**
-                 * This method is called on the error handler when an error occurs.
-                 *
-                 * @param error the error;
-                 */
-                public boolean handleError(DOMError error)
-                {
-                    throw new LSException(LSException.PARSE_ERR, 
-                                          error.getMessage());
-
-                }
-            });
-
-        parser.getDomConfig().setParameter("schema-location", DISPATCHER_PROTOCOL);
-        parser.getDomConfig().setParameter("validate", Boolean.TRUE);
-        parser.getDomConfig().setParameter("namespaces", Boolean.TRUE);
-
-        LSResourceResolver prevResolver = 
-            (LSResourceResolver) parser.getDomConfig().getParameter("resource-resolver");
-        parser.getDomConfig().setParameter("resource-resolver", 
-                                           new LSJarXSDResolver(prevResolver));
-
+        if (parser == null) {
+            parser = createParser();
+        } else {
+            // The parser forgets the schema location after each parse.
+            parser.getDomConfig().setParameter("schema-location", DISPATCHER_PROTOCOL);
+        }
         return parser;
     }
 
+    /**
+     * Creates a parser for communication with a Dispatcher requestor..
+     */
+    public static LSParser createParser()
+    {
+        return GrammarCache.createParser(DISPATCHER_PROTOCOL);
+    }
+
     /**
      * Returns the socket of this connection
      */
@@ -185,43 +205,60 @@ public class ConnectionHandler implements Runnable
     }
 
     /**
-     * The method doing the work, either registering a new server or
-     * returning information of availiable servers.
+     * Advances the connection: reads the request, either registering a
+     * new server or returning information of availiable servers, and
+     * writes the reply. Closes the connection when done or on error.
+     *
+     * @param key the selection key of the connection.
      */
-    public void run()
+    public void handle(SelectionKey key)
     {
-        LSInput parserInput = domImplementationLS.createLSInput();
-        LSOutput replyOutput = domImplementationLS.createLSOutput();
         try {            
             try {
-                // Read length:
-                ByteBuffer header = ByteBuffer.allocate(4);
-                for(int r = 0; r < 4; r += getSocketChannel().read(header));
-                header.rewind();
-                int length = header.getInt();
-                ByteBuffer messageBuf = ByteBuffer.allocate(length);
-                for(int r = 0; r < length; r += getSocketChannel().read(messageBuf));
-                ByteArrayInputStream byteStream = new ByteArrayInputStream(messageBuf.array());
-                parserInput.setByteStream(byteStream);                
-                Document reply = handle(createParser().parse(parserInput).getDocumentElement());
-                if (reply != null && reply.getDocumentElement() != null) {
-                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                    replyOutput.setByteStream(outputStream);
-                    reply.normalize();
-                    domImplementationLS.createLSSerializer().write(reply, replyOutput);
-                    byte[] array = outputStream.toByteArray();
-                    ByteBuffer byteBuffer = ByteBuffer.allocate(4 + array.length);
-                    byteBuffer.putInt(array.length);
-                    byteBuffer.put(array);
-                    byteBuffer.rewind();
-                    for(int w = 0; w < 4 + array.length; w += getSocketChannel().write(byteBuffer));
+                if (key.isReadable()) {
+                    if (message == null) {
+                        if (getSocketChannel().read(header) < 0) {
+                            throw new IOException("Connection closed before request was read.");
+                        }
+                        if (header.hasRemaining()) {
+                            return;
+                        }
+                        header.rewind();
+                        int length = header.getInt();
+                        if (length < 0 || length > ApproxsimDispatcher.MAX_MESSAGE_LENGTH) {
+                            throw new IOException("Bad message length: " + length);
+                        }
+                        message = ByteBuffer.allocate(length);
+                    }
+                    if (message.hasRemaining() && getSocketChannel().read(message) < 0) {
+                        throw new IOException("Connection closed before request was read.");
+                    }
+                    if (message.hasRemaining()) {
+                        return;
+                    }
+
+                    LSInput parserInput = domImplementationLS.createLSInput();
+                    parserInput.setByteStream(new ByteArrayInputStream(message.array()));
+                    byte[] reply = handle(getParser().parse(parserInput).getDocumentElement());
+                    if (reply == null) {
+                        getSocketChannel().close();
+                        return;
+                    }
+                    replyBuffer = ByteBuffer.wrap(reply);
+                    key.interestOps(SelectionKey.OP_WRITE);
+                }
+                if (replyBuffer != null) {
+                    getSocketChannel().write(replyBuffer);
+                    if (!replyBuffer.hasRemaining()) {
+                        getSocketChannel().close();
+                    }
                 }
             } catch (org.w3c.dom.ls.LSException e) {
                 ApproxsimDispatcher.log("Parse error recieving from " + 
                                        getSocketChannel().socket().getRemoteSocketAddress() +
                                        ": " + e.getMessage());
+                getSocketChannel().close();
             }
-            getSocketChannel().close();
         } catch (IOException e) {
             ApproxsimDispatcher.log("Error recieiving from " + 
                                    getSocketChannel().socket().getRemoteSocketAddress() + 
@@ -235,6 +272,54 @@ public class ConnectionHandler implements Runnable
         }        
     }
 
+    /**
+     * Creates an empty reply document, with a dispatcherReply element
+     * of type DispatcherReply as its document element.
+     */
+    static synchronized Document createReplyDocument()
+    {
+        try {
+            if (documentBuilder == null) {
+                documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            }
+        } catch (javax.xml.parsers.ParserConfigurationException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+        Document reply = documentBuilder.newDocument();
+        reply.createEntityReference("xsi");
+        Element element = reply.createElement("dispatcherReply");
+        element.setAttribute("xmlns:xsi", XML_SCHEMA_NS);
+        element.setAttribute("xsi:type", "DispatcherReply");
+        reply.appendChild(element);
+        return reply;
+    }
+
+    /**
+     * Serializes a reply document and prepends its length, ready to be
+     * written to a requestor.
+     *
+     * @param reply the reply.
+     *
+     * @return the bytes to write.
+     */
+    static synchronized byte[] serializeReply(Document reply)
+    {
+        if (serializer == null) {
+            serializer = domImplementationLS.createLSSerializer();
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        LSOutput replyOutput = domImplementationLS.createLSOutput();
+        replyOutput.setByteStream(outputStream);
+        reply.normalize();
+        serializer.write(reply, replyOutput);
+        byte[] array = outputStream.toByteArray();
+        ByteBuffer byteBuffer = ByteBuffer.allocate(4 + array.length);
+        byteBuffer.putInt(array.length);
+        byteBuffer.put(array);
+        return byteBuffer.array();
+    }
+
     /**
      * Creates the table mapping element types to handlers
      */
@@ -274,19 +359,96 @@ public class ConnectionHandler implements Runnable
                     handler.getDispatcher().addServersToElement(reply);
                     return true;
                 }
+
+                /**
+                 * Returns the snapshot of the list reply kept by the
+                 * dispatcher.
+                 *
+                 * @param request the request to handle
+                 * @param handler the connection handler this handler belongs to.
+                 */
+                public byte[] cachedReply(Element request, ConnectionHandler handler)
+                {
+                    return handler.getDispatcher().getListReply();
+                }
+            });
+        res.put("LeaseRequest", new ElementHandler()
+            {
+                /**
+                 * Handles a lease request by leasing the requested
+                 * number of servers, or as many as are available.
+                 *
+                 * @param request the request to handle
+                 * @param reply the reply which will be sent back.
+                 * @param handler the connection handler this handler belongs to.
+                 */
+                public boolean handle(Element request, Element reply, ConnectionHandler handler)
+                {
+                    int count = Integer.parseInt(getText(request, "count"));
+                    long duration = Long.parseLong(getText(request, "duration"));
+                    reply.setAttribute("xsi:type", "LeaseReply");
+                    Document document = reply.getOwnerDocument();
+                    Vector leased = handler.getDispatcher().leaseServers(count, duration);
+                    for (Enumeration e = leased.elements(); e.hasMoreElements();) {
+                        ApproxsimServer server = (ApproxsimServer) e.nextElement();
+                        Element lease = document.createElement("lease");
+                        Element id = document.createElement("id");
+                        id.appendChild(document.createTextNode(Long.toString(server.getLeaseId())));
+                        lease.appendChild(id);
+                        Element granted = document.createElement("duration");
+                        granted.appendChild(document.createTextNode(Long.toString(server.getLeaseExpiry() - server.getLastLeased())));
+                        lease.appendChild(granted);
+                        lease.appendChild(server.toDOMElement(document));
+                        reply.appendChild(lease);
+                    }
+                    ApproxsimDispatcher.log("Leased " + leased.size() + " of " + count + " servers.");
+                    return true;
+                }
+            });
+        res.put("ReleaseRequest", new ElementHandler()
+            {
+                /**
+                 * Handles a release request by ending the listed
+                 * leases.
+                 *
+                 * @param request the request to handle
+                 * @param reply the reply which will be sent back.
+                 * @param handler the connection handler this handler belongs to.
+                 */
+                public boolean handle(Element request, Element reply, ConnectionHandler handler)
+                {
+                    NodeList leases = request.getElementsByTagName("lease");
+                    for (int i = 0; i < leases.getLength(); i++) {
+                        handler.getDispatcher().releaseLease(Long.parseLong(leases.item(i).getFirstChild().getNodeValue().trim()));
+                    }
+                    return false;
+                }
             });
 
         return res;
     }
 
+    /**
+     * Returns the text of the first child element with the provided
+     * tag name.
+     *
+     * @param element the parent element.
+     * @param tagName the tag name of the child.
+     */
+    static String getText(Element element, String tagName)
+    {
+        return element.getElementsByTagName(tagName).item(0).getFirstChild().getNodeValue().trim();
+    }
+
     /**
      * Performs tasks depending on the type of the provided element
      *
      * @param request the element to handle.
      *
-     * @return a document to send to the requestor
+     * @return the serialized reply to send to the requestor, or null
+     * if none.
      */
-    Document handle(Element request)
+    byte[] handle(Element request)
     {
         ApproxsimDispatcher.log(request.getAttribute("xsi:type") + " from " +
                                getSocketChannel().socket().getRemoteSocketAddress());
@@ -296,23 +458,17 @@ public class ConnectionHandler implements Runnable
             handler = defaultElementHandler;
         }
 
-        Document reply = null;
-        try {
-            reply = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
-            reply.createEntityReference("xsi");
-            Element element = reply.createElement("dispatcherReply");
-            element.setAttribute("xmlns:xsi", XML_SCHEMA_NS);
-            element.setAttribute("xsi:type", "DispatcherReply");
-            reply.appendChild(element);
-            boolean sendReply = handler.handle(request, reply.getDocumentElement(), this);
-            if (!sendReply) {
-                reply = null;
-            }
-        } catch (javax.xml.parsers.ParserConfigurationException e) {
-            System.err.println(e.getMessage());
+        byte[] cached = handler.cachedReply(request, this);
+        if (cached != null) {
+            return cached;
         }
 
-        return reply;
+        Document reply = createReplyDocument();
+        if (reply == null) {
+            return null;
+        }
+        boolean sendReply = handler.handle(request, reply.getDocumentElement(), this);
+        return (sendReply ? serializeReply(reply) : null);
     }
 }
 
@@ -332,4 +488,19 @@ abstract class ElementHandler
      * @return the reply to the requestor, or null if none provided.
      */
     abstract public boolean handle(Element request, Element reply, ConnectionHandler handler);
+
+    /**
+     * Returns a ready made serialized reply to the provided request,
+     * sent instead of calling handle. Returns null by default, meaning
+     * that handle is to be called.
+     *
+     * @param request the request to handle
+     * @param handler the connection handler this handler belongs to.
+     *
+     * @return the serialized reply, or null.
+     */
+    public byte[] cachedReply(Element request, ConnectionHandler handler)
+    {
+        return null;
+    }
 }
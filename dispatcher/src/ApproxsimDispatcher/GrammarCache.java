@@ -0,0 +1,116 @@
+/*
+ * @(#)GrammarCache.java
+ */
+
+package ApproxsimDispatcher;
+
+import java.util.Hashtable;
+
+import org.apache.xerces.parsers.DOMParserImpl;
+import org.apache.xerces.parsers.XMLGrammarPreparser;
+import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.util.SynchronizedSymbolTable;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.util.XMLResourceIdentifierImpl;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.w3c.dom.DOMError;
+import org.w3c.dom.DOMErrorHandler;
+import org.w3c.dom.ls.LSException;
+import org.w3c.dom.ls.LSParser;
+import org.w3c.dom.ls.LSResourceResolver;
+
+/**
+ * Cache of preparsed schemas. Each schema is preparsed once into a
+ * grammar pool of its own, which is then shared by all parsers
+ * validating against it, so that a parse no longer loads and
+ * compiles the schema. The pools are kept per schema file since the
+ * approxsim protocol schemas share the same target namespace.
+ *
+ * @version 1
+ */
+public class GrammarCache
+{
+    /**
+     * The symbol table shared by the preparser and all parsers.
+     */
+    private static SymbolTable symbolTable =
+        new SynchronizedSymbolTable(new SymbolTable(2039));
+
+    /**
+     * The grammar pools, indexed by schema file name.
+     */
+    private static Hashtable pools = new Hashtable();
+
+    /**
+     * Returns the grammar pool of a schema, preparsing the schema on
+     * first use. If the schema can't be preparsed an empty pool is
+     * returned, to which the grammar is added by the first parse.
+     *
+     * @param grammar the name of the schema file.
+     */
+    public static synchronized XMLGrammarPool getGrammarPool(String grammar)
+    {
+        XMLGrammarPool pool = (XMLGrammarPool) pools.get(grammar);
+        if (pool == null) {
+            pool = new XMLGrammarPoolImpl();
+            XMLGrammarPreparser preparser = new XMLGrammarPreparser(symbolTable);
+            preparser.registerPreparser(XMLGrammarDescription.XML_SCHEMA, null);
+            preparser.setGrammarPool(pool);
+            preparser.setFeature("http://xml.org/sax/features/namespaces", true);
+            preparser.setFeature("http://xml.org/sax/features/validation", true);
+            preparser.setFeature("http://apache.org/xml/features/validation/schema",
+                                 true);
+            try {
+                preparser.setEntityResolver(new LSJarXSDResolver(preparser.getEntityResolver()));
+                XMLInputSource source = preparser.getEntityResolver()
+                    .resolveEntity(new XMLResourceIdentifierImpl(null, grammar,
+                                                                 null, null));
+                preparser.preparseGrammar(XMLGrammarDescription.XML_SCHEMA, source);
+                pool.lockPool();
+            } catch (Exception e) {
+                ApproxsimDispatcher.log("Unable to preparse " + grammar + ": " +
+                                       e.getMessage());
+            }
+            pools.put(grammar, pool);
+        }
+        return pool;
+    }
+
+    /**
+     * Creates a validating parser using the cached grammar of a
+     * schema. The parser throws an LSException on the first error.
+     *
+     * @param grammar the name of the schema file.
+     */
+    public static LSParser createParser(String grammar)
+    {
+        LSParser parser = new DOMParserImpl(symbolTable, getGrammarPool(grammar));
+        parser.getDomConfig().setParameter("error-handler", new DOMErrorHandler()
+            {
+                /**
+                 * This method is called on the error handler when an error occurs.
+                 *
+                 * @param error the error;
+                 */
+                public boolean handleError(DOMError error)
+                {
+                    throw new LSException(LSException.PARSE_ERR,
+                                          error.getMessage());
+
+                }
+            });
+
+        parser.getDomConfig().setParameter("schema-location", grammar);
+        parser.getDomConfig().setParameter("validate", Boolean.TRUE);
+        parser.getDomConfig().setParameter("namespaces", Boolean.TRUE);
+
+        LSResourceResolver prevResolver =
+            (LSResourceResolver) parser.getDomConfig().getParameter("resource-resolver");
+        parser.getDomConfig().setParameter("resource-resolver",
+                                           new LSJarXSDResolver(prevResolver));
+
+        return parser;
+    }
+}
@@ -10,12 +10,8 @@ import java.io.IOException;
 import java.io.ByteArrayOutputStream;
 import java.io.ByteArrayInputStream;
 
-import java.util.Vector;
-import java.util.Timer;
-import java.util.TimerTask;
-
-
-import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.nio.ByteBuffer;
 
@@ -27,24 +23,25 @@ import  org.w3c.dom.DOMImplementation;
 import  org.w3c.dom.Document;
 import  org.w3c.dom.NodeList;
 import  org.w3c.dom.ls.DOMImplementationLS;
-import  org.w3c.dom.DOMError;
-import  org.w3c.dom.DOMErrorHandler;
 import  org.w3c.dom.ls.LSInput;
 import  org.w3c.dom.ls.LSOutput;
 import  org.w3c.dom.ls.LSParser;
-import  org.w3c.dom.ls.LSResourceResolver;
 import  org.w3c.dom.ls.LSException;
 import  org.w3c.dom.TypeInfo;
 import  org.w3c.dom.Element;
 
 
 /**
- * The class performing the monitoring of individual servers.
+ * The class performing the monitoring of individual servers. The
+ * monitor is driven by the selector loop of the dispatcher: every
+ * sample period it connects to the server without blocking, sends a
+ * LoadQueryMessage and updates the server from the reply as the
+ * channel becomes ready.
  *
  * @version 1, $Date: 2006/03/24 11:36:10 $
  * @author  Daniel Ahlin
 */
-public class ServerMonitor implements Runnable
+public class ServerMonitor implements ChannelHandler
 {
     /**
      * The server to monitor
@@ -87,6 +84,48 @@ public class ServerMonitor implements Runnable
      */
     private static byte[] loadQueryMessageBuffer;
 
+    /**
+     * The parser for replies, shared by all monitors.
+     */
+    private static LSParser parser;
+
+    /**
+     * The address of the server, resolved on the first request.
+     */
+    InetSocketAddress address;
+
+    /**
+     * The channel of the status request in progress, or null if none.
+     */
+    SocketChannel channel;
+
+    /**
+     * The part of the request not yet written.
+     */
+    ByteBuffer request;
+
+    /**
+     * The header of the reply.
+     */
+    ByteBuffer header;
+
+    /**
+     * The contents of the reply, or null until the header is read.
+     */
+    ByteBuffer message;
+
+    /**
+     * The time at which the next status request is due, in
+     * milliseconds.
+     */
+    long nextPoll = 0;
+
+    /**
+     * The time at which the status request in progress times out, in
+     * milliseconds.
+     */
+    long deadline = Long.MAX_VALUE;
+
     /**
      * Creates a monitor for the specified server.
      *
@@ -182,151 +221,224 @@ public class ServerMonitor implements Runnable
     }
 
     /**
-     * Creates a parser for communication with a ApproxsimServer.
+     * Returns the parser for replies from ApproxsimServers, creating
+     * it on first use. The parser is shared by all monitors, which
+     * all run on the selector thread of the dispatcher.
      */
-    public LSParser createParser()
+    static synchronized LSParser getParser()
     {
-        LSParser parser = 
-            domImplementationLS.createLSParser(DOMImplementationLS.MODE_SYNCHRONOUS, 
-                                               "http://www.w3.org/2001/XMLSchema");
-        parser.getDomConfig().setParameter("error-handler", new DOMErrorHandler() 
-            {
-                /**
-                 * This method is called on the error handler when an error occurs.
-                 *
-                 * @param error the error;
-                 */
-                public boolean handleError(DOMError error)
-                {
-                    throw new LSException(LSException.PARSE_ERR, 
-                                          error.getMessage());
-
-                }
-            });
-
-        parser.getDomConfig().setParameter("schema-location", APPROXSIM_PROTOCOL);
-        parser.getDomConfig().setParameter("validate", Boolean.TRUE);
-        parser.getDomConfig().setParameter("namespaces", Boolean.TRUE);
+        if (parser == null) {
+            parser = createParser();
+        } else {
+            // The parser forgets the schema location after each parse.
+            parser.getDomConfig().setParameter("schema-location", APPROXSIM_PROTOCOL);
+        }
+        return parser;
+    }
 
-        LSResourceResolver prevResolver = 
-            (LSResourceResolver) parser.getDomConfig().getParameter("resource-resolver");
-        parser.getDomConfig().setParameter("resource-resolver", 
-                                           new LSJarXSDResolver(prevResolver));
+    /**
+     * Creates a parser for communication with a ApproxsimServer.
+     */
+    public static LSParser createParser()
+    {
+        return GrammarCache.createParser(APPROXSIM_PROTOCOL);
+    }
 
-        return parser;
+    /**
+     * Returns true if a status request is in progress.
+     */
+    public boolean isPolling()
+    {
+        return this.channel != null;
+    }
 
+    /**
+     * Returns the time in milliseconds at which the next status
+     * request is due.
+     */
+    public long getNextPoll()
+    {
+        return this.nextPoll;
     }
-    
+
     /**
-     * The run method of this server, basically a sleep-check-sleep
-     * loop. This function will return iff getServer().isBad() == true
+     * Returns the time in milliseconds at which the status request
+     * in progress times out.
      */
-    public void run()
+    public long getDeadline()
     {
-        // Timer used to ensure that io is performed within a reasonable time.
-        Timer timer = new Timer();
+        return this.deadline;
+    }
 
+    /**
+     * Starts a status request by connecting to the server without
+     * blocking. The rest of the request is performed by handle as the
+     * channel becomes ready.
+     *
+     * @param selector the selector of the dispatcher.
+     * @param now the current time in milliseconds.
+     */
+    public void poll(Selector selector, long now)
+    {
         try {
-            while(!getServer().isBad()) {
-                getServer().setPending(true);
-                
-                // Don't let this take more than 4 * samplerate
-                // seconds (where 4 is extremely arbitrary).
-                timer = new Timer();
-                timer.schedule(new TimerTask() 
-                    {
-                        public void run()
-                        {
-                            downCheck("Timed out opening connection.");
-                        }
-                    }, 4 * getSampleRate());
-                
-                final SocketChannel channel = 
-                    SocketChannel.open(new InetSocketAddress(getServer().getHost(),
-                                                             getServer().getPort()));
-                timer.cancel();
-                // Set up new timer which will provoke a quicker exit
-                // by closing the channel.
-                timer = new Timer();
-                timer.schedule(new TimerTask() 
-                    {
-                        public void run()
-                        {
-                            try {
-                                channel.close();
-                            } catch (IOException e) {
-                                downCheck(e.getMessage());
-                            }
-                            downCheck("Timed out requesting status.");
-                        }
-                    }, 4 * getSampleRate());
-                
-                channel.socket().getOutputStream().write(loadQueryMessageBuffer);
-                LSInput parserInput = domImplementationLS.createLSInput();
-                ByteBuffer header = ByteBuffer.allocate(16);                
-                for(int r = 0; r < 16; r += channel.read(header));
-                header.rewind();
-                long length = header.getLong();
-                ByteBuffer messageBuf = ByteBuffer.allocate((int) length);
-                for(int r = 0; r < length; r += channel.read(messageBuf));
-                ByteArrayInputStream byteStream = new ByteArrayInputStream(messageBuf.array());
-                parserInput.setByteStream(byteStream);
-                Document reply = createParser().parse(parserInput);
-                channel.close();
+            if (address == null || address.isUnresolved()) {
+                address = new InetSocketAddress(getServer().getHost(),
+                                                getServer().getPort());
+                if (address.isUnresolved()) {
+                    throw new IOException("Unable to resolve " + getServer().getHost());
+                }
+            }
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            request = ByteBuffer.wrap(loadQueryMessageBuffer);
+            header = ByteBuffer.allocate(16);
+            message = null;
+            // Don't let this take more than 4 * samplerate
+            // seconds (where 4 is extremely arbitrary).
+            deadline = now + 4 * getSampleRate();
+            if (channel.connect(address)) {
+                channel.register(selector, SelectionKey.OP_WRITE, this);
+            } else {
+                channel.register(selector, SelectionKey.OP_CONNECT, this);
+            }
+        } catch (IOException e) {
+            close();
+            downCheck(e.getMessage());
+        }
+    }
 
-                timer.cancel();
-                String type = reply.getDocumentElement().getAttributeNS(XML_SCHEMA_NS,
-                                                                        "type");
-//                Wait for DOM3
-//                 TypeInfo typeInfo = reply.getDocumentElement().getSchemaTypeInfo();
-//                 if (typeInfo.isDerivedFrom(APPROXSIM_PROTOCOL_NS,
-//                                            "LoadQueryResponseMessage",
-//                                            0)) {
-                if (type != null && type.equals("sp:LoadQueryResponseMessage")) {
-                    if (getServer().udateFromLoadQueryResponse(reply.getDocumentElement())) {
-                        getServer().setGood(true);
-                        getServer().setPending(false);
-                    } else {
-                        throw new RuntimeException("Malformed LoadQueryResponseMessage "  + 
-                                                   "accepted by XML parser");
+    /**
+     * Advances the status request in progress: finishes connecting,
+     * writes the request, reads the reply and updates the server from
+     * it.
+     *
+     * @param key the selection key of the channel to the server.
+     */
+    public void handle(SelectionKey key)
+    {
+        try {
+            if (key.isConnectable()) {
+                if (channel.finishConnect()) {
+                    deadline = System.currentTimeMillis() + 4 * getSampleRate();
+                    key.interestOps(SelectionKey.OP_WRITE);
+                }
+            } else if (key.isWritable()) {
+                channel.write(request);
+                if (!request.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } else if (key.isReadable()) {
+                if (message == null) {
+                    if (channel.read(header) < 0) {
+                        throw new IOException("Connection closed by server.");
                     }
-//                 } else if (typeInfo.isDerivedFrom(APPROXSIM_PROTOCOL_NS,
-//                                                   "StatusMessage",
-//                                                   0)) {
-                } else if (type != null && type.equals("sp:StatusMessage")) {
-                    // Collect any errors:
-                    StringBuffer errorDescriptions = new StringBuffer();
-                    NodeList errors = 
-                        reply.getDocumentElement().getElementsByTagName("error");
-                    for (int i = 0; i < errors.getLength(); i++) {
-                        errorDescriptions.append("\"" + ((Element) errors.item(i)).getElementsByTagName("description").item(0).getFirstChild().getNodeValue().toString() + "\" ");
+                    if (header.hasRemaining()) {
+                        return;
                     }
-                    downCheck("Unexpected status message from server: " + 
-                              reply.getDocumentElement().getElementsByTagName("type").item(0).getFirstChild().getNodeValue() + ": " + errorDescriptions.toString());
-                } else {
-                    //downCheck("Unexpected reply from server: " + typeInfo.getTypeName());
-                    downCheck("Unexpected reply type from server: " + type);
+                    header.rewind();
+                    long length = header.getLong();
+                    if (length < 0 || length > ApproxsimDispatcher.MAX_MESSAGE_LENGTH) {
+                        throw new IOException("Bad message length: " + length);
+                    }
+                    message = ByteBuffer.allocate((int) length);
                 }
-
-                try {
-                    Thread.currentThread().sleep(getSampleRate());
-                } catch (InterruptedException e) {
-                    // Don't care (faster samplerate not really a problem.)
+                if (message.hasRemaining() && channel.read(message) < 0) {
+                    throw new IOException("Connection closed by server.");
+                }
+                if (message.hasRemaining()) {
+                    return;
                 }
+                close();
+                handleReply(message.array());
+                nextPoll = System.currentTimeMillis() + getSampleRate();
             }
         } catch (LSException e) {
+            close();
             downCheck(e.getMessage());
-            timer.cancel();
         } catch (IOException e) {
+            close();
             downCheck(e.getMessage());
-            timer.cancel();
         } catch (RuntimeException e) {
             e.printStackTrace();
-            timer.cancel();
+            close();
             downCheck("Error in monitor: " + e.getMessage());
         }
     }
 
+    /**
+     * Downchecks the server if the status request in progress has
+     * timed out.
+     *
+     * @param now the current time in milliseconds.
+     */
+    public void checkTimeout(long now)
+    {
+        if (isPolling() && now >= getDeadline()) {
+            close();
+            downCheck("Timed out requesting status.");
+        }
+    }
+
+    /**
+     * Closes the channel of the status request in progress, if any.
+     */
+    public void close()
+    {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Don't care, the channel is abandoned anyway.
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Updates the server from a reply to a status request.
+     *
+     * @param contents the reply.
+     */
+    void handleReply(byte[] contents)
+    {
+        LSInput parserInput = domImplementationLS.createLSInput();
+        parserInput.setByteStream(new ByteArrayInputStream(contents));
+        Document reply = getParser().parse(parserInput);
+
+        String type = reply.getDocumentElement().getAttributeNS(XML_SCHEMA_NS,
+                                                                "type");
+//                Wait for DOM3
+//                 TypeInfo typeInfo = reply.getDocumentElement().getSchemaTypeInfo();
+//                 if (typeInfo.isDerivedFrom(APPROXSIM_PROTOCOL_NS,
+//                                            "LoadQueryResponseMessage",
+//                                            0)) {
+        if (type != null && type.equals("sp:LoadQueryResponseMessage")) {
+            if (getServer().udateFromLoadQueryResponse(reply.getDocumentElement())) {
+                getServer().setGood(true);
+                getServer().setPending(false);
+            } else {
+                throw new RuntimeException("Malformed LoadQueryResponseMessage "  + 
+                                           "accepted by XML parser");
+            }
+//                 } else if (typeInfo.isDerivedFrom(APPROXSIM_PROTOCOL_NS,
+//                                                   "StatusMessage",
+//                                                   0)) {
+        } else if (type != null && type.equals("sp:StatusMessage")) {
+            // Collect any errors:
+            StringBuffer errorDescriptions = new StringBuffer();
+            NodeList errors = 
+                reply.getDocumentElement().getElementsByTagName("error");
+            for (int i = 0; i < errors.getLength(); i++) {
+                errorDescriptions.append("\"" + ((Element) errors.item(i)).getElementsByTagName("description").item(0).getFirstChild().getNodeValue().toString() + "\" ");
+            }
+            downCheck("Unexpected status message from server: " + 
+                      reply.getDocumentElement().getElementsByTagName("type").item(0).getFirstChild().getNodeValue() + ": " + errorDescriptions.toString());
+        } else {
+            //downCheck("Unexpected reply from server: " + typeInfo.getTypeName());
+            downCheck("Unexpected reply type from server: " + type);
+        }
+    }
+
     /**
      * Causes a server to be downchecked.
      *
@@ -1,7 +1,9 @@
 // This file is included in XMLHandler.cpp and thus 'compiled there'
 
 // System
+#include <cstring>
 #include <iostream>
+#include <vector>
 
 // Own
 #include "Buffer.h"
@@ -102,7 +104,7 @@ void ApproxsimObjectSubscription::getSubscribedData(std::ostream &o)
  * runs on a big endian plattform.
  */
 LayerSubscription::LayerSubscription(DOMElement* n, Buffer& buf, bool sbe)
-     : Subscription(n, buf), mSessionBigEndian(sbe)
+     : Subscription(n, buf), mSessionBigEndian(sbe), mDelta(false), mFrame(0)
 {
      XMLHelper::getString(*n, "layer", mLayer);
 
@@ -125,6 +127,10 @@ LayerSubscription::LayerSubscription(DOMElement* n, Buffer& buf, bool sbe)
           mLength = mBuf.grid().active();
           mIndex = 0;
      }
+
+     if (XMLHelper::getFirstChildByTag(*n, "delta")) {
+          mDelta = XMLHelper::getBool(*n, "delta");
+     }
      approxsimDebug("Created LayerSubscription for layer '" << mLayer << "', faction: '" << *mFaction << "'");
 }
 
@@ -132,19 +138,61 @@ LayerSubscription::LayerSubscription(DOMElement* n, Buffer& buf, bool sbe)
  * \brief Writes an XML representation of the subscribed data to the
  * provided stream.
  *
+ * For a delta subscription only the values that changed since the
+ * last frame are written, as a SubscribedLayerDelta, when that is
+ * smaller than the full layer. Nothing is written if no value has
+ * changed.
+ *
  * \param o The stream to write to.
  */
 void LayerSubscription::getSubscribedData(std::ostream &o)
 {
      double *toEncode = new double[mLength];
+     bool swap = mSessionBigEndian != Server::bigEndian();
 
      // Get data for the specified layer
      mBuf.layer(mLayer, *mFaction, mLength, mIndex, toEncode);
 
+     if (mDelta && mPrevious.size() == mLength) {
+          // Compare bit patterns so that unchanged NaNs are not resent
+          vector<int> changed;
+          for (unsigned int i = 0; i < mLength; i++) {
+               if (memcmp(&toEncode[i], &mPrevious[i], sizeof(double)) != 0) {
+                    changed.push_back(i);
+               }
+          }
+          // Each change costs an index and a value
+          if (changed.size() * (sizeof(int32_t) + sizeof(double)) < mLength * sizeof(double)) {
+               if (!changed.empty()) {
+                    vector<double> values(changed.size());
+                    for (unsigned int i = 0; i < changed.size(); i++) {
+                         values[i] = toEncode[changed[i]];
+                         mPrevious[changed[i]] = toEncode[changed[i]];
+                    }
+                    o << "<subscribedData xsi:type=\"sp:SubscribedLayerDelta\" id=\"" << mId << "\">" << endl;
+                    o << "<base>" << mFrame << "</base>" << endl;
+                    o << "<frame>" << ++mFrame << "</frame>" << endl;
+                    o << "<index>";
+                    XMLHelper::base64Print(&changed[0], changed.size(), swap, o);
+                    o << "</index>" << endl;
+                    o << "<layerData>";
+                    XMLHelper::base64Print(&values[0], values.size(), swap, o);
+                    o << "</layerData>" << endl;
+                    o << "</subscribedData>" << endl;
+               }
+               delete [] toEncode;
+               return;
+          }
+     }
+
      o << "<subscribedData xsi:type=\"sp:SubscribedLayerData\" id=\"" << mId << "\">" << endl;
      o << "<layerData>";
-     XMLHelper::base64Print(toEncode, mLength, mSessionBigEndian != Server::bigEndian(), o);
+     XMLHelper::base64Print(toEncode, mLength, swap, o);
      o << "</layerData>" << endl;
+     if (mDelta) {
+          o << "<frame>" << ++mFrame << "</frame>" << endl;
+          mPrevious.assign(toEncode, toEncode + mLength);
+     }
      o << "</subscribedData>" << endl;
 
      delete [] toEncode;
@@ -303,3 +351,197 @@ void RegionSubscription::printPV(ostream& o, const char* name, const char* type,
      o << "</value>" << endl;
      o << "</pv>" << endl;
 }
+
+
+/**
+ * \brief Creates a subscription from a DOMElement, e.g. an xml
+ * representation.
+ *
+ * \param n The DOMElement from which this subscription should be
+ * created.
+ * \param buf The Buffer from which data should be fetched.
+ * \param sbe True if the client that submitted this subscription
+ * runs on a big endian plattform.
+ */
+MultiRegionSubscription::MultiRegionSubscription(DOMElement *n, Buffer &buf, bool sbe)
+     : Subscription(n, buf), mSessionBigEndian(sbe)
+{
+     if (!mBuf.hasData()) {
+          Error e;
+          e << "Tried to create a MultiRegionSubscription when no scenario is initialized.";
+          throw e;
+     }
+     else if (Projection::mCurrent == 0) {
+          Error e;
+          e << "Tried to create a MultiRegionSubscription when there is no current projection.";
+          throw e;
+     }
+
+     mResetCount = mBuf.resetCount();
+     for (DOMNode *child = n->getFirstChild(); child != 0; child = child->getNextSibling()) {
+          if (child->getNodeType() == DOMNode::ELEMENT_NODE) {
+               StrX name(child->getNodeName());
+               if (name == "region") {
+                    Shape* area = XMLHelper::getShape(*static_cast<DOMElement*>(child), Reference::nullRef());
+                    // Notice that the area must be in projection space for cells() to work properly
+                    area->toProj(*Projection::mCurrent);
+                    mPositions.push_back(list<GridPos>());
+                    area->cells(mBuf.grid(), mPositions.back());
+                    delete area;
+               }
+          }
+     }
+     createGroups();
+     approxsimDebug("Created MultiRegionSubscription with id: '" << mId << "' and " << mPositions.size() << " regions");
+}
+
+/**
+ * \brief Destructor.
+ */
+MultiRegionSubscription::~MultiRegionSubscription()
+{
+     for (unsigned int r = 0; r < mRegions.size(); r++) {
+          delete mRegions[r];
+     }
+}
+
+/**
+ * \brief (Re)creates the group of cells of each region.
+ */
+void MultiRegionSubscription::createGroups()
+{
+     for (unsigned int r = 0; r < mRegions.size(); r++) {
+          delete mRegions[r];
+     }
+     mRegions.clear();
+     for (unsigned int r = 0; r < mPositions.size(); r++) {
+          CellGroup* group = new CellGroup(mBuf.gridDataHandler());
+          for (list<GridPos>::iterator it = mPositions[r].begin(); it != mPositions[r].end(); it++) {
+               group->addMember(mBuf.grid().cell(*it));
+          }
+          mRegions.push_back(group);
+     }
+}
+
+/**
+ * \brief Writes the key of a column.
+ *
+ * \param o The stream to write to.
+ * \param name The name of the process variable.
+ * \param faction The index of the faction, or EthnicFaction::ALL.
+ */
+void MultiRegionSubscription::printKey(ostream& o, const char* name, int faction)
+{
+     o << "<key><name>" << name << "</name>";
+     if (faction != EthnicFaction::ALL) {
+          o << "<faction>" << endl;
+          EthnicFaction::faction(faction)->ref().toXML(o) << endl;
+          o << "</faction>";
+     }
+     o << "</key>" << endl;
+}
+
+/**
+ * \brief Writes an XML representation of the subscribed data to the
+ * provided stream.
+ *
+ * The columns are in the same order as the pv elements of a
+ * RegionSubscription.
+ *
+ * \param o The stream to write to.
+ */
+void MultiRegionSubscription::getSubscribedData(std::ostream &o)
+{
+     // Update our groups if the Buffer has been reset since the last
+     // call
+     if (mResetCount != mBuf.resetCount()) {
+          createGroups();
+          mResetCount = mBuf.resetCount();
+     }
+
+     int nRegions = mRegions.size();
+     for (int r = 0; r < nRegions; ++r) {
+          mRegions[r]->update();
+     }
+     int nFactions = mBuf.grid().factions() + 1;
+     vector<double> values;
+
+     o << "<subscribedData xsi:type=\"sp:SubscribedMultiRegionData\" id=\"" << mId << "\">" << endl;
+     // PV:s with factions.
+     for (int i = 0; i < eNumWithFac; ++i) {
+          ePVF pv = static_cast<ePVF>(i);
+          for (int j = 0; j < nFactions; ++j) {
+               printKey(o, PVHelper::pvfName(pv), j);
+               for (int r = 0; r < nRegions; ++r) {
+                    values.push_back(mRegions[r]->pvfGet(pv, j));
+               }
+          }
+     }
+     // PV:s without factions.
+     for (int i = 0; i < eNumNoFac; ++i) {
+          ePV pv = static_cast<ePV>(i);
+          printKey(o, PVHelper::pvName(pv), EthnicFaction::ALL);
+          for (int r = 0; r < nRegions; ++r) {
+               values.push_back(mRegions[r]->pvGet(pv));
+          }
+     }
+     // Derived PV:s with factions.
+     for (int i = 0; i < eDNumDerivedF; ++i) {
+          eDerivedF pv = static_cast<eDerivedF>(i);
+          for (int j = 0; j < nFactions; ++j) {
+               printKey(o, PVHelper::pdfName(pv), j);
+               for (int r = 0; r < nRegions; ++r) {
+                    values.push_back(mRegions[r]->pdfGet(pv, j));
+               }
+          }
+     }
+     // Derived PV:s without factions.
+     for (int i = 0; i < eDNumDerived; ++i) {
+          eDerived pv = static_cast<eDerived>(i);
+          printKey(o, PVHelper::pdName(pv), EthnicFaction::ALL);
+          for (int r = 0; r < nRegions; ++r) {
+               values.push_back(mRegions[r]->pdGet(pv));
+          }
+     }
+     // Precalculated PV:s with factions.
+     for (int i = 0; i < ePNumPreCalcF; ++i) {
+          ePreCalcF pv = static_cast<ePreCalcF>(i);
+          for (int j = 0; j < nFactions; ++j) {
+               printKey(o, PVHelper::pcfName(pv), j);
+               for (int r = 0; r < nRegions; ++r) {
+                    values.push_back(mRegions[r]->pcfGet(pv, j));
+               }
+          }
+     }
+     // Precalculated PV:s without factions.
+     for (int i = 0; i < ePNumPreCalc; ++i) {
+          ePreCalc pv = static_cast<ePreCalc>(i);
+          printKey(o, PVHelper::pcName(pv), EthnicFaction::ALL);
+          for (int r = 0; r < nRegions; ++r) {
+               values.push_back(mRegions[r]->pcGet(pv));
+          }
+     }
+
+     // CombatGrid
+     int numCombatLayers = mBuf.combatGrid().layers();
+     int first = values.size();
+     values.resize(first + numCombatLayers * nRegions);
+     double* agg = new double[numCombatLayers];
+     for (int r = 0; r < nRegions; ++r) {
+          mBuf.combatGrid().aggregate(mPositions[r], agg);
+          for (int i = 0; i < numCombatLayers; i++) {
+               values[first + i * nRegions + r] = agg[i];
+          }
+     }
+     delete [] agg;
+     for (int i = 0; i < numCombatLayers; i++) {
+          printKey(o, mBuf.combatGrid().indexToName(i).c_str(), EthnicFaction::ALL);
+     }
+
+     o << "<values>";
+     if (!values.empty()) {
+          XMLHelper::base64Print(&values[0], values.size(), mSessionBigEndian != Server::bigEndian(), o);
+     }
+     o << "</values>" << endl;
+     o << "</subscribedData>" << endl;
+}
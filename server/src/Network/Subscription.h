@@ -5,6 +5,7 @@
 #include <iosfwd>
 #include <list>
 #include <string>
+#include <vector>
 
 // Xerces-c
 #include <xercesc/dom/DOMElement.hpp>
@@ -105,6 +106,9 @@ private:
      unsigned int     mLength;    ///< The number of cells of interest.
      int32_t*         mIndex;     ///< The indices (among active cells) of the cells of interest.
      bool             mSessionBigEndian;   ///< Keeps track of if we have to swap byte order
+     bool             mDelta;     ///< True if only the changed values should be sent.
+     int64_t          mFrame;     ///< The number of the last frame sent.
+     std::vector<double> mPrevious;   ///< The values of the last frame sent, empty if none.
 
 public:
      LayerSubscription(DOMElement *n, Buffer &buf, bool sbe);
@@ -140,4 +144,29 @@ public:
 };
 
 
+/**
+ * \brief MultiRegionSubscription represents a subscription for the
+ * aggregates of many collections of cells at once.
+ *
+ * Instead of one pv element per value, as for RegionSubscription,
+ * the values are sent as one Base64 encoded column per process
+ * variable and faction holding the value for every region.
+ */
+class MultiRegionSubscription : public Subscription {
+private:
+     std::vector<std::list<GridPos> > mPositions;   ///< The grid positions each region covers.
+     std::vector<CellGroup*> mRegions;   ///< The group of cells of each region.
+     int mResetCount;                    ///< The reset count for the Buffer.
+     bool mSessionBigEndian;             ///< Keeps track of if we have to swap byte order
+
+     void createGroups();
+     void printKey(std::ostream& o, const char* name, int faction);
+
+public:
+     MultiRegionSubscription(DOMElement *n, Buffer &buf, bool sbe);
+     ~MultiRegionSubscription();
+     void getSubscribedData(std::ostream &o);
+};
+
+
 #endif   // APPROXSIM_SUBSCRIPTION_H
@@ -439,6 +439,9 @@ void XMLHandler::createSubscription(DOMElement &n)
      else if (type == "sp:RegionSubscription") {
           addSubscription(new RegionSubscription(&n, mBuf));
      }
+     else if (type == "sp:MultiRegionSubscription") {
+          addSubscription(new MultiRegionSubscription(&n, mBuf, mSessionBigEndian));
+     }
      else if (type == "sp:Unsubscription") {
           int toRemove = XMLHelper::getIntAttribute(n, "id");
           map<int, Subscription*>::iterator it = mSubscriptions.find(toRemove);